@@ -1,15 +1,14 @@
 //gist: 151205
 //Demonstrates basic manipulation to predict a EI-MS in Bioclipse using
-//a sdf file containing a list of molecule. 
+//a sdf file containing a list of molecule. The molecules are predicted 
+//in parallel, using all processors.
 //Requires medea data installed in default location
 var mols = cdk.loadMolecules("/Sample Data/SDFfiles/CAS.5.sdf");
-for (var i = 0; i < mols.size(); i++) {
-	var mol = mols.get(i);
-	mol = cdk.generate2dCoordinates(mol);
-	ui.open(mol);
-
-	cmlSpectrum = medea.predictMassSpectrum(mol)
+var schemes = medea.predictMassSpectra(mols);
+for (var i = 0; i < schemes.size(); i++) {
+	if (schemes.get(i) == null)
+		continue;
+	var cmlSpectrum = medea.convertToSpectrum(schemes.get(i));
 	spectrum.saveSpectrum(cmlSpectrum,"Virtual/predictedSpectrum_"+i+".cml","cml")
-//	ui.open("/Virtual/predictedSpectrum_"++".cml");
+//	ui.open("/Virtual/predictedSpectrum_"+i+".cml");
 }
-
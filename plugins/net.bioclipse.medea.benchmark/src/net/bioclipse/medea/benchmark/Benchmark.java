@@ -0,0 +1,68 @@
+package net.bioclipse.medea.benchmark;
+
+/**
+ * A part of Medea whose time is measured by the BenchmarkRunner. An
+ * iteration runs a fixed number of operations, so that the results of two
+ * runs over the same data are comparable. Only run() is measured, the work
+ * which prepares an iteration, for example copying the molecules which are
+ * changed by the fragmentation, is done in setUpIteration().
+ *
+ * @author Miguel Rojas
+ */
+public abstract class Benchmark {
+
+	private final String name;
+
+	/**
+	 * Constructor of the Benchmark object
+	 *
+	 * @param name The name shown in the results, as Class.method:data
+	 */
+	protected Benchmark(String name){
+		this.name = name;
+	}
+	/**
+	 * get the name of this benchmark
+	 *
+	 * @return The name
+	 */
+	public String getName(){
+		return name;
+	}
+	/**
+	 * prepare the benchmark, once before the warmup. Not measured.
+	 *
+	 * @throws Exception
+	 */
+	public void setUp() throws Exception{
+	}
+	/**
+	 * prepare an iteration. Not measured.
+	 *
+	 * @throws Exception
+	 */
+	public void setUpIteration() throws Exception{
+	}
+	/**
+	 * get the number of operations of an iteration
+	 *
+	 * @return The number of operations
+	 */
+	public abstract int getOperations();
+	/**
+	 * run one operation. The result is consumed by the BenchmarkRunner so
+	 * that the work can not be removed by the compiler.
+	 *
+	 * @param index The index of the operation in the iteration, from 0 to getOperations()
+	 * @return      The result of the operation
+	 * @throws Exception
+	 */
+	public abstract Object run(int index) throws Exception;
+	/**
+	 * release the data of the benchmark, once after the measurement.
+	 *
+	 * @throws Exception
+	 */
+	public void tearDown() throws Exception{
+	}
+}
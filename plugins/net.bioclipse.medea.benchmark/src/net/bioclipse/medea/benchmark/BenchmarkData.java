@@ -0,0 +1,403 @@
+package net.bioclipse.medea.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import net.bioclipse.medea.core.FragmentMolecule;
+import net.bioclipse.medea.core.FragmentTree;
+import net.bioclipse.medea.core.FragmentTreeSub;
+import net.bioclipse.medea.core.Fragmenter;
+import net.bioclipse.medea.core.MassSpectrum;
+import net.bioclipse.medea.core.Medea;
+import net.bioclipse.medea.core.MedeaContext;
+import net.bioclipse.medea.core.Position;
+import net.bioclipse.medea.core.prediction.AdministratorFilesReader;
+import net.bioclipse.medea.core.prediction.ExtractorAbundance;
+import net.bioclipse.medea.core.prediction.ReactionModelRegistry;
+import net.bioclipse.medea.core.reaction.ReactionKp;
+
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.Molecule;
+import org.openscience.cdk.interfaces.IMapping;
+import org.openscience.cdk.interfaces.IMolecule;
+import org.openscience.cdk.io.MDLV2000Reader;
+import org.openscience.cdk.io.iterator.IteratingMDLReader;
+import org.openscience.cdk.smiles.SmilesParser;
+import org.xmlcml.cml.base.CMLBuilder;
+import org.xmlcml.cml.element.CMLSpectrum;
+
+/**
+ * The molecules over which the benchmarks are run, with the experimental
+ * spectrum of the molecules which have one. The molecules are read from the
+ * data of net.bioclipse.data.medea or created from a seed, so that two runs
+ * measure the same work. The fragment trees and the reactions which are the
+ * input of the parts of Medea are predicted once, the first time they are asked.
+ *
+ * @author Miguel Rojas
+ */
+public class BenchmarkData {
+
+	/** the atoms of the chains of the synthetic molecules*/
+	private static final String[] HETEROATOMS = {"O", "N"};
+
+	private final String name;
+	private final List<IMolecule> molecules;
+	/** the peaks {m/z, intensity} of each molecule, null if it has not a spectrum*/
+	private final List<double[][]> spectra;
+	private List<FragmentTree> fragmentTrees = null;
+	private List<ReactionKp> reactions = null;
+
+	/**
+	 * Constructor of the BenchmarkData object
+	 *
+	 * @param name      The name of the data, shown after the name of the benchmarks
+	 * @param molecules The molecules, they are not changed
+	 * @param spectra   The peaks {m/z, intensity} of each molecule, null if it has not a spectrum
+	 */
+	public BenchmarkData(String name, List<IMolecule> molecules, List<double[][]> spectra){
+		if(molecules.size() != spectra.size())
+			throw new IllegalArgumentException("There are "+molecules.size()+" molecules and "+spectra.size()+" spectra");
+		this.name = name;
+		this.molecules = molecules;
+		this.spectra = spectra;
+	}
+	/**
+	 * read the molecules of the Molecules and SDFfiles folders of the data of
+	 * net.bioclipse.data.medea. The spectrum of a molecule is the file of the
+	 * Spectra folder with the same name, JCAMP-DX or CML, without the suffix -2d.
+	 *
+	 * @param directory The data folder
+	 * @return          The BenchmarkData
+	 * @throws Exception if a file could not be read
+	 */
+	public static BenchmarkData read(File directory) throws Exception{
+		List<IMolecule> molecules = new ArrayList<IMolecule>();
+		List<double[][]> spectra = new ArrayList<double[][]>();
+		for(File file : listFiles(new File(directory, "Molecules"), ".mol")){
+			InputStream in = new FileInputStream(file);
+			try{
+				molecules.add(new MDLV2000Reader(in).read(new Molecule()));
+			}finally{
+				in.close();
+			}
+			String base = file.getName().substring(0, file.getName().length() - 4);
+			if(base.endsWith("-2d"))
+				base = base.substring(0, base.length() - 3);
+			spectra.add(readSpectrum(new File(directory, "Spectra"), base));
+		}
+		for(File file : listFiles(new File(directory, "SDFfiles"), ".sdf")){
+			IteratingMDLReader reader = new IteratingMDLReader(new FileInputStream(file), DefaultChemObjectBuilder.getInstance());
+			try{
+				while(reader.hasNext()){
+					molecules.add((IMolecule)reader.next());
+					spectra.add(null);
+				}
+			}finally{
+				reader.close();
+			}
+		}
+		if(molecules.isEmpty())
+			throw new IOException("No molecules were found in "+directory);
+		return new BenchmarkData("data", molecules, spectra);
+	}
+	/**
+	 * create acyclic molecules with carbonyl, hydroxyl, amino and ether
+	 * groups, which are fragmented by the reactions of Medea. The same seed
+	 * gives always the same molecules.
+	 *
+	 * @param count    The number of molecules
+	 * @param seed     The seed of the random numbers
+	 * @param maxAtoms The maximal number of heavy atoms in the main chain, at least 3
+	 * @return         The BenchmarkData
+	 * @throws Exception if a SMILES could not be parsed
+	 */
+	public static BenchmarkData createSynthetic(int count, long seed, int maxAtoms) throws Exception{
+		Random random = new Random(seed);
+		Set<String> smiles = new LinkedHashSet<String>();
+		/* the number of different molecules is limited by the size of the chain*/
+		for(int attempt = 0 ; smiles.size() < count && attempt < 100*count ; attempt++)
+			smiles.add(createSmiles(random, 3 + random.nextInt(Math.max(1, maxAtoms - 2))));
+		SmilesParser parser = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+		List<IMolecule> molecules = new ArrayList<IMolecule>();
+		List<double[][]> spectra = new ArrayList<double[][]>();
+		for(String code : smiles){
+			IMolecule molecule = parser.parseSmiles(code);
+			molecule.setID(code);
+			molecules.add(molecule);
+			spectra.add(null);
+		}
+		return new BenchmarkData("synthetic", molecules, spectra);
+	}
+	/**
+	 * get the name of this data
+	 *
+	 * @return The name
+	 */
+	public String getName(){
+		return name;
+	}
+	/**
+	 * get the number of molecules
+	 *
+	 * @return The number of molecules
+	 */
+	public int size(){
+		return molecules.size();
+	}
+	/**
+	 * get a copy of the molecules, which can be changed by the fragmentation.
+	 *
+	 * @return The copies
+	 * @throws CloneNotSupportedException
+	 */
+	public IMolecule[] copyMolecules() throws CloneNotSupportedException{
+		IMolecule[] copies = new IMolecule[molecules.size()];
+		for(int i = 0 ; i < copies.length ; i++)
+			copies[i] = (IMolecule)molecules.get(i).clone();
+		return copies;
+	}
+	/**
+	 * get the indexes of the molecules which have an experimental spectrum
+	 *
+	 * @return The indexes
+	 */
+	public int[] getMoleculesWithSpectrum(){
+		int[] indexes = new int[spectra.size()];
+		int n = 0;
+		for(int i = 0 ; i < spectra.size() ; i++)
+			if(spectra.get(i) != null)
+				indexes[n++] = i;
+		int[] result = new int[n];
+		System.arraycopy(indexes, 0, result, 0, n);
+		return result;
+	}
+	/**
+	 * create the context of the learning process of a molecule, with the
+	 * peaks of its spectrum, as Medea.learningMS().
+	 *
+	 * @param index  The index of a molecule with spectrum
+	 * @param reader The AdministratorFilesReader
+	 * @return       The MedeaContext
+	 */
+	public MedeaContext createLearningContext(int index, AdministratorFilesReader reader){
+		double[][] peaks = spectra.get(index);
+		ArrayList<Double> peaksX = new ArrayList<Double>();
+		double[] peaksXY = new double[(int)peaks[0][peaks[0].length - 1] + 10];
+		for(int i = 0 ; i < peaks[0].length ; i++){
+			peaksX.add(new Double(peaks[0][i]));
+			peaksXY[(int)peaks[0][i]] = peaks[1][i];
+		}
+		MedeaContext context = new MedeaContext(Medea.LEARNINGPROCESS, reader);
+		context.setPeaks(peaksX, peaksXY);
+		return context;
+	}
+	/**
+	 * get the FragmentTree predicted for each molecule, with the abundances.
+	 * The molecules which can not be fragmented are not included.
+	 *
+	 * @return The FragmentTrees
+	 */
+	public synchronized List<FragmentTree> getFragmentTrees(){
+		if(fragmentTrees == null){
+			fragmentTrees = new ArrayList<FragmentTree>();
+			AdministratorFilesReader reader = new AdministratorFilesReader();
+			for(int i = 0 ; i < molecules.size() ; i++){
+				try{
+					IMolecule molecule = (IMolecule)molecules.get(i).clone();
+					Fragmenter fragmenter = new Fragmenter(new MedeaContext(Medea.PREDICTPROCESS, reader), molecule, null);
+					FragmentTree fragmentTree = fragmenter.getFragmentTree();
+					ExtractorAbundance.setAbundace(fragmentTree, null);
+					fragmentTrees.add(fragmentTree);
+				}catch(Exception e){
+					System.err.println("The molecule "+i+" of "+name+" was not fragmented: "+e);
+				}
+			}
+		}
+		return fragmentTrees;
+	}
+	/**
+	 * get the fragments of all FragmentTrees
+	 *
+	 * @return The fragments, with the FragmentTree of each one, in the order of the trees
+	 */
+	public Map<FragmentMolecule, FragmentTree> getFragments(){
+		Map<FragmentMolecule, FragmentTree> fragments = new LinkedHashMap<FragmentMolecule, FragmentTree>();
+		for(FragmentTree fragmentTree : getFragmentTrees()){
+			int mass = (int)Math.round(fragmentTree.getMolecularIon().getExactMass());
+			for(int i = 0 ; i <= mass ; i++){
+				FragmentTreeSub sub = fragmentTree.getFragments(i);
+				for(int j = 0 ; j < sub.size() ; j++)
+					fragments.put(sub.get(j), fragmentTree);
+			}
+		}
+		return fragments;
+	}
+	/**
+	 * get the reactions of all FragmentTrees whose probability is predicted
+	 * by a model, as they are given to the AdministratorFilesReader by the
+	 * fragmentation.
+	 *
+	 * @return The ReactionKps
+	 */
+	public synchronized List<ReactionKp> getReactions(){
+		if(reactions == null){
+			reactions = new ArrayList<ReactionKp>();
+			for(FragmentTree fragmentTree : getFragmentTrees())
+				addReactions(fragmentTree, reactions);
+		}
+		return reactions;
+	}
+	/**
+	 * get the reactions of one type
+	 *
+	 * @param type The type of ReactionModelRegistry, as ReactionModelRegistry.RSI
+	 * @return     The ReactionKps
+	 */
+	public List<ReactionKp> getReactions(int type){
+		List<ReactionKp> result = new ArrayList<ReactionKp>();
+		for(ReactionKp reaction : getReactions())
+			if(ReactionModelRegistry.getType(reaction.getNameReaction()) == type)
+				result.add(reaction);
+		return result;
+	}
+	/**
+	 * add the reactions of a FragmentTree, each fragment only once.
+	 */
+	private static void addReactions(FragmentTree fragmentTree, List<ReactionKp> reactions){
+		List<FragmentMolecule> fragments = new ArrayList<FragmentMolecule>();
+		Set<Position> visited = new HashSet<Position>();
+		fragments.add(fragmentTree.getMolecularIon());
+		visited.add(fragmentTree.getMolecularIon().getIdP());
+		for(int i = 0 ; i < fragments.size() ; i++){
+			FragmentMolecule parent = fragments.get(i);
+			List<Position> children = parent.getChildren();
+			for(int j = 0 ; j < children.size() ; j++){
+				FragmentMolecule child = fragmentTree.getFragment(children.get(j));
+				if(visited.add(children.get(j)))
+					fragments.add(child);
+				String nameReaction = parent.getProcess().get(j);
+				if(ReactionModelRegistry.getType(nameReaction) < 0)
+					continue;
+				ReactionKp reaction = new ReactionKp();
+				reaction.addReactant(parent);
+				reaction.addProduct(child);
+				IMolecule neighbour = parent.getNeighbouring().get(j);
+				if(neighbour != null)
+					reaction.addProduct(neighbour);
+				Iterable<?> mappings = parent.getMapping().get(j);
+				if(mappings != null)
+					for(Object mapping : mappings)
+						reaction.addMapping((IMapping)mapping);
+				reaction.setNameReaction(nameReaction);
+				reactions.add(reaction);
+			}
+		}
+	}
+	/**
+	 * create the SMILES of a chain, with at most one group on each carbon
+	 */
+	private static String createSmiles(Random random, int atoms){
+		StringBuilder smiles = new StringBuilder("C");
+		boolean previousCarbon = true;
+		for(int i = 1 ; i < atoms ; i++){
+			boolean last = i == atoms - 1;
+			/* a heteroatom between two carbons*/
+			if(!last && previousCarbon && random.nextDouble() < 0.15){
+				smiles.append(HETEROATOMS[random.nextInt(HETEROATOMS.length)]);
+				previousCarbon = false;
+				continue;
+			}
+			smiles.append('C');
+			previousCarbon = true;
+			double group = random.nextDouble();
+			if(group < 0.15)
+				smiles.append("(=O)");
+			else if(group < 0.30)
+				smiles.append("(C)");
+			else if(group < 0.38)
+				smiles.append("(O)");
+			else if(group < 0.42)
+				smiles.append("(N)");
+		}
+		return smiles.toString();
+	}
+	/**
+	 * read the spectrum of a molecule, null if there is not a file
+	 */
+	private static double[][] readSpectrum(File directory, String base) throws Exception{
+		File jcamp = new File(directory, base+".jdx");
+		if(jcamp.isFile())
+			return readPeakTable(jcamp);
+		File cml = new File(directory, base+".cml");
+		if(cml.isFile()){
+			InputStream in = new FileInputStream(cml);
+			try{
+				CMLSpectrum spectrum = (CMLSpectrum)new CMLBuilder().build(in).getRootElement();
+				MassSpectrum peaks = MassSpectrum.create(spectrum);
+				return new double[][]{peaks.getMasses(), peaks.getIntensities()};
+			}finally{
+				in.close();
+			}
+		}
+		return null;
+	}
+	/**
+	 * read the ##PEAK TABLE=(XY..XY) of a JCAMP-DX file
+	 */
+	private static double[][] readPeakTable(File file) throws IOException{
+		List<double[]> peaks = new ArrayList<double[]>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try{
+			boolean table = false;
+			String line;
+			while((line = reader.readLine()) != null){
+				line = line.trim();
+				if(line.startsWith("##")){
+					table = line.toUpperCase().startsWith("##PEAK TABLE=");
+					continue;
+				}
+				if(!table)
+					continue;
+				for(String pair : line.split("[\\s;]+")){
+					int comma = pair.indexOf(',');
+					if(comma > 0)
+						peaks.add(new double[]{Double.parseDouble(pair.substring(0, comma)),
+								Double.parseDouble(pair.substring(comma + 1))});
+				}
+			}
+		}finally{
+			reader.close();
+		}
+		double[][] result = new double[2][peaks.size()];
+		for(int i = 0 ; i < peaks.size() ; i++){
+			result[0][i] = peaks.get(i)[0];
+			result[1][i] = peaks.get(i)[1];
+		}
+		return result;
+	}
+	private static List<File> listFiles(File directory, String extension){
+		List<File> result = new ArrayList<File>();
+		File[] files = directory.listFiles();
+		if(files == null)
+			return result;
+		for(File file : files)
+			if(file.getName().toLowerCase().endsWith(extension))
+				result.add(file);
+		/* the same order in all systems*/
+		Collections.sort(result);
+		return result;
+	}
+}
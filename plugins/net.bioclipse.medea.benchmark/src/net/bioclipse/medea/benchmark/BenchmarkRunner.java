@@ -0,0 +1,316 @@
+package net.bioclipse.medea.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Class which measures the average time of an operation of the Benchmarks,
+ * as the average time mode of JMH. Each benchmark is prepared, warmed up
+ * with some iterations which are not counted and measured with other
+ * iterations. The score is the mean time of an operation and the error is
+ * the half width of its 99.9% confidence interval. The results can be written
+ * as CSV and compared with the results of other run, a change is only
+ * reported if the intervals do not overlap.
+ * <p>
+ * It is not JMH: the target platform has no JMH bundle and the plug-ins are
+ * not built with Maven, which runs the annotation processor of JMH. It
+ * differs from JMH in that all benchmarks run in the same JVM, one after the
+ * other, without forks; the results of the operations are only kept in a
+ * field instead of a Blackhole; and the time is measured for all the
+ * operations of an iteration, not for each one. Numbers are therefore only
+ * comparable between runs on the same machine and JVM.
+ * <pre>
+ *  BenchmarkRunner runner = new BenchmarkRunner(3, 5, System.out);
+ *  List&lt;BenchmarkRunner.Result&gt; results = runner.run(benchmarks);
+ *  BenchmarkRunner.writeCSV(results, new File("medea.csv"));
+ * </pre>
+ *
+ * @author Miguel Rojas
+ */
+public class BenchmarkRunner {
+
+	/** two-sided 99.9% quantiles of the Student's t distribution, for 1 to 30 degrees of freedom*/
+	private static final double[] T_999 = {
+		636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+		4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850,
+		3.819, 3.792, 3.768, 3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646};
+
+	private final int warmupIterations;
+	private final int iterations;
+	private final PrintStream out;
+	/** the results of the operations are put here, so that they are not eliminated*/
+	private volatile int sink;
+
+	/**
+	 * The time of an operation of a Benchmark.
+	 */
+	public static class Result {
+		private final String name;
+		/** the mean time of an operation in each iteration, in nanoseconds*/
+		private final double[] samples;
+		private final double score;
+		private final double error;
+
+		/**
+		 * Constructor of the Result object
+		 *
+		 * @param name    The name of the Benchmark
+		 * @param samples The time of an operation in each iteration, in nanoseconds
+		 */
+		public Result(String name, double[] samples){
+			this.name = name;
+			this.samples = samples;
+			double sum = 0.0;
+			for(int i = 0 ; i < samples.length ; i++)
+				sum += samples[i];
+			score = samples.length == 0 ? Double.NaN : sum/samples.length;
+			if(samples.length < 2)
+				error = Double.NaN;
+			else{
+				double squares = 0.0;
+				for(int i = 0 ; i < samples.length ; i++)
+					squares += (samples[i] - score)*(samples[i] - score);
+				double deviation = Math.sqrt(squares/(samples.length - 1));
+				error = getQuantile(samples.length - 1)*deviation/Math.sqrt(samples.length);
+			}
+		}
+		Result(String name, int count, double score, double error){
+			this.name = name;
+			this.samples = new double[count];
+			this.score = score;
+			this.error = error;
+		}
+		/**
+		 * get the name of the Benchmark
+		 *
+		 * @return The name
+		 */
+		public String getName(){
+			return name;
+		}
+		/**
+		 * get the number of measured iterations
+		 *
+		 * @return The number of iterations
+		 */
+		public int getCount(){
+			return samples.length;
+		}
+		/**
+		 * get the mean time of an operation
+		 *
+		 * @return The time in nanoseconds
+		 */
+		public double getScore(){
+			return score;
+		}
+		/**
+		 * get the half width of the 99.9% confidence interval of the score
+		 *
+		 * @return The error in nanoseconds, NaN if there is only one iteration
+		 */
+		public double getError(){
+			return error;
+		}
+	}
+
+	/**
+	 * Constructor of the BenchmarkRunner object
+	 *
+	 * @param warmupIterations The number of iterations which are not measured
+	 * @param iterations       The number of measured iterations
+	 * @param out              The PrintStream where the progress and the results are written, or null
+	 */
+	public BenchmarkRunner(int warmupIterations, int iterations, PrintStream out){
+		if(iterations < 1)
+			throw new IllegalArgumentException("At least one iteration must be measured");
+		this.warmupIterations = warmupIterations;
+		this.iterations = iterations;
+		this.out = out;
+	}
+	/**
+	 * run the benchmarks one after the other.
+	 *
+	 * @param benchmarks The Benchmarks
+	 * @return           The Result of each benchmark, in the same order
+	 * @throws Exception if a benchmark failed
+	 */
+	public List<Result> run(List<Benchmark> benchmarks) throws Exception{
+		printEnvironment();
+		List<Result> results = new ArrayList<Result>();
+		for(Benchmark benchmark : benchmarks)
+			results.add(run(benchmark));
+		print(results);
+		return results;
+	}
+	/**
+	 * run a benchmark.
+	 *
+	 * @param benchmark The Benchmark
+	 * @return          The Result
+	 * @throws Exception if the benchmark failed
+	 */
+	public Result run(Benchmark benchmark) throws Exception{
+		log("# Benchmark: "+benchmark.getName());
+		benchmark.setUp();
+		try{
+			int operations = benchmark.getOperations();
+			log("# Operations: "+operations+" per iteration");
+			for(int i = 0 ; i < warmupIterations ; i++)
+				log("# Warmup Iteration   "+(i + 1)+": "+format(iterate(benchmark, operations)));
+			double[] samples = new double[iterations];
+			for(int i = 0 ; i < iterations ; i++){
+				samples[i] = iterate(benchmark, operations);
+				log("Iteration   "+(i + 1)+": "+format(samples[i]));
+			}
+			Result result = new Result(benchmark.getName(), samples);
+			log("");
+			return result;
+		}finally{
+			benchmark.tearDown();
+		}
+	}
+	/**
+	 * write the results as CSV, the times in nanoseconds.
+	 *
+	 * @param results The Results
+	 * @param file    The File
+	 * @throws IOException
+	 */
+	public static void writeCSV(List<Result> results, File file) throws IOException{
+		PrintWriter writer = new PrintWriter(new FileWriter(file));
+		try{
+			writer.println("Benchmark,Mode,Cnt,Score,Error,Units");
+			for(Result result : results)
+				writer.println("\""+result.getName()+"\",avgt,"+result.getCount()+","
+						+String.format(Locale.US, "%.3f,%.3f", result.getScore(), result.getError())+",ns/op");
+		}finally{
+			writer.close();
+		}
+	}
+	/**
+	 * read the results written by writeCSV().
+	 *
+	 * @param file The File
+	 * @return     The Results by name
+	 * @throws IOException
+	 */
+	public static Map<String, Result> readCSV(File file) throws IOException{
+		Map<String, Result> results = new HashMap<String, Result>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try{
+			String line = reader.readLine();
+			while((line = reader.readLine()) != null){
+				int end = line.lastIndexOf('"');
+				if(!line.startsWith("\"") || end < 1)
+					continue;
+				String name = line.substring(1, end);
+				String[] values = line.substring(end + 2).split(",");
+				results.put(name, new Result(name, Integer.parseInt(values[1]),
+						Double.parseDouble(values[2]), Double.parseDouble(values[3])));
+			}
+		}finally{
+			reader.close();
+		}
+		return results;
+	}
+	/**
+	 * compare the results with the results of other run. A benchmark is
+	 * faster or slower only if the confidence intervals do not overlap.
+	 *
+	 * @param results  The Results
+	 * @param baseline The Results of the other run, by name
+	 */
+	public void compare(List<Result> results, Map<String, Result> baseline){
+		if(out == null)
+			return;
+		out.println(String.format(Locale.US, "%-48s %16s %16s %8s  %s", "Benchmark", "Baseline", "Score", "Ratio", "Change"));
+		for(Result result : results){
+			Result base = baseline.get(result.getName());
+			if(base == null){
+				out.println(String.format(Locale.US, "%-48s %16s %16s %8s  %s", result.getName(), "-", format(result.getScore()), "-", "new"));
+				continue;
+			}
+			String change = "none";
+			double error = zeroIfNaN(result.getError());
+			double baseError = zeroIfNaN(base.getError());
+			if(result.getScore() + error < base.getScore() - baseError)
+				change = "faster";
+			else if(result.getScore() - error > base.getScore() + baseError)
+				change = "slower";
+			out.println(String.format(Locale.US, "%-48s %16s %16s %8.3f  %s", result.getName(),
+					format(base.getScore()), format(result.getScore()), result.getScore()/base.getScore(), change));
+		}
+	}
+	/**
+	 * measure an iteration
+	 *
+	 * @return The mean time of an operation in nanoseconds
+	 */
+	private double iterate(Benchmark benchmark, int operations) throws Exception{
+		benchmark.setUpIteration();
+		int hash = 0;
+		long start = System.nanoTime();
+		for(int i = 0 ; i < operations ; i++){
+			Object result = benchmark.run(i);
+			if(result != null)
+				hash += System.identityHashCode(result);
+		}
+		long time = System.nanoTime() - start;
+		sink += hash;
+		return operations == 0 ? Double.NaN : (double)time/operations;
+	}
+	private void print(List<Result> results){
+		if(out == null)
+			return;
+		out.println(String.format(Locale.US, "%-48s %5s %4s %16s    %16s", "Benchmark", "Mode", "Cnt", "Score", "Error"));
+		for(Result result : results)
+			out.println(String.format(Locale.US, "%-48s %5s %4d %16s +- %16s", result.getName(), "avgt",
+					result.getCount(), format(result.getScore()), format(result.getError())));
+	}
+	private void printEnvironment(){
+		log("# VM: "+System.getProperty("java.vm.name")+" "+System.getProperty("java.version"));
+		log("# Processors: "+Runtime.getRuntime().availableProcessors()+", max heap: "
+				+(Runtime.getRuntime().maxMemory() >> 20)+" MB");
+		log("# Warmup: "+warmupIterations+" iterations, measurement: "+iterations+" iterations");
+		log("");
+	}
+	private void log(String message){
+		if(out != null)
+			out.println(message);
+	}
+	/**
+	 * format a time of nanoseconds with the unit which fits
+	 */
+	private static String format(double nanoseconds){
+		if(Double.isNaN(nanoseconds))
+			return "NaN";
+		if(nanoseconds >= 1e6)
+			return String.format(Locale.US, "%.3f ms/op", nanoseconds/1e6);
+		if(nanoseconds >= 1e3)
+			return String.format(Locale.US, "%.3f us/op", nanoseconds/1e3);
+		return String.format(Locale.US, "%.1f ns/op", nanoseconds);
+	}
+	private static double zeroIfNaN(double value){
+		return Double.isNaN(value) ? 0.0 : value;
+	}
+	/**
+	 * get the two-sided 99.9% quantile of the Student's t distribution. Over
+	 * 30 degrees of freedom the value of the normal distribution is taken.
+	 */
+	private static double getQuantile(int degrees){
+		if(degrees <= T_999.length)
+			return T_999[degrees - 1];
+		return 3.291;
+	}
+}
@@ -0,0 +1,39 @@
+package net.bioclipse.medea.benchmark;
+
+import java.util.List;
+
+import net.bioclipse.medea.core.FragmentTree;
+import net.bioclipse.medea.core.MassSpectrum;
+
+/**
+ * Benchmark of the creation of the predicted MassSpectrum from a FragmentTree
+ * with its abundances, by CMLSpectrumCreator through MassSpectrum.create().
+ * The CMLSpectrum is not created, as in a prediction which does not ask
+ * for it.
+ *
+ * @author Miguel Rojas
+ */
+public class CMLSpectrumCreatorBenchmark extends Benchmark {
+
+	private final BenchmarkData data;
+	private List<FragmentTree> fragmentTrees;
+
+	/**
+	 * Constructor of the CMLSpectrumCreatorBenchmark object
+	 *
+	 * @param data The BenchmarkData
+	 */
+	public CMLSpectrumCreatorBenchmark(BenchmarkData data){
+		super("CMLSpectrumCreator.getMassSpectrum:"+data.getName());
+		this.data = data;
+	}
+	public void setUp(){
+		fragmentTrees = data.getFragmentTrees();
+	}
+	public int getOperations(){
+		return fragmentTrees.size();
+	}
+	public Object run(int index){
+		return MassSpectrum.create(fragmentTrees.get(index), null);
+	}
+}
@@ -0,0 +1,345 @@
+package net.bioclipse.medea.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+import net.bioclipse.medea.core.FragmentController;
+import net.bioclipse.medea.core.FragmentMolecule;
+import net.bioclipse.medea.core.FragmentTree;
+import net.bioclipse.medea.core.Fragmenter;
+import net.bioclipse.medea.core.Medea;
+import net.bioclipse.medea.core.MedeaContext;
+import net.bioclipse.medea.core.prediction.AdministratorFilesReader;
+import net.bioclipse.medea.core.prediction.ExtractorAbundance;
+import net.bioclipse.medea.core.prediction.ReactionModelRegistry;
+import net.bioclipse.medea.core.reaction.ExtractorSetQsars;
+import net.bioclipse.medea.core.reaction.ExtractorSetQsarsCE;
+import net.bioclipse.medea.core.reaction.ExtractorSetQsarsHR;
+import net.bioclipse.medea.core.reaction.ExtractorSetQsarsRSH;
+import net.bioclipse.medea.core.reaction.ExtractorSetQsarsRSI;
+import net.bioclipse.medea.core.reaction.ReactionKp;
+
+import org.openscience.cdk.interfaces.IMolecule;
+
+/**
+ * The benchmarks of the prediction pipeline of Medea, from the parts which
+ * are called for each fragment or reaction to the whole prediction of a
+ * molecule. Each benchmark is run over the molecules of net.bioclipse.data.medea
+ * and over a bigger set of synthetic molecules. The fragmentation is
+ * sequential, except in Fragmenter.&lt;init&gt;(parallel), and the synthetic
+ * molecules are created from a fixed seed, so that the numbers of two runs
+ * in the same machine can be compared:
+ * <pre>
+ *  MedeaBenchmarks -csv before.csv
+ *  (change Medea)
+ *  MedeaBenchmarks -csv after.csv -baseline before.csv
+ * </pre>
+ * It is run as Java application with the plug-ins required by
+ * net.bioclipse.medea in the classpath. The options are:
+ * <pre>
+ *  -data &lt;folder&gt;   the data folder of net.bioclipse.data.medea
+ *  -synthetic &lt;n&gt;    the number of synthetic molecules, 0 for none (40)
+ *  -atoms &lt;n&gt;        the maximal chain of the synthetic molecules (8)
+ *  -seed &lt;n&gt;         the seed of the synthetic molecules (42)
+ *  -wi &lt;n&gt;           the warmup iterations (3)
+ *  -i &lt;n&gt;            the measured iterations (5)
+ *  -filter &lt;regex&gt;   only the benchmarks whose name contains it
+ *  -csv &lt;file&gt;       write the results
+ *  -baseline &lt;file&gt;  compare the results with the ones of other run
+ * </pre>
+ *
+ * @author Miguel Rojas
+ */
+public class MedeaBenchmarks {
+
+	/**
+	 * run the benchmarks
+	 *
+	 * @param args The options
+	 * @throws Exception if a benchmark failed
+	 */
+	public static void main(String[] args) throws Exception{
+		File directory = new File("../net.bioclipse.data.medea/data");
+		int synthetic = 40;
+		int atoms = 8;
+		long seed = 42;
+		int warmup = 3;
+		int iterations = 5;
+		Pattern filter = null;
+		File csv = null;
+		File baseline = null;
+		for(int i = 0 ; i < args.length ; i++){
+			String option = args[i];
+			if(option.equals("-h") || option.equals("-help")){
+				usage();
+				return;
+			}
+			if(i + 1 >= args.length)
+				throw new IllegalArgumentException("The option "+option+" has not a value");
+			String value = args[++i];
+			if(option.equals("-data"))
+				directory = new File(value);
+			else if(option.equals("-synthetic"))
+				synthetic = Integer.parseInt(value);
+			else if(option.equals("-atoms"))
+				atoms = Integer.parseInt(value);
+			else if(option.equals("-seed"))
+				seed = Long.parseLong(value);
+			else if(option.equals("-wi"))
+				warmup = Integer.parseInt(value);
+			else if(option.equals("-i"))
+				iterations = Integer.parseInt(value);
+			else if(option.equals("-filter"))
+				filter = Pattern.compile(value);
+			else if(option.equals("-csv"))
+				csv = new File(value);
+			else if(option.equals("-baseline"))
+				baseline = new File(value);
+			else
+				throw new IllegalArgumentException("Unknown option "+option);
+		}
+
+		List<BenchmarkData> data = new ArrayList<BenchmarkData>();
+		data.add(BenchmarkData.read(directory));
+		if(synthetic > 0)
+			data.add(BenchmarkData.createSynthetic(synthetic, seed, atoms));
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		for(BenchmarkData set : data)
+			for(Benchmark benchmark : createBenchmarks(set))
+				if(filter == null || filter.matcher(benchmark.getName()).find())
+					benchmarks.add(benchmark);
+
+		BenchmarkRunner runner = new BenchmarkRunner(warmup, iterations, System.out);
+		List<BenchmarkRunner.Result> results = runner.run(benchmarks);
+		if(csv != null)
+			BenchmarkRunner.writeCSV(results, csv);
+		if(baseline != null){
+			System.out.println();
+			runner.compare(results, BenchmarkRunner.readCSV(baseline));
+		}
+	}
+	/**
+	 * create the benchmarks of the pipeline over some molecules
+	 *
+	 * @param data The BenchmarkData
+	 * @return     The Benchmarks
+	 */
+	public static List<Benchmark> createBenchmarks(BenchmarkData data){
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		benchmarks.add(createFragmenter(data));
+		benchmarks.add(createFragmenterParallel(data));
+		if(data.getMoleculesWithSpectrum().length > 0)
+			benchmarks.add(createFragmenterLearning(data));
+		benchmarks.add(createExists(data));
+		benchmarks.add(createGetProbability(data));
+		benchmarks.add(createGetQsars(data, "ExtractorSetQsarsRSI", ReactionModelRegistry.RSI));
+		benchmarks.add(createGetQsars(data, "ExtractorSetQsarsRSH", ReactionModelRegistry.RSH));
+		benchmarks.add(createGetQsars(data, "ExtractorSetQsarsCE", ReactionModelRegistry.CEE));
+		benchmarks.add(createGetQsars(data, "ExtractorSetQsarsHR", ReactionModelRegistry.HRG));
+		benchmarks.add(createSetAbundance(data));
+		benchmarks.add(new CMLSpectrumCreatorBenchmark(data));
+		benchmarks.add(createPredictMS(data));
+		return benchmarks;
+	}
+	/**
+	 * the construction of a Fragmenter, the whole fragmentation of a molecule
+	 */
+	private static Benchmark createFragmenter(final BenchmarkData data){
+		return new Benchmark("Fragmenter.<init>:"+data.getName()){
+			private AdministratorFilesReader reader;
+			private IMolecule[] molecules;
+			public void setUp(){
+				reader = new AdministratorFilesReader();
+			}
+			public void setUpIteration() throws CloneNotSupportedException{
+				molecules = data.copyMolecules();
+			}
+			public int getOperations(){
+				return data.size();
+			}
+			public Object run(int index) throws Exception{
+				return new Fragmenter(new MedeaContext(Medea.PREDICTPROCESS, reader), molecules[index], null).getFragmentTree();
+			}
+		};
+	}
+	/**
+	 * the fragmentation of a molecule with one thread for each processor
+	 */
+	private static Benchmark createFragmenterParallel(final BenchmarkData data){
+		return new Benchmark("Fragmenter.<init>(parallel):"+data.getName()){
+			private AdministratorFilesReader reader;
+			private ExecutorService executor;
+			private IMolecule[] molecules;
+			public void setUp(){
+				reader = new AdministratorFilesReader();
+				executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+			}
+			public void setUpIteration() throws CloneNotSupportedException{
+				molecules = data.copyMolecules();
+			}
+			public int getOperations(){
+				return data.size();
+			}
+			public Object run(int index) throws Exception{
+				return new Fragmenter(new MedeaContext(Medea.PREDICTPROCESS, reader), molecules[index], executor).getFragmentTree();
+			}
+			public void tearDown(){
+				executor.shutdown();
+			}
+		};
+	}
+	/**
+	 * the fragmentation of the learning process, limited by the peaks of the spectrum
+	 */
+	private static Benchmark createFragmenterLearning(final BenchmarkData data){
+		return new Benchmark("Fragmenter.<init>(learning):"+data.getName()){
+			private final int[] indexes = data.getMoleculesWithSpectrum();
+			private AdministratorFilesReader reader;
+			private IMolecule[] molecules;
+			public void setUp(){
+				reader = new AdministratorFilesReader();
+			}
+			public void setUpIteration() throws CloneNotSupportedException{
+				molecules = data.copyMolecules();
+			}
+			public int getOperations(){
+				return indexes.length;
+			}
+			public Object run(int index) throws Exception{
+				int molecule = indexes[index];
+				return new Fragmenter(data.createLearningContext(molecule, reader), molecules[molecule], null).getFragmentTree();
+			}
+		};
+	}
+	/**
+	 * the search of each fragment in its FragmentTree
+	 */
+	private static Benchmark createExists(final BenchmarkData data){
+		return new Benchmark("FragmentController.exists:"+data.getName()){
+			private FragmentMolecule[] fragments;
+			private FragmentTree[] fragmentTrees;
+			public void setUp(){
+				Map<FragmentMolecule, FragmentTree> all = data.getFragments();
+				fragments = all.keySet().toArray(new FragmentMolecule[all.size()]);
+				fragmentTrees = new FragmentTree[fragments.length];
+				for(int i = 0 ; i < fragments.length ; i++)
+					fragmentTrees[i] = all.get(fragments[i]);
+			}
+			public int getOperations(){
+				return fragments.length;
+			}
+			public Object run(int index){
+				return FragmentController.exists(fragmentTrees[index], fragments[index]);
+			}
+		};
+	}
+	/**
+	 * the probability of the reactions predicted by the models. The atomic
+	 * descriptors are calculated again in each iteration.
+	 */
+	private static Benchmark createGetProbability(final BenchmarkData data){
+		return new Benchmark("AdministratorFilesReader.getProbability:"+data.getName()){
+			private List<ReactionKp> reactions;
+			private AdministratorFilesReader reader;
+			public void setUp(){
+				reactions = data.getReactions();
+			}
+			public void setUpIteration(){
+				reader = new AdministratorFilesReader();
+			}
+			public int getOperations(){
+				return reactions.size();
+			}
+			public Object run(int index){
+				return new Double(reader.getProbability(reactions.get(index)));
+			}
+		};
+	}
+	/**
+	 * the descriptors of the reactions of a type. The atomic descriptors are
+	 * calculated again in each iteration.
+	 */
+	private static Benchmark createGetQsars(final BenchmarkData data, String name, final int type){
+		return new Benchmark(name+".getQsars:"+data.getName()){
+			private List<ReactionKp> reactions;
+			private ExtractorSetQsars extractor;
+			public void setUp(){
+				reactions = data.getReactions(type);
+				/* the same extractor for both hydrogen rearrangements*/
+				if(type == ReactionModelRegistry.HRG)
+					reactions.addAll(data.getReactions(ReactionModelRegistry.HRD));
+			}
+			public void setUpIteration(){
+				switch(type){
+				case ReactionModelRegistry.RSI:
+					extractor = new ExtractorSetQsarsRSI();
+					break;
+				case ReactionModelRegistry.RSH:
+					extractor = new ExtractorSetQsarsRSH();
+					break;
+				case ReactionModelRegistry.CEE:
+					extractor = new ExtractorSetQsarsCE();
+					break;
+				default:
+					extractor = new ExtractorSetQsarsHR();
+				}
+			}
+			public int getOperations(){
+				return reactions.size();
+			}
+			public Object run(int index){
+				return extractor.getQsars(reactions.get(index));
+			}
+		};
+	}
+	/**
+	 * the abundances of the fragments of a FragmentTree
+	 */
+	private static Benchmark createSetAbundance(final BenchmarkData data){
+		return new Benchmark("ExtractorAbundance.setAbundace:"+data.getName()){
+			private List<FragmentTree> fragmentTrees;
+			public void setUp(){
+				fragmentTrees = data.getFragmentTrees();
+			}
+			public int getOperations(){
+				return fragmentTrees.size();
+			}
+			public Object run(int index){
+				FragmentTree fragmentTree = fragmentTrees.get(index);
+				ExtractorAbundance.setAbundace(fragmentTree, null);
+				return fragmentTree;
+			}
+		};
+	}
+	/**
+	 * the whole prediction of a molecule
+	 */
+	private static Benchmark createPredictMS(final BenchmarkData data){
+		return new Benchmark("Medea.predictMS:"+data.getName()){
+			private Medea medea;
+			private IMolecule[] molecules;
+			public void setUp(){
+				medea = new Medea();
+			}
+			public void setUpIteration() throws CloneNotSupportedException{
+				molecules = data.copyMolecules();
+			}
+			public int getOperations(){
+				return data.size();
+			}
+			public Object run(int index){
+				medea.predictMS(molecules[index]);
+				return medea.getPredictedSpectrum();
+			}
+		};
+	}
+	private static void usage(){
+		System.out.println("MedeaBenchmarks [-data folder] [-synthetic n] [-atoms n] [-seed n] [-wi n] [-i n]");
+		System.out.println("                [-filter regex] [-csv file] [-baseline file]");
+	}
+}
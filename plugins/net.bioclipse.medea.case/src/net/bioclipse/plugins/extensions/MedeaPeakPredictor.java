@@ -0,0 +1,286 @@
+package net.bioclipse.plugins.extensions;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import net.bioclipse.medea.core.MassSpectrum;
+import net.bioclipse.medea.core.Medea;
+import net.bioclipse.medea.core.MedeaEnginePool;
+import net.bioclipse.medea.core.PredictionCache;
+import net.bioclipse.medea.core.prediction.ReactionModelRegistry;
+
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+
+/**
+ * Class which predicts the peaks of the mass spectra of the candidate
+ * structures of a CASE run. The peaks are kept by canonical structure, see
+ * PredictionCache.getKey(), so that a structure which is visited again is
+ * not fragmented again; a structure which is being predicted by other
+ * thread is waited for. The Medea objects are taken from a bounded pool
+ * and a batch of candidates is predicted in parallel. When a classifier of
+ * the ReactionModelRegistry is replaced the kept peaks are removed.
+ * <pre>
+ *  MedeaPeakPredictor predictor = MedeaPeakPredictor.getInstance();
+ *  List&lt;Peaks&gt; peaks = predictor.predict(candidates);
+ * </pre>
+ *
+ * @author Miguel Rojas
+ */
+public class MedeaPeakPredictor {
+
+	/** maximal number of structures whose peaks are kept*/
+	public static final int MAX_ENTRIES = 10000;
+
+	private static MedeaPeakPredictor instance = null;
+
+	/** peaks of each structure, the least recently used is removed first*/
+	private final Map<String, Future<Peaks>> entries;
+	private final MedeaEnginePool engines;
+	private final ExecutorService executor;
+	/** version of the classifiers of the kept peaks*/
+	private long version = 0;
+
+	/**
+	 * The predicted peaks of a structure.
+	 */
+	public static class Peaks {
+		private final double[] positions;
+		private final double[] intensities;
+		private final String failure;
+		/** if the fragmentation was stopped by its limits*/
+		private final boolean partial;
+		/** version of the classifiers which predicted them*/
+		private final long version;
+
+		Peaks(double[] positions, double[] intensities, String failure, boolean partial, long version){
+			this.positions = positions;
+			this.intensities = intensities;
+			this.failure = failure;
+			this.partial = partial;
+			this.version = version;
+		}
+		/**
+		 * get the m/z of the peaks. The array must not be changed.
+		 *
+		 * @return The positions, null if the prediction failed
+		 */
+		public double[] getPositions(){
+			return positions;
+		}
+		/**
+		 * get the intensities of the peaks. The array must not be changed.
+		 *
+		 * @return The intensities, null if the prediction failed
+		 */
+		public double[] getIntensities(){
+			return intensities;
+		}
+		/**
+		 * get if the spectrum of this structure could not be predicted
+		 *
+		 * @return True, if it failed
+		 */
+		public boolean isFailed(){
+			return failure != null;
+		}
+		/**
+		 * get the reason of the failure
+		 *
+		 * @return The message, or null
+		 */
+		public String getFailure(){
+			return failure;
+		}
+	}
+
+	/**
+	 * Constructor of the MedeaPeakPredictor object.
+	 *
+	 * @param threads    The number of structures predicted at the same time
+	 * @param maxEntries The maximal number of structures whose peaks are kept
+	 */
+	public MedeaPeakPredictor(int threads, final int maxEntries){
+		if(threads < 1)
+			threads = 1;
+		engines = new MedeaEnginePool(threads);
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory(){
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Medea judge");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		entries = new LinkedHashMap<String, Future<Peaks>>(16, 0.75f, true){
+			private static final long serialVersionUID = 6521870412295583721L;
+			protected boolean removeEldestEntry(Map.Entry<String, Future<Peaks>> eldest){
+				return size() > maxEntries;
+			}
+		};
+	}
+	/**
+	 * get the predictor shared by all judges, with one thread for each processor.
+	 *
+	 * @return The MedeaPeakPredictor
+	 */
+	public static synchronized MedeaPeakPredictor getInstance(){
+		if(instance == null)
+			instance = new MedeaPeakPredictor(Runtime.getRuntime().availableProcessors(), MAX_ENTRIES);
+		return instance;
+	}
+	/**
+	 * predict the peaks of a structure, or take them from the memory.
+	 *
+	 * @param ac The IAtomContainer, with its hydrogens
+	 * @return   The Peaks
+	 * @throws Exception if the prediction failed other than by the structure
+	 */
+	public Peaks predict(IAtomContainer ac) throws Exception{
+		final IAtomContainer molecule = ac;
+		String key = PredictionCache.getKey(molecule);
+		FutureTask<Peaks> task = null;
+		Future<Peaks> future;
+		long current;
+		synchronized(entries){
+			current = getVersion();
+			future = entries.get(key);
+			if(future == null){
+				task = new FutureTask<Peaks>(new Callable<Peaks>(){
+					public Peaks call() throws Exception {
+						return calculate(molecule);
+					}
+				});
+				future = task;
+				entries.put(key, future);
+			}
+		}
+		if(task != null)
+			task.run();
+		try{
+			Peaks peaks = future.get();
+			/* a partial result or one of replaced classifiers is not kept, 
+			 * it is calculated again the next time*/
+			if(peaks.partial || peaks.version != current)
+				remove(key, future);
+			return peaks;
+		}catch(ExecutionException e){
+			remove(key, future);
+			Throwable cause = e.getCause();
+			if(cause instanceof Exception)
+				throw (Exception)cause;
+			throw e;
+		}
+	}
+	/**
+	 * predict the peaks of several structures in parallel.
+	 *
+	 * @param candidates The IAtomContainers, with their hydrogens
+	 * @return           The Peaks of each structure, in the same order
+	 * @throws Exception if a prediction failed other than by the structure
+	 */
+	public List<Peaks> predict(List<? extends IAtomContainer> candidates) throws Exception{
+		List<Future<Peaks>> futures = new ArrayList<Future<Peaks>>(candidates.size());
+		for(final IAtomContainer candidate : candidates)
+			futures.add(executor.submit(new Callable<Peaks>(){
+				public Peaks call() throws Exception {
+					return predict(candidate);
+				}
+			}));
+		List<Peaks> result = new ArrayList<Peaks>(futures.size());
+		try{
+			for(Future<Peaks> future : futures)
+				result.add(future.get());
+		}catch(ExecutionException e){
+			Throwable cause = e.getCause();
+			if(cause instanceof Exception)
+				throw (Exception)cause;
+			throw e;
+		}finally{
+			for(Future<Peaks> future : futures)
+				future.cancel(true);
+		}
+		return result;
+	}
+	/**
+	 * get the number of structures whose peaks are kept
+	 *
+	 * @return The number of structures
+	 */
+	public int size(){
+		synchronized(entries){
+			return entries.size();
+		}
+	}
+	/**
+	 * remove all peaks kept.
+	 */
+	public void clear(){
+		synchronized(entries){
+			entries.clear();
+		}
+	}
+
+	/**
+	 * get the version of the classifiers, the kept peaks are removed if it
+	 * changed. It must be called with the lock of the entries.
+	 *
+	 * @return The version of the ReactionModelRegistry
+	 */
+	private long getVersion(){
+		long current = ReactionModelRegistry.getInstance().getVersion();
+		if(current != version){
+			entries.clear();
+			version = current;
+		}
+		return current;
+	}
+
+	private void remove(String key, Future<Peaks> future){
+		synchronized(entries){
+			if(entries.get(key) == future)
+				entries.remove(key);
+		}
+	}
+	/**
+	 * predict the spectrum with a Medea of the pool and extract its peaks. A
+	 * structure which can not be predicted gives failed Peaks.
+	 *
+	 * @param ac The IAtomContainer
+	 * @return   The Peaks
+	 * @throws InterruptedException
+	 */
+	private Peaks calculate(IAtomContainer ac) throws InterruptedException{
+		Medea medea = engines.borrow();
+		try{
+			long current = ReactionModelRegistry.getInstance().getVersion();
+			try{
+				medea.predict(ac);
+			}catch(NullPointerException exception){
+				//ok, probably a ring system ;)
+				return new Peaks(null, null, "NPE happened: " + exception.getMessage(), false, current);
+			}catch(CDKException exception){
+				return new Peaks(null, null, "The prediction failed: " + exception.getMessage(), false, current);
+			}catch(IOException exception){
+				return new Peaks(null, null, "The prediction failed: " + exception.getMessage(), false, current);
+			}catch(ClassNotFoundException exception){
+				return new Peaks(null, null, "The prediction failed: " + exception.getMessage(), false, current);
+			}
+			MassSpectrum spectrum = medea.getPredictedMassSpectrum();
+			if(spectrum == null)
+				return new Peaks(null, null, "No spectrum was predicted", medea.isPartial(), medea.getModelVersion());
+			return new Peaks(spectrum.getMasses(), spectrum.getIntensities(), null, medea.isPartial(), medea.getModelVersion());
+		}finally{
+			engines.release(medea);
+		}
+	}
+}
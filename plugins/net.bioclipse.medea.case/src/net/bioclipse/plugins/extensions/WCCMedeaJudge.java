@@ -3,9 +3,12 @@ package net.bioclipse.plugins.extensions;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
 import net.bioclipse.core.util.LogUtils;
-import net.bioclipse.medea.core.Medea;
+import net.bioclipse.medea.core.MassSpectrum;
+import net.bioclipse.medea.core.similarity.WCCSimilarity;
 import net.bioclipse.seneca.judge.AbstractJudge;
 import net.bioclipse.seneca.judge.IJudge;
 import net.bioclipse.seneca.judge.JudgeResult;
@@ -40,10 +43,8 @@ import org.openscience.cdk.smiles.SmilesGenerator;
 import org.openscience.cdk.tools.CDKHydrogenAdder;
 import org.xmlcml.cml.base.CMLBuilder;
 import org.xmlcml.cml.base.CMLElement;
-import org.xmlcml.cml.base.CMLElements;
 import org.xmlcml.cml.base.CMLUtil;
 import org.xmlcml.cml.element.CMLCml;
-import org.xmlcml.cml.element.CMLPeak;
 import org.xmlcml.cml.element.CMLSpectrum;
 
 import spok.utils.SpectrumUtils;
@@ -53,9 +54,12 @@ public class WCCMedeaJudge extends AbstractJudge implements IJudge, Serializable
   private static Logger logger = Logger.getLogger(WCCNMRShiftDBJudge.class);
 
 	public double maxScore = 1000; // Score for optimum fit of exp. with calc. shift
-	private final static Medea medeaTool = new Medea();
-	
 	private double[] msPeakInt; 
+	/** the experimental spectrum prepared for the WCC, it is created again after a deserialization*/
+	private transient WCCSimilarity.Reference experimental;
+	/** weighted cross correlation with a width of 2 m/z*/
+	private static final WCCSimilarity WCC = new WCCSimilarity(2);
+	
 	private double[] msPeakPos; 
 
 	private int count = 0;
@@ -96,44 +100,56 @@ public class WCCMedeaJudge extends AbstractJudge implements IJudge, Serializable
 		if (cmlSpect.getPeakListElements() == null) {
 			throw new MissingInformationException("No peaks are defined!");
 		}
-		CMLElements<CMLPeak> peaks = cmlSpect.getPeakListElements().get(0).getPeakElements();
-		msPeakPos = new double[peaks.size()];
-		msPeakInt = new double[peaks.size()];
-		for (int peakNo=0; peakNo<peaks.size(); peakNo++) {
-			CMLPeak peak = peaks.get(peakNo);
-			msPeakPos[peakNo] = peak.getXValue();
-			msPeakInt[peakNo] = peak.getYValue();
-		}
+		MassSpectrum peaks = MassSpectrum.create(cmlSpect);
+		msPeakPos = peaks.getMasses();
+		msPeakInt = peaks.getIntensities();
+		experimental = WCC.createReference(msPeakPos, msPeakInt);
 	}
 
 	public JudgeResult evaluate(IAtomContainer ac) throws Exception {
+		IMolecule mol = prepare(ac);
+		return score(MedeaPeakPredictor.getInstance().predict(mol));
+	}
+
+	/**
+	 * Evaluate several candidate structures. Their spectra are predicted in
+	 * parallel and a structure which was already predicted is not fragmented
+	 * again, see MedeaPeakPredictor.
+	 *
+	 * @param candidates The candidate structures
+	 * @return           The JudgeResult of each structure, in the same order
+	 * @throws Exception
+	 */
+	public JudgeResult[] evaluate(List<? extends IAtomContainer> candidates) throws Exception {
+		List<IMolecule> molecules = new ArrayList<IMolecule>(candidates.size());
+		for (IAtomContainer ac : candidates)
+			molecules.add(prepare(ac));
+		List<MedeaPeakPredictor.Peaks> peaks = MedeaPeakPredictor.getInstance().predict(molecules);
+		JudgeResult[] results = new JudgeResult[peaks.size()];
+		for (int i = 0; i < results.length; i++)
+			results[i] = score(peaks.get(i));
+		return results;
+	}
+
+	private IMolecule prepare(IAtomContainer ac) throws Exception {
 		IMolecule mol = ac.getBuilder().newInstance(IMolecule.class,ac);
-		System.out.print(count+" smi: " + new SmilesGenerator().createSMILES(mol));
 		count++;
+		if (logger.isDebugEnabled())
+			logger.debug(count+" smi: " + new SmilesGenerator().createSMILES(mol));
 		// FIXME: need to do atom type perception first.
 		CDKHydrogenAdder adder = CDKHydrogenAdder.getInstance(ac.getBuilder());
 		adder.addImplicitHydrogens(mol);
-		try {
-			medeaTool.predictMS(mol);
-			System.out.println();
-		} catch (NullPointerException exception) {
-			//ok, probably a ring system ;)
-			System.out.println(" .. failed");
-			return new JudgeResult((long)maxScore,0l, 0l, "NPE happened: " + exception.getMessage());
-		}
-		CMLSpectrum spectrum = medeaTool.getPredictedSpectrum();
-		CMLElements<CMLPeak> peaks = spectrum.getPeakListElements().get(0).getPeakElements();
-		double[] predPeakPos = new double[peaks.size()];
-		double[] predPeakInt = new double[peaks.size()];
-		for (int peakNo=0; peakNo<peaks.size(); peakNo++) {
-			CMLPeak peak = peaks.get(peakNo);
-			predPeakPos[peakNo] = peak.getXValue();
-			predPeakInt[peakNo] = peak.getYValue();
-		}
-		
-		double scoreSum = maxScore*net.bioclipse.spectrum.Activator
-		    .getDefault().getJavaSpectrumManager().calculateSimilarityWCC(
-		        msPeakPos, msPeakInt, predPeakPos, predPeakInt, 2
+		return mol;
+	}
+
+	private JudgeResult score(MedeaPeakPredictor.Peaks peaks) {
+		if (peaks.isFailed())
+			return new JudgeResult((long)maxScore,0l, 0l, peaks.getFailure());
+		if (experimental == null)
+			experimental = WCC.createReference(msPeakPos, msPeakInt);
+		/* the autocorrelation of the experimental spectrum is calculated only once*/
+		double scoreSum = maxScore*WCC.similarity(
+		        experimental, peaks.getPositions(), peaks.getIntensities()
 		     );
 		String message = "Score: " + scoreSum  + "/" + maxScore;
 		return new JudgeResult((long)maxScore,(long)scoreSum, 0l, message);
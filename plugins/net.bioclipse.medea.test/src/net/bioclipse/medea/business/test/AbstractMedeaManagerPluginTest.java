@@ -11,8 +11,11 @@
  *******************************************************************************/
 package net.bioclipse.medea.business.test;
 
+import java.io.File;
 import java.net.URI;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 
 import junit.framework.Assert;
 import net.bioclipse.cdk.business.ICDKManager;
@@ -20,11 +23,14 @@ import net.bioclipse.cdk.domain.ICDKMolecule;
 import net.bioclipse.core.MockIFile;
 import net.bioclipse.core.domain.ISpectrum;
 import net.bioclipse.medea.business.IMedeaManager;
+import net.bioclipse.medea.core.IPredictionListener;
+import net.bioclipse.medea.core.Medea;
 import net.bioclipse.reaction.domain.ICDKReactionScheme;
 import net.bioclipse.spectrum.business.ISpectrumManager;
 
 import org.eclipse.core.runtime.FileLocator;
 import org.junit.Test;
+import org.openscience.cdk.interfaces.IAtomContainer;
 
 public class AbstractMedeaManagerPluginTest {
 
@@ -45,6 +51,44 @@ public class AbstractMedeaManagerPluginTest {
                
     }
     
+    @Test
+    public void testPredictMassSpectra_List() throws Exception {
+        URI uri = getClass().getResource("/testFiles/30460-92-5-2d.mol").toURI();
+        URL url = FileLocator.toFileURL(uri.toURL());
+        String pathMolecule = url.getFile();
+        List<ICDKMolecule> molecules = new ArrayList<ICDKMolecule>();
+        molecules.add(cdk.loadMolecule( new MockIFile(pathMolecule)));
+        molecules.add(cdk.loadMolecule( new MockIFile(pathMolecule)));
+        List<ICDKReactionScheme> schemes = medeamanager.predictMassSpectra(molecules);
+        Assert.assertEquals(2, schemes.size());
+        for (ICDKReactionScheme scheme : schemes) {
+            Assert.assertNotNull(scheme);
+            Assert.assertNotSame(0,scheme.getReactionScheme().getReactionCount());
+        }
+    }
+    
+    @Test
+    public void testPredictMassSpectra_Iterator_IPredictionListener() throws Exception {
+        URI uri = getClass().getResource("/testFiles/30460-92-5-2d.mol").toURI();
+        URL url = FileLocator.toFileURL(uri.toURL());
+        String pathMolecule = url.getFile();
+        List<ICDKMolecule> molecules = new ArrayList<ICDKMolecule>();
+        molecules.add(cdk.loadMolecule( new MockIFile(pathMolecule)));
+        molecules.add(cdk.loadMolecule( new MockIFile(pathMolecule)));
+        final boolean[] predicted = new boolean[molecules.size()];
+        medeamanager.predictMassSpectra(molecules.iterator(), new IPredictionListener() {
+            public void predicted(int index, IAtomContainer molecule, Medea medea) {
+                Assert.assertNotSame(0, medea.getPredictedMassSpectrum().size());
+                predicted[index] = true;
+            }
+            public void failed(int index, IAtomContainer molecule, Throwable error) {
+                Assert.fail("Prediction of molecule " + index + " failed: " + error);
+            }
+        });
+        for (boolean done : predicted)
+            Assert.assertTrue(done);
+    }
+    
     @Test
     public void testLearnMassSpectrum_IMolecule_ISpectrum_String()
         throws Exception {
@@ -64,4 +108,28 @@ public class AbstractMedeaManagerPluginTest {
         Assert.assertNotSame(0,scheme.getReactionScheme().getReactionCount());
     }
     
+    @Test
+    public void testLearnMassSpectra_List_List_String() throws Exception {
+        URI uri = getClass().getResource("/testFiles/30460-92-5.cml").toURI();
+        URL url = FileLocator.toFileURL(uri.toURL());
+        String pathSpectrum = url.getFile();
+        
+        uri = getClass().getResource("/testFiles/30460-92-5-2d.mol").toURI();
+        url = FileLocator.toFileURL(uri.toURL());
+        String pathMolecule = url.getFile();
+        
+        List<ICDKMolecule> molecules = new ArrayList<ICDKMolecule>();
+        List<ISpectrum> spectra = new ArrayList<ISpectrum>();
+        for (int i = 0; i < 2; i++) {
+            molecules.add(cdk.loadMolecule(new MockIFile(pathMolecule)));
+            spectra.add(sp.loadSpectrum(pathSpectrum));
+        }
+        File directory = File.createTempFile("medea", "");
+        directory.delete();
+        directory.mkdirs();
+        String nameFile = new File(directory, "total").getPath();
+        
+        Assert.assertEquals(2, medeamanager.learnMassSpectra(molecules, spectra, nameFile));
+    }
+    
 }
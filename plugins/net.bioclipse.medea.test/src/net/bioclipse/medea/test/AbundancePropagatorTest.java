@@ -0,0 +1,151 @@
+package net.bioclipse.medea.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import net.bioclipse.medea.core.AbundancePropagator;
+import net.bioclipse.medea.core.FragmentMolecule;
+import net.bioclipse.medea.core.FragmentTree;
+import net.bioclipse.medea.core.Position;
+
+import org.junit.Test;
+import org.openscience.cdk.Molecule;
+
+public class AbundancePropagatorTest {
+
+	private static final String IONIZATION = "Ionitzation";
+	private static final double FRAGMENTED = 1-Math.exp(-3.4);
+
+	@Test public void testTree() {
+		for(long seed = 0 ; seed < 200 ; seed++){
+			FragmentTree expected = createTree(seed);
+			FragmentTree tree = createTree(seed);
+			setAbundanceBreadthFirst(expected);
+			AbundancePropagator.propagate(tree);
+			int[] masses = tree.getMasses();
+			for(int i = 0 ; i < masses.length ; i++){
+				Position position = new Position(masses[i], 0);
+				assertEquals(expected.getFragment(position).getAbundance(),
+						tree.getFragment(position).getAbundance(), 1e-9);
+			}
+		}
+	}
+
+	@Test public void testDiamond() {
+		/* M -> A, B -> D -> E, D is obtained from A and from B*/
+		FragmentTree tree = new FragmentTree(new Molecule());
+		FragmentMolecule m = addFragment(tree, tree.getMolecularIon(), 10, IONIZATION, 1.0);
+		FragmentMolecule a = addFragment(tree, m, 20, "RSI", 0.5);
+		FragmentMolecule b = addFragment(tree, m, 30, "RSI", 0.5);
+		FragmentMolecule d = addFragment(tree, a, 40, "RSI", 0.5);
+		b.setChildren(d.getIdP(), "RSI", null, null, 0.5);
+		d.setParent(b.getIdP());
+		FragmentMolecule e = addFragment(tree, d, 50, "RSI", 1.0);
+		AbundancePropagator.propagate(tree);
+
+		double f = FRAGMENTED;
+		/* D has the abundance of both parents, and gives it all to E*/
+		double abundanceM = f - f*f;
+		double abundanceA = 0.5*f*f - 0.5*f*f*f;
+		double abundanceD = 0.5*f*f*f - 0.5*f*f*f*f;
+		double abundanceE = 0.5*f*f*f*f;
+		assertEquals(0.0, tree.getMolecularIon().getAbundance(), 0.0);
+		assertEquals(100.0, e.getAbundance(), 1e-9);
+		assertEquals(abundanceD/abundanceE*100, d.getAbundance(), 1e-9);
+		assertEquals(abundanceA/abundanceE*100, a.getAbundance(), 1e-9);
+		assertEquals(abundanceA/abundanceE*100, b.getAbundance(), 1e-9);
+		assertEquals(abundanceM/abundanceE*100, m.getAbundance(), 1e-9);
+	}
+
+	private static FragmentMolecule addFragment(FragmentTree tree, FragmentMolecule parent, int mass, String process, double prob){
+		FragmentMolecule fragment = new FragmentMolecule(new Molecule(), new Position(mass, 0), process, parent.getIdP(), 0.0);
+		tree.addFragment(fragment);
+		parent.setChildren(fragment.getIdP(), process, null, null, prob);
+		return fragment;
+	}
+
+	/**
+	 * a random tree, each fragment has its own mass
+	 */
+	private static FragmentTree createTree(long seed){
+		Random random = new Random(seed);
+		FragmentTree tree = new FragmentTree(new Molecule());
+		List<FragmentMolecule> fragments = new ArrayList<FragmentMolecule>();
+		fragments.add(tree.getMolecularIon());
+		int count = 1 + random.nextInt(40);
+		for(int i = 1 ; i <= count ; i++){
+			FragmentMolecule parent = fragments.get(random.nextInt(fragments.size()));
+			String process = parent == tree.getMolecularIon() ? IONIZATION : "RSI";
+			double prob = random.nextInt(10) == 0 ? 0.0 : random.nextDouble();
+			fragments.add(addFragment(tree, parent, i, process, prob));
+		}
+		return tree;
+	}
+
+	/**
+	 * the breadth-first calculation of ExtractorAbundance before
+	 * AbundancePropagator, which is the same for a tree
+	 */
+	private static void setAbundanceBreadthFirst(FragmentTree tree){
+		FragmentMolecule fm = tree.getMolecularIon();
+		fm.setAbundance(-1.0);
+		List<FragmentMolecule> order = new ArrayList<FragmentMolecule>();
+		order.add(fm);
+		HashSet<Position> visited = new HashSet<Position>();
+		visited.add(fm.getIdP());
+		for(int i = 0 ; i < order.size(); i++){
+			FragmentMolecule parent = order.get(i);
+			List<Position> children = parent.getChildren();
+			for(int j = 0 ; j < children.size(); j++){
+				FragmentMolecule fragment = tree.getFragment(children.get(j));
+				double prob = parent.getChildrenProbabilities().get(j);
+				double probParent;
+				double probTotal = 0.0;
+				if(parent.getProcess().get(j).equals(IONIZATION))
+					probParent = fragment.getChildren().size() > 0 ? 1.0 : 0.0;
+				else{
+					probParent = parent.getProbabilities().get(0);
+					if(children.size() > 1)
+						for(int k = 0 ; k < children.size(); k++)
+							probTotal += parent.getChildrenProbabilities().get(k);
+				}
+				if(probTotal == 0)
+					probTotal = 1;
+				double abundance = probParent*prob*FRAGMENTED/probTotal;
+				fragment.getProbabilities().set(0, abundance);
+				fragment.setAbundance(fragment.getAbundance()+abundance);
+				if(visited.add(fragment.getIdP()))
+					order.add(fragment);
+			}
+		}
+
+		/* subtract the descendents*/
+		for(int i = 0 ; i < order.size(); i++){
+			FragmentMolecule parent = order.get(i);
+			double abundance = parent.getAbundance();
+			double abundanceTChildren = 0.0;
+			if(abundance != -1)
+				for(Position child : parent.getChildren()){
+					FragmentMolecule fragment = tree.getFragment(child);
+					if(fragment.getAbundance() > abundance && i != 0)
+						fragment.setAbundance(abundance);
+					abundanceTChildren += fragment.getAbundance();
+				}
+			parent.setAbundance(Math.max(0, abundance - abundanceTChildren));
+		}
+
+		/* relative abundance*/
+		double maxAbundance = 0.0;
+		for(int i = 1 ; i < order.size(); i++)
+			maxAbundance = Math.max(maxAbundance, order.get(i).getAbundance());
+		fm.setAbundance(0.0);
+		for(int i = 1 ; i < order.size(); i++){
+			double aa = order.get(i).getAbundance()/maxAbundance*100;
+			order.get(i).setAbundance(aa < 0 ? 0.0 : aa);
+		}
+	}
+}
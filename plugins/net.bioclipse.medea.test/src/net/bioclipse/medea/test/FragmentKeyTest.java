@@ -0,0 +1,69 @@
+package net.bioclipse.medea.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import net.bioclipse.medea.core.FragmentKey;
+
+import org.junit.Test;
+import org.openscience.cdk.Atom;
+import org.openscience.cdk.Bond;
+import org.openscience.cdk.Molecule;
+import org.openscience.cdk.SingleElectron;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.interfaces.IMolecule;
+
+public class FragmentKeyTest {
+
+	/**
+	 * [CH2+]-O-CH3 with the heavy atoms added in the given order.
+	 */
+	private IMolecule createCation(boolean reversed){
+		IMolecule molecule = new Molecule();
+		IAtom c1 = new Atom("C");
+		c1.setFormalCharge(1);
+		IAtom o = new Atom("O");
+		IAtom c2 = new Atom("C");
+		if(reversed){
+			molecule.addAtom(c2);
+			molecule.addAtom(o);
+			molecule.addAtom(c1);
+		}else{
+			molecule.addAtom(c1);
+			molecule.addAtom(o);
+			molecule.addAtom(c2);
+		}
+		molecule.addBond(new Bond(c1, o, IBond.Order.SINGLE));
+		molecule.addBond(new Bond(o, c2, IBond.Order.SINGLE));
+		for(int i = 0 ; i < 2 ; i++){
+			IAtom h = new Atom("H");
+			molecule.addAtom(h);
+			molecule.addBond(new Bond(c1, h, IBond.Order.SINGLE));
+		}
+		for(int i = 0 ; i < 3 ; i++){
+			IAtom h = new Atom("H");
+			molecule.addAtom(h);
+			molecule.addBond(new Bond(c2, h, IBond.Order.SINGLE));
+		}
+		return molecule;
+	}
+
+	@Test public void testAtomOrder() throws Exception {
+		assertEquals(FragmentKey.getKey(createCation(false)),
+				FragmentKey.getKey(createCation(true)));
+	}
+
+	@Test public void testCharge() throws Exception {
+		IMolecule moved = createCation(false);
+		moved.getAtom(0).setFormalCharge(0);
+		moved.getAtom(2).setFormalCharge(1);
+		assertFalse(FragmentKey.getKey(createCation(false)) == FragmentKey.getKey(moved));
+	}
+
+	@Test public void testRadical() throws Exception {
+		IMolecule radical = createCation(false);
+		radical.addSingleElectron(new SingleElectron(radical.getAtom(1)));
+		assertFalse(FragmentKey.getKey(createCation(false)) == FragmentKey.getKey(radical));
+	}
+}
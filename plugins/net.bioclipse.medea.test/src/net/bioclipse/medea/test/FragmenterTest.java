@@ -0,0 +1,218 @@
+package net.bioclipse.medea.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.bioclipse.medea.core.FragmentMolecule;
+import net.bioclipse.medea.core.FragmentTree;
+import net.bioclipse.medea.core.FragmentationOptions;
+import net.bioclipse.medea.core.FragmentationTrace;
+import net.bioclipse.medea.core.Fragmenter;
+import net.bioclipse.medea.core.IFragmentationListener;
+import net.bioclipse.medea.core.MassSpectrum;
+import net.bioclipse.medea.core.Medea;
+import net.bioclipse.medea.core.MedeaContext;
+
+import org.junit.Test;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IChemFile;
+import org.openscience.cdk.interfaces.IMolecule;
+import org.openscience.cdk.interfaces.IReactionSet;
+import org.openscience.cdk.io.MDLV2000Reader;
+import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.cdk.tools.manipulator.ChemFileManipulator;
+
+public class FragmenterTest {
+
+	private static final String IONIZATION = "Ionitzation";
+	private static final String RADICAL_CHARGE = "RadicalChargeSiteInitiationReaction";
+	private static final String[] SMILES = {"CCCCC(=O)OCC", "CC(C)CC(=O)C", "CCOCCN", "c1ccccc1CC(=O)C"};
+
+	@Test public void testBeamWidth() throws Exception {
+		IAtomContainer container = readMolecule();
+		Counter exhaustive = predict(container, new FragmentationOptions());
+
+		FragmentationOptions options = new FragmentationOptions();
+		options.setBeamWidth(1);
+		Counter beam = predict(container, options);
+		/* the beam is a selection, not a limit: the result is not partial*/
+		assertFalse(beam.partial);
+		assertTrue(beam.rejected[IFragmentationListener.OUT_OF_BEAM] > 0);
+		assertTrue(beam.created < exhaustive.created);
+	}
+
+	@Test public void testUnscoredReaction() throws Exception {
+		IAtomContainer container = readMolecule();
+		Counter exhaustive = predict(container, new FragmentationOptions());
+		assertTrue(exhaustive.getCreated(RADICAL_CHARGE) > 0);
+
+		/* the reaction has no classifier, a narrow beam does not drop it*/
+		FragmentationOptions options = new FragmentationOptions();
+		options.setBeamWidth(1);
+		options.setMinProbability(0.5);
+		Counter beam = predict(container, options);
+		assertTrue(beam.getCreated(RADICAL_CHARGE) > 0);
+	}
+
+	@Test public void testMaxFragments() throws Exception {
+		IAtomContainer container = readMolecule();
+		FragmentationOptions options = new FragmentationOptions();
+		options.setBeamWidth(1);
+		Counter beam = predict(container, options);
+
+		options.setMaxFragments(3);
+		Counter limited = predict(container, options);
+		assertTrue(limited.truncated);
+		assertTrue(limited.partial);
+		assertTrue(limited.rejected[IFragmentationListener.LIMIT_REACHED] > 0);
+		assertTrue(limited.created < beam.created);
+	}
+
+	@Test public void testMaxFragmentsLearning() throws Exception {
+		/* without peaks the new fragments are added to the tree but not expanded*/
+		IMolecule molecule = (IMolecule)readMolecule();
+		Counter exhaustive = new Counter();
+		Fragmenter fragmenter = learn(molecule, new FragmentationOptions(), exhaustive);
+		int ionized = exhaustive.getCreated(IONIZATION);
+		assertTrue(getSize(fragmenter.getFragmentTree()) > ionized + 1);
+		assertFalse(fragmenter.isTruncated());
+
+		FragmentationOptions options = new FragmentationOptions();
+		options.setMaxFragments(ionized + 1);
+		Counter limited = new Counter();
+		fragmenter = learn((IMolecule)readMolecule(), options, limited);
+		assertTrue(fragmenter.isTruncated());
+		assertTrue(limited.rejected[IFragmentationListener.LIMIT_REACHED] > 0);
+		assertEquals(ionized + 1, getSize(fragmenter.getFragmentTree()));
+	}
+
+	@Test public void testParallel() throws Exception {
+		List<IMolecule> molecules = new ArrayList<IMolecule>();
+		molecules.add((IMolecule)readMolecule());
+		SmilesParser parser = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+		for(String smiles : SMILES)
+			molecules.add(parser.parseSmiles(smiles));
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try{
+			for(IMolecule molecule : molecules){
+				Fragmenter sequential = new Fragmenter(new MedeaContext(Medea.PREDICTPROCESS), (IMolecule)molecule.clone(), null);
+				Fragmenter parallel = new Fragmenter(new MedeaContext(Medea.PREDICTPROCESS), (IMolecule)molecule.clone(), executor);
+				assertSameTree(sequential.getFragmentTree(), parallel.getFragmentTree());
+
+				Medea medea = new Medea();
+				medea.predict((IMolecule)molecule.clone());
+				MassSpectrum expected = medea.getPredictedMassSpectrum();
+				medea = new Medea();
+				medea.setFragmentationExecutor(executor);
+				medea.predict((IMolecule)molecule.clone());
+				MassSpectrum spectrum = medea.getPredictedMassSpectrum();
+				assertTrue(Arrays.equals(expected.getMasses(), spectrum.getMasses()));
+				assertTrue(Arrays.equals(expected.getIntensities(), spectrum.getIntensities()));
+			}
+		}finally{
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * the same fragments at the same positions, with the same connections
+	 */
+	private static void assertSameTree(FragmentTree expected, FragmentTree tree) {
+		assertTrue(Arrays.equals(expected.getMasses(), tree.getMasses()));
+		for(int mass : expected.getMasses()){
+			assertEquals(expected.getFragments(mass).size(), tree.getFragments(mass).size());
+			for(int i = 0 ; i < expected.getFragments(mass).size() ; i++){
+				FragmentMolecule fragmentE = expected.getFragments(mass).get(i);
+				FragmentMolecule fragment = tree.getFragments(mass).get(i);
+				assertEquals(fragmentE.getStructureKey(), fragment.getStructureKey());
+				assertEquals(fragmentE.getParents(), fragment.getParents());
+				assertEquals(fragmentE.getChildren(), fragment.getChildren());
+				assertEquals(fragmentE.getProcess(), fragment.getProcess());
+			}
+		}
+	}
+
+	private static Fragmenter learn(IMolecule molecule, FragmentationOptions options, Counter counter) throws Exception {
+		MedeaContext context = new MedeaContext(Medea.LEARNINGPROCESS);
+		context.setPeaks(new ArrayList<Double>(), null);
+		context.setFragmentationOptions(options);
+		FragmentationTrace trace = new FragmentationTrace();
+		trace.addListener(counter);
+		context.setFragmentationTrace(trace);
+		return new Fragmenter(context, molecule, null);
+	}
+
+	/**
+	 * the number of fragments of the tree without the molecular ion
+	 */
+	private static int getSize(FragmentTree tree) {
+		int size = -1;
+		for(int mass : tree.getMasses())
+			size += tree.getFragments(mass).size();
+		return size;
+	}
+
+	private static IAtomContainer readMolecule() throws Exception {
+		InputStream ins = FragmenterTest.class.getResourceAsStream("/testFiles/30460-92-5-2d.mol");
+		MDLV2000Reader reader = new MDLV2000Reader(ins);
+		IChemFile chemFile = (IChemFile)reader.read(new org.openscience.cdk.ChemFile());
+		return ChemFileManipulator.getAllAtomContainers(chemFile).get(0);
+	}
+
+	private static Counter predict(IAtomContainer container, FragmentationOptions options) throws Exception {
+		Counter counter = new Counter();
+		Medea medea = new Medea();
+		medea.setFragmentationOptions(options);
+		medea.addFragmentationListener(counter);
+		medea.predict(container);
+		assertTrue(counter.ended);
+		assertTrue(counter.truncated == medea.getController().isTruncated());
+		counter.partial = medea.isPartial();
+		return counter;
+	}
+
+	/**
+	 * counts the fragments of a fragmentation and the reasons of the rejections
+	 */
+	private static class Counter implements IFragmentationListener {
+		int created = 0;
+		Map<String, Integer> createdByReaction = new HashMap<String, Integer>();
+		int[] rejected = new int[LIMIT_REACHED+1];
+		boolean ended = false;
+		boolean truncated = false;
+		boolean partial = false;
+
+		int getCreated(String nameReaction) {
+			Integer count = createdByReaction.get(nameReaction);
+			return count == null ? 0 : count.intValue();
+		}
+		public void reactionApplied(FragmentMolecule fragment, String nameReaction, IReactionSet reactions) {
+		}
+		public void reactionFailed(FragmentMolecule fragment, String nameReaction, Exception cause) {
+		}
+		public void fragmentCreated(FragmentMolecule fragment, FragmentMolecule parent, String nameReaction, double probability) {
+			created++;
+			createdByReaction.put(nameReaction, getCreated(nameReaction) + 1);
+		}
+		public void duplicateFound(FragmentMolecule fragment, FragmentMolecule parent, String nameReaction) {
+		}
+		public void fragmentRejected(IMolecule product, FragmentMolecule parent, String nameReaction, int reason) {
+			rejected[reason]++;
+		}
+		public void fragmentationEnded(FragmentTree fragmentTree, boolean truncated) {
+			this.ended = true;
+			this.truncated = truncated;
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package net.bioclipse.medea.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import net.bioclipse.medea.core.IsotopePatternGenerator;
+import net.bioclipse.medea.core.MassSpectrum;
+
+import org.junit.Test;
+
+public class IsotopePatternGeneratorTest {
+
+	@Test public void testChlorine() {
+		MassSpectrum pattern = new IsotopePatternGenerator().getPattern("Cl", 2);
+		assertEquals(3, pattern.size());
+		assertEquals(69.93770536, pattern.getMass(0), 0.000001);
+		assertEquals(71.93475527, pattern.getMass(1), 0.000001);
+		assertEquals(0.7576*0.7576, pattern.getIntensity(0), 0.000001);
+		assertEquals(2*0.7576*0.2424, pattern.getIntensity(1), 0.000001);
+		assertEquals(0.2424*0.2424, pattern.getIntensity(2), 0.000001);
+	}
+
+	@Test public void testCarbon() {
+		IsotopePatternGenerator generator = new IsotopePatternGenerator(0.01, 0.000001);
+		MassSpectrum pattern = generator.getPattern("C", 100);
+		assertEquals(1200.0, pattern.getMass(0), 0.000001);
+		assertEquals(Math.pow(0.9893, 100), pattern.getIntensity(0), 0.000001);
+		assertEquals(100*0.0107*Math.pow(0.9893, 99), pattern.getIntensity(1), 0.000001);
+		double sum = 0.0;
+		for(int i = 0 ; i < pattern.size() ; i++)
+			sum += pattern.getIntensity(i);
+		assertEquals(1.0, sum, 0.0001);
+		/* the patterns are kept*/
+		assertSame(pattern, generator.getPattern("C", 100));
+	}
+
+	@Test public void testCutoff() {
+		MassSpectrum pattern = new IsotopePatternGenerator(0.01, 0.01).getPattern("C", 10);
+		/* M+2 of C10 is 0.5% of M*/
+		assertEquals(2, pattern.size());
+		for(int i = 1 ; i < pattern.size() ; i++)
+			assertTrue(pattern.getMass(i) > pattern.getMass(i - 1));
+	}
+}
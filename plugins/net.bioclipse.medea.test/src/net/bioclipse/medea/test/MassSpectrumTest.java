@@ -0,0 +1,47 @@
+package net.bioclipse.medea.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import net.bioclipse.medea.core.MassSpectrum;
+
+import org.junit.Test;
+import org.xmlcml.cml.element.CMLPeak;
+import org.xmlcml.cml.element.CMLSpectrum;
+
+public class MassSpectrumTest {
+
+	private static final double[] MASSES = {31, 43, 56, 74};
+	private static final double[] INTENSITIES = {100, 60, 90, 5};
+
+	@Test public void testPeaks() {
+		double[] masses = MASSES.clone();
+		MassSpectrum spectrum = new MassSpectrum(masses, INTENSITIES);
+		/* the arrays are copied*/
+		masses[0] = 0;
+		assertEquals(4, spectrum.size());
+		assertEquals(31, spectrum.getMass(0), 0.0);
+		assertEquals(5, spectrum.getIntensity(3), 0.0);
+		spectrum.getMasses()[1] = 0;
+		assertEquals(43, spectrum.getMass(1), 0.0);
+	}
+
+	@Test public void testCMLSpectrum() {
+		MassSpectrum spectrum = new MassSpectrum(MASSES, INTENSITIES);
+		CMLSpectrum cml = spectrum.getCMLSpectrum();
+		assertSame(cml, spectrum.getCMLSpectrum());
+		assertEquals("massSpectrum", cml.getType());
+		assertEquals(4, cml.getPeakListElements().get(0).getPeakElements().size());
+		CMLPeak peak = cml.getPeakListElements().get(0).getPeakElements().get(2);
+		assertEquals(56, peak.getXValue(), 0.0);
+		assertEquals(90, peak.getYValue(), 0.0);
+
+		MassSpectrum read = MassSpectrum.create(cml);
+		assertSame(cml, read.getCMLSpectrum());
+		assertEquals(4, read.size());
+		for(int i = 0 ; i < read.size() ; i++){
+			assertEquals(MASSES[i], read.getMass(i), 0.0);
+			assertEquals(INTENSITIES[i], read.getIntensity(i), 0.0);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package net.bioclipse.medea.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import net.bioclipse.medea.core.MassSpectrum;
+import net.bioclipse.medea.core.MassSpectrumWriter;
+import nu.xom.Builder;
+import nu.xom.Document;
+import nu.xom.Element;
+import nu.xom.Elements;
+
+import org.junit.Test;
+
+public class MassSpectrumWriterTest {
+
+	private static final String CML_NAMESPACE = "http://www.xml-cml.org/schema";
+	private static final MassSpectrum SPECTRUM = new MassSpectrum(new double[]{31, 43, 56.5}, new double[]{100, 60, 90});
+
+	@Test public void testCML() throws Exception {
+		String output = write(MassSpectrumWriter.CML, "butanol & co", false);
+		Document document = new Builder().build(new StringReader(output));
+		Element root = document.getRootElement();
+		assertEquals("cml", root.getLocalName());
+		Elements spectra = root.getChildElements("spectrum", CML_NAMESPACE);
+		assertEquals(1, spectra.size());
+		Element spectrum = spectra.get(0);
+		assertEquals("butanol & co", spectrum.getAttributeValue("title"));
+		assertEquals("massSpectrum", spectrum.getAttributeValue("type"));
+		Elements peaks = spectrum.getFirstChildElement("peakList", CML_NAMESPACE).getChildElements("peak", CML_NAMESPACE);
+		assertEquals(3, peaks.size());
+		/* the same units as the CMLSpectrum of Medea*/
+		assertEquals("jcampdx: m/z", peaks.get(0).getAttributeValue("xUnits"));
+		assertEquals(56.5, Double.parseDouble(peaks.get(2).getAttributeValue("xValue")), 0.0);
+		/* the title is not set in the CMLSpectrum of the MassSpectrum*/
+		assertNull(SPECTRUM.getCMLSpectrum().getAttribute("title"));
+	}
+
+	@Test public void testJCAMP() throws Exception {
+		String[] lines = write(MassSpectrumWriter.JCAMP, "butanol", true).split("\r?\n");
+		assertEquals("##TITLE=butanol", lines[0]);
+		assertTrue(contains(lines, "##ORIGIN=MEDEA prediction (partial)"));
+		assertTrue(contains(lines, "##NPOINTS=3"));
+		assertTrue(contains(lines, "##MAXY=100"));
+		assertTrue(contains(lines, "31,100 43,60 56.5,90"));
+		assertEquals("##END=", lines[lines.length - 1]);
+	}
+
+	@Test public void testMSP() throws Exception {
+		String[] lines = write(MassSpectrumWriter.MSP, "butanol", false).split("\r?\n");
+		assertEquals("Name: butanol", lines[0]);
+		assertEquals("Num Peaks: 3", lines[1]);
+		assertEquals("31 100", lines[2]);
+		assertEquals("56.5 90", lines[4]);
+	}
+
+	@Test public void testCSV() throws Exception {
+		String[] lines = write(MassSpectrumWriter.CSV, "2-\"butanol\"", false).split("\r?\n");
+		assertEquals(4, lines.length);
+		assertEquals("name,mz,intensity", lines[0]);
+		assertEquals("\"2-\"\"butanol\"\"\",43,60", lines[2]);
+	}
+
+	@Test public void testFormat() {
+		assertEquals(MassSpectrumWriter.JCAMP, MassSpectrumWriter.checkFormat("JCAMP"));
+		assertEquals(MassSpectrumWriter.MSP, MassSpectrumWriter.getFormat("spectra.msp"));
+		assertEquals(MassSpectrumWriter.CML, MassSpectrumWriter.getFormat("spectra.txt"));
+	}
+
+	private static String write(String format, String name, boolean partial) {
+		StringWriter out = new StringWriter();
+		PrintWriter writer = new PrintWriter(out);
+		MassSpectrumWriter spectra = new MassSpectrumWriter(writer, format);
+		spectra.writeHeader();
+		spectra.write(name, SPECTRUM, partial);
+		spectra.writeFooter();
+		writer.flush();
+		return out.toString();
+	}
+
+	private static boolean contains(String[] lines, String line) {
+		for(String l : lines)
+			if(l.equals(line))
+				return true;
+		return false;
+	}
+}
@@ -0,0 +1,63 @@
+package net.bioclipse.medea.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+
+import net.bioclipse.medea.core.PredictionCache;
+import net.bioclipse.reaction.domain.CDKReactionScheme;
+import net.bioclipse.reaction.domain.ICDKReactionScheme;
+
+import org.junit.Test;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+
+public class PredictionCacheTest {
+
+	@Test public void testKey() throws Exception {
+		SmilesParser parser = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+		assertEquals(PredictionCache.getKey(parser.parseSmiles("OCC")),
+				PredictionCache.getKey(parser.parseSmiles("C(C)O")));
+	}
+
+	@Test public void testLeastRecentlyUsed() throws Exception {
+		PredictionCache cache = new PredictionCache(2);
+		ICDKReactionScheme a = new CDKReactionScheme();
+		ICDKReactionScheme b = new CDKReactionScheme();
+		ICDKReactionScheme c = new CDKReactionScheme();
+		cache.put("a", null, a);
+		cache.put("b", null, b);
+		assertSame(a, cache.get("a").getReactionScheme());
+		cache.put("c", null, c);
+
+		assertEquals(2, cache.size());
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("a"));
+		assertNotNull(cache.get("c"));
+	}
+
+	@Test public void testStamp() throws Exception {
+		File directory = File.createTempFile("medea", "cache");
+		directory.delete();
+		PredictionCache cache = new PredictionCache(2, directory);
+		cache.setStamp("model-1");
+		cache.put("a", null, new CDKReactionScheme());
+
+		/* a new session with other classifiers does not read the result*/
+		PredictionCache other = new PredictionCache(2, directory);
+		other.setStamp("model-2");
+		assertNull(other.get("a"));
+		PredictionCache same = new PredictionCache(2, directory);
+		same.setStamp("model-1");
+		assertNotNull(same.get("a"));
+
+		cache.setStamp("model-2");
+		assertEquals(0, cache.size());
+		assertNull(cache.get("a"));
+		cache.clear();
+		directory.delete();
+	}
+}
@@ -0,0 +1,100 @@
+package net.bioclipse.medea.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import net.bioclipse.medea.core.learning.TrainingSetWriter;
+import net.bioclipse.medea.core.prediction.ReactionModelRegistry;
+
+import org.junit.Test;
+
+public class ReactionModelRegistryTest {
+
+	private static final int TYPE = ReactionModelRegistry.RSH;
+
+	@Test public void testFingerprint() throws Exception {
+		File directory = createDirectory();
+		File arff = writeTrainingSet(directory);
+		ReactionModelRegistry registry = new ReactionModelRegistry();
+		registry.setTrainingSet(TYPE, arff);
+		/* the fingerprint of the training is calculated from the bytes which are trained*/
+		String fingerprint = registry.getFingerprint(TYPE);
+		registry.retrain(TYPE);
+		assertEquals(fingerprint, registry.getFingerprint(TYPE));
+
+		/* the binary file is mapped, the fingerprint is calculated from the mapped bytes*/
+		File binary = new File(directory, "total-rsh.wbd");
+		registry.convertTrainingSet(TYPE, binary);
+		ReactionModelRegistry untrained = new ReactionModelRegistry();
+		untrained.setTrainingSet(TYPE, binary);
+		String binaryFingerprint = untrained.getFingerprint(TYPE);
+		assertFalse(fingerprint.equals(binaryFingerprint));
+		registry.retrain(TYPE);
+		assertEquals(binaryFingerprint, registry.getFingerprint(TYPE));
+	}
+
+	@Test public void testSavedStamp() throws Exception {
+		File directory = createDirectory();
+		File arff = writeTrainingSet(directory);
+		File models = new File(directory, "models");
+		ReactionModelRegistry registry = new ReactionModelRegistry();
+		registry.setModelDirectory(models);
+		registry.setTrainingSet(TYPE, arff);
+		String fingerprint = registry.getFingerprint(TYPE);
+		registry.getModel(TYPE);
+
+		/* same size and date: the training set is not read again*/
+		long date = arff.lastModified();
+		RandomAccessFile file = new RandomAccessFile(arff, "rw");
+		file.seek(file.length() - 12);
+		file.write('9');
+		file.close();
+		arff.setLastModified(date);
+		registry = new ReactionModelRegistry();
+		registry.setModelDirectory(models);
+		registry.setTrainingSet(TYPE, arff);
+		assertEquals(fingerprint, registry.getFingerprint(TYPE));
+		registry.getModel(TYPE);
+		assertEquals(fingerprint, registry.getFingerprint(TYPE));
+
+		/* another date: the training set is read and the classifier trained again*/
+		arff.setLastModified(date - 10000);
+		registry = new ReactionModelRegistry();
+		registry.setModelDirectory(models);
+		registry.setTrainingSet(TYPE, arff);
+		String changed = registry.getFingerprint(TYPE);
+		assertFalse(fingerprint.equals(changed));
+		registry.getModel(TYPE);
+		assertEquals(changed, registry.getFingerprint(TYPE));
+	}
+
+	@Test public void testPredict() throws Exception {
+		ReactionModelRegistry registry = new ReactionModelRegistry();
+		registry.setTrainingSet(TYPE, writeTrainingSet(createDirectory()));
+		Double[][] boxed = {{new Double(-0.5153), new Double(-0.1808), new Double(4.7138)}};
+		double[] values = {-0.5153, -0.1808, 4.7138};
+		assertEquals(registry.predict(TYPE, values), registry.predict(TYPE, boxed));
+		boxed[0][2] = null;
+		values[2] = Double.NaN;
+		assertEquals(registry.predict(TYPE, values), registry.predict(TYPE, boxed));
+	}
+
+	private static File createDirectory() throws Exception {
+		File directory = File.createTempFile("medea", "");
+		directory.delete();
+		directory.mkdirs();
+		return directory;
+	}
+
+	private static File writeTrainingSet(File directory) throws Exception {
+		TrainingSetWriter trainingSet = new TrainingSetWriter(new File(directory, "total").getPath());
+		trainingSet.addRow(TYPE, "-00.5153, -00.1808,  04.7259, 0_00, \n");
+		trainingSet.addRow(TYPE, "-00.5153, -00.1808,  04.7138, 0_42, \n");
+		trainingSet.addRow(TYPE, "-00.4153, -00.1808,  04.7138, 0_42, \n");
+		trainingSet.close();
+		return trainingSet.getFile(TYPE);
+	}
+}
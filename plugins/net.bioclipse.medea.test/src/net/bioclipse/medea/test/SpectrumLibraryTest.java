@@ -0,0 +1,163 @@
+package net.bioclipse.medea.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Random;
+
+import net.bioclipse.medea.core.library.BinnedSpectrum;
+import net.bioclipse.medea.core.library.SpectrumLibrary;
+import net.bioclipse.medea.core.similarity.WCCSimilarity;
+
+import org.junit.Test;
+
+public class SpectrumLibraryTest {
+
+	private static final double[][] BUTANOL = {{31, 41, 42, 43, 56, 74}, {100, 30, 20, 60, 90, 5}};
+	private static final double[][] PROPANOIC = {{27, 28, 29, 45, 57, 74}, {40, 80, 60, 30, 30, 100}};
+	private static final double[][] TOLUENE = {{39, 63, 65, 91, 92}, {10, 10, 12, 100, 70}};
+
+	private SpectrumLibrary createLibrary() {
+		SpectrumLibrary library = new SpectrumLibrary();
+		library.add("butanol", BUTANOL[0], BUTANOL[1]);
+		library.add("propanoic acid", PROPANOIC[0], PROPANOIC[1]);
+		library.add("toluene", TOLUENE[0], TOLUENE[1]);
+		return library;
+	}
+
+	@Test public void testSearchCosine() {
+		List<SpectrumLibrary.Hit> hits = createLibrary().search(TOLUENE[0], TOLUENE[1], 5, SpectrumLibrary.COSINE);
+		/* only the spectra which share a peak are found*/
+		assertEquals(1, hits.size());
+		assertEquals("toluene", hits.get(0).getId());
+		assertEquals(1.0, hits.get(0).getScore(), 0.000001);
+	}
+
+	@Test public void testSearchWCC() {
+		double[] positions = {31, 42, 44, 56, 73};
+		double[] intensities = {90, 25, 50, 80, 5};
+		List<SpectrumLibrary.Hit> hits = createLibrary().search(positions, intensities, 2, SpectrumLibrary.WCC);
+		assertEquals(2, hits.size());
+		assertEquals("butanol", hits.get(0).getId());
+		assertTrue(hits.get(0).getScore() > hits.get(1).getScore());
+	}
+
+	@Test public void testWriteRead() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		createLibrary().write(out);
+		SpectrumLibrary library = SpectrumLibrary.read(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(3, library.size());
+		List<SpectrumLibrary.Hit> hits = library.search(PROPANOIC[0], PROPANOIC[1], 1, SpectrumLibrary.WCC);
+		assertEquals("propanoic acid", hits.get(0).getId());
+		assertEquals(1, hits.get(0).getIndex());
+	}
+
+	@Test public void testBruteForce() {
+		Random random = new Random(7);
+		double[] binWidths = {1.0, 0.5, 0.3};
+		for(double binWidth : binWidths){
+			SpectrumLibrary library = new SpectrumLibrary(binWidth, 0.5, 2.0);
+			for(int entry = 0 ; entry < 50 ; entry++){
+				double[][] peaks = createSpectrum(random);
+				library.add("s"+entry, peaks[0], peaks[1]);
+			}
+			for(int q = 0 ; q < 20 ; q++){
+				double[][] peaks = createSpectrum(random);
+				BinnedSpectrum query = library.createQuery(peaks[0], peaks[1]);
+				checkScores(library, query, binWidth, SpectrumLibrary.COSINE);
+				checkScores(library, query, binWidth, SpectrumLibrary.WCC);
+			}
+		}
+	}
+
+	@Test public void testGrowingLibrary() {
+		/* the sums of a thread are reused by its searches, also when the library grows*/
+		Random random = new Random(11);
+		SpectrumLibrary library = new SpectrumLibrary(0.5, 0.5, 2.0);
+		for(int entry = 0 ; entry < 40 ; entry++){
+			double[][] peaks = createSpectrum(random);
+			library.add("s"+entry, peaks[0], peaks[1]);
+			peaks = createSpectrum(random);
+			BinnedSpectrum query = library.createQuery(peaks[0], peaks[1]);
+			checkScores(library, query, 0.5, SpectrumLibrary.COSINE);
+			checkScores(library, query, 0.5, SpectrumLibrary.WCC);
+		}
+	}
+
+	@Test public void testZeroIntensity() {
+		SpectrumLibrary library = new SpectrumLibrary(1.0, 1.0, 2.0);
+		/* the first intensity is 0 as float*/
+		library.add("zero", new double[]{10, 20}, new double[]{1e-50, 100});
+		List<SpectrumLibrary.Hit> hits = library.search(new double[]{10, 20}, new double[]{50, 50}, 5, SpectrumLibrary.COSINE);
+		assertEquals(1, hits.size());
+		assertEquals("zero", hits.get(0).getId());
+	}
+
+	/**
+	 * compare the scores of a search with the ones calculated for each
+	 * spectrum: the cosine of the bins, and the WCCSimilarity with the
+	 * centres of the bins as positions
+	 */
+	private static void checkScores(SpectrumLibrary library, BinnedSpectrum query, double binWidth, int scoring) {
+		WCCSimilarity wcc = new WCCSimilarity(2.0);
+		WCCSimilarity.Reference reference = wcc.createReference(getPositions(query, binWidth), getIntensities(query));
+		double[] expected = new double[library.size()];
+		int found = 0;
+		for(int entry = 0 ; entry < library.size() ; entry++){
+			BinnedSpectrum spectrum = library.getSpectrum(entry);
+			if(scoring == SpectrumLibrary.WCC)
+				expected[entry] = wcc.similarity(reference, getPositions(spectrum, binWidth), getIntensities(spectrum));
+			else
+				expected[entry] = getCosine(query, spectrum);
+			if(expected[entry] > 0)
+				found++;
+		}
+		List<SpectrumLibrary.Hit> hits = library.search(query, library.size(), scoring);
+		assertEquals(found, hits.size());
+		for(int i = 0 ; i < hits.size() ; i++){
+			SpectrumLibrary.Hit hit = hits.get(i);
+			assertEquals(expected[hit.getIndex()], hit.getScore(), 1e-9);
+			if(i > 0)
+				assertTrue(hits.get(i-1).getScore() >= hit.getScore());
+		}
+	}
+
+	private static double getCosine(BinnedSpectrum a, BinnedSpectrum b) {
+		double dot = 0.0;
+		for(int i = 0 ; i < a.size() ; i++)
+			for(int j = 0 ; j < b.size() ; j++)
+				if(a.getBin(i) == b.getBin(j))
+					dot += (double)a.getIntensity(i) * b.getIntensity(j);
+		return dot / (a.getNorm() * b.getNorm());
+	}
+
+	private static double[] getPositions(BinnedSpectrum spectrum, double binWidth) {
+		double[] positions = new double[spectrum.size()];
+		for(int i = 0 ; i < positions.length ; i++)
+			positions[i] = spectrum.getBin(i) * binWidth;
+		return positions;
+	}
+
+	private static double[] getIntensities(BinnedSpectrum spectrum) {
+		double[] intensities = new double[spectrum.size()];
+		for(int i = 0 ; i < intensities.length ; i++)
+			intensities[i] = spectrum.getIntensity(i);
+		return intensities;
+	}
+
+	/**
+	 * a random spectrum of a few peaks between m/z 20 and 60
+	 */
+	private static double[][] createSpectrum(Random random) {
+		int n = 1 + random.nextInt(8);
+		double[][] peaks = new double[2][n];
+		for(int i = 0 ; i < n ; i++){
+			peaks[0][i] = 20 + random.nextDouble() * 40;
+			peaks[1][i] = 1 + random.nextInt(100);
+		}
+		return peaks;
+	}
+}
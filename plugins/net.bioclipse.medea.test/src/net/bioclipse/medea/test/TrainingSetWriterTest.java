@@ -0,0 +1,37 @@
+package net.bioclipse.medea.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import net.bioclipse.medea.core.learning.TrainingSetWriter;
+import net.bioclipse.medea.core.prediction.ReactionModelRegistry;
+
+import org.junit.Test;
+
+public class TrainingSetWriterTest {
+
+	@Test public void testDuplicatedRows() throws Exception {
+		File directory = File.createTempFile("medea", "");
+		directory.delete();
+		directory.mkdirs();
+		String prefix = new File(directory, "total").getPath();
+		String row = "-00.5153, -00.1808,  04.7259, 0_00, \n";
+
+		TrainingSetWriter trainingSet = new TrainingSetWriter(prefix);
+		assertTrue(trainingSet.addRow(ReactionModelRegistry.RSH, row));
+		assertFalse(trainingSet.addRow(ReactionModelRegistry.RSH, row));
+		trainingSet.close();
+		assertTrue(trainingSet.getFile(ReactionModelRegistry.RSH).isFile());
+
+		/* the rows of the file are kept*/
+		trainingSet = new TrainingSetWriter(prefix);
+		assertFalse(trainingSet.addRow(ReactionModelRegistry.RSH, row));
+		assertTrue(trainingSet.addRow(ReactionModelRegistry.RSH, "-00.5153, -00.1808,  04.7138, 0_00, \n"));
+		assertEquals(2, trainingSet.getRowCount(ReactionModelRegistry.RSH));
+		assertEquals(1, trainingSet.getDuplicateCount());
+		trainingSet.close();
+	}
+}
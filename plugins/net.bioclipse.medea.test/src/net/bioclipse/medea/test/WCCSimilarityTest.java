@@ -0,0 +1,62 @@
+package net.bioclipse.medea.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import net.bioclipse.medea.core.similarity.WCCSimilarity;
+
+import org.junit.Test;
+
+public class WCCSimilarityTest {
+
+	@Test public void testIdentical() {
+		WCCSimilarity wcc = new WCCSimilarity(2);
+		double[] positions = {43, 15, 58, 29};
+		double[] intensities = {100, 12, 35, 20};
+		WCCSimilarity.Reference reference = wcc.createReference(positions, intensities);
+		assertEquals(1.0, wcc.similarity(reference, positions, intensities), 0.000001);
+	}
+
+	@Test public void testAllPairs() {
+		Random random = new Random(42);
+		for (int test = 0; test < 100; test++) {
+			double width = 1 + random.nextInt(3);
+			double[][] spectrum1 = createSpectrum(random, 1 + random.nextInt(40));
+			double[][] spectrum2 = createSpectrum(random, 1 + random.nextInt(40));
+			WCCSimilarity wcc = new WCCSimilarity(width);
+			WCCSimilarity.Reference reference = wcc.createReference(spectrum1[0], spectrum1[1]);
+
+			double expected = wcccor(spectrum1, spectrum2, width)
+				/ Math.sqrt(wcccor(spectrum1, spectrum1, width) * wcccor(spectrum2, spectrum2, width));
+			assertEquals(expected, wcc.similarity(reference, spectrum2[0], spectrum2[1]), 0.000000001);
+			assertEquals(wcccor(spectrum1, spectrum1, width), reference.getAutocorrelation(), 0.000001);
+
+			double[] batch = wcc.similarity(reference, new double[][]{spectrum2[0], spectrum1[0]},
+					new double[][]{spectrum2[1], spectrum1[1]});
+			assertEquals(expected, batch[0], 0.000000001);
+			assertEquals(1.0, batch[1], 0.000000001);
+		}
+	}
+
+	private double[][] createSpectrum(Random random, int size) {
+		double[][] spectrum = new double[2][size];
+		for (int i = 0; i < size; i++) {
+			spectrum[0][i] = random.nextInt(150);
+			spectrum[1][i] = random.nextDouble() * 100;
+		}
+		return spectrum;
+	}
+
+	/** cross correlation over all pairs of peaks*/
+	private double wcccor(double[][] spectrum1, double[][] spectrum2, double width) {
+		double sum = 0.0;
+		for (int i = 0; i < spectrum1[0].length; i++)
+			for (int j = 0; j < spectrum2[0].length; j++) {
+				double dif = Math.abs(spectrum2[0][j] - spectrum1[0][i]);
+				if (dif < width)
+					sum += spectrum1[1][i] * spectrum2[1][j] * (1.0 - dif / width);
+			}
+		return sum;
+	}
+}
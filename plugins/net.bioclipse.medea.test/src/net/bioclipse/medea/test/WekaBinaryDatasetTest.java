@@ -0,0 +1,53 @@
+package net.bioclipse.medea.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import net.bioclipse.medea.core.learning.TrainingSetWriter;
+import net.bioclipse.medea.core.prediction.ReactionModelRegistry;
+
+import org.junit.Test;
+import org.openscience.chemojava.libio.weka.WekaBinaryDataset;
+
+import weka.core.Instances;
+
+public class WekaBinaryDatasetTest {
+
+	@Test public void testConvert() throws Exception {
+		File directory = File.createTempFile("medea", "");
+		directory.delete();
+		directory.mkdirs();
+		TrainingSetWriter trainingSet = new TrainingSetWriter(new File(directory, "total").getPath());
+		trainingSet.addRow(ReactionModelRegistry.RSH, "-00.5153, -00.1808,  04.7259, 0_00, \n");
+		trainingSet.addRow(ReactionModelRegistry.RSH, "-00.5153, -00.1808,  04.7138, 0_42, \n");
+		trainingSet.close();
+		File arff = trainingSet.getFile(ReactionModelRegistry.RSH);
+		File binary = new File(directory, "total-rsh"+WekaBinaryDataset.EXTENSION);
+
+		assertFalse(WekaBinaryDataset.isBinary(arff));
+		WekaBinaryDataset.convert(arff, binary);
+		assertTrue(WekaBinaryDataset.isBinary(binary));
+
+		WekaBinaryDataset dataset = WekaBinaryDataset.read(binary);
+		assertEquals(4, dataset.getNumAttributes());
+		assertEquals(2, dataset.getNumInstances());
+		assertEquals(3, dataset.getClassIndex());
+		assertEquals("PartialSigmaChargeDescriptor_R", dataset.getAttributeName(0));
+		assertEquals(4.7138, dataset.getColumn(2)[1], 0.00001);
+		assertEquals("0_42", dataset.getNominalValues(3)[(int)dataset.getColumn(3)[1]]);
+
+		Instances instances = dataset.toInstances();
+		assertEquals(2, instances.numInstances());
+		assertEquals("0_00", instances.instance(0).stringValue(instances.classIndex()));
+		assertEquals(-0.5153, instances.instance(1).value(0), 0.00001);
+
+		instances = WekaBinaryDataset.readInstances(binary);
+		assertEquals(2, instances.numInstances());
+		assertEquals(3, instances.classIndex());
+		assertEquals("0_42", instances.instance(1).stringValue(instances.classIndex()));
+		assertEquals(4.7259, instances.instance(0).value(2), 0.00001);
+	}
+}
@@ -10,12 +10,16 @@
  ******************************************************************************/
 package net.bioclipse.medea.business;
 
+import java.util.Iterator;
+import java.util.List;
+
 import net.bioclipse.core.PublishedMethod;
 import net.bioclipse.core.TestClasses;
 import net.bioclipse.core.TestMethods;
 import net.bioclipse.core.domain.IMolecule;
 import net.bioclipse.core.domain.ISpectrum;
 import net.bioclipse.managers.business.IBioclipseManager;
+import net.bioclipse.medea.core.IPredictionListener;
 import net.bioclipse.reaction.domain.ICDKReactionScheme;
 
 @TestClasses(
@@ -31,6 +35,25 @@ public interface IMedeaManager extends IBioclipseManager {
     @TestMethods("testPredictMassSpectrum_IMolecule")
     public ICDKReactionScheme predictMassSpectrum(IMolecule molecule);
 
+    @PublishedMethod(
+        params="List<IMolecule> molecules",
+        methodSummary="Predicts the EI mass spectra for a list of molecules " +
+        		"using all processors. The list returned has the same order, " +
+        		"with null for the molecules which failed"
+    )
+    @TestMethods("testPredictMassSpectra_List")
+    public List<ICDKReactionScheme> predictMassSpectra(List<? extends IMolecule> molecules);
+
+    @PublishedMethod(
+        params="Iterator<? extends IMolecule> molecules,IPredictionListener listener",
+        methodSummary="Predicts the EI mass spectra of the molecules of an " +
+        		"iterator, for example over a large SD file, using all " +
+        		"processors. Each result is given to the listener as soon as " +
+        		"it is finished and is not kept"
+    )
+    @TestMethods("testPredictMassSpectra_Iterator_IPredictionListener")
+    public void predictMassSpectra(Iterator<? extends IMolecule> molecules, IPredictionListener listener);
+
     @PublishedMethod(
             params="IMolecule molecule,ISpectrum spectrum,String nameFile",
             methodSummary="Learns an EI mass spectrum for the given molecule and the corresponding spectrum"
@@ -38,6 +61,16 @@ public interface IMedeaManager extends IBioclipseManager {
     @TestMethods("testLearnMassSpectrum_IMolecule_ISpectrum_String")
 	public ICDKReactionScheme learnMassSpectrum(IMolecule molecule, ISpectrum spectrum, String nameFile);
 
+    @PublishedMethod(
+            params="List<IMolecule> molecules,List<ISpectrum> spectra,String nameFile",
+            methodSummary="Learns the EI mass spectra of a library of molecules " +
+            		"in parallel. The reactions are appended without duplicates " +
+            		"to one training set for each type, [nameFile]-rsi.arff ... " +
+            		"Returns the number of molecules learned"
+        )
+    @TestMethods("testLearnMassSpectra_List_List_String")
+    public int learnMassSpectra(List<? extends IMolecule> molecules, List<? extends ISpectrum> spectra, String nameFile);
+
     @PublishedMethod(
             params="ICDKReactionScheme rectionScheme",
             methodSummary="Convert a ICDKRectionScheme into a ISpectrum"
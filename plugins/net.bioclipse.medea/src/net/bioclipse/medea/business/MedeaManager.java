@@ -10,20 +10,51 @@
  ******************************************************************************/
 package net.bioclipse.medea.business;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
 import net.bioclipse.cdk.domain.ICDKMolecule;
 import net.bioclipse.core.domain.IMolecule;
 import net.bioclipse.core.domain.ISpectrum;
 import net.bioclipse.managers.business.IBioclipseManager;
+import net.bioclipse.medea.Activator;
+import net.bioclipse.medea.core.FragmentationOptions;
+import net.bioclipse.medea.core.IPredictionListener;
 import net.bioclipse.medea.core.Medea;
+import net.bioclipse.medea.core.MedeaBatchPredictor;
+import net.bioclipse.medea.core.MedeaEnginePool;
+import net.bioclipse.medea.core.PredictionCache;
+import net.bioclipse.medea.core.learning.LearningPipeline;
+import net.bioclipse.medea.core.learning.TrainingSetWriter;
+import net.bioclipse.medea.core.prediction.ReactionModelRegistry;
 import net.bioclipse.reaction.domain.ICDKReactionScheme;
 import net.bioclipse.spectrum.domain.JumboSpectrum;
 
+import org.apache.log4j.Logger;
+import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.xmlcml.cml.element.CMLSpectrum;
 
 public class MedeaManager implements IBioclipseManager {
 
-    private final static Medea predictor = new Medea();
+    private static final Logger logger = Logger.getLogger(MedeaManager.class);
+
+    /** one Medea for each processor, so that the calls can run at the same time */
+    private final static MedeaEnginePool predictors =
+        new MedeaEnginePool(Runtime.getRuntime().availableProcessors());
+
+    /** number of predictions kept in memory */
+    private final static int CACHE_SIZE = 5000;
+
+    /** predictions by structure, kept in memory and in the state location of the plug-in */
+    private static PredictionCache cache = null;
+
+    /** version of the classifiers which made the cached predictions */
+    private static long cacheVersion = 0;
 
     public String getManagerName() {
         return "medea";
@@ -42,10 +73,126 @@ public class MedeaManager implements IBioclipseManager {
         }
 
         IAtomContainer container = mol.getAtomContainer();
-        predictor.predictMS(container);
-        ICDKReactionScheme reactionScheme = predictor.getPredictedFragmentation();
-        System.out.println("reactionScheme: "+reactionScheme);
-        return reactionScheme;
+        String key = PredictionCache.getKey(container);
+        PredictionCache.Entry cached = getCache().get(key);
+        if (cached != null)
+            return cached.getReactionScheme();
+
+        Medea predictor = borrowPredictor();
+        try {
+            /* a failed prediction is not cached */
+            predictor.predict(container);
+            ICDKReactionScheme reactionScheme = predictor.getPredictedFragmentation();
+            /* a result stopped by a limit is not kept*/
+            cacheResult(key, predictor);
+            return reactionScheme;
+        } catch (CDKException e) {
+            throw new RuntimeException("The prediction failed: " + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new RuntimeException("The prediction failed: " + e.getMessage(), e);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("The prediction failed: " + e.getMessage(), e);
+        } finally {
+            predictors.release(predictor);
+        }
+    }
+
+    /**
+     * Predict the mass spectra of a list of molecules, in parallel with one
+     * thread for each processor. A molecule which fails does not stop the
+     * others, its entry in the returned list is null.
+     * 
+     * @param molecules The molecules to predict the spectrum
+     * @return          The predicted fragmentations, in the same order
+     */
+    public List<ICDKReactionScheme> predictMassSpectra(List<? extends IMolecule> molecules) {
+        PredictionCache cache = getCache();
+        /* only the molecules which are not in the cache are predicted */
+        List<IAtomContainer> containers = new ArrayList<IAtomContainer>(molecules.size());
+        final List<Integer> positions = new ArrayList<Integer>(molecules.size());
+        final List<String> keys = new ArrayList<String>(molecules.size());
+        final List<ICDKReactionScheme> schemes = new ArrayList<ICDKReactionScheme>(molecules.size());
+        for (IMolecule molecule : molecules) {
+            ICDKMolecule mol = (ICDKMolecule)molecule.getAdapter(ICDKMolecule.class);
+            IAtomContainer container = mol == null ? null : mol.getAtomContainer();
+            String key = container == null ? null : PredictionCache.getKey(container);
+            PredictionCache.Entry cached = key == null ? null : cache.get(key);
+            if (cached != null) {
+                schemes.add(cached.getReactionScheme());
+                continue;
+            }
+            positions.add(schemes.size());
+            keys.add(key);
+            containers.add(container);
+            schemes.add(null);
+        }
+        if (containers.isEmpty())
+            return schemes;
+
+        MedeaBatchPredictor batch = new MedeaBatchPredictor();
+        try {
+            batch.predict(containers, new IPredictionListener() {
+                public void predicted(int index, IAtomContainer molecule, Medea medea) {
+                    ICDKReactionScheme reactionScheme = medea.getPredictedFragmentation();
+                    schemes.set(positions.get(index), reactionScheme);
+                    cacheResult(keys.get(index), medea);
+                }
+                public void failed(int index, IAtomContainer molecule, Throwable error) {
+                    logger.warn("Prediction of molecule " + positions.get(index) + " failed: " + error.getMessage(), error);
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("The prediction was interrupted", e);
+        } finally {
+            batch.shutdown();
+        }
+        return schemes;
+    }
+
+    /**
+     * Predict the mass spectra of the molecules of an iterator, with one
+     * thread for each processor. Only a few molecules are read in advance
+     * and each result is given to the listener as soon as it is finished,
+     * so that a large SD file can be predicted without keeping the molecules
+     * or the spectra in memory. The results are also put in the cache, but
+     * each molecule is predicted because the listener receives the Medea.
+     * 
+     * @param molecules The molecules to predict the spectrum
+     * @param listener  The IPredictionListener which receives the results, the
+     *                  index is the position of the molecule in the iterator
+     */
+    public void predictMassSpectra(final Iterator<? extends IMolecule> molecules, final IPredictionListener listener) {
+        /* the molecules are adapted when the batch reads them, null if it is not a CDK molecule */
+        Iterator<IAtomContainer> containers = new Iterator<IAtomContainer>() {
+            public boolean hasNext() {
+                return molecules.hasNext();
+            }
+            public IAtomContainer next() {
+                ICDKMolecule mol = (ICDKMolecule)molecules.next().getAdapter(ICDKMolecule.class);
+                return mol == null ? null : mol.getAtomContainer();
+            }
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        MedeaBatchPredictor batch = new MedeaBatchPredictor();
+        try {
+            batch.predict(containers, new IPredictionListener() {
+                public void predicted(int index, IAtomContainer molecule, Medea medea) {
+                    cacheResult(PredictionCache.getKey(molecule), medea);
+                    listener.predicted(index, molecule, medea);
+                }
+                public void failed(int index, IAtomContainer molecule, Throwable error) {
+                    listener.failed(index, molecule, error);
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("The prediction was interrupted", e);
+        } finally {
+            batch.shutdown();
+        }
     }
 
     /**
@@ -62,9 +209,72 @@ public class MedeaManager implements IBioclipseManager {
         }
 
         IAtomContainer container = mol.getAtomContainer();
-        predictor.learningMS(container, ((JumboSpectrum)spectrum).getJumboObject(), nameFile);
-        ICDKReactionScheme reactionScheme = predictor.getPredictedFragmentation();
-        return reactionScheme;
+        Medea predictor = borrowPredictor();
+        try {
+            predictor.learn(container, ((JumboSpectrum)spectrum).getJumboObject(), nameFile, null);
+            ICDKReactionScheme reactionScheme = predictor.getPredictedFragmentation();
+            return reactionScheme;
+        } catch (CDKException e) {
+            throw new RuntimeException("The learning failed: " + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new RuntimeException("The learning failed: " + e.getMessage(), e);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("The learning failed: " + e.getMessage(), e);
+        } finally {
+            predictors.release(predictor);
+        }
+    }
+    /**
+     * Learn the fragmentation of a library of molecules with their spectra,
+     * with one thread for each processor. The reactions of all molecules are
+     * appended to one training set for each type of reaction, without the
+     * rows which are already there.
+     * 
+     * @param molecules The molecules
+     * @param spectra   The spectrum of each molecule, in the same order
+     * @param nameFile  The prefix of the training sets, [nameFile]-rsi.arff ...
+     * @return          The number of molecules learned
+     */
+    public int learnMassSpectra(List<? extends IMolecule> molecules, List<? extends ISpectrum> spectra, String nameFile) {
+        if (molecules.size() != spectra.size())
+            throw new IllegalArgumentException("The number of molecules and spectra is not the same");
+        List<IAtomContainer> containers = new ArrayList<IAtomContainer>(molecules.size());
+        List<CMLSpectrum> cmlSpectra = new ArrayList<CMLSpectrum>(spectra.size());
+        for (int i = 0; i < molecules.size(); i++) {
+            ICDKMolecule mol = (ICDKMolecule)molecules.get(i).getAdapter(ICDKMolecule.class);
+            if (mol == null) {
+                throw new RuntimeException("Only supports ICDKMolecule for now.");
+            }
+            containers.add(mol.getAtomContainer());
+            cmlSpectra.add(((JumboSpectrum)spectra.get(i)).getJumboObject());
+        }
+
+        final int[] learned = new int[1];
+        TrainingSetWriter trainingSet = new TrainingSetWriter(nameFile);
+        LearningPipeline pipeline = new LearningPipeline(trainingSet);
+        try {
+            pipeline.learn(containers, cmlSpectra, new IPredictionListener() {
+                public void predicted(int index, IAtomContainer molecule, Medea medea) {
+                    learned[0]++;
+                }
+                public void failed(int index, IAtomContainer molecule, Throwable error) {
+                    logger.warn("Learning of molecule " + index + " failed: " + error.getMessage(), error);
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("The learning was interrupted", e);
+        } catch (IOException e) {
+            throw new RuntimeException("The training sets could not be written", e);
+        } finally {
+            pipeline.shutdown();
+            try {
+                trainingSet.close();
+            } catch (IOException e) {
+                logger.warn("The training sets could not be closed", e);
+            }
+        }
+        return learned[0];
     }
     /**
      * Convert a ReactionScheme into a ISpectrum
@@ -73,9 +283,90 @@ public class MedeaManager implements IBioclipseManager {
      * @return              Converted spectrum
      */
     public ISpectrum convertToSpectrum(ICDKReactionScheme rectionScheme){
-    	CMLSpectrum cmlSpectrum = predictor.convert(rectionScheme);
+        Medea predictor = borrowPredictor();
+        CMLSpectrum cmlSpectrum;
+        try {
+            cmlSpectrum = predictor.convert(rectionScheme);
+        } finally {
+            predictors.release(predictor);
+        }
         ISpectrum spectrum = new JumboSpectrum(cmlSpectrum);
         return spectrum;
     }
 
+    /**
+     * Get the cache of the predictions. The results are also written in the
+     * state location of the plug-in, if it is running. When a classifier was
+     * trained again the cached predictions are removed from memory, and the
+     * ones of the state location are only read again with the same
+     * classifiers and options, see getStamp().
+     * 
+     * @return The PredictionCache
+     */
+    private static synchronized PredictionCache getCache() {
+        long version = ReactionModelRegistry.getInstance().getVersion();
+        if (cache == null) {
+            File directory = null;
+            try {
+                if (Activator.getDefault() != null)
+                    directory = Activator.getDefault().getStateLocation()
+                        .append("predictions").toFile();
+            } catch (IllegalStateException e) {
+                logger.warn("No state location, predictions are only cached in memory", e);
+            }
+            cache = new PredictionCache(CACHE_SIZE, directory);
+            cache.setStamp(getStamp());
+        } else if (version != cacheVersion) {
+            cache.setStamp(getStamp());
+        }
+        cacheVersion = version;
+        return cache;
+    }
+
+    /**
+     * Get the stamp of the cached predictions: the fingerprints of the 
+     * training sets of the classifiers and the options of the predictors of
+     * the pool, which are the default ones. If the training sets can not be 
+     * read the stamp is only valid in this session.
+     * 
+     * @return The stamp
+     */
+    private static String getStamp() {
+        String fingerprint;
+        try {
+            fingerprint = ReactionModelRegistry.getInstance().getFingerprint();
+        } catch (IOException e) {
+            logger.warn("No fingerprint of the classifiers, predictions are only cached in this session", e);
+            fingerprint = UUID.randomUUID().toString();
+        }
+        return fingerprint + " " + new FragmentationOptions();
+    }
+
+    /**
+     * Put a result into the cache, if it is complete and it was made with
+     * the classifiers of the cached predictions.
+     * 
+     * @param key   The key of the molecule
+     * @param medea The Medea with the result
+     */
+    private static synchronized void cacheResult(String key, Medea medea) {
+        PredictionCache current = getCache();
+        if (!medea.isPartial() && medea.getModelVersion() == cacheVersion)
+            current.put(key, medea.getPredictedSpectrum(), medea.getPredictedFragmentation());
+    }
+
+    /**
+     * Take a free Medea from the pool, waiting until one is released.
+     * 
+     * @return The Medea object
+     */
+    private Medea borrowPredictor() {
+        try {
+            return predictors.borrow();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a free predictor", e);
+        }
+    }
+
 }
@@ -0,0 +1,170 @@
+package net.bioclipse.medea.core;
+
+/**
+ * Class which calculates the abundances of the fragments of a FragmentTree
+ * from the probabilities of their reactions. A fragment can be obtained from
+ * several parents, so the fragments are ordered once topologically: each one
+ * is visited after all its parents, and its abundance is complete when its
+ * children are calculated. Over this order there are three linear sweeps:
+ * <ul>
+ * <li>the abundance which each reaction gives to its child,</li>
+ * <li>the abundance of each fragment without the one of its children,</li>
+ * <li>the abundance relative to the most abundant fragment, 0 to 100.</li>
+ * </ul>
+ * The abundance which a fragment gives to its children is the sum of the
+ * ones of all its parents. The sum of the probabilities of the reactions of
+ * a fragment is calculated once. If the fragments are a tree, the order is
+ * the breadth-first one from the molecular ion.
+ * <p>
+ * The sweeps are not merged into one pass. The second one subtracts from a
+ * fragment the whole abundance of its children, which is only known when
+ * all the parents of each child were visited in the first sweep; a child
+ * with another parent later in the order would still miss a part of it. The
+ * third one divides by the maximum of the final abundances, which is only
+ * known after the second sweep, also for the fragments of a cycle whose
+ * abundance is still clamped after they were visited. Each sweep is linear
+ * in the number of reactions.
+ *
+ * @author Miguel Rojas
+ */
+public class AbundancePropagator {
+
+	/** name of the reaction which ionizes the molecule*/
+	private static final String IONIZATION = "Ionitzation";
+	/** part of the ions which are fragmented*/
+	private static final double FRAGMENTED = 1-Math.exp(-3.4);
+
+	/**
+	 * Constructor of the AbundancePropagator object
+	 */
+	private AbundancePropagator(){
+	}
+	/**
+	 * set the abundances of the fragments of a FragmentTree. The fragments
+	 * which are not reached from the molecular ion are not changed, the
+	 * molecular ion has 0.
+	 *
+	 * @param fragmentTree The FragmentTree
+	 */
+	public static void propagate(FragmentTree fragmentTree){
+		FragmentGraph graph = fragmentTree.getGraph();
+		int root = fragmentTree.getMolecularIon().getNode();
+		int[] order = getOrder(graph, root);
+		double[] abundances = new double[graph.getNodeCount()];
+		abundances[root] = -1.0;
+
+		/* abundance of the reactions*/
+		for(int i = 0 ; i < order.length; i++){
+			int node = order[i];
+			/* all parents were visited, the abundance of the fragment is complete*/
+			double abundanceParent = graph.getProbability(node);
+			if(node != root){
+				abundanceParent = abundances[node];
+				graph.setProbability(node, abundanceParent);
+			}
+			int count = graph.getChildCount(node);
+			double probTotal = 0.0;
+			if(count > 1)
+				for(int j = 0 ; j < count; j++)
+					probTotal += graph.getEdgeProbability(graph.getChildEdge(node, j));
+			if(probTotal == 0)
+				probTotal = 1;
+			for(int j = 0 ; j < count; j++){
+				int edge = graph.getChildEdge(node, j);
+				int child = graph.getEdgeTarget(edge);
+				double abundance;
+				if(IONIZATION.equals(graph.getEdgeProcess(edge))){
+					double probParent = graph.getChildCount(child) > 0 ? 1.0 : 0.0;
+					abundance = probParent*graph.getEdgeProbability(edge)*FRAGMENTED;
+				}else
+					abundance = abundanceParent*graph.getEdgeProbability(edge)*FRAGMENTED/probTotal;
+				abundances[child] += abundance;
+			}
+		}
+
+		/* subtract the descendents*/
+		double maxAbundance = 0.0;
+		for(int i = 0 ; i < order.length; i++){
+			int node = order[i];
+			double abundance = abundances[node];
+			double abundanceTChildren = 0.0;
+			if(abundance != -1)
+				for(int j = 0 ; j < graph.getChildCount(node); j++){
+					int child = graph.getEdgeTarget(graph.getChildEdge(node, j));
+					/*it is not possible that abundanceTChildren < abundance*/
+					if(abundances[child] > abundance && node != root)
+						abundances[child] = abundance;
+					abundanceTChildren += abundances[child];
+				}
+			double abundanceT = abundance - abundanceTChildren;
+			if(abundanceT < 0)
+				abundanceT = 0;
+			abundances[node] = abundanceT;
+		}
+		for(int i = 1 ; i < order.length; i++)
+			if(abundances[order[i]] > maxAbundance)
+				maxAbundance = abundances[order[i]];
+
+		/* relative abundance*/
+		graph.getFragment(root).setAbundance(0.0);
+		for(int i = 1 ; i < order.length; i++){
+			double aa = abundances[order[i]]/maxAbundance*100;
+			graph.getFragment(order[i]).setAbundance(aa < 0 ? 0.0 : aa);
+		}
+	}
+	/**
+	 * get the fragments reached from the molecular ion, each one after its
+	 * parents. The fragments of a cycle, which has not such order, are taken
+	 * in the order they are found from the molecular ion.
+	 *
+	 * @param graph The FragmentGraph
+	 * @param root  The node of the molecular ion
+	 * @return      The nodes, the first one is the molecular ion
+	 */
+	static int[] getOrder(FragmentGraph graph, int root){
+		int nodeCount = graph.getNodeCount();
+		/* the reached fragments and the reactions into each one*/
+		int[] found = new int[nodeCount];
+		boolean[] reached = new boolean[nodeCount];
+		int[] inDegree = new int[nodeCount];
+		int foundCount = 0;
+		found[foundCount++] = root;
+		reached[root] = true;
+		for(int i = 0 ; i < foundCount; i++){
+			int node = found[i];
+			for(int j = 0 ; j < graph.getChildCount(node); j++){
+				int child = graph.getEdgeTarget(graph.getChildEdge(node, j));
+				inDegree[child]++;
+				if(!reached[child]){
+					reached[child] = true;
+					found[foundCount++] = child;
+				}
+			}
+		}
+
+		int[] order = new int[foundCount];
+		boolean[] ordered = new boolean[nodeCount];
+		int orderCount = 0;
+		int next = 0;
+		order[orderCount++] = root;
+		ordered[root] = true;
+		for(int i = 0 ; i < foundCount; i++){
+			if(i == orderCount){
+				/* the fragments left are in a cycle*/
+				while(ordered[found[next]])
+					next++;
+				order[orderCount++] = found[next];
+				ordered[found[next]] = true;
+			}
+			int node = order[i];
+			for(int j = 0 ; j < graph.getChildCount(node); j++){
+				int child = graph.getEdgeTarget(graph.getChildEdge(node, j));
+				if(--inDegree[child] == 0 && !ordered[child]){
+					order[orderCount++] = child;
+					ordered[child] = true;
+				}
+			}
+		}
+		return order;
+	}
+}
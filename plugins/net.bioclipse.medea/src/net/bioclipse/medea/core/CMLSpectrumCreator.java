@@ -1,23 +1,30 @@
 package net.bioclipse.medea.core;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
-import org.openscience.cdk.interfaces.IMolecularFormula;
-import org.openscience.cdk.interfaces.IMolecule;
-import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
-import org.xmlcml.cml.element.CMLPeak;
-import org.xmlcml.cml.element.CMLPeakList;
 import org.xmlcml.cml.element.CMLSpectrum;
 
 /**
  * Class which searchs abundance of each peaks (sum of the fragment's 
- * abundance) and creates a CMLSpectrum from the FragmentTree.
+ * abundance) and creates a MassSpectrum from the FragmentTree. Only the
+ * masses which have fragments are visited, the CMLSpectrum is created from
+ * the MassSpectrum if it is asked.
+ * <p>
+ * By default the peaks are the nominal masses. With an IsotopePatternGenerator
+ * each fragment gives the isotope pattern of its formula at exact masses,
+ * weighted by its abundance, and the peaks are merged at the resolution of
+ * the generator.
  * 
  * @author Miguel Rojas
  */
 class CMLSpectrumCreator {
 	
-	private CMLSpectrum cmlSpectrum;
+	private MassSpectrum massSpectrum;
+	/** isotope peaks of the fragments, m/z and intensity*/
+	private double[] isotopeMasses;
+	private double[] isotopeIntensities;
+	private int isotopeCount = 0;
 	/**
 	 * Constructor of the CMLSpectrumCreator object
 	 * 
@@ -25,62 +32,158 @@ class CMLSpectrumCreator {
 	 * @param fragmentTree The FragmentTree object
 	 */
 	CMLSpectrumCreator(int process, FragmentTree fragmentTree){
+		this(process, fragmentTree, null);
+	}
+	/**
+	 * Constructor of the CMLSpectrumCreator object with the isotope patterns
+	 * of the fragments. The learning process only uses the nominal masses.
+	 * 
+	 * @param process      The process
+	 * @param fragmentTree The FragmentTree object
+	 * @param isotopes     The IsotopePatternGenerator, null for the nominal masses
+	 */
+	CMLSpectrumCreator(int process, FragmentTree fragmentTree, IsotopePatternGenerator isotopes){
+		if(process == Medea.LEARNINGPROCESS)
+			isotopes = null;
 		/*obtain the mass of the arrayList which contains the ionized fragments*/
-		IMolecule molecule = fragmentTree.getMolecule();
-		IMolecularFormula formula = MolecularFormulaManipulator.getMolecularFormula(molecule);
-		double massI = (int)Math.round(MolecularFormulaManipulator.getTotalExactMass(formula));
+		double massI = (int)Math.round(fragmentTree.getMolecularIon().getExactMass());
 		
-		cmlSpectrum = new CMLSpectrum();
-		cmlSpectrum.setType("massSpectrum");
-		CMLPeakList peakList = new CMLPeakList();
+		int[] masses = fragmentTree.getMasses();
+		double[] peaksX = new double[masses.length];
+		double[] peaksY = new double[masses.length];
+		int size = 0;
 		
-		FragmentTreeSub fts = fragmentTree.getFragments((int)Math.round(massI));
-		
-		for(int i = 0; i <= massI ; i++){
-			fts = fragmentTree.getFragments(i);
+		for(int m = 0; m < masses.length && masses[m] <= massI ; m++){
+			int i = masses[m];
+			if(i < 0)
+				continue;
+			FragmentTreeSub fts = fragmentTree.getFragments(i);
 
 			if(fts.size() > 0){
 				double abundance = 0.0;
+				/* only will be summed the ionized fragments and not the rearrangements*/
+				int numbIonized = 0;
 				if(process == Medea.LEARNINGPROCESS)
 					abundance = 100.0;
 				else{
-					/* only will be summed the ionized fragments and not the rearrangements*/
-					int numbIonized = 0;
-					if(i == massI ){
-						ArrayList<String> list = fts.get(0).getProcess();
-						for(int k = 0 ; k < list.size(); k++)
-							if(list.get(k).equals("Ionitzation"))
-								numbIonized++;
-							
-					}
+					if(i == massI )
+						numbIonized = numbIonized(fts);
 
 					/*sum the abundance of all fragments with have the same m/c */
 					for(int j = 0 ; j < fts.size(); j++){
 						if(i == massI )
 							if(j < numbIonized)
 								break;
-						double ab = 0.0;
-						if(!(new Double(ab)).toString().equals("NaN"))
-							ab = (double)fts.get(j).getAbundance();
-						else{
-						}
-						abundance = abundance + ab;
+						abundance = abundance + fts.get(j).getAbundance();
 					}
 				}
 				if(abundance == 0.0 )
 					continue;
 				
-				System.out.println(i+" "+abundance);
-				CMLPeak peak = new CMLPeak();
-				peak.setXUnits("jcampdx: m/z");
-				peak.setYUnits("jcampdx: RELATIVE ABUNDANCE");
-				peak.setXValue(i);
-				peak.setYValue(100);
-				peakList.addPeak(peak);
+				if(isotopes != null){
+					for(int j = 0 ; j < fts.size(); j++){
+						if(i == massI )
+							if(j < numbIonized)
+								break;
+						addIsotopes(isotopes, fts.get(j), i);
+					}
+					continue;
+				}
+				peaksX[size] = i;
+				peaksY[size] = 100;
+				size++;
 			}
 		}
 
-		cmlSpectrum.addPeakList(peakList);
+		if(isotopes != null)
+			massSpectrum = createIsotopeSpectrum(isotopes);
+		else
+			massSpectrum = new MassSpectrum(trim(peaksX, size), trim(peaksY, size), null);
+	}
+	/**
+	 * get the number of ionizations of the first fragment of a mass, they
+	 * are not summed to the peak of the molecular ion.
+	 */
+	private static int numbIonized(FragmentTreeSub fts){
+		int numbIonized = 0;
+		List<String> list = fts.get(0).getProcess();
+		for(int k = 0 ; k < list.size(); k++)
+			if(list.get(k).equals("Ionitzation"))
+				numbIonized++;
+		return numbIonized;
+	}
+	/**
+	 * add the isotope pattern of a fragment, as cation, weighted by its abundance.
+	 * If the pattern of its formula is not known, the nominal mass is added.
+	 */
+	private void addIsotopes(IsotopePatternGenerator isotopes, FragmentMolecule fragment, int mass){
+		double abundance = fragment.getAbundance();
+		/* the abundance could not be calculated, as the flat nominal peak*/
+		if(Double.isNaN(abundance))
+			abundance = 100.0;
+		if(abundance <= 0)
+			return;
+		MassSpectrum pattern;
+		try{
+			pattern = isotopes.getPattern(fragment.getFormula());
+		}catch(IllegalArgumentException e){
+			pattern = new MassSpectrum(new double[]{mass + IsotopePatternGenerator.ELECTRON_MASS}, new double[]{1.0}, null);
+		}
+		if(isotopeMasses == null){
+			isotopeMasses = new double[16];
+			isotopeIntensities = new double[16];
+		}
+		if(isotopeCount + pattern.size() > isotopeMasses.length){
+			int capacity = Math.max(isotopeMasses.length*2, isotopeCount + pattern.size());
+			double[] masses = new double[capacity];
+			double[] intensities = new double[capacity];
+			System.arraycopy(isotopeMasses, 0, masses, 0, isotopeCount);
+			System.arraycopy(isotopeIntensities, 0, intensities, 0, isotopeCount);
+			isotopeMasses = masses;
+			isotopeIntensities = intensities;
+		}
+		for(int k = 0 ; k < pattern.size() ; k++){
+			isotopeMasses[isotopeCount] = pattern.getMass(k) - IsotopePatternGenerator.ELECTRON_MASS;
+			isotopeIntensities[isotopeCount++] = pattern.getIntensity(k)*abundance;
+		}
+	}
+	/**
+	 * sort the isotope peaks of all fragments, merge them at the resolution
+	 * of the generator and scale them to 100 for the highest peak.
+	 */
+	private MassSpectrum createIsotopeSpectrum(IsotopePatternGenerator isotopes){
+		/* the m/z in micro units in the high part, the index of the peak in the low part*/
+		long[] sorted = new long[isotopeCount];
+		for(int i = 0 ; i < isotopeCount ; i++)
+			sorted[i] = (Math.round(isotopeMasses[i]*1e6) << 24) | i;
+		Arrays.sort(sorted);
+		double[] masses = new double[isotopeCount];
+		double[] intensities = new double[isotopeCount];
+		for(int i = 0 ; i < isotopeCount ; i++){
+			int index = (int)(sorted[i] & 0xffffff);
+			masses[i] = isotopeMasses[index];
+			intensities[i] = isotopeIntensities[index];
+		}
+		MassSpectrum merged = isotopes.centroid(masses, intensities, isotopeCount);
+		double max = 0.0;
+		for(int i = 0 ; i < merged.size() ; i++)
+			if(merged.getIntensity(i) > max)
+				max = merged.getIntensity(i);
+		double[] peaksX = new double[merged.size()];
+		double[] peaksY = new double[merged.size()];
+		for(int i = 0 ; i < merged.size() ; i++){
+			peaksX[i] = merged.getMass(i);
+			peaksY[i] = merged.getIntensity(i)/max*100;
+		}
+		return new MassSpectrum(peaksX, peaksY, null);
+	}
+	/**
+	 * get the simulated MassSpectrum
+	 *
+	 * @return The MassSpectrum object
+	 */
+	MassSpectrum getMassSpectrum() {
+		return massSpectrum;
 	}
 	/**
 	 * get the simulated CMLSpectrum
@@ -88,6 +191,14 @@ class CMLSpectrumCreator {
 	 * @return The CMLSpectrum object
 	 */
 	CMLSpectrum getCMLSpectrum() {
-		return cmlSpectrum;
+		return massSpectrum.getCMLSpectrum();
+	}
+
+	private static double[] trim(double[] array, int size){
+		if(array.length == size)
+			return array;
+		double[] result = new double[size];
+		System.arraycopy(array, 0, result, 0, size);
+		return result;
 	}
 }
@@ -0,0 +1,106 @@
+package net.bioclipse.medea.core;
+
+import java.io.PrintStream;
+
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IMolecule;
+import org.openscience.cdk.interfaces.IReactionSet;
+import org.openscience.cdk.smiles.SmilesGenerator;
+
+/**
+ * Listener which prints the events of a fragmentation, with the SMILES of
+ * each fragment. Used to follow a fragmentation by hand, it is slow. With
+ * atoms, each new fragment is printed atom by atom.
+ * <pre>
+ *  medea.addFragmentationListener(new ConsoleFragmentationListener());
+ * </pre>
+ * 
+ * @author Miguel Rojas
+ */
+public class ConsoleFragmentationListener implements IFragmentationListener {
+
+	private static final String[] REASONS = {
+		"is not Accepted",
+		"notisExistingPeak",
+		"isPredecesor-Not added",
+		"low probability",
+		"out of the beam",
+		"limit of fragments"};
+
+	private final PrintStream out;
+	private final boolean printAtoms;
+	private final SmilesGenerator smilesGenerator = new SmilesGenerator();
+
+	/**
+	 * Constructor of the ConsoleFragmentationListener object which prints 
+	 * into System.out without the atoms.
+	 */
+	public ConsoleFragmentationListener(){
+		this(System.out, false);
+	}
+	/**
+	 * Constructor of the ConsoleFragmentationListener object.
+	 * 
+	 * @param out        The PrintStream
+	 * @param printAtoms True, if the atoms of each new fragment are printed
+	 */
+	public ConsoleFragmentationListener(PrintStream out, boolean printAtoms){
+		this.out = out;
+		this.printAtoms = printAtoms;
+	}
+
+	public void reactionApplied(FragmentMolecule fragment, String nameReaction, IReactionSet reactions) {
+		int count = reactions == null ? 0 : reactions.getReactionCount();
+		out.println("--"+nameReaction+"-- "+getId(fragment)+", numberOfReactions: "+count);
+	}
+
+	public void reactionFailed(FragmentMolecule fragment, String nameReaction, Exception cause) {
+		out.println("error in a fragmentation. ReactionType:"+nameReaction+" "+getId(fragment)+": "+cause);
+	}
+
+	public void fragmentCreated(FragmentMolecule fragment, FragmentMolecule parent, String nameReaction, double probability) {
+		out.println("NEW: "+getId(fragment)+" from "+getId(parent)+" by "+nameReaction+", proba: "+probability);
+		printInformation(fragment);
+	}
+
+	public void duplicateFound(FragmentMolecule fragment, FragmentMolecule parent, String nameReaction) {
+		out.println("exists: "+getId(fragment)+" from "+getId(parent)+" by "+nameReaction);
+	}
+
+	public void fragmentRejected(IMolecule product, FragmentMolecule parent, String nameReaction, int reason) {
+		out.println(REASONS[reason]+": "+createSMILES(product)+" from "+getId(parent)+" by "+nameReaction);
+	}
+
+	public void fragmentationEnded(FragmentTree fragmentTree, boolean truncated) {
+		out.println("Ended"+(truncated ? " (truncated)" : ""));
+	}
+
+	private void printInformation(FragmentMolecule fragment) {
+		out.println("SMILE: " + createSMILES(fragment)+", count Atoms: " + fragment.getAtomCount()+ ", count Bonds: " + fragment.getBondCount() + ", imass: "+ fragment.getNominalMass());
+		if(!printAtoms)
+			return;
+		int count = 0;
+		for(IAtom atom:fragment.atoms()){
+			out.println("Atom: "
+							+ count
+							+ ", Sym: "
+							+ atom.getSymbol()
+							+ ", AtomAt: "
+							+ fragment.getConnectedAtomsCount(atom)
+							+ ", lpe: "
+							+ fragment.getConnectedLonePairsCount(atom)
+							+ ", sg: " + fragment.getConnectedSingleElectronsCount(atom)
+							+ ", Charge: "
+							+ atom.getFormalCharge());
+			count++;
+		}
+	}
+
+	private String createSMILES(IMolecule molecule){
+		return smilesGenerator.createSMILES(molecule);
+	}
+
+	private static String getId(FragmentMolecule fragment){
+		return fragment == null ? "molecule" : fragment.getID();
+	}
+}
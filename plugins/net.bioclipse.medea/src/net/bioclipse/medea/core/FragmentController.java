@@ -1,7 +1,7 @@
 package net.bioclipse.medea.core;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.List;
 
 import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.interfaces.IMolecularFormula;
@@ -30,14 +30,31 @@ public class FragmentController {
 	public static boolean isExistingMass(IMolecule molecule, ArrayList<Double> peaksX){
 		if(peaksX != null){
 			IMolecularFormula formula = MolecularFormulaManipulator.getMolecularFormula(molecule);
-			int mass = (int)MolecularFormulaManipulator.getTotalExactMass(formula);
-			if(peaksX.contains(new Double(mass))){
-				return true;
-			}
+			return isExistingMass(FragmentMolecule.getNominalMass(formula), peaksX);
 		}
 		
 		return false;
 	}
+	/**
+	 * class which makes a controll of the fragments obtained.\n
+	 * - When it is a learning process if the mass exists in the spectrum. \n
+	 * The mass of the fragment is not calculated again.
+	 * 
+	 * @param fragment  The FragmentMolecule 
+	 * @param peaksX    An ArrayList with all X peaks
+	 * 
+	 * @return True, if pass the requisites.
+	 */
+	public static boolean isExistingMass(FragmentMolecule fragment, ArrayList<Double> peaksX){
+		if(peaksX != null)
+			return isExistingMass(fragment.getNominalMass(), peaksX);
+		
+		return false;
+	}
+	
+	private static boolean isExistingMass(int mass, ArrayList<Double> peaksX){
+		return peaksX.contains(new Double(mass));
+	}
 	/**
 	 * class which makes a controll of the fragments obtained.\n
 	 * - doesn't have formalCharge == 1 (not visible for the mass spectrometer). \n
@@ -67,15 +84,26 @@ public class FragmentController {
 	 * @return fragmentMolecule, the fragment wich is isomorph.
 	 */
 	public static FragmentMolecule exists(FragmentTree fragTree, IMolecule molecule){
-
-		IMolecularFormula formula = MolecularFormulaManipulator.getMolecularFormula(molecule);
-		int mass = (int)MolecularFormulaManipulator.getTotalExactMass(formula);
-		FragmentTreeSub listFragments = fragTree.getFragments(mass);
+		return exists(fragTree, molecule, FragmentKey.getKey(molecule));
+	}
+	/**
+	 * class which makes a controll of the fragments obtained. It shows if the fragment was already
+	 * obtained before. Only the fragments with the same canonical key are compared with the 
+	 * isomorphism search.
+	 * 
+	 * @param fragTree  The FragmentTree object.
+	 * @param molecule  The IMolecule to study.
+	 * @param key       The canonical key of the molecule, see FragmentKey.
+	 * @return fragmentMolecule, the fragment wich is isomorph.
+	 */
+	public static FragmentMolecule exists(FragmentTree fragTree, IMolecule molecule, long key){
+		List<FragmentMolecule> listFragments = fragTree.getFragmentsByKey(key);
+		if(listFragments.isEmpty())
+			return null;
+		
 		QueryAtomContainer qAC = QueryAtomContainerCreator.createSymbolAndChargeQueryContainer(molecule);
 		int numAtoms = molecule.getAtomCount();
-		Iterator iterator = listFragments.iterator();
-		while(iterator.hasNext()){
-			FragmentMolecule fragment = (FragmentMolecule)iterator.next();
+		for(FragmentMolecule fragment : listFragments){
 			
 			/*Compare if they have the same number of Atoms*/
 			if(numAtoms == fragment.getAtomCount()){
@@ -99,7 +127,7 @@ public class FragmentController {
 	 * @return  True, if the molecule is the same from its predecessor
 	 */
 	public static boolean isPredecessor(FragmentTree fragTree, IMolecule molecule, FragmentMolecule precedessor) {
-		ArrayList<Position> childrenPosition = precedessor.getChildren();
+		List<Position> childrenPosition = precedessor.getChildren();
 		QueryAtomContainer qAC = QueryAtomContainerCreator.createSymbolAndChargeQueryContainer(molecule);
 		for(int i = 0; i < childrenPosition.size(); i++){
 			try {
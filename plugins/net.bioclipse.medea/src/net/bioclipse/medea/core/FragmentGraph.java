@@ -0,0 +1,264 @@
+package net.bioclipse.medea.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.openscience.cdk.interfaces.IMolecule;
+
+/**
+ * Class which stores the connections between the fragments of a FragmentTree.
+ * Each fragment is a node with an int id, each reaction from a fragment to
+ * other is an edge. The nodes and the edges are kept in arrays of primitives,
+ * the names of the reactions are stored once and referenced by a code. The
+ * lists of FragmentMolecule are views of this graph.
+ * <p>
+ * The parents of a fragment are kept apart from the edges, as they are set
+ * by the Fragmenter.
+ *
+ * @author Miguel Rojas
+ */
+class FragmentGraph {
+
+	/** node which has not a parent fragment, the molecule itself*/
+	static final int NO_NODE = -1;
+
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int[] EMPTY = new int[0];
+
+	/* nodes*/
+	private int nodeCount = 0;
+	private FragmentMolecule[] fragments = new FragmentMolecule[INITIAL_CAPACITY];
+	private int[] nodeMass = new int[INITIAL_CAPACITY];
+	private int[] nodeSlot = new int[INITIAL_CAPACITY];
+	private double[] nodeProbability = new double[INITIAL_CAPACITY];
+	/** edges to the children of each node, in the order they were added*/
+	private int[][] childEdges = new int[INITIAL_CAPACITY][];
+	private int[] childCount = new int[INITIAL_CAPACITY];
+	/** parents of each node, in the order they were added*/
+	private int[][] parentNodes = new int[INITIAL_CAPACITY][];
+	private int[] parentCount = new int[INITIAL_CAPACITY];
+
+	/* edges, from a fragment to its child*/
+	private int edgeCount = 0;
+	private int[] edgeTo = new int[INITIAL_CAPACITY];
+	private int[] edgeType = new int[INITIAL_CAPACITY];
+	private double[] edgeProbability = new double[INITIAL_CAPACITY];
+	private Iterable<?>[] edgeMapping = new Iterable<?>[INITIAL_CAPACITY];
+	private IMolecule[] edgeNeighbour = new IMolecule[INITIAL_CAPACITY];
+
+	/* names of the reactions*/
+	private ArrayList<String> typeNames = new ArrayList<String>();
+	private HashMap<String, Integer> typeCodes = new HashMap<String, Integer>();
+
+	/* node of each position. The key is mass and slot*/
+	private HashMap<Long, Integer> positions = new HashMap<Long, Integer>();
+
+	/**
+	 * add a fragment as a new node.
+	 *
+	 * @param fragment    The FragmentMolecule
+	 * @param mass        The mass of the fragment
+	 * @param slot        The position of the fragment into the fragments of this mass
+	 * @param probability The probability of the fragment
+	 * @return            The id of the node
+	 */
+	int addNode(FragmentMolecule fragment, int mass, int slot, double probability){
+		if(nodeCount == fragments.length){
+			int capacity = nodeCount*2;
+			fragments = copyOf(fragments, capacity);
+			nodeMass = copyOf(nodeMass, capacity);
+			nodeSlot = copyOf(nodeSlot, capacity);
+			nodeProbability = copyOf(nodeProbability, capacity);
+			childEdges = copyOf(childEdges, capacity);
+			childCount = copyOf(childCount, capacity);
+			parentNodes = copyOf(parentNodes, capacity);
+			parentCount = copyOf(parentCount, capacity);
+		}
+		int node = nodeCount++;
+		fragments[node] = fragment;
+		nodeMass[node] = mass;
+		nodeSlot[node] = slot;
+		nodeProbability[node] = probability;
+		childEdges[node] = EMPTY;
+		parentNodes[node] = EMPTY;
+		positions.put(getPositionKey(mass, slot), node);
+		return node;
+	}
+	/**
+	 * add an edge from a fragment to its child
+	 *
+	 * @param from        The node of the fragment
+	 * @param to          The node of the child
+	 * @param nameProcess The name of the reaction
+	 * @param mapping     The mapping of the reaction
+	 * @param neighbour   The other product of the reaction
+	 * @param probability The probability of the reaction
+	 */
+	void addEdge(int from, int to, String nameProcess, Iterable<?> mapping, IMolecule neighbour, double probability){
+		if(edgeCount == edgeTo.length){
+			int capacity = edgeCount*2;
+			edgeTo = copyOf(edgeTo, capacity);
+			edgeType = copyOf(edgeType, capacity);
+			edgeProbability = copyOf(edgeProbability, capacity);
+			edgeMapping = copyOf(edgeMapping, capacity);
+			edgeNeighbour = copyOf(edgeNeighbour, capacity);
+		}
+		int edge = edgeCount++;
+		edgeTo[edge] = to;
+		edgeType[edge] = getTypeCode(nameProcess);
+		edgeProbability[edge] = probability;
+		edgeMapping[edge] = mapping;
+		edgeNeighbour[edge] = neighbour;
+		childEdges[from] = append(childEdges[from], childCount[from]++, edge);
+	}
+	/**
+	 * add a parent to a fragment
+	 *
+	 * @param node   The node of the fragment
+	 * @param parent The node of the parent, NO_NODE for the molecule itself
+	 */
+	void addParent(int node, int parent){
+		parentNodes[node] = append(parentNodes[node], parentCount[node]++, parent);
+	}
+	/**
+	 * get the node of a position
+	 *
+	 * @param mass The mass
+	 * @param slot The position into the fragments of this mass
+	 * @return     The node, or NO_NODE if there is not a fragment
+	 */
+	int getNode(int mass, int slot){
+		Integer node = positions.get(getPositionKey(mass, slot));
+		return node == null ? NO_NODE : node.intValue();
+	}
+	FragmentMolecule getFragment(int node){
+		return fragments[node];
+	}
+	int getNodeCount(){
+		return nodeCount;
+	}
+	int getMass(int node){
+		return nodeMass[node];
+	}
+	int getSlot(int node){
+		return nodeSlot[node];
+	}
+	double getProbability(int node){
+		return nodeProbability[node];
+	}
+	void setProbability(int node, double probability){
+		nodeProbability[node] = probability;
+	}
+	int getChildCount(int node){
+		return childCount[node];
+	}
+	int getParentCount(int node){
+		return parentCount[node];
+	}
+	/**
+	 * get the edge to the child of a fragment
+	 *
+	 * @param node  The node of the fragment
+	 * @param index The index of the child
+	 * @return      The edge
+	 */
+	int getChildEdge(int node, int index){
+		if(index < 0 || index >= childCount[node])
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+childCount[node]);
+		return childEdges[node][index];
+	}
+	/**
+	 * get the parent of a fragment
+	 *
+	 * @param node  The node of the fragment
+	 * @param index The index of the parent
+	 * @return      The node of the parent, NO_NODE for the molecule itself
+	 */
+	int getParent(int node, int index){
+		if(index < 0 || index >= parentCount[node])
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+parentCount[node]);
+		return parentNodes[node][index];
+	}
+	int getEdgeTarget(int edge){
+		return edgeTo[edge];
+	}
+	String getEdgeProcess(int edge){
+		return typeNames.get(edgeType[edge]);
+	}
+	double getEdgeProbability(int edge){
+		return edgeProbability[edge];
+	}
+	void setEdgeProbability(int edge, double probability){
+		edgeProbability[edge] = probability;
+	}
+	Iterable<?> getEdgeMapping(int edge){
+		return edgeMapping[edge];
+	}
+	IMolecule getEdgeNeighbour(int edge){
+		return edgeNeighbour[edge];
+	}
+	/**
+	 * get the code of a reaction name. The names are stored once.
+	 *
+	 * @param nameProcess The name of the reaction
+	 * @return            The code
+	 */
+	private int getTypeCode(String nameProcess){
+		Integer code = typeCodes.get(nameProcess);
+		if(code == null){
+			code = typeNames.size();
+			typeNames.add(nameProcess);
+			typeCodes.put(nameProcess, code);
+		}
+		return code.intValue();
+	}
+
+	private static Long getPositionKey(int mass, int slot){
+		return new Long(((long)mass << 32) | (slot & 0xffffffffL));
+	}
+	/**
+	 * put a value at the end of a list of ints which is stored in an array,
+	 * which is grown if it is full.
+	 *
+	 * @param array The array
+	 * @param size  The number of values in the array
+	 * @param value The value to put
+	 * @return      The array, or a bigger copy
+	 */
+	private static int[] append(int[] array, int size, int value){
+		if(size == array.length)
+			array = copyOf(array, Math.max(2, size*2));
+		array[size] = value;
+		return array;
+	}
+	private static int[][] copyOf(int[][] array, int length){
+		int[][] copy = new int[length][];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+	private static int[] copyOf(int[] array, int length){
+		int[] copy = new int[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+	private static double[] copyOf(double[] array, int length){
+		double[] copy = new double[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+	private static FragmentMolecule[] copyOf(FragmentMolecule[] array, int length){
+		FragmentMolecule[] copy = new FragmentMolecule[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+	private static Iterable<?>[] copyOf(Iterable<?>[] array, int length){
+		Iterable<?>[] copy = new Iterable<?>[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+	private static IMolecule[] copyOf(IMolecule[] array, int length){
+		IMolecule[] copy = new IMolecule[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+}
@@ -0,0 +1,124 @@
+package net.bioclipse.medea.core;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+
+/**
+ * Class which calculates a canonical key of the structure of a fragment. The key
+ * is obtained with a refinement of the atom invariants (Morgan algorithm) from
+ * the symbol, the formal charge, the number of single electrons and the
+ * connectivity of each atom. Two isomorph fragments obtain always the same key,
+ * two fragments with the same key must still be compared with an isomorphism
+ * search.
+ *
+ * @author Miguel Rojas
+ */
+public class FragmentKey {
+
+	private static final long PRIME = 0x100000001B3L;
+
+	/**
+	 * get the canonical key of the structure.
+	 *
+	 * @param container The IAtomContainer
+	 * @return          The key
+	 */
+	public static long getKey(IAtomContainer container){
+		int numAtoms = container.getAtomCount();
+		IdentityHashMap<IAtom, Integer> positions = new IdentityHashMap<IAtom, Integer>();
+		long[] invariants = new long[numAtoms];
+		for(int i = 0 ; i < numAtoms ; i++){
+			IAtom atom = container.getAtom(i);
+			positions.put(atom, i);
+			Integer charge = atom.getFormalCharge();
+			long value = atom.getSymbol() == null ? 0 : atom.getSymbol().hashCode();
+			value = value*PRIME + (charge == null ? 0 : charge.intValue());
+			value = value*PRIME + container.getConnectedSingleElectronsCount(atom);
+			invariants[i] = mix(value);
+		}
+
+		/* list of neighbours of each atom */
+		int[] degree = new int[numAtoms];
+		int[][] bondAtoms = new int[container.getBondCount()][];
+		for(int i = 0 ; i < bondAtoms.length ; i++){
+			IBond bond = container.getBond(i);
+			Integer a0 = positions.get(bond.getAtom(0));
+			Integer a1 = positions.get(bond.getAtom(1));
+			if(a0 == null || a1 == null)
+				continue;
+			bondAtoms[i] = new int[]{a0, a1};
+			degree[a0]++;
+			degree[a1]++;
+		}
+		int[][] neighbours = new int[numAtoms][];
+		for(int i = 0 ; i < numAtoms ; i++){
+			neighbours[i] = new int[degree[i]];
+			degree[i] = 0;
+		}
+		for(int[] bond : bondAtoms){
+			if(bond == null)
+				continue;
+			neighbours[bond[0]][degree[bond[0]]++] = bond[1];
+			neighbours[bond[1]][degree[bond[1]]++] = bond[0];
+		}
+
+		/* refinement until the number of different classes is stable */
+		int classes = countClasses(invariants);
+		for(int iteration = 0 ; iteration < numAtoms ; iteration++){
+			long[] next = new long[numAtoms];
+			for(int i = 0 ; i < numAtoms ; i++){
+				long sum = 0;
+				for(int j = 0 ; j < neighbours[i].length ; j++)
+					sum += mix(invariants[neighbours[i][j]]);
+				next[i] = mix(invariants[i]*PRIME + sum);
+			}
+			invariants = next;
+			int nextClasses = countClasses(invariants);
+			if(nextClasses <= classes)
+				break;
+			classes = nextClasses;
+		}
+
+		long[] sorted = invariants.clone();
+		Arrays.sort(sorted);
+		long key = numAtoms*PRIME + container.getBondCount();
+		for(long value : sorted)
+			key = key*PRIME + value;
+		return mix(key);
+	}
+	/**
+	 * get the number of different values.
+	 *
+	 * @param values The values
+	 * @return       The number of classes
+	 */
+	private static int countClasses(long[] values){
+		if(values.length == 0)
+			return 0;
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		int count = 1;
+		for(int i = 1 ; i < sorted.length ; i++)
+			if(sorted[i] != sorted[i-1])
+				count++;
+		return count;
+	}
+	/**
+	 * spread the bits of the value.
+	 *
+	 * @param value The value
+	 * @return      The mixed value
+	 */
+	private static long mix(long value){
+		value ^= (value >>> 33);
+		value *= 0xff51afd7ed558ccdL;
+		value ^= (value >>> 33);
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= (value >>> 33);
+		return value;
+	}
+}
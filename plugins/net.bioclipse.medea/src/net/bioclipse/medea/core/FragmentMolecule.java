@@ -1,11 +1,13 @@
 package net.bioclipse.medea.core;
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.AbstractList;
+import java.util.List;
 
 import org.openscience.cdk.Molecule;
 import org.openscience.cdk.interfaces.IMapping;
+import org.openscience.cdk.interfaces.IMolecularFormula;
 import org.openscience.cdk.interfaces.IMolecule;
+import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
 
 /**
  * Class which is an extension of IMolecule and collects all information 
@@ -18,16 +20,23 @@ public class FragmentMolecule extends Molecule {
 	
 	private static final long serialVersionUID = 5370937629360742069L;
 	
-	private ArrayList<Double> probabChildrenA = new ArrayList<Double>();
-	private ArrayList<Double> probabA = new ArrayList<Double>();
-	private ArrayList<Position> parentA = new ArrayList<Position>();
-	private ArrayList<Position> childrenA = new ArrayList<Position>();
-	private ArrayList<Iterable> mappingA = new ArrayList<Iterable>();
-	private ArrayList<String> processA = new ArrayList<String>();
-	private ArrayList<IMolecule> neighbouringA = new ArrayList<IMolecule>();
+	/** graph of the FragmentTree which contains the connections of this fragment*/
+	private transient FragmentGraph graph = null;
+	/** id of this fragment into the graph*/
+	private int node = FragmentGraph.NO_NODE;
+	/** probability and parent until the fragment is added into the FragmentTree*/
+	private double probability;
+	private Position parent;
 	private Position identification;
 
 	private double abundance;
+	/** canonical key of the structure, see FragmentKey*/
+	private long structureKey;
+	private boolean hasStructureKey = false;
+	/** formula and masses, calculated once when the fragment is created*/
+	private transient IMolecularFormula formula;
+	private double exactMass;
+	private int nominalMass;
 	
 	/**
 	 * Constructor of the MSFragments object 
@@ -38,23 +47,67 @@ public class FragmentMolecule extends Molecule {
 	 * @param origin   The position of the predecessor
 	 * @param probab   The probability of obtaining this reaction.
 	 */
-	FragmentMolecule(IMolecule molecule, Position id, String nameProcess, Position parent, double probab){
+	public FragmentMolecule(IMolecule molecule, Position id, String nameProcess, Position parent, double probab){
+		this(molecule, MolecularFormulaManipulator.getMolecularFormula(molecule), id, nameProcess, parent, probab);
+	}
+	/**
+	 * Constructor of the MSFragments object with the formula of the fragment,
+	 * if it was already calculated.
+	 * 
+	 * @param molecule The Fragment to store
+	 * @param formula  The IMolecularFormula of the fragment
+	 * @param id       The identification of this fragment. It consists on [mass, positionFragmentTree]
+	 * @param nameProcess      Name of the process/reaction which is obtained this molecule
+	 * @param origin   The position of the predecessor
+	 * @param probab   The probability of obtaining this reaction.
+	 */
+	FragmentMolecule(IMolecule molecule, IMolecularFormula formula, Position id, String nameProcess, Position parent, double probab){
 
 		add(molecule);
+		setFormula(formula);
 		setID(id.height+"_"+id.width);
 		molecule.setID(id.height+"_"+id.width);
 		identification = id;
-		probabA.add(probab);
-		parentA.add(parent);
+		this.probability = probab;
+		this.parent = parent;
 		
 	}
+	/**
+	 * add this fragment into the graph of the FragmentTree
+	 * 
+	 * @param graph The FragmentGraph
+	 */
+	void setGraph(FragmentGraph graph){
+		this.graph = graph;
+		node = graph.addNode(this, identification.width, identification.height, probability);
+		setParent(parent);
+		parent = null;
+	}
+	/**
+	 * get the id of this fragment into the graph of the FragmentTree
+	 * 
+	 * @return The node, NO_NODE if it was not added
+	 */
+	int getNode(){
+		return node;
+	}
 	/**
 	 * get the parent of this fragment
-	 * @return An ArrayList with all parents
+	 * @return A List with all parents
 	 * 
 	 */
-	public ArrayList<Position> getParents(){
-		return parentA;
+	public List<Position> getParents(){
+		return new AbstractList<Position>(){
+			public Position get(int index) {
+				int parentNode = graph.getParent(node, index);
+				if(parentNode == FragmentGraph.NO_NODE)
+					return new Position(identification.width, -1);
+				return getPosition(parentNode);
+			}
+			public int size() {
+				return graph == null ? 0 : graph.getParentCount(node);
+			}
+		};
 	}
 	/**
 	 * set the parent of this fragment
@@ -62,7 +115,14 @@ public class FragmentMolecule extends Molecule {
 	 * 
 	 */
 	public void setParent(Position parent){
-		parentA.add(parent);
+		if(graph == null){
+			this.parent = parent;
+			return;
+		}
+		int parentNode = FragmentGraph.NO_NODE;
+		if(parent != null)
+			parentNode = graph.getNode(parent.width, parent.height);
+		graph.addParent(node, parentNode);
 	}
 	/**
 	 * set the children of this fragment
@@ -72,52 +132,79 @@ public class FragmentMolecule extends Molecule {
 	 * @param iterable     The mapping of the reaction
 	 */
 	public void setChildren(Position children, String nameProcess, Iterable<IMapping> iterable, IMolecule neighbouring, double prob){
-		childrenA.add(children);
-		processA.add(nameProcess);
-		mappingA.add(iterable);
-		neighbouringA.add(neighbouring);
-		probabChildrenA.add(prob);
+		graph.addEdge(node, graph.getNode(children.width, children.height), nameProcess, iterable, neighbouring, prob);
 	}
 	/**
 	 * get the children of this fragment
 	 * 
-	 * @return  An ArrayList with all children
+	 * @return  A List with all children
 	 */
-	public ArrayList<Position> getChildren(){
-		return childrenA;
+	public List<Position> getChildren(){
+		return new ChildList<Position>(){
+			public Position get(int index) {
+				return getPosition(graph.getEdgeTarget(getEdge(index)));
+			}
+		};
 	}
 	/**
 	 * get the probabilities of the fragment
 	 * 
-	 * @return An ArrayList with all probabilities
+	 * @return A List with all probabilities
 	 */
-	public ArrayList<Double> getChildrenProbabilities(){
-		return probabChildrenA;
+	public List<Double> getChildrenProbabilities(){
+		return new ChildList<Double>(){
+			public Double get(int index) {
+				return graph.getEdgeProbability(getEdge(index));
+			}
+			public Double set(int index, Double value) {
+				Double previous = get(index);
+				graph.setEdgeProbability(getEdge(index), value.doubleValue());
+				return previous;
+			}
+		};
 	}
 	/**
-	 * set the probabilities of the fragment
+	 * set the probability of the last child of the fragment
 	 * 
 	 * @param the probability
 	 */
 	public void setChildrenProbabilities(double prob){
-		probabChildrenA.add(prob);
+		int count = graph.getChildCount(node);
+		if(count > 0)
+			graph.setEdgeProbability(graph.getChildEdge(node, count-1), prob);
 	}
 	/**
 	 * get the probabilities of the fragment
 	 * 
-	 * @return An ArrayList with all probabilities
+	 * @return A List with the probability
 	 */
-	public ArrayList<Double> getProbabilities(){
-		return probabA;
+	public List<Double> getProbabilities(){
+		return new AbstractList<Double>(){
+			public Double get(int index) {
+				if(index != 0)
+					throw new IndexOutOfBoundsException("Index: "+index+", Size: 1");
+				return graph == null ? probability : graph.getProbability(node);
+			}
+			public Double set(int index, Double value) {
+				Double previous = get(index);
+				setProbabilities(value.doubleValue());
+				return previous;
+			}
+			public int size() {
+				return 1;
+			}
+		};
 	}
 	/**
-	 * set the probabilities of the fragment
+	 * set the probability of the fragment
 	 * 
 	 * @param the probability
 	 */
 	public void setProbabilities(double prob){
-		probabA.add(prob);
-		
+		if(graph == null)
+			probability = prob;
+		else
+			graph.setProbability(node, prob);
 	}
 	/**
 	 * get the identification of this fragment
@@ -132,22 +219,54 @@ public class FragmentMolecule extends Molecule {
 	 * 
 	 * @return String 
 	 */
-	public ArrayList<String> getProcess(){
-		return processA;
+	public List<String> getProcess(){
+		return new ChildList<String>(){
+			public String get(int index) {
+				return graph.getEdgeProcess(getEdge(index));
+			}
+		};
 	}
 	/**
 	 * get the mapping of the reaction 
 	 * @return The IMapping
 	 */
-	public ArrayList<Iterable> getMapping(){
-		return mappingA;
+	public List<Iterable> getMapping(){
+		return new ChildList<Iterable>(){
+			public Iterable get(int index) {
+				return graph.getEdgeMapping(getEdge(index));
+			}
+		};
 	}
 	/**
 	 * get the the neighbouring fragment of this FragmentMolecule 
 	 * @return The IMolecule neighbouring
 	 */
-	public ArrayList<IMolecule> getNeighbouring(){
-		return neighbouringA;
+	public List<IMolecule> getNeighbouring(){
+		return new ChildList<IMolecule>(){
+			public IMolecule get(int index) {
+				return graph.getEdgeNeighbour(getEdge(index));
+			}
+		};
+	}
+	/**
+	 * get the position of a node of the graph
+	 * 
+	 * @param other The node
+	 * @return      The Position
+	 */
+	private Position getPosition(int other){
+		return graph.getFragment(other).getIdP();
+	}
+	/**
+	 * view of a property of the reactions to the children of this fragment
+	 */
+	private abstract class ChildList<E> extends AbstractList<E>{
+		int getEdge(int index){
+			return graph.getChildEdge(node, index);
+		}
+		public int size() {
+			return graph == null ? 0 : graph.getChildCount(node);
+		}
 	}
 	public void setAbundance(double abun){
 		abundance = abun;
@@ -155,4 +274,72 @@ public class FragmentMolecule extends Molecule {
 	public double getAbundance(){
 		return abundance;
 	}
+	/**
+	 * get the canonical key of the structure of this fragment. It is
+	 * calculated the first time.
+	 * 
+	 * @return The key
+	 */
+	public long getStructureKey(){
+		if(!hasStructureKey)
+			setStructureKey(FragmentKey.getKey(this));
+		return structureKey;
+	}
+	/**
+	 * get the molecular formula of this fragment. It is calculated once when
+	 * the fragment is created.
+	 * 
+	 * @return The IMolecularFormula
+	 */
+	public IMolecularFormula getFormula(){
+		if(formula == null)
+			setFormula(MolecularFormulaManipulator.getMolecularFormula(this));
+		return formula;
+	}
+	/**
+	 * get the exact mass of this fragment, the sum of the exact masses of 
+	 * the isotopes of its formula.
+	 * 
+	 * @return The exact mass
+	 */
+	public double getExactMass(){
+		return exactMass;
+	}
+	/**
+	 * get the nominal mass of this fragment. It is the mass which identifies
+	 * the fragment into the FragmentTree, see getIdP().
+	 * 
+	 * @return The nominal mass
+	 */
+	public int getNominalMass(){
+		return nominalMass;
+	}
+	/**
+	 * get the nominal mass of a molecule, as the FragmentTree groups the fragments.
+	 * 
+	 * @param formula The IMolecularFormula of the molecule
+	 * @return        The nominal mass
+	 */
+	static int getNominalMass(IMolecularFormula formula){
+		return (int)MolecularFormulaManipulator.getTotalExactMass(formula);
+	}
+	/**
+	 * set the formula and the masses of this fragment
+	 * 
+	 * @param formula The IMolecularFormula
+	 */
+	private void setFormula(IMolecularFormula formula){
+		this.formula = formula;
+		exactMass = MolecularFormulaManipulator.getTotalExactMass(formula);
+		nominalMass = (int)exactMass;
+	}
+	/**
+	 * set the canonical key of the structure, if it was already calculated.
+	 * 
+	 * @param key The key
+	 */
+	void setStructureKey(long key){
+		structureKey = key;
+		hasStructureKey = true;
+	}
 }
@@ -1,6 +1,9 @@
 package net.bioclipse.medea.core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 
 import org.openscience.cdk.interfaces.IMolecularFormula;
 import org.openscience.cdk.interfaces.IMolecule;
@@ -9,36 +12,43 @@ import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
 /**
  * Class which contains all information of the fragmention process and groups.
  * Each fragment obtained will be saved into a sub ArrayList depending of its
- * mass.
+ * mass. The connections between the fragments are stored in a FragmentGraph.
+ * The tree is not thread-safe: it is built by the thread of the Fragmenter
+ * and can be read from other threads only when the fragmentation is finished.
  * 
  * @author Miguel Rojas
  */
-public class FragmentTree extends ArrayList<FragmentTreeSub> {
-	
-	private static final long serialVersionUID = -1756390877174302389L;
+public class FragmentTree {
 	
 	/** molecule to study for the process of fragmentation */
 	private IMolecule molecule;
+	/** fragment of the molecule itself*/
+	private FragmentMolecule molecularIon;
+	/** fragments of each mass, only the masses which have fragments*/
+	private HashMap<Integer, FragmentTreeSub> masses = new HashMap<Integer, FragmentTreeSub>();
+	/** connections between the fragments*/
+	private FragmentGraph graph = new FragmentGraph();
+	/** index of the fragments by the canonical key of their structure*/
+	private HashMap<Long, List<FragmentMolecule>> keyIndex = new HashMap<Long, List<FragmentMolecule>>();
 
 	/**
-	 * Constructor of the FragmentTree object
+	 * Constructor of the FragmentTree object which only contains the molecule.
+	 * The fragments are added by the Fragmenter.
 	 * @param molecule An IMolecule to study
 	 */
-	FragmentTree(IMolecule molecule){
+	public FragmentTree(IMolecule molecule){
 		this.molecule = molecule;
 		
-		/* the Sub-ArrayList is limited for mass */
-		int mass = getMass(molecule);
-		for (int i = 0; i < mass+10; i++){
-			FragmentTreeSub fts = new FragmentTreeSub();
-			add(fts);
-		}
+		IMolecularFormula formula = MolecularFormulaManipulator.getMolecularFormula(molecule);
+		int mass = FragmentMolecule.getNominalMass(formula);
 		/* it is also added the molecule ifself*/
-		addFragment(new FragmentMolecule(molecule,
+		molecularIon = new FragmentMolecule(molecule,
+				formula,
 				new Position(mass,0),
 				null,
 				new Position(mass, -1),
-				0));
+				0);
+		addFragment(molecularIon);
 	}
 	/**
 	 * Adds a new FragmentMolecule to the FragmentTree.
@@ -46,9 +56,35 @@ public class FragmentTree extends ArrayList<FragmentTreeSub> {
 	 * @param msfragment The FragmentMolecule object
 	 */
 	public void addFragment(FragmentMolecule msfragment){
-		int mass = getMass(msfragment);
-		FragmentTreeSub fts = get(mass);
+		int mass = msfragment.getIdP().width;
+		FragmentTreeSub fts = masses.get(mass);
+		if(fts == null){
+			fts = new FragmentTreeSub();
+			masses.put(mass, fts);
+		}
 		fts.addFragment(msfragment);
+		msfragment.setGraph(graph);
+		
+		Long key = new Long(msfragment.getStructureKey());
+		List<FragmentMolecule> list = keyIndex.get(key);
+		if(list == null){
+			list = new ArrayList<FragmentMolecule>(1);
+			keyIndex.put(key, list);
+		}
+		list.add(msfragment);
+	}
+	/**
+	 * get the fragments which have this canonical key. They are possible 
+	 * isomorphs, see FragmentKey.
+	 * 
+	 * @param key The canonical key of the structure
+	 * @return    A List with the fragments, empty if there is none
+	 */
+	public List<FragmentMolecule> getFragmentsByKey(long key){
+		List<FragmentMolecule> list = keyIndex.get(new Long(key));
+		if(list == null)
+			return new ArrayList<FragmentMolecule>(0);
+		return new ArrayList<FragmentMolecule>(list);
 	}
 	/**
 	 * get the fragments for a determined mass
@@ -57,7 +93,23 @@ public class FragmentTree extends ArrayList<FragmentTreeSub> {
 	 * @return The FragmentTreeSub
 	 */
 	public FragmentTreeSub getFragments(int mass){
-		return get(mass);
+		FragmentTreeSub fts = masses.get(mass);
+		if(fts == null)
+			return new FragmentTreeSub();
+		return fts;
+	}
+	/**
+	 * get the masses which have fragments
+	 * 
+	 * @return The masses, sorted
+	 */
+	public int[] getMasses(){
+		int[] result = new int[masses.size()];
+		int i = 0;
+		for(Integer mass : masses.keySet())
+			result[i++] = mass.intValue();
+		Arrays.sort(result);
+		return result;
 	}
 	/**
 	 * get the fragment of a specific mass and position
@@ -66,17 +118,24 @@ public class FragmentTree extends ArrayList<FragmentTreeSub> {
 	 * @return   The FragmentMolecule
 	 */
 	public FragmentMolecule getFragment(Position id){
-		return get((int)id.getWidth()).get((int)id.getHeight());
+		return getFragments(id.width).get(id.height);
+	}
+	/**
+	 * get the fragment of the molecule itself, the first fragment of the tree.
+	 * Its masses are the masses of the molecule.
+	 * 
+	 * @return The FragmentMolecule
+	 */
+	public FragmentMolecule getMolecularIon(){
+		return molecularIon;
 	}
 	/**
-	 * get the molecular mass of a specific molecule or fragment
+	 * get the connections between the fragments
 	 * 
-	 * @param mol  IMolecule or fragment to value
-	 * @return     The Mass value
+	 * @return The FragmentGraph
 	 */
-	private int getMass(IMolecule mol){	
-		IMolecularFormula formula = MolecularFormulaManipulator.getMolecularFormula(mol);
-		return (int)MolecularFormulaManipulator.getTotalExactMass(formula);
+	FragmentGraph getGraph(){
+		return graph;
 	}
 	/**
 	 * get the molecule to predict 
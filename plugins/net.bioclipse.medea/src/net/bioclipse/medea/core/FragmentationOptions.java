@@ -0,0 +1,139 @@
+package net.bioclipse.medea.core;
+
+/**
+ * Class which contains the limits of the fragmentation. By default there
+ * are no limits and all accepted fragments are expanded.
+ * <p>
+ * With a beam width, the fragments of each level are scored with the
+ * classifier of their reaction type and only the best ones are expanded.
+ * The fragments of a reaction type without classifier, such as the
+ * RadicalChargeSiteInitiationReaction, can not be scored: they are not
+ * selected by the beam nor by the minimal probability, they are expanded
+ * as without beam.
+ * The beam is only applied in a prediction, a learning process uses the
+ * peaks of the experimental spectrum instead. The maximal number of
+ * fragments and the time are applied in all processes.
+ * <pre>
+ *  FragmentationOptions options = new FragmentationOptions();
+ *  options.setBeamWidth(20);
+ *  options.setMaxFragments(500);
+ *  options.setTimeBudget(10000);
+ *  medea.setFragmentationOptions(options);
+ * </pre>
+ *
+ * @author Miguel Rojas
+ */
+public class FragmentationOptions {
+
+	/** number of new fragments expanded for each level, 0 is unlimited*/
+	private int beamWidth = 0;
+	/** minimal probability of a reaction in the beam*/
+	private double minProbability = 0.0;
+	/** maximal number of fragments of the tree, 0 is unlimited*/
+	private int maxFragments = 0;
+	/** maximal time of the fragmentation in milliseconds, 0 is unlimited*/
+	private long timeBudget = 0;
+
+	/**
+	 * Constructor of the FragmentationOptions object without limits.
+	 */
+	public FragmentationOptions(){
+	}
+	/**
+	 * Constructor of the FragmentationOptions object with the same limits as other.
+	 *
+	 * @param options The FragmentationOptions to copy
+	 */
+	public FragmentationOptions(FragmentationOptions options){
+		this.beamWidth = options.beamWidth;
+		this.minProbability = options.minProbability;
+		this.maxFragments = options.maxFragments;
+		this.timeBudget = options.timeBudget;
+	}
+	/**
+	 * get the number of new fragments which are expanded for each level
+	 *
+	 * @return The beam width, 0 if the search is exhaustive
+	 */
+	public int getBeamWidth(){
+		return beamWidth;
+	}
+	/**
+	 * set the number of new fragments which are expanded for each level. The
+	 * fragments with the highest probability of the reaction are kept.
+	 *
+	 * @param beamWidth The beam width, 0 for an exhaustive search
+	 */
+	public void setBeamWidth(int beamWidth){
+		this.beamWidth = Math.max(0, beamWidth);
+	}
+	/**
+	 * get the minimal probability of a reaction to be kept in the beam
+	 *
+	 * @return The minimal probability
+	 */
+	public double getMinProbability(){
+		return minProbability;
+	}
+	/**
+	 * set the minimal probability of a reaction to be kept in the beam.
+	 *
+	 * @param minProbability The minimal probability, 0 to keep all
+	 */
+	public void setMinProbability(double minProbability){
+		this.minProbability = minProbability;
+	}
+	/**
+	 * get the maximal number of fragments
+	 *
+	 * @return The maximal number, 0 if unlimited
+	 */
+	public int getMaxFragments(){
+		return maxFragments;
+	}
+	/**
+	 * set the maximal number of fragments of the tree, without the molecular
+	 * ion. The fragments which are not expanded, as the ones without peak of
+	 * a learning process, are also counted. The ionized molecules are always
+	 * added.
+	 *
+	 * @param maxFragments The maximal number, 0 for unlimited
+	 */
+	public void setMaxFragments(int maxFragments){
+		this.maxFragments = Math.max(0, maxFragments);
+	}
+	/**
+	 * get the maximal time of the fragmentation
+	 *
+	 * @return The time in milliseconds, 0 if unlimited
+	 */
+	public long getTimeBudget(){
+		return timeBudget;
+	}
+	/**
+	 * set the maximal time of the fragmentation. When it is reached the
+	 * fragments found until now are kept.
+	 *
+	 * @param timeBudget The time in milliseconds, 0 for unlimited
+	 */
+	public void setTimeBudget(long timeBudget){
+		this.timeBudget = Math.max(0, timeBudget);
+	}
+	/**
+	 * get if the fragments are selected with a beam
+	 *
+	 * @return True, if the beam width is not 0
+	 */
+	public boolean isBeamSearch(){
+		return beamWidth > 0;
+	}
+	/**
+	 * get the limits as text, the same for the same limits
+	 *
+	 * @return The text
+	 */
+	public String toString(){
+		return "beamWidth="+beamWidth+",minProbability="+minProbability
+			+",maxFragments="+maxFragments+",timeBudget="+timeBudget;
+	}
+}
@@ -0,0 +1,85 @@
+package net.bioclipse.medea.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.openscience.cdk.interfaces.IMolecule;
+import org.openscience.cdk.interfaces.IReactionSet;
+
+/**
+ * Class which sends the events of a fragmentation to the IFragmentationListener
+ * which are registered. Without listeners the trace is disabled and an event
+ * costs only the check of an empty array, nothing is printed or calculated
+ * for it. The listeners can be added and removed while a fragmentation runs.
+ * 
+ * @author Miguel Rojas
+ */
+public class FragmentationTrace {
+
+	private static final IFragmentationListener[] NO_LISTENERS = new IFragmentationListener[0];
+
+	/** the listeners, the array is replaced when it changes*/
+	private volatile IFragmentationListener[] listeners = NO_LISTENERS;
+
+	/**
+	 * Constructor of the FragmentationTrace object without listeners
+	 */
+	public FragmentationTrace(){
+	}
+	/**
+	 * add a listener
+	 * 
+	 * @param listener The IFragmentationListener
+	 */
+	public synchronized void addListener(IFragmentationListener listener){
+		if(listener == null)
+			return;
+		ArrayList<IFragmentationListener> list = new ArrayList<IFragmentationListener>(Arrays.asList(listeners));
+		list.add(listener);
+		listeners = list.toArray(new IFragmentationListener[list.size()]);
+	}
+	/**
+	 * remove a listener
+	 * 
+	 * @param listener The IFragmentationListener
+	 */
+	public synchronized void removeListener(IFragmentationListener listener){
+		ArrayList<IFragmentationListener> list = new ArrayList<IFragmentationListener>(Arrays.asList(listeners));
+		if(list.remove(listener))
+			listeners = list.isEmpty() ? NO_LISTENERS : list.toArray(new IFragmentationListener[list.size()]);
+	}
+	/**
+	 * get if there are listeners. An event which needs some work to be created
+	 * should be only sent if the trace is enabled.
+	 * 
+	 * @return True, if there is at least one listener
+	 */
+	public boolean isEnabled(){
+		return listeners.length > 0;
+	}
+
+	void reactionApplied(FragmentMolecule fragment, String nameReaction, IReactionSet reactions){
+		for(IFragmentationListener listener : listeners)
+			listener.reactionApplied(fragment, nameReaction, reactions);
+	}
+	void reactionFailed(FragmentMolecule fragment, String nameReaction, Exception cause){
+		for(IFragmentationListener listener : listeners)
+			listener.reactionFailed(fragment, nameReaction, cause);
+	}
+	void fragmentCreated(FragmentMolecule fragment, FragmentMolecule parent, String nameReaction, double probability){
+		for(IFragmentationListener listener : listeners)
+			listener.fragmentCreated(fragment, parent, nameReaction, probability);
+	}
+	void duplicateFound(FragmentMolecule fragment, FragmentMolecule parent, String nameReaction){
+		for(IFragmentationListener listener : listeners)
+			listener.duplicateFound(fragment, parent, nameReaction);
+	}
+	void fragmentRejected(IMolecule product, FragmentMolecule parent, String nameReaction, int reason){
+		for(IFragmentationListener listener : listeners)
+			listener.fragmentRejected(product, parent, nameReaction, reason);
+	}
+	void fragmentationEnded(FragmentTree fragmentTree, boolean truncated){
+		for(IFragmentationListener listener : listeners)
+			listener.fragmentationEnded(fragmentTree, truncated);
+	}
+}
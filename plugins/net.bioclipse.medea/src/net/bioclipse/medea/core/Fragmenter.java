@@ -2,13 +2,22 @@ package net.bioclipse.medea.core;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import net.bioclipse.medea.core.learning.ExtractorProbability;
+import net.bioclipse.medea.core.prediction.ReactionModelRegistry;
 
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.openscience.cdk.CDKConstants;
 import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.interfaces.IChemObject;
 import org.openscience.cdk.interfaces.IMapping;
 import org.openscience.cdk.interfaces.IMolecularFormula;
 import org.openscience.cdk.interfaces.IMolecule;
@@ -25,7 +34,6 @@ import org.openscience.cdk.reaction.type.RadicalSiteInitiationHReaction;
 import org.openscience.cdk.reaction.type.RadicalSiteInitiationReaction;
 import org.openscience.cdk.reaction.type.parameters.IParameterReact;
 import org.openscience.cdk.reaction.type.parameters.SetReactionCenter;
-import org.openscience.cdk.smiles.SmilesGenerator;
 import org.openscience.cdk.tools.CDKHydrogenAdder;
 import org.openscience.cdk.tools.LonePairElectronChecker;
 import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
@@ -42,8 +50,6 @@ public class Fragmenter {
 	FragmentTree fragTree;
 	private LonePairElectronChecker lpcheck = new LonePairElectronChecker();
 	
-	boolean printInfo = true;
-	
 	/** ArrayList which will be added each new obtained fragment. It is the responsible
 	 * to manage the order of the fragmentation*/
 	ArrayList<FragmentMolecule> setOfFragments = new ArrayList<FragmentMolecule>();
@@ -55,7 +61,30 @@ public class Fragmenter {
 
 	private ExtractorProbability extractorP;
 
-	public static int processType = 0;
+	/** state of this run*/
+	private MedeaContext context;
+	/** limits of the fragmentation*/
+	private FragmentationOptions options;
+	/** true if a limit of the fragmentation was reached*/
+	private boolean truncated = false;
+	/** listeners of the events of the fragmentation*/
+	private FragmentationTrace trace;
+	/** true if the monitor was canceled*/
+	private boolean canceled = false;
+	
+	/** names of the reaction types which are applied to each fragment*/
+	private static final String[] reactionNames = {
+		"RadicalSiteInitiationReaction",
+		"RadicalSiteInitiationHReaction",
+		"RadicalChargeSiteInitiationReaction",
+		"CarbonylEliminationReaction",
+		"RadicalSiteHrDeltaReaction",
+		"RadicalSiteHrGammaReaction"};
+	
+	/** ExecutorService for the parallel mode, null for the sequential*/
+	private ExecutorService executor;
+	/** expansion submitted for each fragment of setOfFragments, parallel mode*/
+	private ArrayList<Future<Expansion>> pendingExpansions = new ArrayList<Future<Expansion>>();
 	
 	
 	/**
@@ -71,11 +100,58 @@ public class Fragmenter {
 	 * @throws IOException 
 	 */
 	public Fragmenter(int process, IMolecule molecule, ArrayList<Double> peaksX) throws CDKException, IOException, ClassNotFoundException{
-		processType  = process;
+		this(createContext(process, peaksX), molecule, null);
+	}
+	/**
+	 * constructor of FragmentController object. The fragments of the frontier
+	 * are expanded in parallel with the executor: each task applies all 
+	 * reaction types to a copy of one fragment, and checks and calculates the
+	 * canonical key of the products. The results are merged into the 
+	 * FragmentTree in the same order as the sequential mode, so the obtained
+	 * tree is the same.
+	 * 
+	 * @param process  The Process, Medea.PREDICTPROCESS or Medea.LEARNINGPROCESS
+	 * @param molecule  IMolecule to fragment
+	 * @param peaksX The peaks of the experimental  spectrum. Used if there
+	 * is a learning process.
+	 * @param executor The ExecutorService which applies the reactions. If it is 
+	 * null the fragmentation is sequential.
+	 * 
+	 * @throws CDKException 
+	 * @throws ClassNotFoundException 
+	 * @throws IOException 
+	 */
+	public Fragmenter(int process, IMolecule molecule, ArrayList<Double> peaksX, ExecutorService executor) throws CDKException, IOException, ClassNotFoundException{
+		this(createContext(process, peaksX), molecule, executor);
+	}
+	/**
+	 * constructor of FragmentController object for a run of Medea.
+	 * 
+	 * @param context  The MedeaContext of this run, with the process type and 
+	 * the peaks of the experimental spectrum if there is a learning process.
+	 * @param molecule  IMolecule to fragment
+	 * @param executor The ExecutorService which applies the reactions. If it is 
+	 * null the fragmentation is sequential.
+	 * 
+	 * @throws CDKException 
+	 * @throws ClassNotFoundException 
+	 * @throws IOException 
+	 */
+	public Fragmenter(MedeaContext context, IMolecule molecule, ExecutorService executor) throws CDKException, IOException, ClassNotFoundException{
+		this.context = context;
+		this.executor = executor;
+		this.options = context.getFragmentationOptions();
+		this.trace = context.getFragmentationTrace();
+		IProgressMonitor monitor = context.getProgressMonitor();
+		long deadline = context.getDeadline();
+		if(deadline == 0 && options.getTimeBudget() > 0)
+			deadline = System.currentTimeMillis() + options.getTimeBudget();
+		int process = context.getProcessType();
+		ArrayList<Double> peaksX = context.getPeaksX();
 		/*Only used for learning process*/
 		if(process == Medea.PREDICTPROCESS || process == Medea.LEARN_PREDPROCESS)
 			if(extractorP == null)
-				extractorP = new ExtractorProbability();
+				extractorP = new ExtractorProbability(context);
 		
 		/* make a check about hydrogens and Pair Electrons */
 			try {
@@ -89,8 +165,6 @@ public class Fragmenter {
 	        	
 	        }
 
-//			printInformation(molecule);/**********************************************************/
-			
 			/*elimination of coordinates*/
 //			for(IAtom atom: molecule.atoms())
 //				atom.setPoint2d(null);
@@ -114,7 +188,6 @@ public class Fragmenter {
             	value = 1.0;
 //            double value = IonizationPotentialTool.predictIP(molecule,atom);
             if(value > 0.5){
-            	System.out.println(atom.getSymbol()+" "+value);
                 IMolecule molecule_;
 				try {
 					molecule_ = (IMolecule) molecule.clone();
@@ -132,14 +205,12 @@ public class Fragmenter {
 			        
 			        IReactionSet setOfReactions = type.initiate(setOfReactants, null);
 			        
-					IMolecularFormula formula = MolecularFormulaManipulator.getMolecularFormula(molecule);
 	            	setOfFragments.add(addNewFragment(setOfReactions.getReaction(0).getProducts().getMolecule(0),
 	    					"Ionitzation", 
-	    					new Position((int)MolecularFormulaManipulator.getTotalExactMass(formula),0),
+	    					fragTree.getMolecularIon().getIdP(),
 	    					value,
 	    					null,
 	    					null));
-	            	System.out.println(setOfFragments.size());
 				} catch (CloneNotSupportedException e) {
 					e.printStackTrace();
 				}
@@ -172,334 +243,428 @@ public class Fragmenter {
 //		
 //		/* process of fragmention from the obtained ionized molecules. Into of 
 //		 * setOfFragment will be added all new fragment obtained */
-		for(int i = 0; i < setOfFragments.size() ; i++){
-			numberOfFragments = i;
-			String typeOfFragmentation = null;
-			fragmentToStudy = setOfFragments.get(i);
-
-			if(printInfo){
-			System.out.println("*********************NEW:  "+i+"  ******************************************");
-			printInformation(fragmentToStudy);/**********************************************************/
-			}
+		/* with the beam the new fragments of each level are candidates until
+		 * the level is expanded, then the best ones are added*/
+		boolean beam = options.isBeamSearch() && extractorP != null;
+		ArrayList<Candidate> candidates = new ArrayList<Candidate>();
+		int levelEnd = setOfFragments.size();
+		try{
+			for(int i = 0; i < setOfFragments.size() ; i++)
+				submitExpansion(i);
 			
-			List<IReactionProcess> listR = new ArrayList<IReactionProcess>();
-			
-			listR.add(new RadicalSiteInitiationReaction());
-			listR.add(new RadicalSiteInitiationHReaction());
-			listR.add(new RadicalChargeSiteInitiationReaction());
-			listR.add(new CarbonylEliminationReaction());
-			listR.add(new RadicalSiteHrDeltaReaction());
-			listR.add(new RadicalSiteHrGammaReaction());
-			
-			/*apply all reactions*/
-			for (int j = 0; j < listR.size(); j++){
-				IReactionProcess type = listR.get(j);
-				IMoleculeSet fragments = null;
-				IReactionSet setOfReactions = null;
-//				if(j == 0){/*1: radicalSiteInitiation*/
-					typeOfFragmentation = type.getClass().getSimpleName();
-					
-					
-					if(printInfo)
-					System.out.println("--"+typeOfFragmentation+"--");
-					
-					try {
-						
-						IMoleculeSet setOfReactants = molecule.getBuilder()
-							.newInstance(IMoleculeSet.class);
-						cleanFlagReactiveCenter((IMolecule)fragmentToStudy);
-						setOfReactants.addMolecule((IMolecule)fragmentToStudy);
-				        setOfReactions = type.initiate(setOfReactants, null);
-				        
-				        if(printInfo)
-				        System.out.println("numberOfReactions: "+setOfReactions.getReactionCount());
-						
-				        if(setOfReactions.getReactionCount() == 0)
-							continue;
-				        
-					} catch (CDKException e) {
-						e.printStackTrace();
-						System.err.println("error in a fragmentation. ReactionType:"+typeOfFragmentation);
+			for(int i = 0; i < setOfFragments.size() ; i++){
+				if(monitor.isCanceled()){
+					canceled = true;
+					truncated = true;
+					break;
+				}
+				if(deadline > 0 && System.currentTimeMillis() > deadline){
+					truncated = true;
+					break;
+				}
+				numberOfFragments = i;
+				monitor.subTask("Fragments expanded: "+i+", in queue: "+(setOfFragments.size()-i));
+				monitor.worked(1);
+				String typeOfFragmentation = null;
+				fragmentToStudy = setOfFragments.get(i);
+	
+				/*apply all reactions*/
+				Expansion expansion = getExpansion(i);
+				for (int j = 0; j < reactionNames.length; j++){
+					IMoleculeSet fragments = null;
+					IReactionSet setOfReactions = expansion.reactionSets[j];
+					typeOfFragmentation = reactionNames[j];
+					if(expansion.failures[j] != null){
+						trace.reactionFailed(fragmentToStudy, typeOfFragmentation, expansion.failures[j]);
 						continue;
 					}
-			        
-//				}
-//				if(j == 1){/*1: RadicalSiteInitiationH*/
-//					typeOfFragmentation = "RadicalSiteInitiationH";
-//					
-//					if(printInfo)
-//					System.out.println("--"+typeOfFragmentation+"--");
-//					
-//					try{
-//					
-//						IMoleculeSet setOfReactants = molecule.getBuilder().newMoleculeSet();
-//						cleanFlagReactiveCenter((IMolecule)fragmentToStudy);
-//						setOfReactants.addMolecule((IMolecule)fragmentToStudy);
-//				        Object[] params = {Boolean.FALSE};
-//				        RadicalSiteInitiationHReaction type  = new RadicalSiteInitiationHReaction();
-//				        List<IParameterReact> paramList = new ArrayList<IParameterReact>();
-//					    IParameterReact param = new SetReactionCenter();
-//				        param.setParameter(Boolean.FALSE);
-//				        paramList.add(param);
-//				        type.setParameterList(paramList);
-//				        setOfReactions = type.initiate(setOfReactants, null);
-//				        
-//				        if(printInfo)
-//				        System.out.println("numberOfReactions: "+setOfReactions.getReactionCount());
-//						
-//				        if(setOfReactions.getReactionCount() == 0)
-//							continue;
-//				        
-//					} catch (CDKException e) {
-//						e.printStackTrace();
-//						System.err.println("error in a fragmentation. ReactionType:"+typeOfFragmentation);
-//						continue;
-//					}
-//				}
-//				if(j == 2){/*1: carbonylElemination*/
-//					typeOfFragmentation = "CarbonylElimination";
-//					
-//					if(printInfo)
-//					System.out.println("--"+typeOfFragmentation+"--");
-//					
-//					try{
-//						
-//						IMoleculeSet setOfReactants = molecule.getBuilder().newMoleculeSet();
-//						cleanFlagReactiveCenter((IMolecule)fragmentToStudy);
-//						setOfReactants.addMolecule((IMolecule)fragmentToStudy);
-//				        Object[] params = {Boolean.FALSE};
-//				        CarbonylEliminationReaction type  = new CarbonylEliminationReaction();
-//				        List<IParameterReact> paramList = new ArrayList<IParameterReact>();
-//					    IParameterReact param = new SetReactionCenter();
-//				        param.setParameter(Boolean.FALSE);
-//				        paramList.add(param);
-//				        type.setParameterList(paramList);
-//				        setOfReactions = type.initiate(setOfReactants, null);
-//				        
-//				        if(printInfo)
-//				        System.out.println("numberOfReactions: "+setOfReactions.getReactionCount());
-//						
-//				        if(setOfReactions.getReactionCount() == 0)
-//							continue;
-//			        
-//					} catch (CDKException e) {
-//						e.printStackTrace();
-//						System.err.println("error in a fragmentation. ReactionType:"+typeOfFragmentation);
-//						continue;
-//					}
-//				}
-//				if(j == 3){/*1: HydrogenRearrangementDelta*/
-//					typeOfFragmentation = "HydrogenRearrangementDelta";
-//					
-//					if(printInfo)
-//					System.out.println("--"+typeOfFragmentation+"--");
-//					
-//					try{
-//						
-//						IMoleculeSet setOfReactants = molecule.getBuilder().newMoleculeSet();
-//						cleanFlagReactiveCenter((IMolecule)fragmentToStudy);
-//						setOfReactants.addMolecule((IMolecule)fragmentToStudy);
-//				        Object[] params = {Boolean.FALSE};
-//				        RadicalSiteHrDeltaReaction type  = new RadicalSiteHrDeltaReaction();
-//				        List<IParameterReact> paramList = new ArrayList<IParameterReact>();
-//					    IParameterReact param = new SetReactionCenter();
-//				        param.setParameter(Boolean.FALSE);
-//				        paramList.add(param);
-//				        type.setParameterList(paramList);
-//				        setOfReactions = type.initiate(setOfReactants, null);
-//				        
-//				        if(printInfo)
-//				        System.out.println("numberOfReactions: "+setOfReactions.getReactionCount());
-//						
-//				        if(setOfReactions.getReactionCount() == 0)
-//							continue;
-//			        
-//					} catch (CDKException e) {
-//						e.printStackTrace();
-//						System.err.println("error in a fragmentation. ReactionType:"+typeOfFragmentation);
-//						continue;
-//					}
-//				}
-//				if(j == 4){/*1: HydrogenRearrangementDelta*/
-//					typeOfFragmentation = "HydrogenRearrangementGamma";
-//					
-//					if(printInfo)
-//					System.out.println("--"+typeOfFragmentation+"--");
-//					
-//					try{
-//						
-//						IMoleculeSet setOfReactants = molecule.getBuilder().newMoleculeSet();
-//						cleanFlagReactiveCenter((IMolecule)fragmentToStudy);
-//						setOfReactants.addMolecule((IMolecule)fragmentToStudy);
-//				        Object[] params = {Boolean.FALSE};
-//				        RadicalSiteHrGammaReaction type  = new RadicalSiteHrGammaReaction();
-//				        List<IParameterReact> paramList = new ArrayList<IParameterReact>();
-//					    IParameterReact param = new SetReactionCenter();
-//				        param.setParameter(Boolean.FALSE);
-//				        paramList.add(param);
-//				        type.setParameterList(paramList);
-//				        setOfReactions = type.initiate(setOfReactants, null);
-//				        
-//				        if(printInfo)
-//				        System.out.println("numberOfReactions: "+setOfReactions.getReactionCount());
-//						
-//				        if(setOfReactions.getReactionCount() == 0)
-//							continue;
-//			        
-//					} catch (CDKException e) {
-//						e.printStackTrace();
-//						System.err.println("error in a fragmentation. ReactionType:"+typeOfFragmentation);
-//						continue;
-//					}
-//				}
-				
-				
-				if(setOfReactions.getReactionCount() > 0){
-//					Iterator sorI = setOfReactions.reactions();
-					int counta = 0;
-					for(IReaction rr:setOfReactions.reactions()){
-//						IReaction rr = (IReaction)sorI.next();
-						
-						if(printInfo)
-						System.out.println(counta+" :-------------------------------------------");
-						
-						fragments = rr.getProducts();
-						for (int k = 0; k < fragments.getAtomContainerCount(); k++){
-//							System.out.println("   :-------------------------------------------");
-							
-							int molk = 0;/*I need to add the other fragment*/
-							if(k == 0)
-								molk = 1;
-							else
-								molk = 0;
-							
-							if(printInfo)
-							printInformation(fragments.getMolecule(k));/**********************************************************/
+					/* a reaction type without classifier can not be ranked, its
+					 * fragments are not selected by the beam, as without it*/
+					boolean scored = beam && ReactionModelRegistry.getType(typeOfFragmentation) >= 0;
+					trace.reactionApplied(fragmentToStudy, typeOfFragmentation, setOfReactions);
+					
+					if(setOfReactions == null)
+						continue;
+					
+					if(setOfReactions.getReactionCount() > 0){
+						int counta = 0;
+						int product = 0;
+						for(IReaction rr:setOfReactions.reactions()){
 							
-							if(FragmentController.isAccept(fragments.getMolecule(k))){
+							fragments = rr.getProducts();
+							for (int k = 0; k < fragments.getAtomContainerCount(); k++){
 								
-								if(printInfo)
-								System.out.println("is Accepted");
+								int molk = 0;/*I need to add the other fragment*/
+								if(k == 0)
+									molk = 1;
+								else
+									molk = 0;
 								
-								FragmentMolecule fragmentE =FragmentController.exists(fragTree, fragments.getMolecule(k));
-								if(fragmentE == null){
-									
-									if(printInfo)
-									System.out.println("no exists");
-									
-									/*prove probability*/
-									double prob = -1;
+								long key = expansion.keys[j][product];
+								if(expansion.accepted[j][product++]){
 									
-//									if(process == Medea.PREDICTPROCESS || process == Medea.LEARN_PREDPROCESS){
-//										prob = extractorP.getProbability(type.getClass().getSimpleName(),fragmentToStudy, fragments.getMolecule(k), fragments.getMolecule(molk),setOfReactions.getReaction(counta).mappings());
-//										if(printInfo)
-//											System.out.println("proba: "+prob);
-//										if(prob < 0.01)
-//											continue;
-//									}
-									FragmentMolecule fm = addNewFragment(fragments.getMolecule(k),
-											typeOfFragmentation,
-											fragmentToStudy.getIdP(),
-											prob,
-											setOfReactions.getReaction(counta).mappings(),
-											fragments.getMolecule(molk));
-
-									boolean isExistingPeak = true;
-									if(process == Medea.LEARNINGPROCESS)
-										isExistingPeak = FragmentController.isExistingMass(fragments.getMolecule(k), peaksX);
-
-									if(isExistingPeak){
-										
-										if(printInfo)
-										System.out.println("isExistingPeak");
+									FragmentMolecule fragmentE =FragmentController.exists(fragTree, fragments.getMolecule(k), key);
+									if(fragmentE == null){
 										
-										setOfFragments.add(fm);
-									}else
-										if(printInfo)
-											System.out.println("notisExistingPeak");
+										/*prove probability*/
+										double prob = -1;
 										
-								}else{
-									if(typeOfFragmentation.equals("HydrogenRearrangementGamma") || typeOfFragmentation.equals("HydrogenRearrangementDelta")){
-										if(FragmentController.isPredecessor(fragTree, fragmentToStudy,fragmentE)){
-											
-											if(printInfo)
-												System.out.println("isPredecesor-Not added");
-											
+										if(scored){
+											prob = getScore(typeOfFragmentation, fragments.getMolecule(k), fragments.getMolecule(molk),setOfReactions.getReaction(counta).mappings());
+											if(prob >= options.getMinProbability())
+												candidates.add(new Candidate(fragments.getMolecule(k),
+														typeOfFragmentation,
+														fragmentToStudy,
+														prob,
+														setOfReactions.getReaction(counta).mappings(),
+														fragments.getMolecule(molk),
+														key));
+											else
+												trace.fragmentRejected(fragments.getMolecule(k), fragmentToStudy, typeOfFragmentation, IFragmentationListener.LOW_PROBABILITY);
 											continue;
 										}
+										if(isFull()){
+											truncated = true;
+											trace.fragmentRejected(fragments.getMolecule(k), fragmentToStudy, typeOfFragmentation, IFragmentationListener.LIMIT_REACHED);
+											continue;
+										}
+										FragmentMolecule fm = addNewFragment(fragments.getMolecule(k),
+												typeOfFragmentation,
+												fragmentToStudy.getIdP(),
+												prob,
+												setOfReactions.getReaction(counta).mappings(),
+												fragments.getMolecule(molk),
+												key);
+	
+										boolean isExistingPeak = true;
+										if(process == Medea.LEARNINGPROCESS)
+											isExistingPeak = FragmentController.isExistingMass(fm, peaksX);
+	
+										if(isExistingPeak){
+											setOfFragments.add(fm);
+											submitExpansion(setOfFragments.size()-1);
+										}else
+											trace.fragmentRejected(fm, fragmentToStudy, typeOfFragmentation, IFragmentationListener.NO_PEAK);
+											
+									}else{
+										if(typeOfFragmentation.equals("HydrogenRearrangementGamma") || typeOfFragmentation.equals("HydrogenRearrangementDelta")){
+											if(FragmentController.isPredecessor(fragTree, fragmentToStudy,fragmentE)){
+												trace.fragmentRejected(fragmentE, fragmentToStudy, typeOfFragmentation, IFragmentationListener.PREDECESSOR);
+												continue;
+											}
+										}
+										/*prove probability*/
+										double prob = -1;
+										if(scored)
+											prob = getScore(typeOfFragmentation, fragments.getMolecule(k), fragments.getMolecule(molk),setOfReactions.getReaction(counta).mappings());
+										
+										addFragment(fragmentE,
+												typeOfFragmentation,
+												fragmentToStudy.getIdP(),
+												prob,
+												setOfReactions.getReaction(counta).mappings(),
+												fragments.getMolecule(molk));
+											
 									}
-									/*prove probability*/
-									double prob = -1;
-
-									if(printInfo){
-										System.out.println("exists");
-									}
-									
 									
-//									if(process == Medea.PREDICTPROCESS || process == Medea.LEARN_PREDPROCESS){
-//										if(printInfo)
-//											System.out.print("PREDICTPROCESS& LEARN_PREDPROCESS");
-//										prob = extractorP.getProbability(type.getClass().getSimpleName(),fragmentToStudy, fragments.getMolecule(k), fragments.getMolecule(molk),setOfReactions.getReaction(counta).mappings());
-//										if(printInfo)
-//											System.out.println("proba: "+prob);
-//										
-//										if(prob < 0.01){
-//											System.out.println("not continue, not suficient probability");
-//											continue;
-//										}
-//									}
-									addFragment(fragmentE,
-											typeOfFragmentation,
-											fragmentToStudy.getIdP(),
-											prob,
-											setOfReactions.getReaction(counta).mappings(),
-											fragments.getMolecule(molk));
-										
-								}
-								
-							}else
-								if(printInfo)
-								System.out.println("is not Accepted");
-
+								}else
+									trace.fragmentRejected(fragments.getMolecule(k), fragmentToStudy, typeOfFragmentation, IFragmentationListener.NOT_ACCEPTED);
+	
+							}
+								counta++;
 						}
-							counta++;
 					}
 				}
+				/* the results of this fragment are not needed anymore*/
+				if(executor != null)
+					pendingExpansions.set(i, null);
+				
+				if(beam && i == levelEnd-1){
+					addCandidates(candidates);
+					levelEnd = setOfFragments.size();
+				}
 			}
-			
-			
+		}finally{
+			cancelPendingExpansions();
 		}
 
-		if(printInfo)
-		System.out.println("Ended: total fragments found: "+setOfFragments.size());
+		trace.fragmentationEnded(fragTree, truncated);
 	}
-	
-	private void printInformation(IMolecule fragmentToStudy) {
-		String smiles = (new SmilesGenerator()).createSMILES(fragmentToStudy);
-		IMolecularFormula formula = MolecularFormulaManipulator.getMolecularFormula(fragmentToStudy);
-		int mass = (int)MolecularFormulaManipulator.getTotalExactMass(formula);
-		System.out.println("SMILE: " + smiles+", count Atoms: " + fragmentToStudy.getAtomCount()+ ", count Bonds: " + fragmentToStudy.getBondCount() + ", imass: "+ mass );
-		
-//		Iterator atomsI = fragmentToStudy.atoms();
-		int count = 0;
-		for(IAtom atom:fragmentToStudy.atoms()){
-//			IAtom atom = (IAtom)atomsI.next();
-			int se = fragmentToStudy.getConnectedSingleElectronsCount(atom);
-			System.out.println("Atom: "
-							+ count
-							+ ", Sym: "
-							+ atom.getSymbol()
-							+ ", AtomAt: "
-							+ fragmentToStudy.getConnectedAtomsCount(atom)
-							+ ", lpe: "
-							+ fragmentToStudy.getConnectedLonePairsCount(atom)
-							+ ", sg: " + se
-							+ ", Charge: "
-							+ atom.getFormalCharge());
-			count++;
+	/**
+	 * get the probability of a reaction from the classifier of its type. It is
+	 * used to select the fragments of the beam, only for the reaction types
+	 * which have a classifier, see ReactionModelRegistry.getType().
+	 * 
+	 * @param nameReaction The name of the reaction type
+	 * @param product      The obtained fragment
+	 * @param neighbour    The other product of the reaction
+	 * @param mappings     The mappings of the reaction
+	 * @return             The probability
+	 */
+	private double getScore(String nameReaction, IMolecule product, IMolecule neighbour, Iterable<IMapping> mappings){
+		return extractorP.getProbability(nameReaction, fragmentToStudy, product, neighbour, mappings);
+	}
+	/**
+	 * add the best candidates of a level: the fragments with the highest 
+	 * probability, until the beam width. A candidate which was found in
+	 * this level from other fragment is only linked.
+	 * 
+	 * @param candidates The candidates of the level. It is cleared
+	 */
+	private void addCandidates(ArrayList<Candidate> candidates){
+		Collections.sort(candidates);
+		int added = 0;
+		for(Candidate candidate : candidates){
+			fragmentToStudy = candidate.parent;
+			FragmentMolecule fragmentE = FragmentController.exists(fragTree, candidate.fragment, candidate.key);
+			if(fragmentE != null){
+				addFragment(fragmentE,
+						candidate.nameProcess,
+						candidate.parent.getIdP(),
+						candidate.probability,
+						candidate.mappings,
+						candidate.neighbour);
+				continue;
+			}
+			if(added >= options.getBeamWidth()){
+				trace.fragmentRejected(candidate.fragment, candidate.parent, candidate.nameProcess, IFragmentationListener.OUT_OF_BEAM);
+				continue;
+			}
+			if(isFull()){
+				truncated = true;
+				trace.fragmentRejected(candidate.fragment, candidate.parent, candidate.nameProcess, IFragmentationListener.LIMIT_REACHED);
+				break;
+			}
+			FragmentMolecule fm = addNewFragment(candidate.fragment,
+					candidate.nameProcess,
+					candidate.parent.getIdP(),
+					candidate.probability,
+					candidate.mappings,
+					candidate.neighbour,
+					candidate.key);
+			setOfFragments.add(fm);
+			submitExpansion(setOfFragments.size()-1);
+			added++;
 		}
-		
+		candidates.clear();
+	}
+	/**
+	 * get if the maximal number of fragments is reached. All fragments of the
+	 * tree are counted, also the ones of a learning process which have not
+	 * a peak and are not expanded. The molecular ion is not counted.
+	 * 
+	 * @return True, if no more fragments can be added
+	 */
+	private boolean isFull(){
+		return options.getMaxFragments() > 0 && fragTree.getGraph().getNodeCount()-1 >= options.getMaxFragments();
+	}
+	/**
+	 * get if the fragmentation was stopped by the maximal number of fragments 
+	 * or by the time. The tree contains the fragments found until then.
+	 * 
+	 * @return True, if a limit was reached
+	 */
+	public boolean isTruncated(){
+		return truncated;
+	}
+	/**
+	 * get if the fragmentation was stopped because the monitor was canceled.
+	 * 
+	 * @return True, if it was canceled
+	 */
+	public boolean isCanceled(){
+		return canceled;
+	}
+	/**
+	 * get the number of fragments which are found and not yet expanded
+	 * 
+	 * @return The number of fragments in the queue
+	 */
+	public int getQueueSize(){
+		return setOfFragments.size() - numberOfFragments;
+	}
+	/**
+	 * create the context for the constructors without MedeaContext.
+	 * 
+	 * @param process The Process
+	 * @param peaksX  The peaks of the experimental spectrum
+	 * @return        The MedeaContext
+	 */
+	private static MedeaContext createContext(int process, ArrayList<Double> peaksX){
+		MedeaContext context = new MedeaContext(process);
+		context.setPeaks(peaksX, null);
+		return context;
+	}
+	/**
+	 * get the MedeaContext of this fragmentation
+	 * 
+	 * @return The MedeaContext
+	 */
+	public MedeaContext getContext(){
+		return context;
+	}
+	/**
+	 * create the reaction process of this type. Each fragmentation
+	 * uses its own instance, they are not shared between threads.
+	 * 
+	 * @param index The index of the reaction type
+	 * @return      The IReactionProcess
+	 */
+	private static IReactionProcess createReactionProcess(int index){
+		switch(index){
+		case 0: return new RadicalSiteInitiationReaction();
+		case 1: return new RadicalSiteInitiationHReaction();
+		case 2: return new RadicalChargeSiteInitiationReaction();
+		case 3: return new CarbonylEliminationReaction();
+		case 4: return new RadicalSiteHrDeltaReaction();
+		case 5: return new RadicalSiteHrGammaReaction();
+		}
+		return null;
+	}
+	/**
+	 * apply one reaction type to the fragment.
+	 * 
+	 * @param index    The index of the reaction type
+	 * @param fragment The IMolecule to fragment
+	 * @return         The IReactionSet
+	 * @throws CDKException if the reaction failed
+	 */
+	private IReactionSet initiate(int index, IMolecule fragment) throws CDKException{
+		IReactionProcess type = createReactionProcess(index);
+		IMoleculeSet setOfReactants = fragment.getBuilder()
+			.newInstance(IMoleculeSet.class);
+		cleanFlagReactiveCenter(fragment);
+		setOfReactants.addMolecule(fragment);
+		return type.initiate(setOfReactants, null);
+	}
+	/**
+	 * apply all reaction types to the fragment, and check and calculate the
+	 * canonical key of the products. It does not use the FragmentTree, so the
+	 * fragments can be expanded in parallel. A reaction type which fails is
+	 * kept in the Expansion, it is reported by the thread of the fragmentation.
+	 * 
+	 * @param fragment The IMolecule to fragment
+	 * @return         The Expansion
+	 */
+	private Expansion expand(IMolecule fragment){
+		Expansion expansion = new Expansion();
+		for(int j = 0 ; j < reactionNames.length ; j++){
+			IReactionSet setOfReactions;
+			try {
+				setOfReactions = initiate(j, fragment);
+			} catch (CDKException e) {
+				expansion.failures[j] = e;
+				continue;
+			}
+			expansion.reactionSets[j] = setOfReactions;
+			int count = 0;
+			for(IReaction reaction:setOfReactions.reactions())
+				count += reaction.getProducts().getAtomContainerCount();
+			expansion.accepted[j] = new boolean[count];
+			expansion.keys[j] = new long[count];
+			int product = 0;
+			for(IReaction reaction:setOfReactions.reactions()){
+				IMoleculeSet products = reaction.getProducts();
+				for(int k = 0 ; k < products.getAtomContainerCount(); k++){
+					IMolecule molecule = products.getMolecule(k);
+					if(FragmentController.isAccept(molecule)){
+						expansion.accepted[j][product] = true;
+						expansion.keys[j][product] = FragmentKey.getKey(molecule);
+					}
+					product++;
+				}
+			}
+		}
+		return expansion;
+	}
+	/**
+	 * In parallel mode, submit the expansion of this fragment to the executor.
+	 * The task works with its own copy of the fragment, the reactions are 
+	 * then moved to the fragment.
+	 * 
+	 * @param position The position of the fragment into setOfFragments
+	 */
+	private void submitExpansion(int position){
+		if(executor == null)
+			return;
+		final FragmentMolecule fragment = setOfFragments.get(position);
+		pendingExpansions.add(executor.submit(new Callable<Expansion>(){
+			public Expansion call() throws Exception {
+				IMolecule copy = (IMolecule) fragment.clone();
+				Expansion expansion = expand(copy);
+				for(int j = 0 ; j < reactionNames.length ; j++)
+					if(expansion.reactionSets[j] != null)
+						expansion.reactionSets[j] = mapToFragment(expansion.reactionSets[j], copy, fragment);
+				return expansion;
+			}
+		}));
 	}
+	/**
+	 * get the expansion of this fragment. In sequential mode it is 
+	 * calculated now, in parallel mode the result of its task is collected.
+	 * 
+	 * @param position The position of the fragment into setOfFragments
+	 * @return         The Expansion
+	 * @throws CDKException
+	 */
+	private Expansion getExpansion(int position) throws CDKException{
+		if(executor == null)
+			return expand(setOfFragments.get(position));
+		try {
+			return pendingExpansions.get(position).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CDKException("fragmentation was interrupted");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			if(cause instanceof Error)
+				throw (Error)cause;
+			throw new CDKException("error in a fragmentation", cause);
+		}
+	}
+	/**
+	 * The reactions were applied to a copy of the fragment. The mappings are
+	 * moved to the atoms and bonds of the fragment, as in the sequential mode.
+	 * 
+	 * @param setOfReactions The IReactionSet obtained from the copy
+	 * @param copy           The copy of the fragment
+	 * @param fragment       The fragment
+	 * @return               The IReactionSet with the fragment as reactant
+	 */
+	private IReactionSet mapToFragment(IReactionSet setOfReactions, IMolecule copy, IMolecule fragment){
+		IReactionSet result = copy.getBuilder().newInstance(IReactionSet.class);
+		for(IReaction reaction:setOfReactions.reactions()){
+			IReaction reactionF = copy.getBuilder().newInstance(IReaction.class);
+			reactionF.addReactant(fragment);
+			IMoleculeSet products = reaction.getProducts();
+			for(int k = 0 ; k < products.getAtomContainerCount(); k++)
+				reactionF.addProduct(products.getMolecule(k));
+			for(IMapping mapping:reaction.mappings()){
+				IChemObject object = mapping.getChemObject(0);
+				if(object instanceof IAtom && copy.contains((IAtom)object))
+					object = fragment.getAtom(copy.getAtomNumber((IAtom)object));
+				else if(object instanceof IBond && copy.contains((IBond)object))
+					object = fragment.getBond(copy.getBondNumber((IBond)object));
+				reactionF.addMapping(copy.getBuilder().newInstance(IMapping.class,
+						object, mapping.getChemObject(1)));
+			}
+			result.addReaction(reactionF);
+		}
+		return result;
+	}
+	/**
+	 * cancel the tasks which are still running. Used when the fragmentation
+	 * ends or fails.
+	 */
+	private void cancelPendingExpansions(){
+		for(Future<Expansion> future : pendingExpansions)
+			if(future != null)
+				future.cancel(true);
+		pendingExpansions.clear();
+	}
+	
 	/**
 	 * Adds the new fragment into MSFragments, and this into an ArrayList which contains all
 	 * fragments and its conections
@@ -513,12 +678,30 @@ public class Fragmenter {
 	 * @return The MSFragments value
 	 */
 	private FragmentMolecule addNewFragment(IMolecule fragment, String nameProcess, Position parent, double probab, Iterable<IMapping> iterable, IMolecule fragmentNB){
+		return addNewFragment(fragment, nameProcess, parent, probab, iterable, fragmentNB, FragmentKey.getKey(fragment));
+	}
+	/**
+	 * Adds the new fragment into MSFragments, and this into an ArrayList which contains all
+	 * fragments and its conections
+	 * 
+	 * @param fragment     IMolecule to add.
+	 * @param nameProcess  Name of the process which is obtained this molecule.
+	 * @param parent       position of the predecessor.
+	 * @param probab       The probability of obtaining this reaction.
+	 * @param iterable      The mapping of the reaction
+	 * @param fragmentNB   IMolecule represents the Neighboring
+	 * @param key          The canonical key of the fragment, see FragmentKey
+	 * @return The MSFragments value
+	 */
+	private FragmentMolecule addNewFragment(IMolecule fragment, String nameProcess, Position parent, double probab, Iterable<IMapping> iterable, IMolecule fragmentNB, long key){
 		IMolecularFormula formula = MolecularFormulaManipulator.getMolecularFormula(fragment);
-		int mass = (int)MolecularFormulaManipulator.getTotalExactMass(formula);
+		int mass = FragmentMolecule.getNominalMass(formula);
 		Position id = new Position(mass, fragTree.getFragments(mass).size());
 		
-		FragmentMolecule msfrag = new FragmentMolecule(fragment, id, nameProcess, parent, probab);
+		FragmentMolecule msfrag = new FragmentMolecule(fragment, formula, id, nameProcess, parent, probab);
+		msfrag.setStructureKey(key);
 		fragTree.addFragment(msfrag);
+		trace.fragmentCreated(msfrag, nameProcess.equals("Ionitzation") ? null : fragmentToStudy, nameProcess, probab);
 
 		if(!nameProcess.equals("Ionitzation"))
 			fragmentToStudy.setChildren(id, nameProcess, iterable, fragmentNB,  probab);
@@ -541,11 +724,11 @@ public class Fragmenter {
 	 * @return The MSFragments value
 	 */
 	private void addFragment(FragmentMolecule fragment, String nameProcess, Position parent, double probab, Iterable<IMapping> iterable, IMolecule fragmentNB){
-		IMolecularFormula formula = MolecularFormulaManipulator.getMolecularFormula(fragment);
-		int mass = (int)MolecularFormulaManipulator.getTotalExactMass(formula);
+		int mass = fragment.getNominalMass();
 		Position id = fragment.getIdP();
 		
 		fragment.setParent(parent);
+		trace.duplicateFound(fragment, fragmentToStudy, nameProcess);
 
 		if(!nameProcess.equals("Ionitzation"))
 			fragmentToStudy.setChildren(id, nameProcess, iterable, fragmentNB,  probab);
@@ -587,4 +770,45 @@ public class Fragmenter {
 		for(int j = 0 ; j < molecule.getBondCount(); j++)
 			molecule.getBond(j).setFlag(CDKConstants.REACTIVE_CENTER, false);
 	}
+	/**
+	 * reactions of all types applied to a fragment, with the check and the
+	 * canonical key of each product. The products are counted in the order 
+	 * of the reactions and of their products.
+	 */
+	private static class Expansion {
+		final IReactionSet[] reactionSets = new IReactionSet[reactionNames.length];
+		/** if each product is accepted, see FragmentController.isAccept()*/
+		final boolean[][] accepted = new boolean[reactionNames.length][];
+		/** canonical key of each accepted product, see FragmentKey*/
+		final long[][] keys = new long[reactionNames.length][];
+		/** the error of each reaction type which failed*/
+		final CDKException[] failures = new CDKException[reactionNames.length];
+	}
+	/**
+	 * fragment obtained in a level of the beam search, which is added when 
+	 * the level is expanded if it is one of the best.
+	 */
+	private static class Candidate implements Comparable<Candidate>{
+		private final IMolecule fragment;
+		private final String nameProcess;
+		private final FragmentMolecule parent;
+		private final double probability;
+		private final Iterable<IMapping> mappings;
+		private final IMolecule neighbour;
+		private final long key;
+		
+		Candidate(IMolecule fragment, String nameProcess, FragmentMolecule parent, double probability, Iterable<IMapping> mappings, IMolecule neighbour, long key){
+			this.fragment = fragment;
+			this.nameProcess = nameProcess;
+			this.parent = parent;
+			this.probability = probability;
+			this.mappings = mappings;
+			this.neighbour = neighbour;
+			this.key = key;
+		}
+		/* highest probability first, the sort keeps the order of equal ones*/
+		public int compareTo(Candidate other){
+			return Double.compare(other.probability, probability);
+		}
+	}
 }
@@ -0,0 +1,86 @@
+package net.bioclipse.medea.core;
+
+import org.openscience.cdk.interfaces.IMolecule;
+import org.openscience.cdk.interfaces.IReactionSet;
+
+/**
+ * Listener which receives the events of a fragmentation: the reactions which
+ * are applied to each fragment, the fragments which are created, found again
+ * or rejected. The listeners are added to a FragmentationTrace, see 
+ * Medea.addFragmentationListener(). The methods are called from the thread
+ * which makes the fragmentation, they should return quickly.
+ * 
+ * @author Miguel Rojas
+ */
+public interface IFragmentationListener {
+
+	/** the product has not a positive charge, it is not visible for the spectrometer*/
+	public static final int NOT_ACCEPTED = 0;
+	/** the mass of the fragment is not a peak of the experimental spectrum. Learning process*/
+	public static final int NO_PEAK = 1;
+	/** the fragment of a hydrogen rearrangement is a predecessor of its parent*/
+	public static final int PREDECESSOR = 2;
+	/** the probability of the reaction is lower than the minimal probability of the beam*/
+	public static final int LOW_PROBABILITY = 3;
+	/** the fragment was not one of the best of its level*/
+	public static final int OUT_OF_BEAM = 4;
+	/** the maximal number of fragments was reached*/
+	public static final int LIMIT_REACHED = 5;
+
+	/**
+	 * A reaction type was applied to a fragment.
+	 * 
+	 * @param fragment     The FragmentMolecule which is fragmented
+	 * @param nameReaction The name of the reaction type
+	 * @param reactions    The IReactionSet obtained
+	 */
+	public void reactionApplied(FragmentMolecule fragment, String nameReaction, IReactionSet reactions);
+
+	/**
+	 * A reaction type could not be applied to a fragment. The fragmentation
+	 * continues with the other reaction types.
+	 * 
+	 * @param fragment     The FragmentMolecule which is fragmented
+	 * @param nameReaction The name of the reaction type
+	 * @param cause        The reason of the failure
+	 */
+	public void reactionFailed(FragmentMolecule fragment, String nameReaction, Exception cause);
+
+	/**
+	 * A new fragment was added into the FragmentTree.
+	 * 
+	 * @param fragment     The new FragmentMolecule
+	 * @param parent       The FragmentMolecule which was fragmented, null for an ionization
+	 * @param nameReaction The name of the reaction
+	 * @param probability  The probability of the reaction, -1 if it was not calculated
+	 */
+	public void fragmentCreated(FragmentMolecule fragment, FragmentMolecule parent, String nameReaction, double probability);
+
+	/**
+	 * A product is a fragment which was already in the FragmentTree. Only the
+	 * reaction is added.
+	 * 
+	 * @param fragment     The FragmentMolecule which exists
+	 * @param parent       The FragmentMolecule which was fragmented
+	 * @param nameReaction The name of the reaction
+	 */
+	public void duplicateFound(FragmentMolecule fragment, FragmentMolecule parent, String nameReaction);
+
+	/**
+	 * A product is not added into the FragmentTree or it is not fragmented again.
+	 * 
+	 * @param product      The IMolecule obtained
+	 * @param parent       The FragmentMolecule which was fragmented
+	 * @param nameReaction The name of the reaction
+	 * @param reason       The reason, NOT_ACCEPTED, NO_PEAK, PREDECESSOR, LOW_PROBABILITY, OUT_OF_BEAM or LIMIT_REACHED
+	 */
+	public void fragmentRejected(IMolecule product, FragmentMolecule parent, String nameReaction, int reason);
+
+	/**
+	 * The fragmentation is finished.
+	 * 
+	 * @param fragmentTree The FragmentTree obtained
+	 * @param truncated    True, if a limit of the fragmentation was reached
+	 */
+	public void fragmentationEnded(FragmentTree fragmentTree, boolean truncated);
+}
@@ -0,0 +1,31 @@
+package net.bioclipse.medea.core;
+
+import org.openscience.cdk.interfaces.IAtomContainer;
+
+/**
+ * Listener which receives the results of a MedeaBatchPredictor as soon as
+ * each prediction is finished. The methods are called from the thread which
+ * runs the batch, one call at a time.
+ * 
+ * @author Miguel Rojas
+ */
+public interface IPredictionListener {
+
+	/**
+	 * The prediction of a molecule is finished.
+	 * 
+	 * @param index    The position of the molecule in the input
+	 * @param molecule The IAtomContainer
+	 * @param medea    The Medea object with the predicted spectrum and fragmentation
+	 */
+	public void predicted(int index, IAtomContainer molecule, Medea medea);
+
+	/**
+	 * The prediction of a molecule failed. The rest of the batch continues.
+	 * 
+	 * @param index    The position of the molecule in the input
+	 * @param molecule The IAtomContainer
+	 * @param error    The cause of the failure
+	 */
+	public void failed(int index, IAtomContainer molecule, Throwable error);
+}
@@ -0,0 +1,332 @@
+package net.bioclipse.medea.core;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.config.IsotopeFactory;
+import org.openscience.cdk.interfaces.IIsotope;
+import org.openscience.cdk.interfaces.IMolecularFormula;
+
+/**
+ * Class which calculates the isotope pattern of a formula: the exact masses
+ * of its isotopic species and their probabilities. The pattern of an element
+ * is the pattern of one atom raised to the number of atoms by repeated
+ * squaring, and the patterns of the elements are convolved. After each
+ * convolution the peaks nearer than the resolution are merged into their
+ * centroid and the negligible peaks are removed, so that the patterns stay
+ * small. The peaks under the cutoff, relative to the highest one, are only
+ * removed from the pattern of the whole formula, as a small peak of an
+ * element can grow with the number of atoms.
+ * <pre>
+ *  IsotopePatternGenerator generator = new IsotopePatternGenerator(0.01, 0.001);
+ *  MassSpectrum pattern = generator.getPattern(fragment.getFormula());
+ * </pre>
+ * The same formulas appear in many fragments and molecules, so the patterns
+ * are kept by formula and by element and number of atoms. The isotopes of
+ * the common organic elements are given here, the others are taken from the
+ * IsotopeFactory of CDK. A generator can be used by several threads.
+ *
+ * @author Miguel Rojas
+ */
+public class IsotopePatternGenerator {
+
+	/** mass of the electron, which a cation has lost*/
+	public static final double ELECTRON_MASS = 0.00054857990946;
+	/** width in m/z under which two peaks are merged*/
+	public static final double DEFAULT_RESOLUTION = 0.01;
+	/** probability relative to the highest peak under which a peak is removed*/
+	public static final double DEFAULT_CUTOFF = 0.001;
+	/** probability relative to the highest peak under which a peak of a partial pattern is removed*/
+	private static final double PRUNING = 1e-12;
+	private static final int MAX_ENTRIES = 10000;
+
+	/** exact mass and abundance of each stable isotope of the common elements*/
+	private static final Map<String, double[]> ISOTOPES = new HashMap<String, double[]>();
+	static{
+		ISOTOPES.put("H", new double[]{1.00782503207, 0.999885, 2.0141017778, 0.000115});
+		ISOTOPES.put("C", new double[]{12.0, 0.9893, 13.0033548378, 0.0107});
+		ISOTOPES.put("N", new double[]{14.0030740048, 0.99636, 15.0001088982, 0.00364});
+		ISOTOPES.put("O", new double[]{15.99491461956, 0.99757, 16.99913170, 0.00038, 17.9991610, 0.00205});
+		ISOTOPES.put("F", new double[]{18.99840322, 1.0});
+		ISOTOPES.put("Si", new double[]{27.9769265325, 0.92223, 28.976494700, 0.04685, 29.97377017, 0.03092});
+		ISOTOPES.put("P", new double[]{30.97376163, 1.0});
+		ISOTOPES.put("S", new double[]{31.97207100, 0.9499, 32.97145876, 0.0075, 33.96786690, 0.0425, 35.96708076, 0.0001});
+		ISOTOPES.put("Cl", new double[]{34.96885268, 0.7576, 36.96590259, 0.2424});
+		ISOTOPES.put("Br", new double[]{78.9183371, 0.5069, 80.9162906, 0.4931});
+		ISOTOPES.put("I", new double[]{126.904473, 1.0});
+	}
+
+	private final double resolution;
+	private final double cutoff;
+	/** patterns by formula, as C4H8O2*/
+	private final Map<String, MassSpectrum> formulas = createCache();
+	/** patterns by element and number of atoms, as C 4, not pruned at the cutoff*/
+	private final Map<String, MassSpectrum> elements = createCache();
+	/** patterns of one atom of the elements which are not in ISOTOPES*/
+	private final Map<String, MassSpectrum> atoms = new HashMap<String, MassSpectrum>();
+
+	/**
+	 * Constructor of the IsotopePatternGenerator object with the default
+	 * resolution and cutoff.
+	 */
+	public IsotopePatternGenerator(){
+		this(DEFAULT_RESOLUTION, DEFAULT_CUTOFF);
+	}
+	/**
+	 * Constructor of the IsotopePatternGenerator object
+	 *
+	 * @param resolution The width in m/z under which two peaks are merged
+	 * @param cutoff     The probability relative to the highest peak under which a peak is removed
+	 */
+	public IsotopePatternGenerator(double resolution, double cutoff){
+		if(!(resolution >= 0))
+			throw new IllegalArgumentException("The resolution must be positive: "+resolution);
+		if(!(cutoff >= 0 && cutoff < 1))
+			throw new IllegalArgumentException("The cutoff must be between 0 and 1: "+cutoff);
+		this.resolution = resolution;
+		this.cutoff = cutoff;
+	}
+	/**
+	 * get the width in m/z under which two peaks are merged
+	 *
+	 * @return The resolution
+	 */
+	public double getResolution(){
+		return resolution;
+	}
+	/**
+	 * get the probability relative to the highest peak under which a peak is removed
+	 *
+	 * @return The cutoff
+	 */
+	public double getCutoff(){
+		return cutoff;
+	}
+	/**
+	 * get the isotope pattern of a formula, the masses of the neutral species.
+	 *
+	 * @param formula The IMolecularFormula
+	 * @return        The peaks, sorted by mass, with the probability of each one
+	 * @throws IllegalArgumentException if an element has no known isotopes
+	 */
+	public MassSpectrum getPattern(IMolecularFormula formula){
+		/* the isotopes of the formula are grouped by element*/
+		TreeMap<String, Integer> counts = new TreeMap<String, Integer>();
+		for(IIsotope isotope : formula.isotopes()){
+			Integer count = counts.get(isotope.getSymbol());
+			int total = formula.getIsotopeCount(isotope) + (count == null ? 0 : count.intValue());
+			counts.put(isotope.getSymbol(), new Integer(total));
+		}
+		return getPattern(counts);
+	}
+	/**
+	 * get the isotope pattern of a number of atoms of an element
+	 *
+	 * @param symbol The symbol of the element
+	 * @param count  The number of atoms
+	 * @return       The peaks, sorted by mass, with the probability of each one
+	 * @throws IllegalArgumentException if the element has no known isotopes
+	 */
+	public MassSpectrum getPattern(String symbol, int count){
+		TreeMap<String, Integer> counts = new TreeMap<String, Integer>();
+		counts.put(symbol, new Integer(count));
+		return getPattern(counts);
+	}
+	/**
+	 * get the isotope pattern of the number of atoms of each element
+	 */
+	private MassSpectrum getPattern(TreeMap<String, Integer> counts){
+		StringBuilder key = new StringBuilder();
+		for(Map.Entry<String, Integer> entry : counts.entrySet())
+			key.append(entry.getKey()).append(entry.getValue());
+		String name = key.toString();
+		synchronized(formulas){
+			MassSpectrum pattern = formulas.get(name);
+			if(pattern != null)
+				return pattern;
+		}
+		MassSpectrum pattern = new MassSpectrum(new double[]{0.0}, new double[]{1.0}, null);
+		for(Map.Entry<String, Integer> entry : counts.entrySet())
+			pattern = convolve(pattern, getElement(entry.getKey(), entry.getValue().intValue()));
+		pattern = centroid(pattern.getMasses(), pattern.getIntensities(), pattern.size(), cutoff);
+		synchronized(formulas){
+			formulas.put(name, pattern);
+		}
+		return pattern;
+	}
+	/**
+	 * get the isotope pattern of a number of atoms of an element, without
+	 * the peaks under the cutoff removed.
+	 */
+	private MassSpectrum getElement(String symbol, int count){
+		String key = symbol+" "+count;
+		synchronized(elements){
+			MassSpectrum pattern = elements.get(key);
+			if(pattern != null)
+				return pattern;
+		}
+		MassSpectrum pattern = new MassSpectrum(new double[]{0.0}, new double[]{1.0}, null);
+		MassSpectrum power = getAtom(symbol);
+		/* repeated squaring, log2(count) convolutions*/
+		for(int n = count ; n > 0 ; n >>= 1){
+			if((n & 1) != 0)
+				pattern = convolve(pattern, power);
+			if(n > 1)
+				power = convolve(power, power);
+		}
+		synchronized(elements){
+			elements.put(key, pattern);
+		}
+		return pattern;
+	}
+	/**
+	 * convolve two patterns. The peaks of the shorter pattern shift the other
+	 * one, and the shifted copies, which are sorted, are merged one by one.
+	 *
+	 * @param a The first pattern
+	 * @param b The second pattern
+	 * @return  The pattern of both, merged at the resolution
+	 */
+	private MassSpectrum convolve(MassSpectrum a, MassSpectrum b){
+		if(a.size() < b.size()){
+			MassSpectrum swap = a;
+			a = b;
+			b = swap;
+		}
+		int capacity = a.size()*b.size();
+		double[] masses = new double[capacity];
+		double[] probabilities = new double[capacity];
+		double[] mergedMasses = new double[capacity];
+		double[] mergedProbabilities = new double[capacity];
+		int size = 0;
+		for(int j = 0 ; j < b.size() ; j++){
+			double shift = b.getMass(j);
+			double probability = b.getIntensity(j);
+			/* merge the sorted peaks with the copy of a shifted by the peak j*/
+			int x = 0, y = 0, n = 0;
+			while(x < size || y < a.size()){
+				if(y == a.size() || (x < size && masses[x] <= a.getMass(y) + shift)){
+					mergedMasses[n] = masses[x];
+					mergedProbabilities[n++] = probabilities[x++];
+				}else{
+					mergedMasses[n] = a.getMass(y) + shift;
+					mergedProbabilities[n++] = a.getIntensity(y++)*probability;
+				}
+			}
+			double[] swap = masses;
+			masses = mergedMasses;
+			mergedMasses = swap;
+			swap = probabilities;
+			probabilities = mergedProbabilities;
+			mergedProbabilities = swap;
+			size = n;
+		}
+		return centroid(masses, probabilities, size, PRUNING);
+	}
+	/**
+	 * merge the sorted peaks nearer than the resolution into their centroid
+	 * and remove the ones under the cutoff. The arrays are changed.
+	 */
+	MassSpectrum centroid(double[] masses, double[] probabilities, int size){
+		return centroid(masses, probabilities, size, cutoff);
+	}
+	/**
+	 * merge the sorted peaks nearer than the resolution into their centroid
+	 * and remove the ones under a probability relative to the highest one.
+	 */
+	private MassSpectrum centroid(double[] masses, double[] probabilities, int size, double cutoff){
+		int n = 0;
+		double max = 0.0;
+		for(int i = 0 ; i < size ; ){
+			double probability = probabilities[i];
+			double moment = masses[i]*probabilities[i];
+			double centre = masses[i];
+			for(i++ ; i < size && masses[i] - centre <= resolution ; i++){
+				probability += probabilities[i];
+				moment += masses[i]*probabilities[i];
+				if(probability > 0)
+					centre = moment/probability;
+			}
+			masses[n] = centre;
+			probabilities[n++] = probability;
+			if(probability > max)
+				max = probability;
+		}
+		int kept = 0;
+		for(int i = 0 ; i < n ; i++)
+			if(probabilities[i] >= cutoff*max && probabilities[i] > 0){
+				masses[kept] = masses[i];
+				probabilities[kept++] = probabilities[i];
+			}
+		double[] resultMasses = new double[kept];
+		double[] resultProbabilities = new double[kept];
+		System.arraycopy(masses, 0, resultMasses, 0, kept);
+		System.arraycopy(probabilities, 0, resultProbabilities, 0, kept);
+		return new MassSpectrum(resultMasses, resultProbabilities, null);
+	}
+	/**
+	 * get the pattern of one atom of an element
+	 */
+	private MassSpectrum getAtom(String symbol){
+		double[] isotopes = ISOTOPES.get(symbol);
+		if(isotopes != null){
+			double[] masses = new double[isotopes.length/2];
+			double[] probabilities = new double[isotopes.length/2];
+			for(int i = 0 ; i < masses.length ; i++){
+				masses[i] = isotopes[2*i];
+				probabilities[i] = isotopes[2*i + 1];
+			}
+			return new MassSpectrum(masses, probabilities, null);
+		}
+		synchronized(atoms){
+			MassSpectrum atom = atoms.get(symbol);
+			if(atom == null){
+				atom = readAtom(symbol);
+				atoms.put(symbol, atom);
+			}
+			return atom;
+		}
+	}
+	/**
+	 * read the isotopes of an element from the IsotopeFactory
+	 */
+	private MassSpectrum readAtom(String symbol){
+		IIsotope[] isotopes;
+		try{
+			isotopes = IsotopeFactory.getInstance(DefaultChemObjectBuilder.getInstance()).getIsotopes(symbol);
+		}catch(IOException e){
+			throw new IllegalArgumentException("The isotopes of "+symbol+" could not be read: "+e.getMessage());
+		}
+		/* only the stable isotopes, sorted by mass*/
+		TreeMap<Double, Double> peaks = new TreeMap<Double, Double>();
+		if(isotopes != null)
+			for(int i = 0 ; i < isotopes.length ; i++){
+				Double mass = isotopes[i].getExactMass();
+				Double abundance = isotopes[i].getNaturalAbundance();
+				if(mass != null && abundance != null && abundance.doubleValue() > 0)
+					peaks.put(mass, new Double(abundance.doubleValue()/100));
+			}
+		if(peaks.isEmpty())
+			throw new IllegalArgumentException("No isotopes are known of "+symbol);
+		double[] masses = new double[peaks.size()];
+		double[] probabilities = new double[peaks.size()];
+		int i = 0;
+		for(Map.Entry<Double, Double> entry : peaks.entrySet()){
+			masses[i] = entry.getKey().doubleValue();
+			probabilities[i++] = entry.getValue().doubleValue();
+		}
+		return new MassSpectrum(masses, probabilities, null);
+	}
+	private static Map<String, MassSpectrum> createCache(){
+		return new LinkedHashMap<String, MassSpectrum>(16, 0.75f, true){
+			private static final long serialVersionUID = 5113764405741305640L;
+			protected boolean removeEldestEntry(Map.Entry<String, MassSpectrum> eldest){
+				return size() > MAX_ENTRIES;
+			}
+		};
+	}
+}
@@ -0,0 +1,159 @@
+package net.bioclipse.medea.core;
+
+import org.xmlcml.cml.base.CMLElements;
+import org.xmlcml.cml.element.CMLPeak;
+import org.xmlcml.cml.element.CMLPeakList;
+import org.xmlcml.cml.element.CMLSpectrum;
+
+/**
+ * A mass spectrum as the peaks of m/z and intensity, kept in two arrays.
+ * The predicted spectrum is created in this form and the comparisons read
+ * it without parsing XML. The CMLSpectrum is only created the first time it
+ * is asked.
+ * <pre>
+ *  MassSpectrum spectrum = medea.getPredictedMassSpectrum();
+ *  for(int i = 0 ; i < spectrum.size() ; i++)
+ *      System.out.println(spectrum.getMass(i)+" "+spectrum.getIntensity(i));
+ * </pre>
+ * A MassSpectrum is not changed after it is created.
+ *
+ * @author Miguel Rojas
+ */
+public class MassSpectrum {
+
+	private static final String X_UNITS = "jcampdx: m/z";
+	private static final String Y_UNITS = "jcampdx: RELATIVE ABUNDANCE";
+
+	private final double[] masses;
+	private final double[] intensities;
+	/** the spectrum as CML, created the first time it is asked*/
+	private CMLSpectrum cmlSpectrum;
+
+	/**
+	 * Constructor of the MassSpectrum object. The arrays are copied.
+	 *
+	 * @param masses      The m/z of the peaks
+	 * @param intensities The intensities of the peaks
+	 */
+	public MassSpectrum(double[] masses, double[] intensities){
+		this(copy(masses), copy(intensities), null);
+	}
+	/**
+	 * Constructor of the MassSpectrum object which keeps the arrays.
+	 *
+	 * @param masses      The m/z of the peaks
+	 * @param intensities The intensities of the peaks
+	 * @param cmlSpectrum The same spectrum as CML, or null
+	 */
+	MassSpectrum(double[] masses, double[] intensities, CMLSpectrum cmlSpectrum){
+		if(masses.length != intensities.length)
+			throw new IllegalArgumentException("The spectrum has "+masses.length+" masses and "+intensities.length+" intensities");
+		this.masses = masses;
+		this.intensities = intensities;
+		this.cmlSpectrum = cmlSpectrum;
+	}
+	/**
+	 * create a MassSpectrum from the first peak list of a CMLSpectrum. The
+	 * CMLSpectrum is kept, getCMLSpectrum() returns it.
+	 *
+	 * @param spectrum The CMLSpectrum
+	 * @return         The MassSpectrum
+	 */
+	public static MassSpectrum create(CMLSpectrum spectrum){
+		CMLElements<CMLPeakList> peakLists = spectrum.getPeakListElements();
+		if(peakLists == null || peakLists.size() == 0)
+			return new MassSpectrum(new double[0], new double[0], spectrum);
+		CMLElements<CMLPeak> peaks = peakLists.get(0).getPeakElements();
+		double[] masses = new double[peaks.size()];
+		double[] intensities = new double[peaks.size()];
+		for(int i = 0 ; i < peaks.size() ; i++){
+			CMLPeak peak = peaks.get(i);
+			masses[i] = peak.getXValue();
+			intensities[i] = peak.getYValue();
+		}
+		return new MassSpectrum(masses, intensities, spectrum);
+	}
+	/**
+	 * create the predicted MassSpectrum of a FragmentTree whose fragments
+	 * have their abundances, as Medea does after the fragmentation.
+	 *
+	 * @param fragmentTree The FragmentTree
+	 * @param isotopes     The IsotopePatternGenerator, null for the nominal masses
+	 * @return             The MassSpectrum
+	 */
+	public static MassSpectrum create(FragmentTree fragmentTree, IsotopePatternGenerator isotopes){
+		return new CMLSpectrumCreator(Medea.PREDICTPROCESS, fragmentTree, isotopes).getMassSpectrum();
+	}
+	/**
+	 * get the number of peaks
+	 *
+	 * @return The number of peaks
+	 */
+	public int size(){
+		return masses.length;
+	}
+	/**
+	 * get the m/z of a peak
+	 *
+	 * @param index The index, from 0 to size()
+	 * @return      The m/z
+	 */
+	public double getMass(int index){
+		return masses[index];
+	}
+	/**
+	 * get the intensity of a peak
+	 *
+	 * @param index The index, from 0 to size()
+	 * @return      The intensity
+	 */
+	public double getIntensity(int index){
+		return intensities[index];
+	}
+	/**
+	 * get the m/z of the peaks
+	 *
+	 * @return A copy of the m/z
+	 */
+	public double[] getMasses(){
+		return copy(masses);
+	}
+	/**
+	 * get the intensities of the peaks
+	 *
+	 * @return A copy of the intensities
+	 */
+	public double[] getIntensities(){
+		return copy(intensities);
+	}
+	/**
+	 * get the spectrum as CML. It is created the first time it is asked,
+	 * after that the same CMLSpectrum is returned.
+	 *
+	 * @return The CMLSpectrum
+	 */
+	public synchronized CMLSpectrum getCMLSpectrum(){
+		if(cmlSpectrum == null){
+			CMLSpectrum spectrum = new CMLSpectrum();
+			spectrum.setType("massSpectrum");
+			CMLPeakList peakList = new CMLPeakList();
+			for(int i = 0 ; i < masses.length ; i++){
+				CMLPeak peak = new CMLPeak();
+				peak.setXUnits(X_UNITS);
+				peak.setYUnits(Y_UNITS);
+				peak.setXValue(masses[i]);
+				peak.setYValue(intensities[i]);
+				peakList.addPeak(peak);
+			}
+			spectrum.addPeakList(peakList);
+			cmlSpectrum = spectrum;
+		}
+		return cmlSpectrum;
+	}
+
+	private static double[] copy(double[] array){
+		double[] result = new double[array.length];
+		System.arraycopy(array, 0, result, 0, array.length);
+		return result;
+	}
+}
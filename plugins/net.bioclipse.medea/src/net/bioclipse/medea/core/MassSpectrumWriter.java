@@ -0,0 +1,172 @@
+package net.bioclipse.medea.core;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+import org.xmlcml.cml.element.CMLSpectrum;
+
+/**
+ * Class which writes predicted mass spectra as CML, JCAMP-DX, MSP (NIST) or
+ * CSV, one after the other in the same output. The CML of a spectrum is the
+ * one of MassSpectrum.getCMLSpectrum(), with the name as title, inside one
+ * cml element.
+ * <pre>
+ *  MassSpectrumWriter writer = new MassSpectrumWriter(out, MassSpectrumWriter.MSP);
+ *  writer.writeHeader();
+ *  writer.write("butanone", medea.getPredictedMassSpectrum(), medea.isPartial());
+ *  writer.writeFooter();
+ * </pre>
+ *
+ * @author Miguel Rojas
+ */
+public class MassSpectrumWriter {
+
+	/** format of the output*/
+	public static final String CML = "cml";
+	public static final String JCAMP = "jdx";
+	public static final String MSP = "msp";
+	public static final String CSV = "csv";
+
+	private final PrintWriter writer;
+	private final String format;
+
+	/**
+	 * Constructor of the MassSpectrumWriter object
+	 *
+	 * @param writer The PrintWriter, it is not closed
+	 * @param format CML, JCAMP, MSP or CSV
+	 */
+	public MassSpectrumWriter(PrintWriter writer, String format){
+		this.writer = writer;
+		this.format = checkFormat(format);
+	}
+	/**
+	 * get the format of a name: cml, jdx (also jcamp and dx), msp or csv
+	 *
+	 * @param value The name of the format, in any case
+	 * @return      The format
+	 * @throws IllegalArgumentException if the format is not known
+	 */
+	public static String checkFormat(String value){
+		String format = value.toLowerCase(Locale.US);
+		if(format.equals("jcamp") || format.equals("dx"))
+			format = JCAMP;
+		if(!format.equals(CML) && !format.equals(JCAMP) && !format.equals(MSP) && !format.equals(CSV))
+			throw new IllegalArgumentException("unknown format "+value);
+		return format;
+	}
+	/**
+	 * get the format of a file from its extension
+	 *
+	 * @param fileName The name of the file
+	 * @return         The format, CML if the extension is not known
+	 */
+	public static String getFormat(String fileName){
+		int dot = fileName.lastIndexOf('.');
+		if(dot < 0)
+			return CML;
+		try{
+			return checkFormat(fileName.substring(dot + 1));
+		}catch(IllegalArgumentException e){
+			return CML;
+		}
+	}
+	/**
+	 * get the format of the output
+	 *
+	 * @return The format
+	 */
+	public String getFormat(){
+		return format;
+	}
+	/**
+	 * write what comes before the first spectrum: the cml element or the
+	 * header of the CSV
+	 */
+	public void writeHeader(){
+		if(format.equals(CML)){
+			writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+			writer.println("<cml xmlns=\"http://www.xml-cml.org/schema\">");
+		}else if(format.equals(CSV))
+			writer.println("name,mz,intensity");
+	}
+	/**
+	 * write what comes after the last spectrum
+	 */
+	public void writeFooter(){
+		if(format.equals(CML))
+			writer.println("</cml>");
+	}
+	/**
+	 * write a spectrum in the format of the output
+	 *
+	 * @param name     The name of the molecule
+	 * @param spectrum The MassSpectrum
+	 * @param partial  True, if the prediction was stopped by a limit
+	 */
+	public void write(String name, MassSpectrum spectrum, boolean partial){
+		double[] x = spectrum.getMasses();
+		double[] y = spectrum.getIntensities();
+		if(format.equals(CML)){
+			/* the CMLSpectrum of the MassSpectrum is shared, the title is set in a copy*/
+			CMLSpectrum cml = new CMLSpectrum(spectrum.getCMLSpectrum());
+			cml.setTitle(name);
+			writer.println(cml.toXML());
+		}else if(format.equals(JCAMP)){
+			writer.println("##TITLE="+name);
+			writer.println("##JCAMP-DX=4.24");
+			writer.println("##DATA TYPE=MASS SPECTRUM");
+			writer.println("##ORIGIN=MEDEA prediction"+(partial ? " (partial)" : ""));
+			writer.println("##OWNER=");
+			writer.println("##XUNITS=M/Z");
+			writer.println("##YUNITS=RELATIVE ABUNDANCE");
+			writer.println("##XFACTOR=1");
+			writer.println("##YFACTOR=1");
+			if(x.length > 0){
+				double minY = y[0], maxY = y[0];
+				for(int i = 1 ; i < y.length ; i++){
+					minY = Math.min(minY, y[i]);
+					maxY = Math.max(maxY, y[i]);
+				}
+				writer.println("##FIRSTX="+format(x[0]));
+				writer.println("##LASTX="+format(x[x.length - 1]));
+				writer.println("##FIRSTY="+format(y[0]));
+				writer.println("##MAXX="+format(x[x.length - 1]));
+				writer.println("##MINX="+format(x[0]));
+				writer.println("##MAXY="+format(maxY));
+				writer.println("##MINY="+format(minY));
+			}
+			writer.println("##NPOINTS="+x.length);
+			writer.println("##PEAK TABLE=(XY..XY)");
+			StringBuilder line = new StringBuilder();
+			for(int i = 0 ; i < x.length ; i++){
+				if(line.length() > 0)
+					line.append(' ');
+				line.append(format(x[i])).append(',').append(format(y[i]));
+				if(i % 5 == 4 || i == x.length - 1){
+					writer.println(line);
+					line.setLength(0);
+				}
+			}
+			writer.println("##END=");
+		}else if(format.equals(MSP)){
+			writer.println("Name: "+name);
+			if(partial)
+				writer.println("Comments: partial prediction");
+			writer.println("Num Peaks: "+x.length);
+			for(int i = 0 ; i < x.length ; i++)
+				writer.println(format(x[i])+" "+format(y[i]));
+			writer.println();
+		}else{
+			String quoted = "\""+name.replace("\"", "\"\"")+"\"";
+			for(int i = 0 ; i < x.length ; i++)
+				writer.println(quoted+","+format(x[i])+","+format(y[i]));
+		}
+	}
+
+	private static String format(double value){
+		if(value == Math.rint(value) && Math.abs(value) < 1e15)
+			return Long.toString((long)value);
+		return Double.toString(value);
+	}
+}
@@ -4,11 +4,18 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import net.bioclipse.medea.core.learning.ExtractorProbability;
+import net.bioclipse.medea.core.learning.TrainingSetWriter;
+import net.bioclipse.medea.core.prediction.AdministratorFilesReader;
 import net.bioclipse.medea.core.prediction.ExtractorAbundance;
+import net.bioclipse.medea.core.prediction.ReactionModelRegistry;
 import net.bioclipse.reaction.domain.ICDKReactionScheme;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IMolecule;
@@ -24,6 +31,9 @@ import spok.utils.SpectrumUtils;
  *  Medea medea = new Medea();
  *  medea.predictMS(ac);
  * </pre>
+ * A prediction can be followed and canceled with an IProgressMonitor. If the
+ * time budget of the FragmentationOptions is reached, the result contains the
+ * fragments found until then and isPartial() is true.
  * 
  * @author Miguel Rojas
  *
@@ -32,21 +42,39 @@ public class Medea {
 	
 	/** AtomContainer parsed and which is simulated its mass spectrum */
 	private IAtomContainer ac;
-	/** CMLSpectrum which contains the final simulated spectrum*/
-	private CMLSpectrum cmlSpectrum = null;
-	/** CMLSpectrum which contains the final simulated spectrum without the
+	/** MassSpectrum which contains the final simulated spectrum*/
+	private MassSpectrum massSpectrum = null;
+	/** MassSpectrum which contains the final simulated spectrum without the
 	 * the calculation of the abundance for each peak*/
-	private CMLSpectrum cmlTSpectrum = null;
+	private MassSpectrum massTSpectrum = null;
 	/** CMLSpectrum which contains the final experimental spectrum*/
 	private CMLSpectrum cmlExpSpectrum = null;
-	/** IChemFile that contains the IReactionSet*/
+	/** IChemFile that contains the IReactionSet, created the first time it is asked*/
 	private ICDKReactionScheme chemFileReaction = null;
+	/** FragmentTree of the last result, from which the IReactionSet is created*/
+	private FragmentTree predictedTree = null;
 	
 	private boolean taskFinalized = false;
+	/** true if the last result was stopped by a limit of the fragmentation*/
+	private boolean partial = false;
+	/** version of the classifiers used by the last result*/
+	private long modelVersion = 0;
 	private Fragmenter fController;
 	private ArrayList<Double> peaksX;
 	private double[] peaksY;
 	private String nameFile;
+	/** training set which collects the learned rows, or null*/
+	private TrainingSetWriter trainingSet = null;
+	/** ExecutorService for the parallel fragmentation. Null is sequential*/
+	private ExecutorService fragmentationExecutor = null;
+	/** limits of the fragmentation*/
+	private FragmentationOptions fragmentationOptions = new FragmentationOptions();
+	/** listeners of the events of the fragmentation*/
+	private FragmentationTrace fragmentationTrace = new FragmentationTrace();
+	/** reader of the models, created the first time it is needed*/
+	private AdministratorFilesReader reader = null;
+	/** isotope patterns of the predicted peaks, null for the nominal masses*/
+	private IsotopePatternGenerator isotopes = null;
 
 	/*process to realize*/
 	private int process;
@@ -59,6 +87,91 @@ public class Medea {
 	 */
 	public Medea(){	}
 	
+	/**
+	 * Set the ExecutorService which is used to fragment in parallel. If it is
+	 * null, the default, the fragmentation is sequential. The executor is not
+	 * shut down by Medea.
+	 * 
+	 * @param executor The ExecutorService
+	 */
+	public void setFragmentationExecutor(ExecutorService executor){
+		this.fragmentationExecutor = executor;
+	}
+	/**
+	 * get the ExecutorService which is used to fragment in parallel.
+	 * 
+	 * @return The ExecutorService, or null if the fragmentation is sequential
+	 */
+	public ExecutorService getFragmentationExecutor(){
+		return fragmentationExecutor;
+	}
+	/**
+	 * Set the limits of the fragmentation: the beam width, the maximal number
+	 * of fragments and the maximal time. By default there are no limits.
+	 * 
+	 * @param options The FragmentationOptions, null for no limits
+	 */
+	public void setFragmentationOptions(FragmentationOptions options){
+		this.fragmentationOptions = options == null ? new FragmentationOptions() : options;
+		/* the result depends on the options*/
+		this.ac = null;
+	}
+	/**
+	 * get the limits of the fragmentation
+	 * 
+	 * @return The FragmentationOptions
+	 */
+	public FragmentationOptions getFragmentationOptions(){
+		return fragmentationOptions;
+	}
+	/**
+	 * Set the IsotopePatternGenerator which gives the isotope pattern of each
+	 * fragment, so that the predicted peaks are at exact masses with the
+	 * resolution of the generator. If it is null, the default, the peaks are
+	 * at nominal masses. A generator can be shared by several Medea objects.
+	 * 
+	 * @param isotopes The IsotopePatternGenerator, or null
+	 */
+	public void setIsotopePatternGenerator(IsotopePatternGenerator isotopes){
+		this.isotopes = isotopes;
+		/* the result depends on the peaks*/
+		this.ac = null;
+	}
+	/**
+	 * get the IsotopePatternGenerator of the predicted peaks
+	 * 
+	 * @return The IsotopePatternGenerator, or null if the peaks are at nominal masses
+	 */
+	public IsotopePatternGenerator getIsotopePatternGenerator(){
+		return isotopes;
+	}
+	/**
+	 * Add a listener which receives the events of the fragmentation: the 
+	 * fragments which are created, found again or rejected. Without listeners
+	 * nothing is traced, see ConsoleFragmentationListener to print them.
+	 * 
+	 * @param listener The IFragmentationListener
+	 */
+	public void addFragmentationListener(IFragmentationListener listener){
+		fragmentationTrace.addListener(listener);
+	}
+	/**
+	 * Remove a listener of the events of the fragmentation
+	 * 
+	 * @param listener The IFragmentationListener
+	 */
+	public void removeFragmentationListener(IFragmentationListener listener){
+		fragmentationTrace.removeListener(listener);
+	}
+	/**
+	 * Set the training set which collects the rows of the learning process,
+	 * together with the rows of other molecules. See LearningPipeline.
+	 * 
+	 * @param trainingSet The TrainingSetWriter, or null
+	 */
+	public void setTrainingSet(TrainingSetWriter trainingSet){
+		this.trainingSet = trainingSet;
+	}
 	/**
 	 * get the atomContainer which is predicted its mass spectrum
 	 * 
@@ -76,28 +189,22 @@ public class Medea {
 	 * @param cmlSpectrum the CMLSpectrum
 	 */
 	public void learningMS(IAtomContainer acNew, CMLSpectrum cmlSpectrum, String nameFile){
+		learningMS(acNew, cmlSpectrum, nameFile, null);
+	}
+	/**
+	 * Run the process of learing from a IAtomContainer and its experimental,
+	 * with a monitor which follows the progress and can cancel it.
+	 * 
+	 * @param acNew The IAtomConatiner
+	 * @param cmlSpectrum the CMLSpectrum
+	 * @param nameFile The prefix of the arff files, or null to not write them
+	 * @param monitor The IProgressMonitor, or null
+	 * @throws OperationCanceledException if the monitor was canceled
+	 */
+	public void learningMS(IAtomContainer acNew, CMLSpectrum cmlSpectrum, String nameFile, IProgressMonitor monitor){
 		if(acNew != null && cmlSpectrum != null){
-			this.nameFile = nameFile;
-			cmlExpSpectrum = cmlSpectrum;
-			/* creates a ArrayList with all peaks X and Y*/
-			List<CMLElement> peaks = SpectrumUtils.getPeakElements(cmlSpectrum);
-			int numP = peaks.size()-1;
-			Double massI = new Double(((CMLPeak)peaks.get(numP)).getXValue());
-			peaksX = new ArrayList<Double>();
-			peaksY = new double[massI.intValue()+10];/* the spectrum will be bigger +10 m/e*/
-			Iterator it = peaks.iterator();
-			while(it.hasNext()){
-				CMLPeak peak = (CMLPeak) it.next();
-				if(peak.getXValue() != 0.0){
-					peaksX.add(peak.getXValue());
-					System.out.println(peak.getXValue());
-					peaksY[(int)peak.getXValue()] = peak.getYValue();
-				}else
-					peaksY[(int)peak.getXValue()] = -1.0;
-			}
-			
 			try {
-				predictMS(acNew,peaksX,peaksY);
+				learn(acNew,cmlSpectrum,nameFile,monitor);
 			} catch (CDKException e) {
 				e.printStackTrace();
 			} catch (IOException e) {
@@ -107,6 +214,42 @@ public class Medea {
 			}
 		}
 	}
+	/**
+	 * Run the process of learing from a IAtomContainer and its experimental.
+	 * Unlike learningMS() the errors are given to the caller.
+	 * 
+	 * @param acNew The IAtomConatiner
+	 * @param cmlSpectrum the CMLSpectrum
+	 * @param nameFile The prefix of the arff files, or null to not write them
+	 * @param monitor The IProgressMonitor, or null
+	 * @throws ClassNotFoundException 
+	 * @throws IOException 
+	 * @throws CDKException 
+	 * @throws OperationCanceledException if the monitor was canceled
+	 */
+	public void learn(IAtomContainer acNew, CMLSpectrum cmlSpectrum, String nameFile, IProgressMonitor monitor) throws CDKException, IOException, ClassNotFoundException{
+		if(acNew == null || cmlSpectrum == null)
+			throw new IllegalArgumentException("A molecule and its spectrum are needed to learn");
+		this.nameFile = nameFile;
+		cmlExpSpectrum = cmlSpectrum;
+		/* creates a ArrayList with all peaks X and Y*/
+		List<CMLElement> peaks = SpectrumUtils.getPeakElements(cmlSpectrum);
+		int numP = peaks.size()-1;
+		Double massI = new Double(((CMLPeak)peaks.get(numP)).getXValue());
+		peaksX = new ArrayList<Double>();
+		peaksY = new double[massI.intValue()+10];/* the spectrum will be bigger +10 m/e*/
+		Iterator it = peaks.iterator();
+		while(it.hasNext()){
+			CMLPeak peak = (CMLPeak) it.next();
+			if(peak.getXValue() != 0.0){
+				peaksX.add(peak.getXValue());
+				peaksY[(int)peak.getXValue()] = peak.getYValue();
+			}else
+				peaksY[(int)peak.getXValue()] = -1.0;
+		}
+		
+		predictMS(acNew,peaksX,peaksY,monitor);
+	}
 	/**
 	 * Run the process which will be simulated the mass spectrum of a molecule.
 	 * 
@@ -114,7 +257,7 @@ public class Medea {
 	 */
 	public void predictMS(IAtomContainer acNew){
 		try {
-			predictMS(acNew, null, null);
+			predictMS(acNew, null, null, null);
 		} catch (CDKException e) {
 			e.printStackTrace();
 		} catch (IOException e) {
@@ -123,61 +266,159 @@ public class Medea {
 			e.printStackTrace();
 		}
 	}
+	/**
+	 * Run the process which will be simulated the mass spectrum of a molecule.
+	 * Unlike predictMS(IAtomContainer) the errors are given to the caller.
+	 * 
+	 * @param acNew The IAtomContainer to predict its mass spectrum
+	 * @throws ClassNotFoundException 
+	 * @throws IOException 
+	 * @throws CDKException 
+	 */
+	public void predict(IAtomContainer acNew) throws CDKException, IOException, ClassNotFoundException{
+		predictMS(acNew, null, null, null);
+	}
+	/**
+	 * Run the process which will be simulated the mass spectrum of a molecule,
+	 * with a monitor which follows the progress and can cancel it. The 
+	 * cancellation is checked before each fragment is expanded.
+	 * 
+	 * @param acNew   The IAtomContainer to predict its mass spectrum
+	 * @param monitor The IProgressMonitor, or null
+	 * @throws ClassNotFoundException 
+	 * @throws IOException 
+	 * @throws CDKException 
+	 * @throws OperationCanceledException if the monitor was canceled
+	 */
+	public void predict(IAtomContainer acNew, IProgressMonitor monitor) throws CDKException, IOException, ClassNotFoundException{
+		predictMS(acNew, null, null, monitor);
+	}
 	/**
 	 * Run the process which will be simulated the mass spectrum of a molecule.
 	 * 
 	 * @param acNew  The IAtomContainer to predict its mass spectrum
 	 * @param peaksX An ArrayList with the peaks X
 	 * @param peaksY An Array with the peaks Y
+	 * @param monitor The IProgressMonitor, or null
 	 * @throws ClassNotFoundException 
 	 * @throws IOException 
 	 * @throws CDKException 
 	 */
-	@SuppressWarnings("static-access")
-	private void predictMS(IAtomContainer acNew, ArrayList<Double> peaksX, double[] peaksY) throws CDKException, IOException, ClassNotFoundException{
-		if(ac != acNew){
-			this.ac = acNew;
+	private void predictMS(IAtomContainer acNew, ArrayList<Double> peaksX, double[] peaksY, IProgressMonitor monitor) throws CDKException, IOException, ClassNotFoundException{
+		int newProcess = peaksX != null ? LEARNINGPROCESS : PREDICTPROCESS;
+		long version = ReactionModelRegistry.getInstance().getVersion();
+		/* only a complete prediction of the same molecule with the same 
+		 * classifiers is kept, a partial result or a learning is made again*/
+		if(ac != acNew || partial || !taskFinalized || modelVersion != version
+				|| process != PREDICTPROCESS || newProcess != PREDICTPROCESS){
+			/* nothing is kept of the last result, the molecule is only set
+			 * when the run is finished*/
+			this.ac = null;
+			this.taskFinalized = false;
+			this.partial = false;
+			this.massSpectrum = null;
+			this.massTSpectrum = null;
+			this.predictedTree = null;
+			this.chemFileReaction = null;
+			this.modelVersion = version;
+			this.process = newProcess;
+			if(monitor == null)
+				monitor = new NullProgressMonitor();
 			
-			if(peaksX != null)
-				process = LEARNINGPROCESS;
-			else{
-				process = PREDICTPROCESS;
-			}
-			
-			if(ac instanceof IMolecule){
-				fController = new Fragmenter(process,(IMolecule)ac,peaksX);
+			if(acNew instanceof IMolecule){
+				if(reader == null)
+					reader = new AdministratorFilesReader();
+				MedeaContext context = new MedeaContext(process, reader);
+				context.setPeaks(peaksX, peaksY);
+				context.setNameFile(nameFile);
+				context.setTrainingSet(trainingSet);
+				context.setFragmentationOptions(fragmentationOptions);
+				context.setFragmentationTrace(fragmentationTrace);
+				context.setProgressMonitor(monitor);
+				/* the time budget is for the whole run*/
+				if(fragmentationOptions.getTimeBudget() > 0)
+					context.setDeadline(System.currentTimeMillis() + fragmentationOptions.getTimeBudget());
+				monitor.beginTask("Predicting the mass spectrum", IProgressMonitor.UNKNOWN);
+				try{
+					fController = new Fragmenter(context,(IMolecule)acNew,fragmentationExecutor);
+					checkCanceled();
 					
-				FragmentTree fragmentTree = fController.getFragmentTree();
-				if(process == LEARNINGPROCESS){
-					ExtractorProbability.setProbabilities(fragmentTree,peaksY,nameFile);
-					CMLSpectrumCreator spectrumCreator = new CMLSpectrumCreator(LEARNINGPROCESS, fragmentTree);
-					cmlTSpectrum = spectrumCreator.getCMLSpectrum();
+					FragmentTree fragmentTree = fController.getFragmentTree();
+					if(process == LEARNINGPROCESS){
+						ExtractorProbability.setProbabilities(fragmentTree,context);
+						CMLSpectrumCreator spectrumCreator = new CMLSpectrumCreator(LEARNINGPROCESS, fragmentTree);
+						massTSpectrum = spectrumCreator.getMassSpectrum();
 					
 					
-					/* made 2 times the process comparing the results */
-					fController = new Fragmenter(LEARN_PREDPROCESS,(IMolecule)ac,null);
-					fragmentTree = fController.getFragmentTree();
-				}
+						/* made 2 times the process comparing the results */
+						fController = new Fragmenter(context.createLearnPredictContext(),(IMolecule)acNew,fragmentationExecutor);
+						checkCanceled();
+						fragmentTree = fController.getFragmentTree();
+					}
 //				else
-					ExtractorAbundance.setAbundace(fragmentTree,null);
+						ExtractorAbundance.setAbundace(fragmentTree,null);
 
-				CMLSpectrumCreator spectrumCreator = new CMLSpectrumCreator(PREDICTPROCESS, fragmentTree);
-				cmlSpectrum = spectrumCreator.getCMLSpectrum();
+					CMLSpectrumCreator spectrumCreator = new CMLSpectrumCreator(PREDICTPROCESS, fragmentTree, isotopes);
+					massSpectrum = spectrumCreator.getMassSpectrum();
 				
-				CMLReactionCreator reactionCreator = new CMLReactionCreator(fragmentTree);
-				chemFileReaction = reactionCreator.getReactionScheme();
+					/* the reactions are only extracted if they are asked, see getPredictedFragmentation()*/
+					predictedTree = fragmentTree;
+				}finally{
+					monitor.done();
+				}
 			}
+			this.ac = acNew;
 		}
 		taskFinalized  = true;
 	}
+	/**
+	 * stop the run if the last fragmentation was canceled, and note if it 
+	 * was truncated by a limit.
+	 */
+	private void checkCanceled(){
+		if(fController.isCanceled()){
+			/* nothing is kept of a canceled run*/
+			ac = null;
+			throw new OperationCanceledException();
+		}
+		partial |= fController.isTruncated();
+	}
+	/**
+	 * get if the last result is partial: the fragmentation was stopped by the
+	 * time budget or the maximal number of fragments of the FragmentationOptions.
+	 * 
+	 * @return True, if the result contains only the fragments found until the limit
+	 */
+	public boolean isPartial(){
+		return partial;
+	}
+	/**
+	 * get the version of the classifiers of the ReactionModelRegistry when the
+	 * last result was started. A classifier replaced during the prediction is
+	 * used for the reactions which are scored after the replacement.
+	 * 
+	 * @return The version, see ReactionModelRegistry.getVersion()
+	 */
+	public long getModelVersion(){
+		return modelVersion;
+	}
 	
 	/**
-	 * get the predicted spectrum
+	 * get the predicted spectrum. The CMLSpectrum is created from the 
+	 * MassSpectrum the first time it is asked.
 	 * 
 	 * @return The predicted CMLSpectrum
 	 */
 	public CMLSpectrum getPredictedSpectrum(){
-		return cmlSpectrum;
+		return massSpectrum == null ? null : massSpectrum.getCMLSpectrum();
+	}
+	/**
+	 * get the peaks of the predicted spectrum, without creating the CMLSpectrum
+	 * 
+	 * @return The predicted MassSpectrum
+	 */
+	public MassSpectrum getPredictedMassSpectrum(){
+		return massSpectrum;
 	}
 	/**
 	 * get the predicted spectrum but without the calculation of their abundance of 
@@ -186,7 +427,7 @@ public class Medea {
 	 * @return The predicted CMLSpectrum
 	 */
 	public CMLSpectrum getPredictedTSpectrum(){
-		return cmlTSpectrum;
+		return massTSpectrum == null ? null : massTSpectrum.getCMLSpectrum();
 	}
 	/**
 	 * get the experimetal spectrum. If it is in LEARNINGPROCESS but will be null.
@@ -229,7 +470,16 @@ public class Medea {
 		return process;
 	}
 
+	/**
+	 * get the reactions of the predicted fragmentation. They are extracted
+	 * from the FragmentTree the first time they are asked, so a prediction
+	 * which only needs the spectrum does not create them.
+	 * 
+	 * @return The ICDKReactionScheme, null if nothing was predicted
+	 */
 	public ICDKReactionScheme getPredictedFragmentation() {
+		if(chemFileReaction == null && predictedTree != null)
+			chemFileReaction = new CMLReactionCreator(predictedTree).getReactionScheme();
 		return chemFileReaction;
 	}
 
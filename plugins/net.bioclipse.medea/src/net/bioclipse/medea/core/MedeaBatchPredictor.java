@@ -0,0 +1,220 @@
+package net.bioclipse.medea.core;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.openscience.cdk.interfaces.IAtomContainer;
+
+/** 
+ * Class which predicts the mass spectra of many molecules with a bounded
+ * pool of threads. Each molecule is predicted with its own Medea object and
+ * the results are given to an IPredictionListener as soon as each one is
+ * finished. A failure only affects its own molecule.
+ * <pre>
+ *  MedeaBatchPredictor batch = new MedeaBatchPredictor(4);
+ *  batch.predict(molecules.iterator(), listener);
+ *  batch.shutdown();
+ * </pre>
+ * Only a few molecules are read in advance from the Iterator, so it can be 
+ * used to stream a large file. With the time budget of the FragmentationOptions
+ * no molecule blocks a thread for longer, its result is then partial, see
+ * Medea.isPartial().
+ * 
+ * @author Miguel Rojas
+ */
+public class MedeaBatchPredictor {
+
+	private final ExecutorService executor;
+	/** maximal number of molecules which are submitted and not yet reported*/
+	private final int maxPending;
+	/** limits of the fragmentation of each molecule*/
+	private FragmentationOptions options = new FragmentationOptions();
+	/** isotope patterns of the peaks, shared by all molecules. Null for the nominal masses*/
+	private IsotopePatternGenerator isotopes = null;
+	/** executor which fragments each molecule in parallel, null for the sequential*/
+	private ExecutorService fragmentationExecutor = null;
+
+	/**
+	 * The work made for each molecule, in its own thread. A task is given 
+	 * for each call, so that the calls do not share their data.
+	 */
+	protected interface Task {
+		/**
+		 * process one molecule
+		 * 
+		 * @param medea    The Medea object of this molecule
+		 * @param index    The position of the molecule in the input
+		 * @param molecule The IAtomContainer
+		 * @throws Exception if the molecule failed
+		 */
+		void process(Medea medea, int index, IAtomContainer molecule) throws Exception;
+	}
+	/** the default work, the mass spectrum is predicted*/
+	private static final Task PREDICTION = new Task(){
+		public void process(Medea medea, int index, IAtomContainer molecule) throws Exception{
+			medea.predict(molecule);
+		}
+	};
+
+	/**
+	 * Constructor of the MedeaBatchPredictor object with one thread for each
+	 * available processor.
+	 */
+	public MedeaBatchPredictor(){
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	/**
+	 * Constructor of the MedeaBatchPredictor object.
+	 * 
+	 * @param threads The number of threads which predict in parallel
+	 */
+	public MedeaBatchPredictor(int threads){
+		if(threads < 1)
+			threads = 1;
+		this.executor = Executors.newFixedThreadPool(threads);
+		this.maxPending = threads*2;
+	}
+	/**
+	 * Set the limits of the fragmentation of each molecule, as the time budget.
+	 * 
+	 * @param options The FragmentationOptions, null for no limits
+	 */
+	public void setFragmentationOptions(FragmentationOptions options){
+		this.options = options == null ? new FragmentationOptions() : new FragmentationOptions(options);
+	}
+	/**
+	 * Set the IsotopePatternGenerator of the peaks of each molecule, see
+	 * Medea.setIsotopePatternGenerator(). Its patterns are shared by all
+	 * molecules.
+	 * 
+	 * @param isotopes The IsotopePatternGenerator, null for the nominal masses
+	 */
+	public void setIsotopePatternGenerator(IsotopePatternGenerator isotopes){
+		this.isotopes = isotopes;
+	}
+	/**
+	 * Set the ExecutorService which fragments each molecule in parallel, see
+	 * Medea.setFragmentationExecutor(). It is shared by all molecules and must
+	 * not be the executor of this MedeaBatchPredictor, whose threads wait for
+	 * its tasks. It is not shut down by shutdown().
+	 * 
+	 * @param executor The ExecutorService, null for a sequential fragmentation
+	 */
+	public void setFragmentationExecutor(ExecutorService executor){
+		this.fragmentationExecutor = executor;
+	}
+	/**
+	 * Predict the mass spectra of a list of molecules.
+	 * 
+	 * @param molecules The molecules to predict
+	 * @param listener  The IPredictionListener which receives the results
+	 * @throws InterruptedException
+	 */
+	public void predict(List<? extends IAtomContainer> molecules, IPredictionListener listener) throws InterruptedException{
+		predict(molecules.iterator(), listener);
+	}
+	/**
+	 * Predict the mass spectra of the molecules given from an Iterator. The 
+	 * method returns when all predictions are reported to the listener.
+	 * 
+	 * @param molecules The molecules to predict
+	 * @param listener  The IPredictionListener which receives the results
+	 * @throws InterruptedException
+	 */
+	public void predict(Iterator<? extends IAtomContainer> molecules, IPredictionListener listener) throws InterruptedException{
+		predict(molecules, listener, PREDICTION);
+	}
+	/**
+	 * Process the molecules given from an Iterator with a Task. The method
+	 * returns when all molecules are reported to the listener.
+	 * 
+	 * @param molecules The molecules to process
+	 * @param listener  The IPredictionListener which receives the results
+	 * @param task      The Task made for each molecule
+	 * @throws InterruptedException
+	 */
+	protected void predict(Iterator<? extends IAtomContainer> molecules, IPredictionListener listener, final Task task) throws InterruptedException{
+		CompletionService<Result> completion = new ExecutorCompletionService<Result>(executor);
+		int pending = 0;
+		int index = 0;
+		try{
+			while(molecules.hasNext()){
+				if(pending == maxPending){
+					report(completion.take(), listener);
+					pending--;
+				}
+				final IAtomContainer molecule = molecules.next();
+				final FragmentationOptions limits = options;
+				final IsotopePatternGenerator patterns = isotopes;
+				final ExecutorService fragmentation = fragmentationExecutor;
+				final int position = index++;
+				completion.submit(new Callable<Result>(){
+					public Result call() throws Exception {
+						Result result = new Result(position, molecule);
+						try{
+							if(molecule == null)
+								throw new IllegalArgumentException("No molecule to predict");
+							Medea medea = new Medea();
+							medea.setFragmentationOptions(new FragmentationOptions(limits));
+							medea.setIsotopePatternGenerator(patterns);
+							medea.setFragmentationExecutor(fragmentation);
+							task.process(medea, position, molecule);
+							result.medea = medea;
+						}catch(Throwable e){
+							result.error = e;
+						}
+						return result;
+					}
+				});
+				pending++;
+			}
+			while(pending > 0){
+				report(completion.take(), listener);
+				pending--;
+			}
+		}catch(InterruptedException e){
+			executor.shutdownNow();
+			throw e;
+		}
+	}
+	/**
+	 * Stop the threads. The MedeaBatchPredictor can not be used anymore.
+	 */
+	public void shutdown(){
+		executor.shutdown();
+	}
+	
+	private void report(Future<Result> future, IPredictionListener listener) throws InterruptedException{
+		Result result;
+		try {
+			result = future.get();
+		} catch (ExecutionException e) {
+			/* the task catches all errors itself*/
+			throw new IllegalStateException(e.getCause());
+		}
+		if(result.error != null)
+			listener.failed(result.index, result.molecule, result.error);
+		else
+			listener.predicted(result.index, result.molecule, result.medea);
+	}
+
+	/** result of the prediction of one molecule*/
+	private static class Result {
+		final int index;
+		final IAtomContainer molecule;
+		Medea medea;
+		Throwable error;
+		
+		Result(int index, IAtomContainer molecule){
+			this.index = index;
+			this.molecule = molecule;
+		}
+	}
+}
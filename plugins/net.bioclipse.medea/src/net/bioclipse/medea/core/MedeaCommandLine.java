@@ -0,0 +1,408 @@
+package net.bioclipse.medea.core;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.Molecule;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IMolecule;
+import org.openscience.cdk.io.MDLV2000Reader;
+import org.openscience.cdk.io.iterator.IteratingMDLReader;
+import org.openscience.cdk.smiles.SmilesParser;
+
+/**
+ * Command line which predicts the mass spectra of the molecules of MOL, SD
+ * or SMILES files without Bioclipse and writes them as CML, JCAMP-DX, MSP
+ * (NIST) or CSV. The molecules are predicted in parallel with a
+ * MedeaBatchPredictor and written in the order of the input with a
+ * MassSpectrumWriter.
+ * <pre>
+ *  java -cp ... net.bioclipse.medea.core.MedeaCommandLine -o spectra.msp -threads 8 candidates.sdf
+ *  cat candidates.sdf | java -cp ... net.bioclipse.medea.core.MedeaCommandLine -f jdx - &gt; spectra.jdx
+ * </pre>
+ * Only the classes of net.bioclipse.medea.core are used, so no OSGi framework
+ * and no display are needed. The classpath is the output of this plug-in
+ * (with the data folder of the models), org.openscience.chemojava.qsarweka,
+ * org.openscience.chemojava.qsar, weka.jar, the CDK jars, cmlxom, xom and
+ * org.eclipse.equinox.common for the IProgressMonitor. The options are:
+ * <pre>
+ *  -o &lt;file&gt;           the output, by default the standard output
+ *  -f &lt;format&gt;         cml, jdx, msp or csv. By default the extension of the output, or cml
+ *  -threads &lt;n&gt;        the molecules predicted at the same time, one for each processor
+ *  -fragment-threads &lt;n&gt; the threads which fragment each molecule in parallel, 0 for none
+ *  -time &lt;ms&gt;          the time budget of a molecule, its spectrum is then partial
+ *  -beam &lt;n&gt;           the beam width of the fragmentation
+ *  -max-fragments &lt;n&gt;  the maximal number of fragments of a molecule
+ *  -min-probability &lt;p&gt; the minimal probability of a reaction in the beam search
+ *  -isotopes &lt;width&gt;   the isotope peaks at exact m/z, merged under this width
+ *  -v                  write each molecule to the standard error
+ * </pre>
+ * The exit status is 0 if all molecules were predicted, 1 if some failed and
+ * 2 if the options or the files were wrong.
+ *
+ * @author Miguel Rojas
+ */
+public class MedeaCommandLine {
+
+	/** format of the output, see MassSpectrumWriter*/
+	public static final String CML = MassSpectrumWriter.CML;
+	public static final String JCAMP = MassSpectrumWriter.JCAMP;
+	public static final String MSP = MassSpectrumWriter.MSP;
+	public static final String CSV = MassSpectrumWriter.CSV;
+
+	private String format = null;
+	private File output = null;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	/** threads of the parallel fragmentation, 0 for a sequential one*/
+	private int fragmentThreads = 0;
+	private boolean verbose = false;
+	private final FragmentationOptions options = new FragmentationOptions();
+	/** isotope patterns of the peaks, null for the nominal masses*/
+	private IsotopePatternGenerator isotopes = null;
+	private final List<String> inputs = new ArrayList<String>();
+
+	/**
+	 * a predicted spectrum, written when all the molecules before it are written
+	 */
+	private static class Prediction {
+		final String name;
+		final MassSpectrum spectrum;
+		final boolean partial;
+		final String failure;
+
+		Prediction(String name, MassSpectrum spectrum, boolean partial, String failure){
+			this.name = name;
+			this.spectrum = spectrum;
+			this.partial = partial;
+			this.failure = failure;
+		}
+	}
+
+	/**
+	 * run the command line
+	 *
+	 * @param args The options and the input files, - is the standard input as SD file
+	 */
+	public static void main(String[] args){
+		System.setProperty("java.awt.headless", "true");
+		MedeaCommandLine commandLine = new MedeaCommandLine();
+		int status;
+		try{
+			if(!commandLine.parse(args)){
+				usage();
+				status = 2;
+			}else
+				status = commandLine.run();
+		}catch(IllegalArgumentException e){
+			System.err.println("medea: "+e.getMessage());
+			usage();
+			status = 2;
+		}catch(IOException e){
+			System.err.println("medea: "+e.getMessage());
+			status = 2;
+		}catch(InterruptedException e){
+			System.err.println("medea: interrupted");
+			status = 2;
+		}
+		System.exit(status);
+	}
+	/**
+	 * read the options
+	 *
+	 * @param args The options and the input files
+	 * @return     False, if the help was asked or there is no input
+	 */
+	boolean parse(String[] args){
+		for(int i = 0 ; i < args.length ; i++){
+			String arg = args[i];
+			if(arg.equals("-h") || arg.equals("-help") || arg.equals("--help"))
+				return false;
+			if(arg.equals("-v")){
+				verbose = true;
+				continue;
+			}
+			if(!arg.startsWith("-") || arg.equals("-")){
+				inputs.add(arg);
+				continue;
+			}
+			if(i + 1 >= args.length)
+				throw new IllegalArgumentException("the option "+arg+" has not a value");
+			String value = args[++i];
+			try{
+				if(arg.equals("-o"))
+					output = new File(value);
+				else if(arg.equals("-f"))
+					format = MassSpectrumWriter.checkFormat(value);
+				else if(arg.equals("-threads"))
+					threads = Integer.parseInt(value);
+				else if(arg.equals("-fragment-threads"))
+					fragmentThreads = Integer.parseInt(value);
+				else if(arg.equals("-time"))
+					options.setTimeBudget(Long.parseLong(value));
+				else if(arg.equals("-beam"))
+					options.setBeamWidth(Integer.parseInt(value));
+				else if(arg.equals("-max-fragments"))
+					options.setMaxFragments(Integer.parseInt(value));
+				else if(arg.equals("-min-probability"))
+					options.setMinProbability(Double.parseDouble(value));
+				else if(arg.equals("-isotopes"))
+					isotopes = new IsotopePatternGenerator(Double.parseDouble(value), IsotopePatternGenerator.DEFAULT_CUTOFF);
+				else
+					throw new IllegalArgumentException("unknown option "+arg);
+			}catch(NumberFormatException e){
+				throw new IllegalArgumentException("the option "+arg+" needs a number, not "+value);
+			}
+		}
+		if(format == null)
+			format = output == null ? CML : MassSpectrumWriter.getFormat(output.getName());
+		return !inputs.isEmpty();
+	}
+	/**
+	 * predict the molecules of the inputs and write their spectra
+	 *
+	 * @return The exit status
+	 * @throws IOException if a file could not be read or written
+	 * @throws InterruptedException
+	 */
+	int run() throws IOException, InterruptedException{
+		for(String input : inputs)
+			if(!input.equals("-") && !new File(input).isFile())
+				throw new IOException("the file "+input+" does not exist");
+		OutputStream stream = output == null ? System.out : new FileOutputStream(output);
+		final PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(stream, "UTF-8")));
+		final MassSpectrumWriter spectra = new MassSpectrumWriter(writer, format);
+		final MoleculeIterator molecules = new MoleculeIterator(inputs);
+		final TreeMap<Integer, Prediction> finished = new TreeMap<Integer, Prediction>();
+		final int[] next = new int[1];
+		final int[] failed = new int[1];
+		MedeaBatchPredictor predictor = new MedeaBatchPredictor(threads);
+		predictor.setFragmentationOptions(options);
+		predictor.setIsotopePatternGenerator(isotopes);
+		ExecutorService fragmentation = null;
+		if(fragmentThreads > 0){
+			fragmentation = Executors.newFixedThreadPool(fragmentThreads);
+			predictor.setFragmentationExecutor(fragmentation);
+		}
+		spectra.writeHeader();
+		try{
+			predictor.predict(molecules, new IPredictionListener(){
+				public void predicted(int index, IAtomContainer molecule, Medea medea) {
+					finished.put(new Integer(index), extract(getName(index, molecule), medea));
+					flush();
+				}
+				public void failed(int index, IAtomContainer molecule, Throwable error) {
+					finished.put(new Integer(index), new Prediction(getName(index, molecule), null, false, String.valueOf(error)));
+					flush();
+				}
+				/* the spectra are written in the order of the input*/
+				private void flush(){
+					while(finished.containsKey(new Integer(next[0]))){
+						Prediction prediction = finished.remove(new Integer(next[0]));
+						if(prediction.failure != null){
+							failed[0]++;
+							System.err.println("medea: "+prediction.name+" failed: "+prediction.failure);
+						}else{
+							spectra.write(prediction.name, prediction.spectrum, prediction.partial);
+							if(verbose)
+								System.err.println(prediction.name+": "+prediction.spectrum.size()+" peaks"
+										+(prediction.partial ? " (partial)" : ""));
+						}
+						next[0]++;
+					}
+				}
+			});
+		}finally{
+			predictor.shutdown();
+			if(fragmentation != null)
+				fragmentation.shutdownNow();
+			molecules.close();
+			spectra.writeFooter();
+			if(output == null)
+				writer.flush();
+			else
+				writer.close();
+		}
+		if(writer.checkError())
+			throw new IOException("the spectra could not be written");
+		if(molecules.getError() != null)
+			throw molecules.getError();
+		if(verbose)
+			System.err.println("medea: "+(next[0] - failed[0])+" predicted, "+failed[0]+" failed");
+		return failed[0] == 0 ? 0 : 1;
+	}
+	/**
+	 * keep the predicted spectrum, the Medea is not kept
+	 */
+	private static Prediction extract(String name, Medea medea){
+		MassSpectrum spectrum = medea.getPredictedMassSpectrum();
+		if(spectrum == null)
+			return new Prediction(name, null, false, "no spectrum was predicted");
+		return new Prediction(name, spectrum, medea.isPartial(), null);
+	}
+	/**
+	 * get the name of a molecule: its title, the SMILES of the input or its position
+	 */
+	private static String getName(int index, IAtomContainer molecule){
+		if(molecule != null){
+			Object title = molecule.getProperty(CDKConstants.TITLE);
+			if(title != null && title.toString().trim().length() > 0)
+				return title.toString().trim();
+			if(molecule.getID() != null)
+				return molecule.getID();
+		}
+		return "molecule "+(index + 1);
+	}
+	private static void usage(){
+		System.err.println("usage: medea [options] file... (- for an SD file from the standard input)");
+		System.err.println("  input: .mol, .sdf/.sd, .smi (one SMILES and name for each line)");
+		System.err.println("  -o <file>             the output, by default the standard output");
+		System.err.println("  -f <format>           cml, jdx, msp or csv");
+		System.err.println("  -threads <n>          the molecules predicted at the same time");
+		System.err.println("  -fragment-threads <n> the threads which fragment each molecule in parallel");
+		System.err.println("  -time <ms>            the time budget of a molecule");
+		System.err.println("  -beam <n>             the beam width of the fragmentation");
+		System.err.println("  -max-fragments <n>    the maximal number of fragments of a molecule");
+		System.err.println("  -min-probability <p>  the minimal probability of a reaction in the beam");
+		System.err.println("  -isotopes <width>     the isotope peaks at exact m/z, merged under this width");
+		System.err.println("  -v                    write each molecule to the standard error");
+	}
+
+	/**
+	 * Iterator over the molecules of all inputs, which are read one after the
+	 * other while the molecules are predicted. A molecule which can not be
+	 * read is given as null, its prediction fails.
+	 */
+	private static class MoleculeIterator implements Iterator<IAtomContainer> {
+		private final Iterator<String> inputs;
+		private final SmilesParser smilesParser = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+		private IteratingMDLReader sdf = null;
+		private BufferedReader smiles = null;
+		private IAtomContainer next = null;
+		private boolean hasNext = false;
+		private IOException error = null;
+
+		MoleculeIterator(List<String> inputs){
+			this.inputs = inputs.iterator();
+		}
+		public boolean hasNext() {
+			if(hasNext)
+				return true;
+			try{
+				while(true){
+					if(sdf != null){
+						if(sdf.hasNext()){
+							next = (IAtomContainer)sdf.next();
+							return hasNext = true;
+						}
+						sdf.close();
+						sdf = null;
+					}
+					if(smiles != null){
+						String line = smiles.readLine();
+						if(line != null){
+							line = line.trim();
+							if(line.length() == 0 || line.startsWith("#"))
+								continue;
+							next = parseSmiles(line);
+							return hasNext = true;
+						}
+						smiles.close();
+						smiles = null;
+					}
+					if(!inputs.hasNext())
+						return false;
+					if(open(inputs.next()))
+						return hasNext = true;
+				}
+			}catch(IOException e){
+				/* the molecules read until now are predicted*/
+				error = e;
+				return false;
+			}
+		}
+		public IAtomContainer next() {
+			if(!hasNext())
+				throw new NoSuchElementException();
+			hasNext = false;
+			IAtomContainer result = next;
+			next = null;
+			return result;
+		}
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+		IOException getError(){
+			return error;
+		}
+		void close(){
+			try{
+				if(sdf != null)
+					sdf.close();
+				if(smiles != null)
+					smiles.close();
+			}catch(IOException e){
+				/* nothing more is read*/
+			}
+		}
+		/**
+		 * open an input. A MOL file is read at once.
+		 *
+		 * @return True, if a molecule of a MOL file is in next
+		 */
+		private boolean open(String input) throws IOException{
+			InputStream in = input.equals("-") ? System.in : new FileInputStream(input);
+			String name = input.toLowerCase(Locale.US);
+			if(name.endsWith(".smi") || name.endsWith(".smiles") || name.endsWith(".txt")){
+				smiles = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+				return false;
+			}
+			if(name.endsWith(".mol")){
+				try{
+					next = new MDLV2000Reader(in).read(new Molecule());
+					if(next != null && next.getProperty(CDKConstants.TITLE) == null)
+						next.setProperty(CDKConstants.TITLE, new File(input).getName());
+				}catch(Exception e){
+					System.err.println("medea: "+input+" could not be read: "+e.getMessage());
+					next = null;
+				}finally{
+					in.close();
+				}
+				return true;
+			}
+			sdf = new IteratingMDLReader(in, DefaultChemObjectBuilder.getInstance());
+			return false;
+		}
+		private IMolecule parseSmiles(String line){
+			String[] parts = line.split("\\s+", 2);
+			try{
+				IMolecule molecule = smilesParser.parseSmiles(parts[0]);
+				molecule.setID(parts[0]);
+				if(parts.length > 1)
+					molecule.setProperty(CDKConstants.TITLE, parts[1].trim());
+				return molecule;
+			}catch(Exception e){
+				System.err.println("medea: the SMILES "+parts[0]+" could not be read: "+e.getMessage());
+				return null;
+			}
+		}
+	}
+}
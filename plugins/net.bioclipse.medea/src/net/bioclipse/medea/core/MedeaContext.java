@@ -0,0 +1,232 @@
+package net.bioclipse.medea.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import net.bioclipse.medea.core.learning.TrainingSetWriter;
+import net.bioclipse.medea.core.prediction.AdministratorFilesReader;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+/**
+ * Class which contains the state of one run of Medea: the type of process, the
+ * experimental peaks of a learning process and the probabilities which are
+ * learned. It is given to each step of the run instead of static fields, so
+ * that several runs can be made at the same time. A context must be used only
+ * by one run.
+ * 
+ * @author Miguel Rojas
+ */
+public class MedeaContext {
+
+	/** The Process, Medea.PREDICTPROCESS, Medea.LEARNINGPROCESS or Medea.LEARN_PREDPROCESS*/
+	private final int processType;
+	/** reader of the models which give the probability of each reaction*/
+	private final AdministratorFilesReader reader;
+	/** probabilities learned for the descriptors of each reaction*/
+	private final HashMap<String, Double> learnedProbabilities;
+	/** peaks X of the experimental spectrum. Learning process*/
+	private ArrayList<Double> peaksX = null;
+	/** abundances of the experimental spectrum for each mass. Learning process*/
+	private double[] peaksXY = null;
+	/** prefix of the arff files which are written. Learning process*/
+	private String nameFile = null;
+	/** training set which collects the rows of many runs, or null. Learning process*/
+	private TrainingSetWriter trainingSet = null;
+	/** limits of the fragmentation*/
+	private FragmentationOptions options = new FragmentationOptions();
+	/** listeners of the events of the fragmentation*/
+	private FragmentationTrace trace = new FragmentationTrace();
+	/** monitor which reports the progress and asks for the cancellation*/
+	private IProgressMonitor monitor = new NullProgressMonitor();
+	/** time when the run must end, 0 if there is not limit*/
+	private long deadline = 0;
+
+	/**
+	 * Constructor of the MedeaContext object.
+	 * 
+	 * @param processType The Process, Medea.PREDICTPROCESS, Medea.LEARNINGPROCESS or Medea.LEARN_PREDPROCESS
+	 * @param reader      The AdministratorFilesReader to use. It must not be used by other runs at the same time
+	 */
+	public MedeaContext(int processType, AdministratorFilesReader reader){
+		this(processType, reader, new HashMap<String, Double>());
+	}
+	/**
+	 * Constructor of the MedeaContext object with its own AdministratorFilesReader.
+	 * 
+	 * @param processType The Process, Medea.PREDICTPROCESS, Medea.LEARNINGPROCESS or Medea.LEARN_PREDPROCESS
+	 */
+	public MedeaContext(int processType){
+		this(processType, new AdministratorFilesReader());
+	}
+	
+	private MedeaContext(int processType, AdministratorFilesReader reader, HashMap<String, Double> learnedProbabilities){
+		this.processType = processType;
+		this.reader = reader;
+		this.learnedProbabilities = learnedProbabilities;
+	}
+	/**
+	 * Create the context of the second step of a learning process. It shares the
+	 * reader and the learned probabilities with this one.
+	 * 
+	 * @return The MedeaContext for Medea.LEARN_PREDPROCESS
+	 */
+	public MedeaContext createLearnPredictContext(){
+		MedeaContext context = new MedeaContext(Medea.LEARN_PREDPROCESS, reader, learnedProbabilities);
+		context.setFragmentationOptions(options);
+		context.setFragmentationTrace(trace);
+		context.setProgressMonitor(monitor);
+		context.setDeadline(deadline);
+		return context;
+	}
+	/**
+	 * get the process type
+	 * 
+	 * @return Medea.PREDICTPROCESS, Medea.LEARNINGPROCESS or Medea.LEARN_PREDPROCESS
+	 */
+	public int getProcessType(){
+		return processType;
+	}
+	/**
+	 * get the AdministratorFilesReader of this run
+	 * 
+	 * @return The AdministratorFilesReader
+	 */
+	public AdministratorFilesReader getReader(){
+		return reader;
+	}
+	/**
+	 * get the probabilities learned for the descriptors of each reaction. The key
+	 * is the list of descriptors as String.
+	 * 
+	 * @return The HashMap with the probabilities
+	 */
+	public HashMap<String, Double> getLearnedProbabilities(){
+		return learnedProbabilities;
+	}
+	/**
+	 * set the experimental peaks. Learning process.
+	 * 
+	 * @param peaksX  An ArrayList with the peaks X
+	 * @param peaksXY An Array with the abundance for each mass
+	 */
+	public void setPeaks(ArrayList<Double> peaksX, double[] peaksXY){
+		this.peaksX = peaksX;
+		this.peaksXY = peaksXY;
+	}
+	/**
+	 * get the peaks X of the experimental spectrum
+	 * 
+	 * @return An ArrayList with the peaks X, null if it is not a learning process
+	 */
+	public ArrayList<Double> getPeaksX(){
+		return peaksX;
+	}
+	/**
+	 * get the abundances of the experimental spectrum for each mass
+	 * 
+	 * @return An Array with the abundances, null if it is not a learning process
+	 */
+	public double[] getPeaksXY(){
+		return peaksXY;
+	}
+	/**
+	 * set the prefix of the arff files written in the learning process
+	 * 
+	 * @param nameFile The prefix
+	 */
+	public void setNameFile(String nameFile){
+		this.nameFile = nameFile;
+	}
+	/**
+	 * get the prefix of the arff files written in the learning process
+	 * 
+	 * @return The prefix
+	 */
+	public String getNameFile(){
+		return nameFile;
+	}
+	/**
+	 * set the training set which also receives the rows written in the learning process
+	 * 
+	 * @param trainingSet The TrainingSetWriter, or null
+	 */
+	public void setTrainingSet(TrainingSetWriter trainingSet){
+		this.trainingSet = trainingSet;
+	}
+	/**
+	 * get the training set which also receives the rows written in the learning process
+	 * 
+	 * @return The TrainingSetWriter, or null
+	 */
+	public TrainingSetWriter getTrainingSet(){
+		return trainingSet;
+	}
+	/**
+	 * set the limits of the fragmentation
+	 * 
+	 * @param options The FragmentationOptions, null for no limits
+	 */
+	public void setFragmentationOptions(FragmentationOptions options){
+		this.options = options == null ? new FragmentationOptions() : options;
+	}
+	/**
+	 * get the limits of the fragmentation
+	 * 
+	 * @return The FragmentationOptions
+	 */
+	public FragmentationOptions getFragmentationOptions(){
+		return options;
+	}
+	/**
+	 * set the trace which receives the events of the fragmentation
+	 * 
+	 * @param trace The FragmentationTrace, null for none
+	 */
+	public void setFragmentationTrace(FragmentationTrace trace){
+		this.trace = trace == null ? new FragmentationTrace() : trace;
+	}
+	/**
+	 * get the trace which receives the events of the fragmentation
+	 * 
+	 * @return The FragmentationTrace
+	 */
+	public FragmentationTrace getFragmentationTrace(){
+		return trace;
+	}
+	/**
+	 * set the monitor of this run. It receives the progress of the 
+	 * fragmentation, and the fragmentation stops if it is canceled.
+	 * 
+	 * @param monitor The IProgressMonitor, null for none
+	 */
+	public void setProgressMonitor(IProgressMonitor monitor){
+		this.monitor = monitor == null ? new NullProgressMonitor() : monitor;
+	}
+	/**
+	 * get the monitor of this run
+	 * 
+	 * @return The IProgressMonitor
+	 */
+	public IProgressMonitor getProgressMonitor(){
+		return monitor;
+	}
+	/**
+	 * set the time when the run must end. It is shared by all the steps of
+	 * the run, the fragments found until then are kept.
+	 * 
+	 * @param deadline The time in milliseconds, as System.currentTimeMillis(), 0 for unlimited
+	 */
+	public void setDeadline(long deadline){
+		this.deadline = deadline;
+	}
+	/**
+	 * get the time when the run must end
+	 * 
+	 * @return The time in milliseconds, 0 if unlimited
+	 */
+	public long getDeadline(){
+		return deadline;
+	}
+}
@@ -0,0 +1,56 @@
+package net.bioclipse.medea.core;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/** 
+ * Pool of Medea objects, so that several predictions can run at the same time
+ * in one JVM. Each Medea is used only by one thread between borrow() and 
+ * release(); the results must be read before it is released.
+ * <pre>
+ *  Medea medea = pool.borrow();
+ *  try{
+ *      medea.predictMS(ac);
+ *      CMLSpectrum spectrum = medea.getPredictedSpectrum();
+ *  }finally{
+ *      pool.release(medea);
+ *  }
+ * </pre>
+ * 
+ * @author Miguel Rojas
+ */
+public class MedeaEnginePool {
+
+	private final BlockingQueue<Medea> engines;
+
+	/**
+	 * Constructor of the MedeaEnginePool object.
+	 * 
+	 * @param size The number of Medea objects, the maximal number of parallel runs
+	 */
+	public MedeaEnginePool(int size){
+		if(size < 1)
+			size = 1;
+		engines = new LinkedBlockingQueue<Medea>(size);
+		for(int i = 0 ; i < size ; i++)
+			engines.add(new Medea());
+	}
+	/**
+	 * get a Medea object, waiting until one is free.
+	 * 
+	 * @return The Medea object
+	 * @throws InterruptedException
+	 */
+	public Medea borrow() throws InterruptedException{
+		return engines.take();
+	}
+	/**
+	 * give back a Medea object obtained with borrow().
+	 * 
+	 * @param medea The Medea object
+	 */
+	public void release(Medea medea){
+		if(medea != null)
+			engines.offer(medea);
+	}
+}
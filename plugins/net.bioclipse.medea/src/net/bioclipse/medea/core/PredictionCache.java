@@ -0,0 +1,314 @@
+package net.bioclipse.medea.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.bioclipse.reaction.domain.CDKReactionScheme;
+import net.bioclipse.reaction.domain.ICDKReactionScheme;
+
+import org.openscience.cdk.Molecule;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IReactionScheme;
+import org.openscience.cdk.smiles.SmilesGenerator;
+import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
+import org.xmlcml.cml.base.CMLBuilder;
+import org.xmlcml.cml.element.CMLSpectrum;
+
+/**
+ * Class which keeps the results of the predictions by structure, so that a
+ * molecule which was already predicted is not fragmented again. The key is
+ * the canonical SMILES of the molecule without explicit hydrogens. The
+ * results are kept in memory with a maximal number of entries, the least
+ * recently used is removed first. If a directory is given, each result is
+ * also written there and read again if it is not in memory, so that they
+ * are kept between sessions. A result is only read again with the same
+ * stamp, which identifies the classifiers and the options of the
+ * predictions; see setStamp().
+ * <pre>
+ *  String key = PredictionCache.getKey(ac);
+ *  PredictionCache.Entry entry = cache.get(key);
+ *  if(entry == null){
+ *      medea.predictMS(ac);
+ *      cache.put(key, medea.getPredictedSpectrum(), medea.getPredictedFragmentation());
+ *  }
+ * </pre>
+ * The cached objects are shared by all the callers and must not be changed.
+ *
+ * @author Miguel Rojas
+ */
+public class PredictionCache {
+
+	/** extension of the files of the directory*/
+	private static final String EXTENSION = ".prediction";
+
+	private final LinkedHashMap<String, Entry> entries;
+	/** directory where the results are written, null if only in memory*/
+	private final File directory;
+	/** classifiers and options of the results*/
+	private volatile String stamp = "";
+
+	/**
+	 * Result of a prediction which is kept in the cache.
+	 */
+	public static class Entry {
+		private final CMLSpectrum spectrum;
+		private final ICDKReactionScheme reactionScheme;
+
+		Entry(CMLSpectrum spectrum, ICDKReactionScheme reactionScheme){
+			this.spectrum = spectrum;
+			this.reactionScheme = reactionScheme;
+		}
+		/**
+		 * get the predicted spectrum
+		 *
+		 * @return The CMLSpectrum
+		 */
+		public CMLSpectrum getSpectrum(){
+			return spectrum;
+		}
+		/**
+		 * get the predicted fragmentation
+		 *
+		 * @return The ICDKReactionScheme
+		 */
+		public ICDKReactionScheme getReactionScheme(){
+			return reactionScheme;
+		}
+	}
+	/**
+	 * Constructor of the PredictionCache object which keeps the results only
+	 * in memory.
+	 *
+	 * @param maxEntries The maximal number of results kept in memory
+	 */
+	public PredictionCache(int maxEntries){
+		this(maxEntries, null);
+	}
+	/**
+	 * Constructor of the PredictionCache object.
+	 *
+	 * @param maxEntries The maximal number of results kept in memory
+	 * @param directory  The directory where the results are written, or null
+	 */
+	public PredictionCache(final int maxEntries, File directory){
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true){
+			private static final long serialVersionUID = -2926454917426312520L;
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest){
+				return size() > maxEntries;
+			}
+		};
+		if(directory != null && !directory.isDirectory() && !directory.mkdirs())
+			directory = null;
+		this.directory = directory;
+	}
+	/**
+	 * get the key of a molecule: its canonical SMILES without explicit hydrogens.
+	 *
+	 * @param container The IAtomContainer
+	 * @return          The key
+	 */
+	public static String getKey(IAtomContainer container){
+		IAtomContainer heavy = AtomContainerManipulator.removeHydrogens(container);
+		return (new SmilesGenerator()).createSMILES(new Molecule(heavy));
+	}
+	/**
+	 * set the stamp of the results which are put from now on: a description
+	 * of the classifiers and of the options which predicted them. The results
+	 * of the directory which were written with another stamp are not read.
+	 * If the stamp changes, the results in memory are removed.
+	 *
+	 * @param stamp The stamp
+	 */
+	public void setStamp(String stamp){
+		if(stamp == null)
+			stamp = "";
+		synchronized(entries){
+			if(!stamp.equals(this.stamp))
+				entries.clear();
+			this.stamp = stamp;
+		}
+	}
+	/**
+	 * get the stamp of the results
+	 *
+	 * @return The stamp
+	 */
+	public String getStamp(){
+		return stamp;
+	}
+	/**
+	 * get the result of a prediction. If it is not in memory it is searched
+	 * in the directory.
+	 *
+	 * @param key The key of the molecule, see getKey()
+	 * @return    The Entry, or null if this molecule was not predicted
+	 */
+	public Entry get(String key){
+		synchronized(entries){
+			Entry entry = entries.get(key);
+			if(entry != null)
+				return entry;
+		}
+		String current = stamp;
+		Entry entry = read(key, current);
+		if(entry != null)
+			synchronized(entries){
+				/* the stamp was changed meanwhile*/
+				if(!current.equals(stamp))
+					return null;
+				entries.put(key, entry);
+			}
+		return entry;
+	}
+	/**
+	 * put the result of a prediction
+	 *
+	 * @param key            The key of the molecule, see getKey()
+	 * @param spectrum       The predicted CMLSpectrum
+	 * @param reactionScheme The predicted ICDKReactionScheme
+	 */
+	public void put(String key, CMLSpectrum spectrum, ICDKReactionScheme reactionScheme){
+		if(key == null || reactionScheme == null)
+			return;
+		String current;
+		synchronized(entries){
+			entries.put(key, new Entry(spectrum, reactionScheme));
+			current = stamp;
+		}
+		write(key, current, spectrum, reactionScheme);
+	}
+	/**
+	 * get the number of results kept in memory
+	 *
+	 * @return The number of results
+	 */
+	public int size(){
+		synchronized(entries){
+			return entries.size();
+		}
+	}
+	/**
+	 * remove all results from the memory and from the directory
+	 */
+	public void clear(){
+		synchronized(entries){
+			entries.clear();
+		}
+		if(directory == null)
+			return;
+		File[] files = directory.listFiles();
+		if(files != null)
+			for(File file : files)
+				if(file.getName().endsWith(EXTENSION))
+					file.delete();
+	}
+	/**
+	 * read a result from the directory
+	 *
+	 * @param key   The key of the molecule
+	 * @param stamp The stamp of the result
+	 * @return      The Entry, or null if it is not found
+	 */
+	private Entry read(String key, String stamp){
+		if(directory == null)
+			return null;
+		File file = getFile(key);
+		if(!file.isFile())
+			return null;
+		ObjectInputStream in = null;
+		try {
+			in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+			/* different keys can have the same name of file*/
+			if(!key.equals(in.readObject()))
+				return null;
+			/* a result of other classifiers or options*/
+			if(!stamp.equals(in.readObject()))
+				return null;
+			String xml = (String)in.readObject();
+			IReactionScheme reactionScheme = (IReactionScheme)in.readObject();
+			CMLSpectrum spectrum = null;
+			if(xml != null)
+				spectrum = (CMLSpectrum)(new CMLBuilder()).parseString(xml);
+			return new Entry(spectrum, new CDKReactionScheme(reactionScheme));
+		} catch (Exception e) {
+			e.printStackTrace();
+			return null;
+		} finally {
+			close(in);
+		}
+	}
+	/**
+	 * write a result into the directory
+	 *
+	 * @param key            The key of the molecule
+	 * @param stamp          The stamp of the result
+	 * @param spectrum       The CMLSpectrum
+	 * @param reactionScheme The ICDKReactionScheme
+	 */
+	private void write(String key, String stamp, CMLSpectrum spectrum, ICDKReactionScheme reactionScheme){
+		if(directory == null)
+			return;
+		File file = getFile(key);
+		File tmp = new File(directory, file.getName() + ".tmp" + Thread.currentThread().getId());
+		ObjectOutputStream out = null;
+		try {
+			out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			out.writeObject(key);
+			out.writeObject(stamp);
+			out.writeObject(spectrum == null ? null : spectrum.toXML());
+			out.writeObject(reactionScheme.getReactionScheme());
+			out.close();
+			out = null;
+			/* the file is only visible when it is complete*/
+			if(!tmp.renameTo(file)){
+				file.delete();
+				tmp.renameTo(file);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			close(out);
+			tmp.delete();
+		}
+	}
+	/**
+	 * get the file of the directory for a key
+	 *
+	 * @param key The key of the molecule
+	 * @return    The File
+	 */
+	private File getFile(String key){
+		StringBuffer name = new StringBuffer();
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+			for(byte b : digest)
+				name.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+		} catch (NoSuchAlgorithmException e) {
+			name.append(Integer.toHexString(key.hashCode()));
+		} catch (IOException e) {
+			name.append(Integer.toHexString(key.hashCode()));
+		}
+		return new File(directory, name.append(EXTENSION).toString());
+	}
+
+	private static void close(Closeable stream){
+		if(stream == null)
+			return;
+		try {
+			stream.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
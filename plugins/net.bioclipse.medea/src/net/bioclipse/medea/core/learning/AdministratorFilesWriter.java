@@ -1,38 +1,74 @@
 package net.bioclipse.medea.core.learning;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Locale;
 
+import net.bioclipse.medea.core.prediction.ReactionModelRegistry;
 import net.bioclipse.medea.core.reaction.ExtractorSetQsarsCE;
 import net.bioclipse.medea.core.reaction.ExtractorSetQsarsHR;
 import net.bioclipse.medea.core.reaction.ExtractorSetQsarsRSH;
 import net.bioclipse.medea.core.reaction.ExtractorSetQsarsRSI;
 import net.bioclipse.medea.core.reaction.ReactionKp;
 
+/**
+ * Class which writes the descriptors of the learned reactions into an arff
+ * file for each type of reaction, [nameFile]-rsi.arff, -rsh, -cee, -hrg and
+ * -hrd. The rows can also be given to a TrainingSetWriter which collects the
+ * reactions of many molecules.
+ *
+ * @author Miguel Rojas
+ */
 public class AdministratorFilesWriter {
-	
-	public static HashMap<String, Double> hashL_P = null;
-	
-	private ExtractorSetQsarsRSI eSQ_RSI;
-	private ExtractorSetQsarsRSH eSQ_RSH;
-	private ExtractorSetQsarsCE eSQ_CE;
-	private ExtractorSetQsarsHR eSQ_HR;
-	/**RadicalSiteInitiation reaction*/
-	private FileWriter out1 = null;
-	/**RadicalSiteInitiationH reaction*/
-	private FileWriter out2 = null;
-	/**CarbonylElimination reaction*/
-	private FileWriter out3 = null;
-	/**HydrogenRearrangementGamma reaction*/
-	private FileWriter out4 = null;
-	/**HydrogenRearrangementDelta reaction*/
-	private FileWriter out5 = null;
-	private String nameFile;
-	String[] classe = {"0_00","0_01","0_02","0_03","0_04","0_05","0_06","0_07","0_08","0_09",
+
+	/** names of the relation of each type, see ReactionModelRegistry*/
+	private static final String[] RELATIONS = {
+		"RadicalSiteInitiation",
+		"RadicalSiteInitiationH",
+		"CarbonylElimination",
+		"HydrogenRearrangementGamma",
+		"HydrogenRearrangementDelta"};
+	/** attributes of each type, without the class*/
+	private static final String[][] ATTRIBUTES = {
+		{"PartialSigmaChargeDescriptor_PB",
+		 "PartialPiChargeDescriptor_PB",
+		 "EffectiveAtomPolarizabilityDescriptor_PB",
+		 "PartialSigmaChargeDescriptor_PA",
+		 "PartialPiChargeDescriptor_PA",
+		 "EffectiveAtomPolarizabilityDescriptor_PA",
+		 "StructureResonanceCount_PA",
+		 "NumberCarbons_PA",
+		 "SigmaElectronegativityDescriptor_R",
+		 "LonePairCount_R",
+		 "ConnectedAtomsCount_R",
+		 "OrderBond_R"},
+		{"PartialSigmaChargeDescriptor_R",
+		 "PartialPiChargeDescriptor_R",
+		 "EffectiveAtomPolarizabilityDescriptor_R"},
+		{"PartialSigmaChargeDescriptor_PA",
+		 "PartialPiChargeDescriptor_PA",
+		 "EffectiveAtomPolarizabilityDescriptor_PA"},
+		{"PartialSigmaChargeDescriptor_RA",
+		 "PartialPiChargeDescriptor_RA",
+		 "EffectiveAtomPolarizabilityDescriptor_RA",
+		 "PartialSigmaChargeDescriptor_PA",
+		 "PartialPiChargeDescriptor_PA",
+		 "EffectiveAtomPolarizabilityDescriptor_PA"},
+		{"PartialSigmaChargeDescriptor_RA",
+		 "PartialPiChargeDescriptor_RA",
+		 "EffectiveAtomPolarizabilityDescriptor_RA",
+		 "PartialSigmaChargeDescriptor_PA",
+		 "PartialPiChargeDescriptor_PA",
+		 "EffectiveAtomPolarizabilityDescriptor_PA"}};
+
+	static final String[] classe = {"0_00","0_01","0_02","0_03","0_04","0_05","0_06","0_07","0_08","0_09",
 			"0_10","0_11","0_12","0_13","0_14","0_15","0_16","0_17","0_18","0_19",
 			"0_20","0_21","0_22","0_23","0_24","0_25","0_26","0_27","0_28","0_29",
 			"0_30","0_31","0_32","0_33","0_34","0_35","0_36","0_37","0_38","0_39",
@@ -43,217 +79,191 @@ public class AdministratorFilesWriter {
 			"0_80","0_81","0_82","0_83","0_84","0_85","0_86","0_87","0_88","0_89",
 			"0_90","0_91","0_92","0_93","0_94","0_95","0_96","0_97","0_98","0_99",
 	};
+
+	/** probabilities written for the descriptors of each reaction*/
+	private HashMap<String, Double> hashL_P;
+
+	private ExtractorSetQsarsRSI eSQ_RSI;
+	private ExtractorSetQsarsRSH eSQ_RSH;
+	private ExtractorSetQsarsCE eSQ_CE;
+	private ExtractorSetQsarsHR eSQ_HR;
+	/** file of each type, opened with the first reaction*/
+	private BufferedWriter[] out = new BufferedWriter[RELATIONS.length];
+	/** prefix of the files, null if only the TrainingSetWriter is written*/
+	private String nameFile;
+	/** training set which also receives the rows, or null*/
+	private TrainingSetWriter trainingSet = null;
+	/** format of the descriptors, it is not shared between threads*/
+	private final DecimalFormat format = new DecimalFormat("00.0000", new DecimalFormatSymbols(Locale.US));
+
 	/**
 	 * Constructor of the AdministratorFiles
 	 *
 	 */
 	public AdministratorFilesWriter(String nameFile){
+		this(nameFile, new HashMap<String, Double>());
+	}
+	/**
+	 * Constructor of the AdministratorFiles
+	 *
+	 * @param nameFile The prefix of the arff files
+	 * @param learned  The HashMap where the probability of each written reaction is put
+	 */
+	public AdministratorFilesWriter(String nameFile, HashMap<String, Double> learned){
+		this(nameFile, learned, null);
+	}
+	/**
+	 * Constructor of the AdministratorFiles which also gives the rows to
+	 * a TrainingSetWriter.
+	 *
+	 * @param nameFile    The prefix of the arff files, or null to write only the training set
+	 * @param learned     The HashMap where the probability of each written reaction is put
+	 * @param trainingSet The TrainingSetWriter, or null
+	 */
+	public AdministratorFilesWriter(String nameFile, HashMap<String, Double> learned, TrainingSetWriter trainingSet){
 		this.nameFile = nameFile;
-		hashL_P = new HashMap<String, Double>();
+		this.trainingSet = trainingSet;
+		hashL_P = learned;
 		eSQ_RSI = new ExtractorSetQsarsRSI();
 		eSQ_RSH = new ExtractorSetQsarsRSH();
 		eSQ_CE = new ExtractorSetQsarsCE();
 		eSQ_HR = new ExtractorSetQsarsHR();
 	}
 	/**
-	 * creates the files 
-	 * 
-	 * @param reaction
-	 * @param probability
-	 * @throws IOException 
+	 * write the descriptors of a reaction
+	 *
+	 * @param reaction The ReactionKp, with its probability
+	 * @throws IOException
 	 */
 	public void addReaction(ReactionKp reaction) throws IOException {
-		ArrayList<Double> results = null;
-		if(reaction.getNameReaction().equals("RadicalSiteInitiation")){
-			if(out1 == null){
-				out1 = new FileWriter(new File(nameFile+"-rsi.arff"));
-				out1.write("@relation  "+reaction.getNameReaction()+" \n");
-				out1.write("@attribute PartialSigmaChargeDescriptor_PB numeric \n");
-				out1.write("@attribute PartialPiChargeDescriptor_PB numeric \n");
-				out1.write("@attribute EffectiveAtomPolarizabilityDescriptor_PB numeric \n");
-				out1.write("@attribute PartialSigmaChargeDescriptor_PA numeric \n");
-				out1.write("@attribute PartialPiChargeDescriptor_PA numeric \n");
-				out1.write("@attribute EffectiveAtomPolarizabilityDescriptor_PA numeric \n");
-				out1.write("@attribute StructureResonanceCount_PA numeric \n");
-				out1.write("@attribute NumberCarbons_PA numeric \n");
-				out1.write("@attribute SigmaElectronegativityDescriptor_R numeric \n");
-				out1.write("@attribute LonePairCount_R numeric \n");
-				out1.write("@attribute ConnectedAtomsCount_R numeric \n");
-				out1.write("@attribute OrderBond_R numeric \n");
+		int type = getType(reaction.getNameReaction());
+		if(type < 0)
+			return;
 
-				
-				out1.write("@attribute class {");
-				for(int i = 0 ; i < classe.length ; i++){
-					if(i != 0)out1.write(",");
-					out1.write(classe[i]);
-				}
-				out1.write("} \n");
-				out1.write("@data \n");
-			} 
-			
-			results = eSQ_RSI.getQsars(reaction);
-			for(int i = 0 ; i < results.size() ; i++){
-				if(results.get(i) != null){
-//					System.out.println("re: "+results.get(i));
-					out1.write(extractDeci(results.get(i))+", ");
-				}
-				else
-					out1.write("null");
+		ArrayList<Double> results = getQsars(type, reaction);
+		String row = createRow(results, reaction.getProbability());
+		if(nameFile != null){
+			if(out[type] == null){
+				out[type] = new BufferedWriter(new FileWriter(getFile(nameFile, type)));
+				writeHeader(out[type], type);
 			}
-
-			out1.write(extractClass(reaction.getProbability())+", ");
-			out1.write("\n");
-			
-		} else if(reaction.getNameReaction().equals("RadicalSiteInitiationH")){
-			if(out2 == null){
-				out2 = new FileWriter(new File(nameFile+"-rsh.arff"));
-				out2.write("@relation  "+reaction.getNameReaction()+" \n");
-				out2.write("@attribute PartialSigmaChargeDescriptor_R numeric \n");
-				out2.write("@attribute PartialPiChargeDescriptor_R numeric \n");
-				out2.write("@attribute EffectiveAtomPolarizabilityDescriptor_R numeric \n");
-				
-				out2.write("@attribute class {");
-				for(int i = 0 ; i < classe.length ; i++){
-					if(i != 0)out2.write(",");
-					out2.write(classe[i]);
-				}
-				out2.write("} \n");
-				out2.write("@data \n");
-			}
-			results = eSQ_RSH.getQsars(reaction);
-			for(int i = 0 ; i < results.size() ; i++){
-				if(results.get(i) != null)
-					out2.write(extractDeci(results.get(i))+", ");
-				else
-					out2.write("null");
-			}
-
-			out2.write(extractClass(reaction.getProbability())+", ");
-			out2.write("\n");
-		} else if(reaction.getNameReaction().equals("CarbonylElimination")){
-			if(out3 == null){
-				out3 = new FileWriter(new File(nameFile+"-cee.arff"));
-				out3.write("@relation  "+reaction.getNameReaction()+" \n");
-				out3.write("@attribute PartialSigmaChargeDescriptor_PA numeric \n");
-				out3.write("@attribute PartialPiChargeDescriptor_PA numeric \n");
-				out3.write("@attribute EffectiveAtomPolarizabilityDescriptor_PA numeric \n");
-				
-				out3.write("@attribute class {");
-				for(int i = 0 ; i < classe.length ; i++){
-					if(i != 0)out3.write(",");
-					out3.write(classe[i]);
-				}
-				out3.write("} \n");
-				out3.write("@data \n");
-			}
-			results = eSQ_CE.getQsars(reaction);
-			for(int i = 0 ; i < results.size() ; i++){
-				if(results.get(i) != null)
-					out3.write(extractDeci(results.get(i))+", ");
-				else
-					out3.write("null");
-			}
-
-			out3.write(extractClass(reaction.getProbability())+", ");
-			out3.write("\n");
+			out[type].write(row);
 		}
-		else if(reaction.getNameReaction().equals("HydrogenRearrangementGamma")){
-			if(out4 == null){
-				out4 = new FileWriter(new File(nameFile+"-hrg.arff"));
-				out4.write("@relation  "+reaction.getNameReaction()+" \n");
-				out4.write("@attribute PartialSigmaChargeDescriptor_RA numeric \n");
-				out4.write("@attribute PartialPiChargeDescriptor_RA numeric \n");
-				out4.write("@attribute EffectiveAtomPolarizabilityDescriptor_RA numeric \n");
-				out4.write("@attribute PartialSigmaChargeDescriptor_PA numeric \n");
-				out4.write("@attribute PartialPiChargeDescriptor_PA numeric \n");
-				out4.write("@attribute EffectiveAtomPolarizabilityDescriptor_PA numeric \n");
-				
-				out4.write("@attribute class {");
-				for(int i = 0 ; i < classe.length ; i++){
-					if(i != 0)out4.write(",");
-					out4.write(classe[i]);
-				}
-				out4.write("} \n");
-				out4.write("@data \n");
-			}
-			results = eSQ_HR.getQsars(reaction);
-			for(int i = 0 ; i < results.size() ; i++){
-				if(results.get(i) != null)
-					out4.write(extractDeci(results.get(i))+", ");
-				else
-					out4.write("null");
-			}
+		if(trainingSet != null)
+			trainingSet.addRow(type, row);
 
-			out4.write(extractClass(reaction.getProbability())+", ");
-			out4.write("\n");
+		hashL_P.put(results.toString(),new Double(reaction.getProbability()));
+	}
+	/**
+	 * get the probabilities written for the descriptors of each reaction
+	 *
+	 * @return The HashMap with the probabilities
+	 */
+	public HashMap<String, Double> getLearnedProbabilities(){
+		return hashL_P;
+	}
+	/**
+	 * get the type of a reaction, see ReactionModelRegistry. Both the name of
+	 * the relation and the name of the reaction process are accepted.
+	 *
+	 * @param nameReaction The name of the reaction
+	 * @return             The type, or -1 if no file is written for it
+	 */
+	public static int getType(String nameReaction){
+		for(int i = 0 ; i < RELATIONS.length ; i++)
+			if(RELATIONS[i].equals(nameReaction))
+				return i;
+		return ReactionModelRegistry.getType(nameReaction);
+	}
+	/**
+	 * get the arff file of a type
+	 *
+	 * @param prefix The prefix of the files
+	 * @param type   The type, see ReactionModelRegistry
+	 * @return       The File, [prefix]-[code].arff
+	 */
+	public static File getFile(String prefix, int type){
+		return new File(prefix+"-"+ReactionModelRegistry.getCode(type)+".arff");
+	}
+	/**
+	 * write the header of the arff file of a type
+	 *
+	 * @param writer The Writer
+	 * @param type   The type, see ReactionModelRegistry
+	 * @throws IOException
+	 */
+	static void writeHeader(Writer writer, int type) throws IOException{
+		writer.write("@relation  "+RELATIONS[type]+" \n");
+		for(String attribute : ATTRIBUTES[type])
+			writer.write("@attribute "+attribute+" numeric \n");
+		writer.write("@attribute class {");
+		for(int i = 0 ; i < classe.length ; i++){
+			if(i != 0)writer.write(",");
+			writer.write(classe[i]);
 		}
-		else if(reaction.getNameReaction().equals("HydrogenRearrangementDelta")){
-			if(out5 == null){
-				out5 = new FileWriter(new File(nameFile+"-hrd.arff"));
-				out5.write("@relation  "+reaction.getNameReaction()+" \n");
-				out5.write("@attribute PartialSigmaChargeDescriptor_RA numeric \n");
-				out5.write("@attribute PartialPiChargeDescriptor_RA numeric \n");
-				out5.write("@attribute EffectiveAtomPolarizabilityDescriptor_RA numeric \n");
-				out5.write("@attribute PartialSigmaChargeDescriptor_PA numeric \n");
-				out5.write("@attribute PartialPiChargeDescriptor_PA numeric \n");
-				out5.write("@attribute EffectiveAtomPolarizabilityDescriptor_PA numeric \n");
-				
-				out5.write("@attribute class {");
-				for(int i = 0 ; i < classe.length ; i++){
-					if(i != 0)out5.write(",");
-					out5.write(classe[i]);
-				}
-				out5.write("} \n");
-				out5.write("@data \n");
-			}
-			results = eSQ_HR.getQsars(reaction);
-			for(int i = 0 ; i < results.size() ; i++){
-				if(results.get(i) != null)
-					out5.write(extractDeci(results.get(i))+", ");
-				else
-					out5.write("null");
-			}
-
-			out5.write(extractClass(reaction.getProbability())+", ");
-			out5.write("\n");
+		writer.write("} \n");
+		writer.write("@data \n");
+	}
+	/**
+	 * calculate the descriptors of the reaction
+	 *
+	 * @param type     The type of the reaction
+	 * @param reaction The ReactionKp
+	 * @return         An ArrayList with the descriptors
+	 */
+	private ArrayList<Double> getQsars(int type, ReactionKp reaction){
+		switch(type){
+		case ReactionModelRegistry.RSI: return eSQ_RSI.getQsars(reaction);
+		case ReactionModelRegistry.RSH: return eSQ_RSH.getQsars(reaction);
+		case ReactionModelRegistry.CEE: return eSQ_CE.getQsars(reaction);
+		default: return eSQ_HR.getQsars(reaction);
 		}
-		
-		if(results != null){
-			hashL_P.put(results.toString(),new Double(reaction.getProbability()));
+	}
+	/**
+	 * create the row of the arff file: the descriptors and the class
+	 *
+	 * @param results     The descriptors
+	 * @param probability The probability of the reaction
+	 * @return            The row, with the end of line
+	 */
+	private String createRow(ArrayList<Double> results, double probability){
+		StringBuffer row = new StringBuffer();
+		for(int i = 0 ; i < results.size() ; i++){
+			if(results.get(i) != null)
+				row.append(extractDeci(results.get(i))).append(", ");
+			else
+				row.append("null");
 		}
+		row.append(extractClass(probability)).append(", ");
+		row.append("\n");
+		return row.toString();
 	}
 	/**
-	 * define the format of the double 
+	 * define the format of the double
 	 * @param double1 Value for rounding
 	 * @return String with only 3 zeros
 	 */
 	private String extractDeci(Double double1) {
-		DecimalFormat cf = new DecimalFormat("00.0000");
-		String result = cf.format(double1);
+		String result = format.format(double1);
 		if(double1 >= 0)
 			result =" "+result;
 		return result;
 	}
 	/**
 	 * close the FileWrite
-	 * @throws IOException 
-	 * 
+	 * @throws IOException
+	 *
 	 */
 	public void close() throws IOException {
-		if(out1 != null)
-			out1.close();
-		if(out2 != null)
-			out2.close();
-		if(out3 != null)
-			out3.close();
-		if(out4 != null)
-			out4.close();
-		if(out5 != null)
-			out5.close();
+		for(int i = 0 ; i < out.length ; i++)
+			if(out[i] != null){
+				out[i].close();
+				out[i] = null;
+			}
 	}
 	/**
 	 * extract the class which belong
-	 * 
+	 *
 	 * @param value The Double value
 	 * @return String class
 	 */
@@ -261,7 +271,7 @@ public class AdministratorFilesWriter {
 		String result = null;
 		double interval1 = 0.00;
 		double interval2 = 0.01;
-		
+
 		for(int i = 0; i < classe.length ; i++){
 			if((interval1 <= value) && (value < interval2))
 				return classe[i];
@@ -1,10 +1,12 @@
 package net.bioclipse.medea.core.learning;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.List;
 
 import net.bioclipse.medea.core.FragmentMolecule;
 import net.bioclipse.medea.core.FragmentTree;
+import net.bioclipse.medea.core.Medea;
+import net.bioclipse.medea.core.MedeaContext;
 import net.bioclipse.medea.core.Position;
 import net.bioclipse.medea.core.prediction.AdministratorFilesReader;
 import net.bioclipse.medea.core.reaction.ExtractorSetReactions;
@@ -17,17 +19,24 @@ import org.openscience.cdk.interfaces.IReactionSet;
 
 public class ExtractorProbability {
 
-	private static FragmentTree fragmentTree;
-	private static double[] peaksXY;
-	
 	private AdministratorFilesReader admin;
+	private MedeaContext context;
 	/**
 	 * Constructor of the ExtractorProbability object
 	 * 
 	 * @param process The process which is working
 	 */
-	@SuppressWarnings("deprecation")
 	public ExtractorProbability() {
+		this(new MedeaContext(Medea.PREDICTPROCESS));
+	}
+	/**
+	 * Constructor of the ExtractorProbability object
+	 * 
+	 * @param context The MedeaContext of the run
+	 */
+	@SuppressWarnings("deprecation")
+	public ExtractorProbability(MedeaContext context) {
+		this.context = context;
 //		String owlFile="/data/";
 //		
 //        Bundle bundle = Platform.getBundle(Activator.PLUGIN_ID);
@@ -55,21 +64,20 @@ public class ExtractorProbability {
 //			e.printStackTrace();
 //		}
 		
-		admin = new AdministratorFilesReader();
+		admin = context.getReader();
 	}
 	/**
-	 * Set the probability 
+	 * Set the probability. The probabilities are written into the arff files and 
+	 * put into the learned probabilities of the context.
+	 * 
 	 * @param fragmentTree The FragmentTree
-	 * @param p The peaks X
-	 * @param pro 
+	 * @param context The MedeaContext, with the peaks and the name of the files
 	 */
-	public static void setProbabilities(FragmentTree fTree, double[] p,String nameFile) {
-		fragmentTree = fTree;
-		peaksXY = p;
-//		prob = pro;
+	public static void setProbabilities(FragmentTree fragmentTree, MedeaContext context) {
+		double[] peaksXY = context.getPeaksXY();
 
 		IReactionSet reactions = (new ExtractorSetReactions(fragmentTree)).extract();
-		AdministratorFilesWriter add = new AdministratorFilesWriter(nameFile);
+		AdministratorFilesWriter add = new AdministratorFilesWriter(context.getNameFile(), context.getLearnedProbabilities(), context.getTrainingSet());
 
 		for(int i = 0 ; i < reactions.getReactionCount() ; i++){
 			double probability = 0.0;
@@ -80,7 +88,7 @@ public class ExtractorProbability {
 //				massI = (int)((FragmentMolecule)reaction.getReactants().getAtomContainer(0)).getId().getWidth();
 //				probability = prob.get(i);
 //			}else{/*the rest*/
-				probability = getProbability((ReactionKp) reaction);
+				probability = getProbability((ReactionKp) reaction, fragmentTree, peaksXY);
 				if(reaction instanceof ReactionKp){
 					ReactionKp reactionKp = (ReactionKp) reaction;
 					reactionKp.setProbability(probability);
@@ -112,9 +120,11 @@ public class ExtractorProbability {
 	 * get the probability of this reaction 
 	 * 
 	 * @param reaction The IReaction
+	 * @param fragmentTree The FragmentTree
+	 * @param peaksXY The abundances of the experimental spectrum
 	 * @return  The probability
 	 */
-	private static double getProbability(ReactionKp reaction) {
+	private static double getProbability(ReactionKp reaction, FragmentTree fragmentTree, double[] peaksXY) {
 //		String smiles2 = (new SmilesGenerator()).createSMILES((IMolecule)reaction.getProducts().getMolecule(0));
 //		String smiles1 = (new SmilesGenerator()).createSMILES((IMolecule)reaction.getReactants().getMolecule(0));
 //		System.out.println(smiles1+" => "+smiles2);
@@ -144,7 +154,7 @@ public class ExtractorProbability {
 //			reactantABUND = reactantABUND*(/100);
 //		}
 		double neighABUND = 0.0;
-		ArrayList<Position> children = reactant.getChildren();
+		List<Position> children = reactant.getChildren();
 		for(int i = 0 ; i< children.size() ; i++){
 			FragmentMolecule child = fragmentTree.getFragment(children.get(i));
 			int sizeParents = child.getParents().size();
@@ -199,7 +209,7 @@ public class ExtractorProbability {
 		
 		reaction.setNameReaction(nameClass);
 
-		probability = admin.getProbability(reaction);
+		probability = admin.getProbability(reaction, context);
 		
 		return probability;
 	}
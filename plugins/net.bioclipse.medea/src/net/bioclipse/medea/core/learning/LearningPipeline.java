@@ -0,0 +1,89 @@
+package net.bioclipse.medea.core.learning;
+
+import java.io.IOException;
+import java.util.List;
+
+import net.bioclipse.medea.core.IPredictionListener;
+import net.bioclipse.medea.core.Medea;
+import net.bioclipse.medea.core.MedeaBatchPredictor;
+
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.xmlcml.cml.element.CMLSpectrum;
+
+/**
+ * Class which learns the fragmentation of a library of molecules with their
+ * experimental spectra, in parallel with a bounded pool of threads. The rows
+ * of all molecules are collected by one TrainingSetWriter, which writes a
+ * training set for each type of reaction without duplicated rows.
+ * <pre>
+ *  TrainingSetWriter trainingSet = new TrainingSetWriter("/tmp/total");
+ *  LearningPipeline pipeline = new LearningPipeline(trainingSet);
+ *  pipeline.learn(molecules, spectra, listener);
+ *  pipeline.shutdown();
+ *  trainingSet.close();
+ * </pre>
+ * No arff files are written for each molecule.
+ * 
+ * @author Miguel Rojas
+ */
+public class LearningPipeline extends MedeaBatchPredictor {
+
+	private final TrainingSetWriter trainingSet;
+
+	/**
+	 * Constructor of the LearningPipeline object with one thread for each
+	 * available processor.
+	 * 
+	 * @param trainingSet The TrainingSetWriter which receives the rows
+	 */
+	public LearningPipeline(TrainingSetWriter trainingSet){
+		this(trainingSet, Runtime.getRuntime().availableProcessors());
+	}
+	/**
+	 * Constructor of the LearningPipeline object.
+	 * 
+	 * @param trainingSet The TrainingSetWriter which receives the rows
+	 * @param threads     The number of threads which learn in parallel
+	 */
+	public LearningPipeline(TrainingSetWriter trainingSet, int threads){
+		super(threads);
+		this.trainingSet = trainingSet;
+	}
+	/**
+	 * Learn the fragmentation of the molecules. The method returns when all
+	 * molecules are reported to the listener, and the training set is flushed.
+	 * A molecule which could not be learned is reported as failed.
+	 * 
+	 * @param molecules The molecules
+	 * @param spectra   The experimental spectrum of each molecule, in the same order
+	 * @param listener  The IPredictionListener which receives the learned fragmentation
+	 * @throws InterruptedException
+	 * @throws IOException if the training set could not be written
+	 */
+	public void learn(List<? extends IAtomContainer> molecules, final List<? extends CMLSpectrum> spectra, IPredictionListener listener) throws InterruptedException, IOException{
+		if(molecules.size() != spectra.size())
+			throw new IllegalArgumentException("The number of molecules and spectra is not the same");
+		try{
+			/* the spectra are kept by the task of this call*/
+			predict(molecules.iterator(), listener, new Task(){
+				public void process(Medea medea, int index, IAtomContainer molecule) throws Exception {
+					CMLSpectrum spectrum = spectra.get(index);
+					if(spectrum == null)
+						throw new IllegalArgumentException("No spectrum for the molecule");
+					medea.setTrainingSet(trainingSet);
+					medea.learn(molecule, spectrum, null, null);
+				}
+			});
+		}finally{
+			trainingSet.flush();
+		}
+	}
+	/**
+	 * get the TrainingSetWriter which receives the rows
+	 * 
+	 * @return The TrainingSetWriter
+	 */
+	public TrainingSetWriter getTrainingSet(){
+		return trainingSet;
+	}
+}
@@ -0,0 +1,172 @@
+package net.bioclipse.medea.core.learning;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashSet;
+
+import net.bioclipse.medea.core.prediction.ReactionModelRegistry;
+
+/**
+ * Class which collects the rows learned from many molecules into one arff
+ * file for each type of reaction, as the total-rsi.arff, total-rsh.arff,
+ * total-cee.arff, total-hrg.arff and total-hrd.arff of the data directory.
+ * A row which is already in the file is not written again. If a file exists,
+ * its rows are kept and the new rows are appended.
+ * <pre>
+ *  TrainingSetWriter trainingSet = new TrainingSetWriter("/tmp/total");
+ *  medea.setTrainingSet(trainingSet);
+ *  medea.learningMS(ac, spectrum, null);
+ *  trainingSet.close();
+ * </pre>
+ * The rows can be added from several threads.
+ *
+ * @author Miguel Rojas
+ */
+public class TrainingSetWriter {
+
+	/** prefix of the files*/
+	private final String prefix;
+	/** file of each type, opened with the first row*/
+	private final BufferedWriter[] out = new BufferedWriter[ReactionModelRegistry.getTypeCount()];
+	/** rows of each type which are in the file*/
+	private final HashSet<String>[] rows;
+	/** number of rows which were not written because they existed*/
+	private int duplicates = 0;
+
+	/**
+	 * Constructor of the TrainingSetWriter object
+	 *
+	 * @param prefix The prefix of the files, [prefix]-rsi.arff ...
+	 */
+	@SuppressWarnings("unchecked")
+	public TrainingSetWriter(String prefix){
+		this.prefix = prefix;
+		rows = new HashSet[ReactionModelRegistry.getTypeCount()];
+	}
+	/**
+	 * add a row to the training set of a type
+	 *
+	 * @param type The type, see ReactionModelRegistry
+	 * @param row  The row of the arff file
+	 * @return     True, if it was written. False if it already existed
+	 * @throws IOException
+	 */
+	public synchronized boolean addRow(int type, String row) throws IOException{
+		if(out[type] == null)
+			open(type);
+		if(!rows[type].add(getKey(row))){
+			duplicates++;
+			return false;
+		}
+		out[type].write(row);
+		if(!row.endsWith("\n"))
+			out[type].write("\n");
+		return true;
+	}
+	/**
+	 * get the number of rows of a type, with the rows which existed before
+	 *
+	 * @param type The type, see ReactionModelRegistry
+	 * @return     The number of rows
+	 */
+	public synchronized int getRowCount(int type){
+		return rows[type] == null ? 0 : rows[type].size();
+	}
+	/**
+	 * get the number of rows which were not written because they existed
+	 *
+	 * @return The number of duplicated rows
+	 */
+	public synchronized int getDuplicateCount(){
+		return duplicates;
+	}
+	/**
+	 * get the file of a type
+	 *
+	 * @param type The type, see ReactionModelRegistry
+	 * @return     The File
+	 */
+	public File getFile(int type){
+		return AdministratorFilesWriter.getFile(prefix, type);
+	}
+	/**
+	 * write the buffered rows into the files
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void flush() throws IOException{
+		for(BufferedWriter writer : out)
+			if(writer != null)
+				writer.flush();
+	}
+	/**
+	 * close the files. If more rows are added, the files are opened again.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException{
+		for(int i = 0 ; i < out.length ; i++)
+			if(out[i] != null){
+				out[i].close();
+				out[i] = null;
+			}
+	}
+	/**
+	 * open the file of a type. The rows of an existing file are read, the
+	 * header is written into a new file.
+	 *
+	 * @param type The type
+	 * @throws IOException
+	 */
+	private void open(int type) throws IOException{
+		File file = getFile(type);
+		if(rows[type] == null)
+			rows[type] = new HashSet<String>();
+		if(file.isFile() && file.length() > 0){
+			readRows(file, rows[type]);
+			out[type] = new BufferedWriter(new FileWriter(file, true));
+		}else{
+			out[type] = new BufferedWriter(new FileWriter(file));
+			AdministratorFilesWriter.writeHeader(out[type], type);
+		}
+	}
+	/**
+	 * read the rows of the data section of an arff file
+	 *
+	 * @param file The File
+	 * @param set  The HashSet where the rows are put
+	 * @throws IOException
+	 */
+	private static void readRows(File file, HashSet<String> set) throws IOException{
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try{
+			boolean data = false;
+			String line;
+			while((line = reader.readLine()) != null){
+				if(!data){
+					data = line.trim().toLowerCase().startsWith("@data");
+					continue;
+				}
+				String key = getKey(line);
+				if(key.length() > 0)
+					set.add(key);
+			}
+		}finally{
+			reader.close();
+		}
+	}
+	/**
+	 * get the row without the spaces at the beginning and the end, so that
+	 * the rows of the files and the new ones are compared.
+	 *
+	 * @param row The row
+	 * @return    The key
+	 */
+	private static String getKey(String row){
+		return row.trim();
+	}
+}
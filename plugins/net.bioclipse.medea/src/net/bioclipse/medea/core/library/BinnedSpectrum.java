@@ -0,0 +1,180 @@
+package net.bioclipse.medea.core.library;
+
+import java.util.Arrays;
+
+import net.bioclipse.medea.core.MassSpectrum;
+
+import org.xmlcml.cml.element.CMLSpectrum;
+
+/**
+ * A mass spectrum whose peaks are put into bins of m/z, as it is kept in a
+ * SpectrumLibrary. Only the bins with a peak are stored, sorted. The
+ * intensity of a bin is the highest intensity of its peaks raised to the
+ * power of the library, so that the small peaks also count.
+ *
+ * @author Miguel Rojas
+ */
+public class BinnedSpectrum {
+
+	private final int[] bins;
+	private final float[] intensities;
+
+	/**
+	 * Constructor of the BinnedSpectrum object
+	 *
+	 * @param bins        The bins, sorted and without repetitions
+	 * @param intensities The weighted intensity of each bin
+	 */
+	BinnedSpectrum(int[] bins, float[] intensities){
+		this.bins = bins;
+		this.intensities = intensities;
+	}
+	/**
+	 * create a BinnedSpectrum from the peaks.
+	 *
+	 * @param positions   The m/z of the peaks
+	 * @param intensities The intensities of the peaks
+	 * @param binWidth    The width of a bin in m/z
+	 * @param power       The power applied to the intensities
+	 * @return            The BinnedSpectrum
+	 */
+	public static BinnedSpectrum create(double[] positions, double[] intensities, double binWidth, double power){
+		if(positions.length != intensities.length)
+			throw new IllegalArgumentException("The spectrum has "+positions.length+" positions and "+intensities.length+" intensities");
+		long[] sorted = new long[positions.length];
+		int n = 0;
+		for(int i = 0 ; i < positions.length ; i++){
+			if(!(intensities[i] > 0) || !(positions[i] >= 0))
+				continue;
+			/* the bin in the high part, the index of the peak in the low part*/
+			sorted[n++] = ((long)getBin(positions[i], binWidth) << 32) | i;
+		}
+		Arrays.sort(sorted, 0, n);
+		int[] bins = new int[n];
+		float[] weights = new float[n];
+		int size = 0;
+		for(int k = 0 ; k < n ; k++){
+			int bin = (int)(sorted[k] >> 32);
+			double intensity = intensities[(int)(sorted[k] & 0xffffffffL)];
+			float weight = (float)(power == 1.0 ? intensity : Math.pow(intensity, power));
+			if(size > 0 && bins[size - 1] == bin){
+				if(weight > weights[size - 1])
+					weights[size - 1] = weight;
+			}else{
+				bins[size] = bin;
+				weights[size] = weight;
+				size++;
+			}
+		}
+		return new BinnedSpectrum(trim(bins, size), trim(weights, size));
+	}
+	/**
+	 * create a BinnedSpectrum from the first peak list of a CMLSpectrum, as
+	 * it is created by Medea.
+	 *
+	 * @param spectrum The CMLSpectrum
+	 * @param binWidth The width of a bin in m/z
+	 * @param power    The power applied to the intensities
+	 * @return         The BinnedSpectrum
+	 */
+	public static BinnedSpectrum create(CMLSpectrum spectrum, double binWidth, double power){
+		return create(MassSpectrum.create(spectrum), binWidth, power);
+	}
+	/**
+	 * create a BinnedSpectrum from a MassSpectrum.
+	 *
+	 * @param spectrum The MassSpectrum
+	 * @param binWidth The width of a bin in m/z
+	 * @param power    The power applied to the intensities
+	 * @return         The BinnedSpectrum
+	 */
+	public static BinnedSpectrum create(MassSpectrum spectrum, double binWidth, double power){
+		return create(spectrum.getMasses(), spectrum.getIntensities(), binWidth, power);
+	}
+	/**
+	 * get the bin of a m/z
+	 *
+	 * @param position The m/z
+	 * @param binWidth The width of a bin
+	 * @return         The bin
+	 */
+	public static int getBin(double position, double binWidth){
+		return (int)Math.round(position / binWidth);
+	}
+	/**
+	 * get the number of bins with a peak
+	 *
+	 * @return The number of bins
+	 */
+	public int size(){
+		return bins.length;
+	}
+	/**
+	 * get a bin
+	 *
+	 * @param index The index, from 0 to size()
+	 * @return      The bin
+	 */
+	public int getBin(int index){
+		return bins[index];
+	}
+	/**
+	 * get the weighted intensity of a bin
+	 *
+	 * @param index The index, from 0 to size()
+	 * @return      The intensity
+	 */
+	public float getIntensity(int index){
+		return intensities[index];
+	}
+	/**
+	 * get the euclidean norm of the intensities
+	 *
+	 * @return The norm
+	 */
+	public double getNorm(){
+		double sum = 0.0;
+		for(int i = 0 ; i < intensities.length ; i++)
+			sum += (double)intensities[i] * intensities[i];
+		return Math.sqrt(sum);
+	}
+	/**
+	 * get the centre of each bin in m/z
+	 *
+	 * @param binWidth The width of a bin
+	 * @return         The positions
+	 */
+	double[] getPositions(double binWidth){
+		double[] positions = new double[bins.length];
+		for(int i = 0 ; i < bins.length ; i++)
+			positions[i] = bins[i] * binWidth;
+		return positions;
+	}
+	/**
+	 * get the weighted intensities as double
+	 *
+	 * @return The intensities
+	 */
+	double[] getIntensities(){
+		double[] result = new double[intensities.length];
+		for(int i = 0 ; i < intensities.length ; i++)
+			result[i] = intensities[i];
+		return result;
+	}
+
+	private static int[] trim(int[] array, int size){
+		if(array.length == size)
+			return array;
+		int[] result = new int[size];
+		System.arraycopy(array, 0, result, 0, size);
+		return result;
+	}
+
+	private static float[] trim(float[] array, int size){
+		if(array.length == size)
+			return array;
+		float[] result = new float[size];
+		System.arraycopy(array, 0, result, 0, size);
+		return result;
+	}
+}
@@ -0,0 +1,497 @@
+package net.bioclipse.medea.core.library;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import net.bioclipse.medea.core.MassSpectrum;
+import net.bioclipse.medea.core.similarity.WCCSimilarity;
+
+import org.xmlcml.cml.element.CMLSpectrum;
+
+/**
+ * Library of mass spectra, for example predicted by Medea, which is searched
+ * for the spectra most similar to an experimental one. The spectra are kept
+ * as BinnedSpectrum and an inverted index gives for each bin of m/z the
+ * spectra with a peak there, so that a search only visits the spectra which
+ * share a peak, or a near peak for the WCC, with the query.
+ * <pre>
+ *  SpectrumLibrary library = new SpectrumLibrary();
+ *  library.add("C=CCC(=O)O", medea.getPredictedMassSpectrum());
+ *  List&lt;SpectrumLibrary.Hit&gt; hits = library.search(experimental, 10, SpectrumLibrary.WCC);
+ * </pre>
+ * Both scores are calculated from the index without approximation: the
+ * cosine of the binned intensities, and the weighted cross correlation of
+ * WCCSimilarity with the centres of the bins as positions. A library can be
+ * searched by several threads while spectra are added.
+ *
+ * @author Miguel Rojas
+ */
+public class SpectrumLibrary {
+
+	/** Score: cosine of the binned spectra*/
+	public static final int COSINE = 0;
+	/** Score: weighted cross correlation, see WCCSimilarity*/
+	public static final int WCC = 1;
+
+	/** default width of a bin, the nominal mass*/
+	public static final double DEFAULT_BIN_WIDTH = 1.0;
+	/** default power of the intensities*/
+	public static final double DEFAULT_POWER = 0.5;
+	/** default width of the triangle of the WCC, as the WCCMedeaJudge*/
+	public static final double DEFAULT_WCC_WIDTH = 2.0;
+
+	/** first bytes of a file, "MSLB"*/
+	private static final int MAGIC = 0x4D534C42;
+	private static final int VERSION = 1;
+
+	private final double binWidth;
+	private final double power;
+	private final WCCSimilarity wcc;
+
+	private final List<String> ids = new ArrayList<String>();
+	private final List<BinnedSpectrum> spectra = new ArrayList<BinnedSpectrum>();
+	private double[] norms = new double[16];
+	private double[] autocorrelations = new double[16];
+	/** spectra with a peak in each bin*/
+	private Postings[] index = new Postings[0];
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	/** sums of a search, reused by the next searches of the same thread*/
+	private final ThreadLocal<Accumulator> accumulators = new ThreadLocal<Accumulator>(){
+		protected Accumulator initialValue(){
+			return new Accumulator();
+		}
+	};
+
+	/**
+	 * A spectrum of the library found by a search.
+	 */
+	public static class Hit {
+		private final int index;
+		private final String id;
+		private final double score;
+
+		Hit(int index, String id, double score){
+			this.index = index;
+			this.id = id;
+			this.score = score;
+		}
+		/**
+		 * get the position of the spectrum in the library
+		 *
+		 * @return The index
+		 */
+		public int getIndex(){
+			return index;
+		}
+		/**
+		 * get the identifier of the spectrum
+		 *
+		 * @return The identifier
+		 */
+		public String getId(){
+			return id;
+		}
+		/**
+		 * get the similarity with the query, between 0 and 1
+		 *
+		 * @return The score
+		 */
+		public double getScore(){
+			return score;
+		}
+		public String toString(){
+			return id+": "+score;
+		}
+	}
+
+	/**
+	 * The spectra with a peak in one bin and their intensities there.
+	 */
+	private static class Postings {
+		int[] entries = new int[4];
+		float[] intensities = new float[4];
+		int size = 0;
+
+		void add(int entry, float intensity){
+			if(size == entries.length){
+				int[] newEntries = new int[size * 2];
+				float[] newIntensities = new float[size * 2];
+				System.arraycopy(entries, 0, newEntries, 0, size);
+				System.arraycopy(intensities, 0, newIntensities, 0, size);
+				entries = newEntries;
+				intensities = newIntensities;
+			}
+			entries[size] = entry;
+			intensities[size] = intensity;
+			size++;
+		}
+	}
+
+	/**
+	 * The sums of the spectra touched by a search. The arrays are as big as
+	 * the library but they are not cleared: a sum is reset the first time
+	 * that its spectrum is touched in a search, which is known by the mark of
+	 * the search, so that a search only costs the postings it visits.
+	 */
+	private static class Accumulator {
+		double[] sums = new double[0];
+		/** the search which touched each spectrum the last time*/
+		int[] marks = new int[0];
+		int mark = 0;
+		int[] touched = new int[64];
+		int numTouched = 0;
+
+		void reset(int numSpectra){
+			if(sums.length < numSpectra){
+				int capacity = Math.max(numSpectra, sums.length * 2);
+				sums = new double[capacity];
+				marks = new int[capacity];
+				mark = 0;
+			}
+			if(++mark == 0){
+				/* the marks overflowed, the old ones must not match*/
+				Arrays.fill(marks, 0);
+				mark = 1;
+			}
+			numTouched = 0;
+		}
+		void add(int entry, double value){
+			if(marks[entry] != mark){
+				marks[entry] = mark;
+				sums[entry] = value;
+				if(numTouched == touched.length){
+					int[] newTouched = new int[numTouched * 2];
+					System.arraycopy(touched, 0, newTouched, 0, numTouched);
+					touched = newTouched;
+				}
+				touched[numTouched++] = entry;
+			}else
+				sums[entry] += value;
+		}
+	}
+
+	/**
+	 * Constructor of the SpectrumLibrary object with the default parameters.
+	 */
+	public SpectrumLibrary(){
+		this(DEFAULT_BIN_WIDTH, DEFAULT_POWER, DEFAULT_WCC_WIDTH);
+	}
+	/**
+	 * Constructor of the SpectrumLibrary object
+	 *
+	 * @param binWidth The width of a bin in m/z
+	 * @param power    The power applied to the intensities, 1 to keep them
+	 * @param wccWidth The width of the triangle of the WCC in m/z
+	 */
+	public SpectrumLibrary(double binWidth, double power, double wccWidth){
+		if(!(binWidth > 0))
+			throw new IllegalArgumentException("The width of a bin must be positive");
+		this.binWidth = binWidth;
+		this.power = power;
+		this.wcc = new WCCSimilarity(wccWidth);
+	}
+	/**
+	 * add a spectrum predicted by Medea
+	 *
+	 * @param id       The identifier, for example the SMILES
+	 * @param spectrum The CMLSpectrum
+	 * @return         The index of the spectrum in the library
+	 */
+	public int add(String id, CMLSpectrum spectrum){
+		return add(id, BinnedSpectrum.create(spectrum, binWidth, power));
+	}
+	/**
+	 * add a spectrum predicted by Medea, without its CML
+	 *
+	 * @param id       The identifier, for example the SMILES
+	 * @param spectrum The MassSpectrum
+	 * @return         The index of the spectrum in the library
+	 */
+	public int add(String id, MassSpectrum spectrum){
+		return add(id, BinnedSpectrum.create(spectrum, binWidth, power));
+	}
+	/**
+	 * add a spectrum given by its peaks
+	 *
+	 * @param id          The identifier
+	 * @param positions   The m/z of the peaks
+	 * @param intensities The intensities of the peaks
+	 * @return            The index of the spectrum in the library
+	 */
+	public int add(String id, double[] positions, double[] intensities){
+		return add(id, BinnedSpectrum.create(positions, intensities, binWidth, power));
+	}
+	/**
+	 * add a spectrum binned with the parameters of this library, see createQuery()
+	 *
+	 * @param id       The identifier
+	 * @param spectrum The BinnedSpectrum
+	 * @return         The index of the spectrum in the library
+	 */
+	public int add(String id, BinnedSpectrum spectrum){
+		double norm = spectrum.getNorm();
+		double autocorrelation = getAutocorrelation(spectrum);
+		lock.writeLock().lock();
+		try{
+			int entry = spectra.size();
+			ids.add(id);
+			spectra.add(spectrum);
+			if(entry == norms.length){
+				norms = grow(norms);
+				autocorrelations = grow(autocorrelations);
+			}
+			norms[entry] = norm;
+			autocorrelations[entry] = autocorrelation;
+			for(int i = 0 ; i < spectrum.size() ; i++){
+				int bin = spectrum.getBin(i);
+				if(bin >= index.length){
+					Postings[] newIndex = new Postings[Math.max(bin + 1, index.length * 2)];
+					System.arraycopy(index, 0, newIndex, 0, index.length);
+					index = newIndex;
+				}
+				if(index[bin] == null)
+					index[bin] = new Postings();
+				index[bin].add(entry, spectrum.getIntensity(i));
+			}
+			return entry;
+		}finally{
+			lock.writeLock().unlock();
+		}
+	}
+	/**
+	 * bin a spectrum with the parameters of this library
+	 *
+	 * @param positions   The m/z of the peaks
+	 * @param intensities The intensities of the peaks
+	 * @return            The BinnedSpectrum
+	 */
+	public BinnedSpectrum createQuery(double[] positions, double[] intensities){
+		return BinnedSpectrum.create(positions, intensities, binWidth, power);
+	}
+	/**
+	 * search the spectra most similar to an experimental spectrum
+	 *
+	 * @param spectrum The CMLSpectrum
+	 * @param k        The maximal number of spectra
+	 * @param scoring  COSINE or WCC
+	 * @return         The most similar spectra, the best first
+	 */
+	public List<Hit> search(CMLSpectrum spectrum, int k, int scoring){
+		return search(BinnedSpectrum.create(spectrum, binWidth, power), k, scoring);
+	}
+	/**
+	 * search the spectra most similar to a MassSpectrum
+	 *
+	 * @param spectrum The MassSpectrum
+	 * @param k        The maximal number of spectra
+	 * @param scoring  COSINE or WCC
+	 * @return         The most similar spectra, the best first
+	 */
+	public List<Hit> search(MassSpectrum spectrum, int k, int scoring){
+		return search(BinnedSpectrum.create(spectrum, binWidth, power), k, scoring);
+	}
+	/**
+	 * search the spectra most similar to a spectrum given by its peaks
+	 *
+	 * @param positions   The m/z of the peaks
+	 * @param intensities The intensities of the peaks
+	 * @param k           The maximal number of spectra
+	 * @param scoring     COSINE or WCC
+	 * @return            The most similar spectra, the best first
+	 */
+	public List<Hit> search(double[] positions, double[] intensities, int k, int scoring){
+		return search(createQuery(positions, intensities), k, scoring);
+	}
+	/**
+	 * search the spectra most similar to a binned spectrum. Only the spectra
+	 * of the index with a peak in the bins of the query, or near them for
+	 * the WCC, are scored; the others have a score of 0 and are not returned.
+	 *
+	 * @param query   The BinnedSpectrum, binned with the parameters of this library
+	 * @param k       The maximal number of spectra
+	 * @param scoring COSINE or WCC
+	 * @return        The most similar spectra, the best first
+	 */
+	public List<Hit> search(BinnedSpectrum query, int k, int scoring){
+		if(scoring != COSINE && scoring != WCC)
+			throw new IllegalArgumentException("Unknown scoring: "+scoring);
+		if(k < 1 || query.size() == 0)
+			return new ArrayList<Hit>();
+		/* weight of the bins at each distance from a peak of the query*/
+		double[] weights;
+		if(scoring == WCC){
+			int maxOffset = 0;
+			while((maxOffset + 1) * binWidth < wcc.getWidth())
+				maxOffset++;
+			weights = new double[maxOffset + 1];
+			for(int d = 0 ; d <= maxOffset ; d++)
+				weights[d] = 1.0 - d * binWidth / wcc.getWidth();
+		}else
+			weights = new double[]{1.0};
+		double queryScale = scoring == WCC ? Math.sqrt(getAutocorrelation(query)) : query.getNorm();
+
+		lock.readLock().lock();
+		try{
+			Accumulator accumulator = accumulators.get();
+			accumulator.reset(spectra.size());
+			for(int i = 0 ; i < query.size() ; i++){
+				int bin = query.getBin(i);
+				double intensity = query.getIntensity(i);
+				for(int d = -(weights.length - 1) ; d < weights.length ; d++){
+					int neighbour = bin + d;
+					if(neighbour < 0 || neighbour >= index.length || index[neighbour] == null)
+						continue;
+					Postings postings = index[neighbour];
+					double factor = intensity * weights[d < 0 ? -d : d];
+					for(int p = 0 ; p < postings.size ; p++)
+						accumulator.add(postings.entries[p], factor * postings.intensities[p]);
+				}
+			}
+			PriorityQueue<Hit> best = new PriorityQueue<Hit>(k + 1, ASCENDING);
+			for(int t = 0 ; t < accumulator.numTouched ; t++){
+				int entry = accumulator.touched[t];
+				double scale = scoring == WCC ? Math.sqrt(autocorrelations[entry]) : norms[entry];
+				double score = accumulator.sums[entry] / (queryScale * scale);
+				if(!(score > 0))
+					continue;
+				if(best.size() < k)
+					best.add(new Hit(entry, ids.get(entry), score));
+				else if(score > best.peek().score){
+					best.poll();
+					best.add(new Hit(entry, ids.get(entry), score));
+				}
+			}
+			List<Hit> result = new ArrayList<Hit>(best);
+			Collections.sort(result, Collections.reverseOrder(ASCENDING));
+			return result;
+		}finally{
+			lock.readLock().unlock();
+		}
+	}
+	/**
+	 * get the number of spectra
+	 *
+	 * @return The number of spectra
+	 */
+	public int size(){
+		lock.readLock().lock();
+		try{
+			return spectra.size();
+		}finally{
+			lock.readLock().unlock();
+		}
+	}
+	/**
+	 * get the identifier of a spectrum
+	 *
+	 * @param entry The index of the spectrum
+	 * @return      The identifier
+	 */
+	public String getId(int entry){
+		lock.readLock().lock();
+		try{
+			return ids.get(entry);
+		}finally{
+			lock.readLock().unlock();
+		}
+	}
+	/**
+	 * get a spectrum
+	 *
+	 * @param entry The index of the spectrum
+	 * @return      The BinnedSpectrum
+	 */
+	public BinnedSpectrum getSpectrum(int entry){
+		lock.readLock().lock();
+		try{
+			return spectra.get(entry);
+		}finally{
+			lock.readLock().unlock();
+		}
+	}
+	/**
+	 * write the library, it is read again with read()
+	 *
+	 * @param out The OutputStream, it is not closed
+	 * @throws IOException
+	 */
+	public void write(OutputStream out) throws IOException{
+		DataOutputStream data = new DataOutputStream(out);
+		lock.readLock().lock();
+		try{
+			data.writeInt(MAGIC);
+			data.writeInt(VERSION);
+			data.writeDouble(binWidth);
+			data.writeDouble(power);
+			data.writeDouble(wcc.getWidth());
+			data.writeInt(spectra.size());
+			for(int entry = 0 ; entry < spectra.size() ; entry++){
+				BinnedSpectrum spectrum = spectra.get(entry);
+				data.writeUTF(ids.get(entry));
+				data.writeInt(spectrum.size());
+				for(int i = 0 ; i < spectrum.size() ; i++){
+					data.writeInt(spectrum.getBin(i));
+					data.writeFloat(spectrum.getIntensity(i));
+				}
+			}
+		}finally{
+			lock.readLock().unlock();
+		}
+		data.flush();
+	}
+	/**
+	 * read a library written with write()
+	 *
+	 * @param in The InputStream
+	 * @return   The SpectrumLibrary
+	 * @throws IOException if it is not a library
+	 */
+	public static SpectrumLibrary read(InputStream in) throws IOException{
+		DataInputStream data = new DataInputStream(in);
+		if(data.readInt() != MAGIC)
+			throw new IOException("It is not a spectrum library");
+		int version = data.readInt();
+		if(version != VERSION)
+			throw new IOException("The version "+version+" of the spectrum library is not supported");
+		SpectrumLibrary library = new SpectrumLibrary(data.readDouble(), data.readDouble(), data.readDouble());
+		int size = data.readInt();
+		for(int entry = 0 ; entry < size ; entry++){
+			String id = data.readUTF();
+			int[] bins = new int[data.readInt()];
+			float[] intensities = new float[bins.length];
+			for(int i = 0 ; i < bins.length ; i++){
+				bins[i] = data.readInt();
+				intensities[i] = data.readFloat();
+			}
+			library.add(id, new BinnedSpectrum(bins, intensities));
+		}
+		return library;
+	}
+
+	private double getAutocorrelation(BinnedSpectrum spectrum){
+		return wcc.createReference(spectrum.getPositions(binWidth), spectrum.getIntensities()).getAutocorrelation();
+	}
+
+	private static double[] grow(double[] array){
+		double[] result = new double[array.length * 2];
+		System.arraycopy(array, 0, result, 0, array.length);
+		return result;
+	}
+
+	private static final Comparator<Hit> ASCENDING = new Comparator<Hit>(){
+		public int compare(Hit a, Hit b) {
+			return Double.compare(a.score, b.score);
+		}
+	};
+}
@@ -0,0 +1,137 @@
+package net.bioclipse.medea.core.library;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import net.bioclipse.medea.core.FragmentationOptions;
+import net.bioclipse.medea.core.IPredictionListener;
+import net.bioclipse.medea.core.MassSpectrum;
+import net.bioclipse.medea.core.Medea;
+import net.bioclipse.medea.core.MedeaBatchPredictor;
+import net.bioclipse.medea.core.PredictionCache;
+
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.io.iterator.IteratingMDLReader;
+
+/**
+ * Class which predicts the mass spectra of many molecules, for example of
+ * an SD file, and adds them to a SpectrumLibrary. The molecules are
+ * predicted in parallel with a MedeaBatchPredictor. The identifier of each
+ * spectrum is the title of the molecule, or its canonical SMILES.
+ * <pre>
+ *  SpectrumLibraryBuilder builder = new SpectrumLibraryBuilder(4);
+ *  int added = builder.build(new FileInputStream("candidates.sdf"), library, null);
+ *  builder.shutdown();
+ * </pre>
+ *
+ * @author Miguel Rojas
+ */
+public class SpectrumLibraryBuilder {
+
+	private final MedeaBatchPredictor predictor;
+
+	/**
+	 * Constructor of the SpectrumLibraryBuilder object with one thread for
+	 * each processor.
+	 */
+	public SpectrumLibraryBuilder(){
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	/**
+	 * Constructor of the SpectrumLibraryBuilder object
+	 *
+	 * @param threads The number of molecules predicted at the same time
+	 */
+	public SpectrumLibraryBuilder(int threads){
+		predictor = new MedeaBatchPredictor(threads);
+	}
+	/**
+	 * set the limits of the fragmentation of each molecule
+	 *
+	 * @param options The FragmentationOptions
+	 */
+	public void setFragmentationOptions(FragmentationOptions options){
+		predictor.setFragmentationOptions(options);
+	}
+	/**
+	 * predict the molecules of an SD file and add their spectra to the library.
+	 *
+	 * @param sdf      The InputStream of the SD file, it is closed at the end
+	 * @param library  The SpectrumLibrary
+	 * @param listener The IPredictionListener which also receives the results, or null
+	 * @return         The number of spectra added
+	 * @throws InterruptedException
+	 * @throws IOException
+	 */
+	public int build(InputStream sdf, SpectrumLibrary library, IPredictionListener listener) throws InterruptedException, IOException{
+		final IteratingMDLReader reader = new IteratingMDLReader(sdf, DefaultChemObjectBuilder.getInstance());
+		try{
+			return build(new Iterator<IAtomContainer>(){
+				public boolean hasNext() {
+					return reader.hasNext();
+				}
+				public IAtomContainer next() {
+					if(!reader.hasNext())
+						throw new NoSuchElementException();
+					return (IAtomContainer)reader.next();
+				}
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			}, library, listener);
+		}finally{
+			reader.close();
+		}
+	}
+	/**
+	 * predict the molecules and add their spectra to the library. A molecule
+	 * which fails is not added, the listener receives the failure.
+	 *
+	 * @param molecules The molecules
+	 * @param library   The SpectrumLibrary
+	 * @param listener  The IPredictionListener which also receives the results, or null
+	 * @return          The number of spectra added
+	 * @throws InterruptedException
+	 */
+	public int build(Iterator<? extends IAtomContainer> molecules, final SpectrumLibrary library, final IPredictionListener listener) throws InterruptedException{
+		final int[] added = new int[1];
+		predictor.predict(molecules, new IPredictionListener(){
+			public void predicted(int index, IAtomContainer molecule, Medea medea) {
+				MassSpectrum spectrum = medea.getPredictedMassSpectrum();
+				if(spectrum != null){
+					library.add(getId(molecule), spectrum);
+					added[0]++;
+				}
+				if(listener != null)
+					listener.predicted(index, molecule, medea);
+			}
+			public void failed(int index, IAtomContainer molecule, Throwable error) {
+				if(listener != null)
+					listener.failed(index, molecule, error);
+			}
+		});
+		return added[0];
+	}
+	/**
+	 * stop the threads. The SpectrumLibraryBuilder can not be used anymore.
+	 */
+	public void shutdown(){
+		predictor.shutdown();
+	}
+	/**
+	 * get the identifier of a molecule in the library
+	 *
+	 * @param molecule The IAtomContainer
+	 * @return         The title, or the canonical SMILES
+	 */
+	static String getId(IAtomContainer molecule){
+		Object title = molecule.getProperty(CDKConstants.TITLE);
+		if(title != null && title.toString().trim().length() > 0)
+			return title.toString().trim();
+		return PredictionCache.getKey(molecule);
+	}
+}
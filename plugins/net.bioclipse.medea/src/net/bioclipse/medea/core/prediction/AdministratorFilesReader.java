@@ -1,14 +1,12 @@
 package net.bioclipse.medea.core.prediction;
 
-import java.io.BufferedInputStream;
-import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 
-import net.bioclipse.medea.core.Fragmenter;
 import net.bioclipse.medea.core.Medea;
-import net.bioclipse.medea.core.learning.AdministratorFilesWriter;
+import net.bioclipse.medea.core.MedeaContext;
+import net.bioclipse.medea.core.reaction.AtomicDescriptorCache;
 import net.bioclipse.medea.core.reaction.ExtractorSetQsarsCE;
 import net.bioclipse.medea.core.reaction.ExtractorSetQsarsHR;
 import net.bioclipse.medea.core.reaction.ExtractorSetQsarsRSH;
@@ -16,7 +14,6 @@ import net.bioclipse.medea.core.reaction.ExtractorSetQsarsRSI;
 import net.bioclipse.medea.core.reaction.ReactionKp;
 
 import org.openscience.cdk.qsar.model.QSARModelException;
-import org.openscience.chemojava.qsar.model.weka.J48WModel;
 
 public class AdministratorFilesReader {
 	
@@ -36,15 +33,19 @@ public class AdministratorFilesReader {
 	private ExtractorSetQsarsCE extractorCE;
 	private ExtractorSetQsarsHR extractorHR;
 	private HashMap<String, Double> hash;
+	private ReactionModelRegistry registry;
 	/**
 	 * Constructor of the AdministratorFiles
 	 *
 	 */
 	public AdministratorFilesReader() {
-		extractorRSI = new ExtractorSetQsarsRSI();
-		extractorRSH = new ExtractorSetQsarsRSH();
-		extractorCE = new ExtractorSetQsarsCE();
-		extractorHR = new ExtractorSetQsarsHR();
+		/* the reactions of a fragment share its atomic descriptors*/
+		AtomicDescriptorCache descriptors = new AtomicDescriptorCache();
+		extractorRSI = new ExtractorSetQsarsRSI(descriptors);
+		extractorRSH = new ExtractorSetQsarsRSH(descriptors);
+		extractorCE = new ExtractorSetQsarsCE(descriptors);
+		extractorHR = new ExtractorSetQsarsHR(descriptors);
+		registry = ReactionModelRegistry.getInstance();
 		hash = new HashMap<String, Double>();
 		double value = 0.005;
 		for(int i = 0 ; i < classAttrib.length ; i++){
@@ -53,132 +54,86 @@ public class AdministratorFilesReader {
 		}
 	}
 
-	public BufferedInputStream getRsiFile() {
-	    return new BufferedInputStream(
-	        this.getClass().getClassLoader().getResourceAsStream(
-	            "data/total-rsi.arff"
-	        )
-	    );
+	public InputStream getRsiFile() {
+	    return registry.getTrainingSet(ReactionModelRegistry.RSI);
 	}
 	
-    public BufferedInputStream getRshFile() {
-        return new BufferedInputStream(
-            this.getClass().getClassLoader().getResourceAsStream(
-                "data/total-rsh.arff"
-            )
-        );
+    public InputStream getRshFile() {
+        return registry.getTrainingSet(ReactionModelRegistry.RSH);
     }
     
-    public BufferedInputStream getCeeFile() {
-        return new BufferedInputStream(
-            this.getClass().getClassLoader().getResourceAsStream(
-                "data/total-cee.arff"
-            )
-        );
+    public InputStream getCeeFile() {
+        return registry.getTrainingSet(ReactionModelRegistry.CEE);
     }
     
-    public BufferedInputStream getHrgFile() {
-        return new BufferedInputStream(
-            this.getClass().getClassLoader().getResourceAsStream(
-                "data/total-hrg.arff"
-            )
-        );
+    public InputStream getHrgFile() {
+        return registry.getTrainingSet(ReactionModelRegistry.HRG);
     }
     
-    public BufferedInputStream getHrdFile() {
-        return new BufferedInputStream(
-            this.getClass().getClassLoader().getResourceAsStream(
-                "data/total-hrd.arff"
-            )
-        );
+    public InputStream getHrdFile() {
+        return registry.getTrainingSet(ReactionModelRegistry.HRD);
     }
     
 	/**
-	 * creates the files 
+	 * get the probability of the reaction predicted from the models.
 	 * 
-	 * @param reaction
-	 * @param probability
-	 * @throws IOException 
+	 * @param reaction The ReactionKp
+	 * @return         The probability
 	 */
 	public double getProbability(ReactionKp reaction){
-		Double[][] results = null;
+		return getProbability(reaction, null);
+	}
+	/**
+	 * get the probability of the reaction. In the second step of a learning
+	 * process (Medea.LEARN_PREDPROCESS) it is the probability learned in
+	 * the context, otherwise it is predicted from the models.
+	 * 
+	 * @param reaction The ReactionKp
+	 * @param context  The MedeaContext of the run, or null for a prediction
+	 * @return         The probability
+	 */
+	public double getProbability(ReactionKp reaction, MedeaContext context){
 		ArrayList<Double> resultQ = null;
-		InputStream table = null;
-		System.out.println("getProbabilityName: "+reaction.getNameReaction());
-		if(reaction.getNameReaction().equals("RadicalSiteInitiationReaction")){
-		    table = getRsiFile();
+		int type = ReactionModelRegistry.getType(reaction.getNameReaction());
+		switch(type){
+		case ReactionModelRegistry.RSI:
 		    resultQ = extractorRSI.getQsars(reaction);
-		    results = new Double[1][resultQ.size()];
-
-		    for(int i = 0 ; i < resultQ.size(); i++){
-		        results[0][i] = resultQ.get(i);
-		        //						System.out.println(i+", "+resultQ.get(i));
-		    }
-		}else if(reaction.getNameReaction().equals("RadicalSiteInitiationHReaction")){
-		    table = getRshFile();
+		    break;
+		case ReactionModelRegistry.RSH:
 		    resultQ = extractorRSH.getQsars(reaction);
-		    results = new Double[1][resultQ.size()];
-		    for(int i = 0 ; i < resultQ.size(); i++){
-		        results[0][i] = resultQ.get(i);
-		        //						System.out.println(i+", "+resultQ.get(i));
-		    }
-		}else if(reaction.getNameReaction().equals("CarbonylEliminationReaction")){
-		    table = getCeeFile();
+		    break;
+		case ReactionModelRegistry.CEE:
 		    resultQ = extractorCE.getQsars(reaction);
-		    results = new Double[1][resultQ.size()];
-		    for(int i = 0 ; i < resultQ.size(); i++){
-		        results[0][i] = resultQ.get(i);
-		        //						System.out.println(i+", "+resultQ.get(i));
-		    }
-		}else if(reaction.getNameReaction().equals("RadicalSiteHrDeltaReaction")){
-		    table = getHrdFile();
+		    break;
+		case ReactionModelRegistry.HRG:
+		case ReactionModelRegistry.HRD:
 		    resultQ = extractorHR.getQsars(reaction);
-		    results = new Double[1][resultQ.size()];
-		    for(int i = 0 ; i < resultQ.size(); i++){
-		        results[0][i] = resultQ.get(i);
-		        //						System.out.println(i+", "+resultQ.get(i));
-		    }
-		}else if(reaction.getNameReaction().equals("RadicalSiteHrGammaReaction")){
-		    table = getHrgFile();
-		    resultQ = extractorHR.getQsars(reaction);
-		    results = new Double[1][resultQ.size()];
-		    for(int i = 0 ; i < resultQ.size(); i++){
-		        results[0][i] = resultQ.get(i);
-		        //						System.out.println(i+", "+resultQ.get(i));
-		    }
-		} else {
+		    break;
+		default:
 		    System.out.println("**** MAJOR FAILURE ****");
+		    return 0.0;
 		}
 		
-		if(results != null){
-			if(Fragmenter.processType == Medea.LEARN_PREDPROCESS){
-				double resultP = 0.0;
-				if(AdministratorFilesWriter.hashL_P.containsKey(resultQ.toString()))
-					resultP = ((Double)AdministratorFilesWriter.hashL_P.get(resultQ.toString())).doubleValue();
-				return resultP;
-			}else{
-	//			System.out.println("path: "+path);
-				J48WModel j48 = new J48WModel();
-				String[] options = new String[4];
-				options[0] = "-C";
-				options[1] = "0.25";
-				options[2] = "-M";
-				options[3] = "2";
-				try {
-					j48.setOptions(options);
-					j48.build(table);
-		    		j48.setParameters(results);
-		            j48.predict();
-		    		String[] result = (String[])j48.getPredictPredicted();
-	//	    		System.out.println("result["+result[0]);
-		    		return ((Double)hash.get(result[0])).doubleValue();
-		    		
-				} catch (QSARModelException e) {
-					e.printStackTrace();
-				}
-			}
+		if(context != null && context.getProcessType() == Medea.LEARN_PREDPROCESS){
+			double resultP = 0.0;
+			HashMap<String, Double> learned = context.getLearnedProbabilities();
+			if(learned.containsKey(resultQ.toString()))
+				resultP = ((Double)learned.get(resultQ.toString())).doubleValue();
+			return resultP;
+		}
+		
+		double[] results = new double[resultQ.size()];
+		for(int i = 0 ; i < results.length; i++){
+			Double value = resultQ.get(i);
+			results[i] = value == null ? Double.NaN : value.doubleValue();
+		}
+		try {
+			String result = registry.predict(type, results);
+			if(result != null && hash.containsKey(result))
+				return ((Double)hash.get(result)).doubleValue();
+		} catch (QSARModelException e) {
+			e.printStackTrace();
 		}
-
 		return 0.0;
 	}
 }
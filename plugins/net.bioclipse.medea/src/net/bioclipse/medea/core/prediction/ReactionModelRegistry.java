@@ -0,0 +1,789 @@
+package net.bioclipse.medea.core.prediction;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.log4j.Logger;
+import org.openscience.cdk.qsar.model.QSARModelException;
+import org.openscience.chemojava.libio.weka.WekaBinaryDataset;
+import org.openscience.chemojava.qsar.model.weka.J48WModel;
+
+import weka.core.Instances;
+
+/**
+ * Registry of the trained J48 classifiers, one for each type of reaction which
+ * is scored. Each classifier is trained only once, the first time it is needed,
+ * and afterwards it is shared by all threads. If a model directory is set, the
+ * trained classifiers are stored there and reloaded from it in a new session,
+ * so that the arff files are not parsed again. A stored classifier is only
+ * reloaded if it was trained from the same training set, which is compared
+ * by its fingerprint. The size and the date of the training set are stored
+ * with the classifier, the training set is only read again to compare its
+ * fingerprint if one of them changed.
+ * <p>
+ * A classifier can be trained again from a new training set, for example
+ * the files of a TrainingSetWriter, while the predictions continue. The new
+ * classifier is built in the background and replaces the old one at once;
+ * the predictions which already use the old one are not blocked. Each
+ * replacement increases the version of the registry.
+ * <pre>
+ *  registry.setTrainingSet(ReactionModelRegistry.RSI, new File("/tmp/total-rsi.arff"));
+ *  Future&lt;Long&gt; version = registry.retrainInBackground(ReactionModelRegistry.RSI);
+ * </pre>
+ *
+ * @author Miguel Rojas
+ */
+public class ReactionModelRegistry {
+
+	/** Type for the RadicalSiteInitiationReaction*/
+	public static final int RSI = 0;
+	/** Type for the RadicalSiteInitiationHReaction*/
+	public static final int RSH = 1;
+	/** Type for the CarbonylEliminationReaction*/
+	public static final int CEE = 2;
+	/** Type for the RadicalSiteHrGammaReaction*/
+	public static final int HRG = 3;
+	/** Type for the RadicalSiteHrDeltaReaction*/
+	public static final int HRD = 4;
+
+	private static final String[] NAMES = {
+		"RadicalSiteInitiationReaction",
+		"RadicalSiteInitiationHReaction",
+		"CarbonylEliminationReaction",
+		"RadicalSiteHrGammaReaction",
+		"RadicalSiteHrDeltaReaction"};
+	private static final String[] CODES = {"rsi","rsh","cee","hrg","hrd"};
+
+	private static final String[] OPTIONS = {"-C","0.25","-M","2"};
+	/** header of the files of the model directory*/
+	private static final String MODEL_HEADER = "medea-model-2";
+
+	private static final Logger logger = Logger.getLogger(ReactionModelRegistry.class);
+
+	private static final ReactionModelRegistry instance = new ReactionModelRegistry();
+
+	/** classifier of each type, null until it is needed*/
+	private final AtomicReferenceArray<Entry> models = new AtomicReferenceArray<Entry>(CODES.length);
+	private final Object[] locks = new Object[CODES.length];
+	private volatile File modelDirectory = null;
+	/** training set of each type, null for the arff file of the plug-in*/
+	private final AtomicReferenceArray<File> trainingSets = new AtomicReferenceArray<File>(CODES.length);
+	/** stamp and fingerprint of the training set of each type, see getStamp()*/
+	private final AtomicReferenceArray<String[]> fingerprints = new AtomicReferenceArray<String[]>(CODES.length);
+	/** version of the classifiers, increased by each replacement*/
+	private final AtomicLong version = new AtomicLong(0);
+	/** thread which trains again the classifiers, created when it is needed*/
+	private ExecutorService retrainer = null;
+
+	/** classifier of a type with the version of the registry when it was set
+	 * and the fingerprint and the stamp of its training set*/
+	private static class Entry {
+		final J48WModel model;
+		final long version;
+		final String fingerprint;
+		/** size and date of the training set, null if they are not known*/
+		final String stamp;
+
+		Entry(J48WModel model, long version, String fingerprint, String stamp){
+			this.model = model;
+			this.version = version;
+			this.fingerprint = fingerprint;
+			this.stamp = stamp;
+		}
+	}
+
+	/**
+	 * Constructor of the ReactionModelRegistry.
+	 */
+	public ReactionModelRegistry() {
+		for(int i = 0 ; i < locks.length ; i++)
+			locks[i] = new Object();
+	}
+	/**
+	 * Get the registry which is shared in this JVM.
+	 *
+	 * @return The ReactionModelRegistry
+	 */
+	public static ReactionModelRegistry getInstance(){
+		return instance;
+	}
+	/**
+	 * Get the type of classifier which scores the reaction with this name.
+	 *
+	 * @param nameReaction The name of the reaction
+	 * @return             The type, or -1 if no classifier exists for it
+	 */
+	public static int getType(String nameReaction){
+		for(int i = 0 ; i < NAMES.length ; i++)
+			if(NAMES[i].equals(nameReaction))
+				return i;
+		return -1;
+	}
+	/**
+	 * Get the name of the reaction which is scored with this type.
+	 *
+	 * @param type The type of classifier
+	 * @return     The name of the reaction
+	 */
+	public static String getNameReaction(int type){
+		return NAMES[type];
+	}
+	/**
+	 * Get the short code (rsi, rsh, cee, hrg, hrd) for this type.
+	 *
+	 * @param type The type of classifier
+	 * @return     The code
+	 */
+	public static String getCode(int type){
+		return CODES[type];
+	}
+	/**
+	 * Number of types of classifier.
+	 *
+	 * @return The number of types
+	 */
+	public static int getTypeCount(){
+		return CODES.length;
+	}
+	/**
+	 * Set the directory where the trained classifiers are saved and
+	 * reloaded. Null disables the persistence.
+	 *
+	 * @param directory The directory
+	 */
+	public void setModelDirectory(File directory){
+		this.modelDirectory = directory;
+	}
+	/**
+	 * Get the directory where the trained classifiers are saved.
+	 *
+	 * @return The directory, or null
+	 */
+	public File getModelDirectory(){
+		return modelDirectory;
+	}
+	/**
+	 * Set the file with the training set for this type, which is used
+	 * the next time the classifier is trained. See retrain(). The file is
+	 * in format arff or in the binary format of WekaBinaryDataset, which is
+	 * loaded much faster; see convertTrainingSet().
+	 *
+	 * @param type The type of classifier
+	 * @param file The arff or binary file, or null for the file of the plug-in
+	 */
+	public void setTrainingSet(int type, File file){
+		trainingSets.set(type, file);
+	}
+	/**
+	 * Get the training set for this type, as it is stored.
+	 *
+	 * @param type The type of classifier
+	 * @return     The InputStream, arff or binary
+	 */
+	public InputStream getTrainingSet(int type){
+		File file = trainingSets.get(type);
+		if(file != null){
+			try {
+				return new BufferedInputStream(new FileInputStream(file));
+			} catch (FileNotFoundException e) {
+				throw new IllegalStateException("The training set "+file+" does not exist", e);
+			}
+		}
+		return new BufferedInputStream(
+	            this.getClass().getClassLoader().getResourceAsStream(
+	                "data/total-"+CODES[type]+".arff"
+	            )
+	        );
+	}
+	/**
+	 * Write the training set of this type in the binary format of
+	 * WekaBinaryDataset and use it from now on, so that the arff text is
+	 * parsed only this time. The classifier is not trained again.
+	 *
+	 * @param type   The type of classifier
+	 * @param binary The binary file which is written
+	 * @throws IOException if the training set could not be read or written
+	 */
+	public void convertTrainingSet(int type, File binary) throws IOException{
+		File file = trainingSets.get(type);
+		if(file != null && WekaBinaryDataset.isBinary(file)){
+			if(!file.equals(binary))
+				copyFile(file, binary);
+		}else{
+			Instances instances;
+			InputStream in = getTrainingSet(type);
+			try {
+				instances = new Instances(new BufferedReader(new InputStreamReader(in)));
+			} finally {
+				in.close();
+			}
+			instances.setClassIndex(instances.numAttributes() - 1);
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(binary));
+			try {
+				WekaBinaryDataset.write(instances, out);
+			} finally {
+				out.close();
+			}
+		}
+		setTrainingSet(type, binary);
+	}
+	/**
+	 * Get the trained classifier for this type. The first call trains it,
+	 * or loads it from the model directory if it was saved before.
+	 *
+	 * @param type The type of classifier
+	 * @return     The trained J48WModel
+	 * @throws QSARModelException
+	 */
+	public J48WModel getModel(int type) throws QSARModelException{
+		return getEntry(type).model;
+	}
+	/**
+	 * Get the version of the classifiers. It is increased each time that a
+	 * classifier is replaced, a prediction made with the same version used
+	 * the same classifiers. A classifier which was trained again and is
+	 * reloaded from the model directory keeps the version it was saved with.
+	 *
+	 * @return The version, 0 if no classifier was replaced
+	 */
+	public long getVersion(){
+		return version.get();
+	}
+	/**
+	 * Get the fingerprint of the training set of the classifier of this type:
+	 * the SHA-1 of its file and the options of the training. If the classifier
+	 * is not yet trained, it is the fingerprint of the training set which will
+	 * be used; it is taken from the saved classifier or calculated only once
+	 * while the size and the date of the training set are the same. Unlike
+	 * the version it is the same in all sessions, so that it can be stored
+	 * with the results of the classifier.
+	 *
+	 * @param type The type of classifier
+	 * @return     The fingerprint, as hexadecimal
+	 * @throws IOException if the training set could not be read
+	 */
+	public String getFingerprint(int type) throws IOException{
+		Entry entry = models.get(type);
+		if(entry != null)
+			return entry.fingerprint;
+		String stamp = getStamp(type);
+		String fingerprint = findFingerprint(type, stamp);
+		if(fingerprint == null){
+			fingerprint = createFingerprint(type);
+			putFingerprint(type, stamp, fingerprint);
+		}
+		return fingerprint;
+	}
+	/**
+	 * Get the fingerprints of the classifiers of all types, see getFingerprint(int).
+	 *
+	 * @return The fingerprints, separated by ':'
+	 * @throws IOException if a training set could not be read
+	 */
+	public String getFingerprint() throws IOException{
+		StringBuffer fingerprint = new StringBuffer();
+		for(int i = 0 ; i < CODES.length ; i++){
+			if(i > 0)
+				fingerprint.append(':');
+			fingerprint.append(getFingerprint(i));
+		}
+		return fingerprint.toString();
+	}
+	/**
+	 * Get the version of the registry when the classifier of this type was set.
+	 *
+	 * @param type The type of classifier
+	 * @return     The version, -1 if it is not yet trained
+	 */
+	public long getVersion(int type){
+		Entry entry = models.get(type);
+		return entry == null ? -1 : entry.version;
+	}
+	/**
+	 * Train the classifier of this type again from its training set, and
+	 * replace the old one. The predictions continue with the old classifier
+	 * until it is replaced. If a model directory is set, the new classifier
+	 * is saved there.
+	 *
+	 * @param type The type of classifier
+	 * @return     The new version of the registry
+	 * @throws QSARModelException
+	 */
+	public long retrain(int type) throws QSARModelException{
+		Entry trained = trainModel(type);
+		Entry entry;
+		synchronized (locks[type]) {
+			entry = new Entry(trained.model, version.incrementAndGet(), trained.fingerprint, trained.stamp);
+			models.set(type, entry);
+		}
+		File directory = modelDirectory;
+		if(directory != null){
+			try {
+				saveModel(entry, new File(directory, CODES[type]+".model"));
+			} catch (IOException e) {
+				logger.warn("The classifier of "+CODES[type]+" could not be saved", e);
+			}
+		}
+		return entry.version;
+	}
+	/**
+	 * Train the classifier of this type again in a background thread. The
+	 * classifiers are trained one at a time.
+	 *
+	 * @param type The type of classifier
+	 * @return     The Future with the new version of the registry
+	 */
+	public Future<Long> retrainInBackground(final int type){
+		return getRetrainer().submit(new Callable<Long>(){
+			public Long call() throws Exception {
+				return new Long(retrain(type));
+			}
+		});
+	}
+	/**
+	 * Predict the class for a set of descriptors with the classifier of
+	 * this type. The first row is predicted as in predict(int, double[]),
+	 * without locking the classifier.
+	 *
+	 * @param type   The type of classifier
+	 * @param values The descriptors, one row; null for a missing value
+	 * @return       The predicted class, or null
+	 * @throws QSARModelException
+	 */
+	public String predict(int type, Double[][] values) throws QSARModelException{
+		if(values == null || values.length == 0)
+			return null;
+		double[] row = new double[values[0].length];
+		for(int i = 0 ; i < row.length ; i++)
+			row[i] = values[0][i] == null ? Double.NaN : values[0][i].doubleValue();
+		return predict(type, row);
+	}
+	/**
+	 * Predict the class for a row of descriptors with the classifier of
+	 * this type. The classifier is not locked: the descriptors are given
+	 * as primitives and each thread uses its own buffer.
+	 *
+	 * @param type   The type of classifier
+	 * @param values The descriptors, NaN for a missing value
+	 * @return       The predicted class, or null
+	 * @throws QSARModelException
+	 */
+	public String predict(int type, double[] values) throws QSARModelException{
+		/* the class is taken from the same classifier, also if it is replaced meanwhile*/
+		J48WModel model = getModel(type);
+		return model.getClassValue(model.predict(values));
+	}
+	/**
+	 * Predict the probability of each class for a row of descriptors with
+	 * the classifier of this type.
+	 *
+	 * @param type   The type of classifier
+	 * @param values The descriptors, NaN for a missing value
+	 * @return       The probability of each class
+	 * @throws QSARModelException
+	 */
+	public double[] predictDistribution(int type, double[] values) throws QSARModelException{
+		return getModel(type).predictDistribution(values);
+	}
+	/**
+	 * Train, or load, all classifiers now instead of at the first lookup.
+	 *
+	 * @throws QSARModelException
+	 */
+	public void trainAll() throws QSARModelException{
+		for(int i = 0 ; i < CODES.length ; i++)
+			getModel(i);
+	}
+	/**
+	 * Save all trained classifiers in a directory.
+	 *
+	 * @param directory The directory
+	 * @throws IOException
+	 */
+	public void save(File directory) throws IOException{
+		for(int i = 0 ; i < CODES.length ; i++){
+			Entry entry = models.get(i);
+			if(entry != null)
+				saveModel(entry, new File(directory, CODES[i]+".model"));
+		}
+	}
+	/**
+	 * Remove all classifiers, they will be trained or loaded again when needed.
+	 */
+	public void clear(){
+		for(int i = 0 ; i < CODES.length ; i++)
+			synchronized (locks[i]) {
+				models.set(i, null);
+			}
+	}
+	/**
+	 * get the classifier of this type, it is created the first time.
+	 *
+	 * @param type The type of classifier
+	 * @return     The Entry
+	 * @throws QSARModelException
+	 */
+	private Entry getEntry(int type) throws QSARModelException{
+		Entry entry = models.get(type);
+		if(entry != null)
+			return entry;
+		synchronized (locks[type]) {
+			entry = models.get(type);
+			if(entry == null){
+				entry = createEntry(type);
+				models.set(type, entry);
+			}
+			return entry;
+		}
+	}
+
+	private synchronized ExecutorService getRetrainer(){
+		if(retrainer == null)
+			retrainer = Executors.newSingleThreadExecutor(new ThreadFactory(){
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "Medea model retraining");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			});
+		return retrainer;
+	}
+
+	/**
+	 * create the classifier of this type. It is loaded from the model 
+	 * directory if it was saved there from the same training set, otherwise
+	 * it is trained and saved. The training set is not read if its size and
+	 * date are those saved with the classifier. A loaded classifier which was
+	 * trained again keeps its version, so that the registry does not report
+	 * it as the classifier of the plug-in.
+	 *
+	 * @param type The type of classifier
+	 * @return     The Entry
+	 * @throws QSARModelException
+	 */
+	private Entry createEntry(int type) throws QSARModelException{
+		String stamp = getStamp(type);
+		File directory = modelDirectory;
+		File file = directory == null ? null : new File(directory, CODES[type]+".model");
+		if(file != null && file.exists()){
+			Entry loaded = null;
+			boolean touched = false;
+			try {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+				try {
+					/* a file of another training set is replaced by a new training */
+					Entry saved = readHeader(in);
+					if(saved != null && isSameTrainingSet(type, stamp, saved)){
+						J48WModel model = new J48WModel();
+						model.load(in);
+						loaded = new Entry(model, raiseVersion(saved.version), saved.fingerprint, stamp);
+						touched = stamp != null && !stamp.equals(saved.stamp);
+					}
+				} finally {
+					in.close();
+				}
+			} catch (Exception e) {
+				/* a broken file is replaced by a new training */
+			}
+			if(loaded != null){
+				putFingerprint(type, stamp, loaded.fingerprint);
+				if(touched){
+					/* the training set was touched but not changed, the next start does not read it*/
+					try {
+						saveModel(loaded, file);
+					} catch (IOException e) {
+						logger.warn("The classifier of "+CODES[type]+" could not be saved", e);
+					}
+				}
+				return loaded;
+			}
+		}
+		Entry trained = trainModel(type);
+		Entry entry = new Entry(trained.model, version.get(), trained.fingerprint, trained.stamp);
+		if(file != null){
+			try {
+				saveModel(entry, file);
+			} catch (IOException e) {
+				logger.warn("The classifier of "+CODES[type]+" could not be saved", e);
+			}
+		}
+		return entry;
+	}
+	/**
+	 * compare the training set of this type with the one of a saved
+	 * classifier: by the stamp if it is known, otherwise by the fingerprint
+	 *
+	 * @param type  The type of classifier
+	 * @param stamp The stamp of the training set, or null
+	 * @param saved The header of the saved classifier
+	 * @return      True, if the classifier was trained from this training set
+	 * @throws QSARModelException if the training set could not be read
+	 */
+	private boolean isSameTrainingSet(int type, String stamp, Entry saved) throws QSARModelException{
+		if(stamp != null && stamp.equals(saved.stamp))
+			return true;
+		String fingerprint = findFingerprint(type, stamp);
+		if(fingerprint == null){
+			try {
+				fingerprint = createFingerprint(type);
+			} catch (IOException e) {
+				throw new QSARModelException("The training set of "+CODES[type]+" could not be read: "+e.getMessage());
+			}
+			putFingerprint(type, stamp, fingerprint);
+		}
+		return fingerprint.equals(saved.fingerprint);
+	}
+	/**
+	 * set the version of the registry to at least this one
+	 *
+	 * @param minVersion The minimal version
+	 * @return           The version of the registry
+	 */
+	private long raiseVersion(long minVersion){
+		while(true){
+			long current = version.get();
+			if(current >= minVersion || version.compareAndSet(current, minVersion))
+				return version.get();
+		}
+	}
+	/**
+	 * get the stamp of the training set of this type: its location, size
+	 * and date, and the options of the training. It changes when the
+	 * training set is replaced, without reading it.
+	 *
+	 * @param type The type of classifier
+	 * @return     The stamp, or null if the size or the date are not known
+	 */
+	private String getStamp(int type){
+		File file = trainingSets.get(type);
+		if(file != null){
+			if(!file.isFile())
+				return null;
+			return file.getAbsolutePath()+":"+file.length()+":"+file.lastModified()+":"+Arrays.toString(OPTIONS);
+		}
+		URL url = this.getClass().getClassLoader().getResource("data/total-"+CODES[type]+".arff");
+		if(url == null)
+			return null;
+		try {
+			URLConnection connection = url.openConnection();
+			long length = connection.getContentLength();
+			long date = connection.getLastModified();
+			/* some connections open the resource to know its size*/
+			connection.getInputStream().close();
+			if(length < 0 || date <= 0)
+				return null;
+			return url+":"+length+":"+date+":"+Arrays.toString(OPTIONS);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+	/**
+	 * find the fingerprint of the training set of this type without reading
+	 * it: from a previous calculation or from the header of the saved
+	 * classifier, if the stamp is the same
+	 *
+	 * @param type  The type of classifier
+	 * @param stamp The stamp of the training set, or null
+	 * @return      The fingerprint, or null if it must be calculated
+	 */
+	private String findFingerprint(int type, String stamp){
+		if(stamp == null)
+			return null;
+		String[] known = fingerprints.get(type);
+		if(known != null && stamp.equals(known[0]))
+			return known[1];
+		File directory = modelDirectory;
+		File file = directory == null ? null : new File(directory, CODES[type]+".model");
+		if(file == null || !file.exists())
+			return null;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				Entry saved = readHeader(in);
+				if(saved != null && stamp.equals(saved.stamp)){
+					putFingerprint(type, stamp, saved.fingerprint);
+					return saved.fingerprint;
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			/* a broken file, the fingerprint is calculated*/
+		}
+		return null;
+	}
+	/**
+	 * keep the fingerprint of the training set of this type while its stamp
+	 * is the same
+	 */
+	private void putFingerprint(int type, String stamp, String fingerprint){
+		if(stamp != null)
+			fingerprints.set(type, new String[]{stamp, fingerprint});
+	}
+	/**
+	 * read the header of a saved classifier: the version, the fingerprint
+	 * and the stamp. The stream is left at the classifier.
+	 *
+	 * @param in The stream of the file
+	 * @return   The Entry, without classifier, or null if it is another format
+	 * @throws IOException
+	 */
+	private static Entry readHeader(DataInputStream in) throws IOException{
+		if(!MODEL_HEADER.equals(in.readUTF()))
+			return null;
+		long savedVersion = in.readLong();
+		String fingerprint = in.readUTF();
+		String stamp = in.readUTF();
+		return new Entry(null, savedVersion, fingerprint, stamp.length() == 0 ? null : stamp);
+	}
+	/**
+	 * calculate the SHA-1 of the training set of this type and the options
+	 *
+	 * @param type The type of classifier
+	 * @return     The fingerprint, as hexadecimal
+	 * @throws IOException
+	 */
+	private String createFingerprint(int type) throws IOException{
+		MessageDigest digest = createDigest();
+		InputStream in = getTrainingSet(type);
+		try {
+			byte[] buffer = new byte[8192];
+			for (int n; (n = in.read(buffer)) != -1;)
+				digest.update(buffer, 0, n);
+		} finally {
+			in.close();
+		}
+		return toHex(digest);
+	}
+	/**
+	 * create the SHA-1 digest, with the options of the training
+	 */
+	private static MessageDigest createDigest() throws IOException{
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e.getMessage());
+		}
+		digest.update(Arrays.toString(OPTIONS).getBytes("UTF-8"));
+		return digest;
+	}
+
+	private static String toHex(MessageDigest digest){
+		StringBuffer fingerprint = new StringBuffer();
+		for(byte b : digest.digest())
+			fingerprint.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+		return fingerprint.toString();
+	}
+	/**
+	 * train a new classifier from the training set of this type. The
+	 * fingerprint is calculated from the same bytes which are trained, so
+	 * that the training set is read only once.
+	 *
+	 * @param type The type of classifier
+	 * @return     The Entry, with the version 0
+	 * @throws QSARModelException
+	 */
+	private Entry trainModel(int type) throws QSARModelException{
+		String stamp = getStamp(type);
+		J48WModel model = new J48WModel();
+		model.setOptions(OPTIONS);
+		MessageDigest digest;
+		try {
+			digest = createDigest();
+			File file = trainingSets.get(type);
+			if(file != null && WekaBinaryDataset.isBinary(file)){
+				/* a binary file is mapped into memory instead of being read as a stream*/
+				model.build(WekaBinaryDataset.readInstances(file, digest));
+			}else{
+				InputStream table = new DigestInputStream(getTrainingSet(type), digest);
+				try {
+					model.build(table);
+					/* the bytes after the last instance are also part of the fingerprint*/
+					byte[] buffer = new byte[8192];
+					while(table.read(buffer) != -1);
+				} finally {
+					try {
+						table.close();
+					} catch (IOException e) {
+						logger.warn("The training set of "+CODES[type]+" could not be closed", e);
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new QSARModelException("The training set of "+CODES[type]+" could not be read: "+e.getMessage());
+		}
+		String fingerprint = toHex(digest);
+		/* a training set which changed while it was read is read again the next time*/
+		if(stamp != null && !stamp.equals(getStamp(type)))
+			stamp = null;
+		putFingerprint(type, stamp, fingerprint);
+		return new Entry(model, 0, fingerprint, stamp);
+	}
+
+	private static void copyFile(File source, File target) throws IOException{
+		InputStream in = new BufferedInputStream(new FileInputStream(source));
+		try {
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(target));
+			try {
+				byte[] buffer = new byte[8192];
+				for (int n; (n = in.read(buffer)) != -1;)
+					out.write(buffer, 0, n);
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private void saveModel(Entry entry, File file) throws IOException{
+		File parent = file.getParentFile();
+		if(parent != null && !parent.exists())
+			parent.mkdirs();
+		/* the file is only replaced when it is complete*/
+		File tmp = new File(file.getPath()+".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			out.writeUTF(MODEL_HEADER);
+			out.writeLong(entry.version);
+			out.writeUTF(entry.fingerprint);
+			out.writeUTF(entry.stamp == null ? "" : entry.stamp);
+			entry.model.save(out);
+		} catch (QSARModelException e) {
+			throw new IOException(e.getMessage());
+		} finally {
+			out.close();
+		}
+		if(!tmp.renameTo(file)){
+			file.delete();
+			if(!tmp.renameTo(file))
+				throw new IOException("The model could not be written into "+file);
+		}
+	}
+}
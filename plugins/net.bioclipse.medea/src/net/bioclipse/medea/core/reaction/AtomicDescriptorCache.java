@@ -0,0 +1,212 @@
+package net.bioclipse.medea.core.reaction;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.openscience.cdk.charges.GasteigerMarsiliPartialCharges;
+import org.openscience.cdk.charges.GasteigerPEPEPartialCharges;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.qsar.descriptors.atomic.EffectiveAtomPolarizabilityDescriptor;
+import org.openscience.cdk.qsar.descriptors.atomic.SigmaElectronegativityDescriptor;
+import org.openscience.cdk.qsar.result.DoubleResult;
+
+/**
+ * Class which keeps the atomic descriptors of the fragments, so that they
+ * are calculated once for each fragment. The partial sigma and pi charges
+ * are calculated for all atoms of the fragment at the same time, as the
+ * PartialSigmaChargeDescriptor and PartialPiChargeDescriptor do with 6
+ * iterations, and without the check of the lone pairs for the pi charges.
+ * The polarizability and the sigma electronegativity are calculated atom by
+ * atom the first time they are asked.
+ * <p>
+ * The values are kept while the fragment exists and is not changed. This
+ * object must be used only by one thread.
+ *
+ * @author Miguel Rojas
+ */
+public class AtomicDescriptorCache {
+
+	/** number of iterations of the Gasteiger methods*/
+	private static final int MAX_ITERATIONS = 6;
+
+	private final Map<IAtomContainer, Descriptors> cache = new WeakHashMap<IAtomContainer, Descriptors>();
+	private final EffectiveAtomPolarizabilityDescriptor polarizabilityDescriptor;
+	private final SigmaElectronegativityDescriptor electronegativityDescriptor;
+
+	/**
+	 * the descriptors of one fragment. The values not yet calculated are NaN.
+	 */
+	private static class Descriptors {
+		private final int atomCount;
+		private double[] sigmaCharges = null;
+		private double[] piCharges = null;
+		private final double[] polarizabilities;
+		private final double[] electronegativities;
+
+		Descriptors(int atomCount){
+			this.atomCount = atomCount;
+			polarizabilities = new double[atomCount];
+			electronegativities = new double[atomCount];
+			Arrays.fill(polarizabilities, Double.NaN);
+			Arrays.fill(electronegativities, Double.NaN);
+		}
+	}
+
+	/**
+	 * Constructor of the AtomicDescriptorCache object
+	 */
+	public AtomicDescriptorCache(){
+		polarizabilityDescriptor = new EffectiveAtomPolarizabilityDescriptor();
+		electronegativityDescriptor = new SigmaElectronegativityDescriptor();
+		try {
+			electronegativityDescriptor.setParameters(new Object[]{new Integer(MAX_ITERATIONS)});
+		} catch (CDKException e) {
+			e.printStackTrace();
+		}
+	}
+	/**
+	 * get the partial sigma charge of the atom
+	 *
+	 * @param atom      The IAtom
+	 * @param container The IAtomContainer which contains the atom
+	 * @return          The partial sigma charge
+	 * @throws CDKException
+	 */
+	public double getSigmaCharge(IAtom atom, IAtomContainer container) throws CDKException{
+		Descriptors descriptors = getDescriptors(container);
+		if(descriptors.sigmaCharges == null){
+			IAtomContainer clone = cloneContainer(container);
+			try {
+				GasteigerMarsiliPartialCharges peoe = new GasteigerMarsiliPartialCharges();
+				peoe.setMaxGasteigerIters(MAX_ITERATIONS);
+				peoe.assignGasteigerMarsiliSigmaPartialCharges(clone, true);
+			} catch (Exception e) {
+				throw new CDKException("Problems with assignGasteigerMarsiliPartialCharges due to " + e.toString(), e);
+			}
+			descriptors.sigmaCharges = getCharges(clone);
+		}
+		return descriptors.sigmaCharges[getIndex(atom, container)];
+	}
+	/**
+	 * get the partial pi charge of the atom
+	 *
+	 * @param atom      The IAtom
+	 * @param container The IAtomContainer which contains the atom
+	 * @return          The partial pi charge
+	 * @throws CDKException
+	 */
+	public double getPiCharge(IAtom atom, IAtomContainer container) throws CDKException{
+		Descriptors descriptors = getDescriptors(container);
+		if(descriptors.piCharges == null){
+			IAtomContainer clone = cloneContainer(container);
+			for(int i = 0 ; i < clone.getAtomCount() ; i++)
+				clone.getAtom(i).setCharge(0.0);
+			try {
+				GasteigerPEPEPartialCharges pepe = new GasteigerPEPEPartialCharges();
+				pepe.setMaxGasteigerIters(MAX_ITERATIONS);
+				pepe.assignGasteigerPiPartialCharges(clone, true);
+			} catch (Exception e) {
+				throw new CDKException("Problems with assignGasteigerPiPartialCharges due to " + e.toString(), e);
+			}
+			descriptors.piCharges = getCharges(clone);
+		}
+		return descriptors.piCharges[getIndex(atom, container)];
+	}
+	/**
+	 * get the effective polarizability of the atom
+	 *
+	 * @param atom      The IAtom
+	 * @param container The IAtomContainer which contains the atom
+	 * @return          The effective polarizability
+	 * @throws CDKException
+	 */
+	public double getPolarizability(IAtom atom, IAtomContainer container) throws CDKException{
+		Descriptors descriptors = getDescriptors(container);
+		int index = getIndex(atom, container);
+		if(Double.isNaN(descriptors.polarizabilities[index]))
+			descriptors.polarizabilities[index] = ((DoubleResult)polarizabilityDescriptor.calculate(atom, container).getValue()).doubleValue();
+		return descriptors.polarizabilities[index];
+	}
+	/**
+	 * get the sigma electronegativity of the atom
+	 *
+	 * @param atom      The IAtom
+	 * @param container The IAtomContainer which contains the atom
+	 * @return          The sigma electronegativity
+	 * @throws CDKException
+	 */
+	public double getSigmaElectronegativity(IAtom atom, IAtomContainer container) throws CDKException{
+		Descriptors descriptors = getDescriptors(container);
+		int index = getIndex(atom, container);
+		if(Double.isNaN(descriptors.electronegativities[index]))
+			descriptors.electronegativities[index] = ((DoubleResult)electronegativityDescriptor.calculate(atom, container).getValue()).doubleValue();
+		return descriptors.electronegativities[index];
+	}
+	/**
+	 * remove all values
+	 */
+	public void clear(){
+		cache.clear();
+	}
+	/**
+	 * get the descriptors of the fragment. They are calculated again if the
+	 * number of atoms was changed.
+	 *
+	 * @param container The IAtomContainer
+	 * @return          The Descriptors
+	 */
+	private Descriptors getDescriptors(IAtomContainer container){
+		Descriptors descriptors = cache.get(container);
+		if(descriptors == null || descriptors.atomCount != container.getAtomCount()){
+			descriptors = new Descriptors(container.getAtomCount());
+			cache.put(container, descriptors);
+		}
+		return descriptors;
+	}
+	/**
+	 * get the position of the atom into the container
+	 *
+	 * @param atom      The IAtom
+	 * @param container The IAtomContainer
+	 * @return          The position
+	 * @throws CDKException if the atom is not in the container
+	 */
+	private static int getIndex(IAtom atom, IAtomContainer container) throws CDKException{
+		int index = container.getAtomNumber(atom);
+		if(index < 0)
+			throw new CDKException("The atom is not contained in the molecule");
+		return index;
+	}
+	/**
+	 * copy of the container where the charges are calculated, the atoms of
+	 * the fragment are not changed.
+	 *
+	 * @param container The IAtomContainer
+	 * @return          The copy
+	 * @throws CDKException
+	 */
+	private static IAtomContainer cloneContainer(IAtomContainer container) throws CDKException{
+		try {
+			return (IAtomContainer)container.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new CDKException("The molecule could not be cloned", e);
+		}
+	}
+	/**
+	 * get the charges of all atoms
+	 *
+	 * @param container The IAtomContainer
+	 * @return          An Array with the charges
+	 */
+	private static double[] getCharges(IAtomContainer container){
+		double[] charges = new double[container.getAtomCount()];
+		for(int i = 0 ; i < charges.length ; i++){
+			Double charge = container.getAtom(i).getCharge();
+			charges[i] = charge == null ? 0.0 : charge.doubleValue();
+		}
+		return charges;
+	}
+}
@@ -6,10 +6,6 @@ import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IMapping;
 import org.openscience.cdk.interfaces.IMolecule;
-import org.openscience.cdk.qsar.descriptors.atomic.EffectiveAtomPolarizabilityDescriptor;
-import org.openscience.cdk.qsar.descriptors.atomic.PartialPiChargeDescriptor;
-import org.openscience.cdk.qsar.descriptors.atomic.PartialSigmaChargeDescriptor;
-import org.openscience.cdk.qsar.result.DoubleResult;
 import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
 /**
  * Class which extract the qsar from a reactions for CarbonylElimination.
@@ -17,16 +13,21 @@ import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
  * @author Miguel Rojas
  */
 public class ExtractorSetQsarsCE implements ExtractorSetQsars{
-	private PartialSigmaChargeDescriptor descriptor0;
-	private PartialPiChargeDescriptor descriptor2;
-	private EffectiveAtomPolarizabilityDescriptor descriptor3;
+	/** atomic descriptors of the fragments*/
+	private AtomicDescriptorCache descriptors;
 	/**
 	 * Extractor of the ExtractorSetQsars object
 	 */
 	public ExtractorSetQsarsCE(){
-		descriptor0 = new PartialSigmaChargeDescriptor();
-		descriptor2 = new PartialPiChargeDescriptor();
-		descriptor3 = new EffectiveAtomPolarizabilityDescriptor();
+		this(new AtomicDescriptorCache());
+	}
+	/**
+	 * Extractor of the ExtractorSetQsars object
+	 * 
+	 * @param descriptors The AtomicDescriptorCache which calculates the atomic descriptors
+	 */
+	public ExtractorSetQsarsCE(AtomicDescriptorCache descriptors){
+		this.descriptors = descriptors;
 	}
 	/**
 	 * get an ArrayList with all descriptors for a this Reaction
@@ -67,8 +68,6 @@ public class ExtractorSetQsarsCE implements ExtractorSetQsars{
 	 */
 	private ArrayList<Double> applyDescritorsProductA(IMolecule product, Iterable<IMapping> iterable) {
 		ArrayList<Double> results = new ArrayList<Double>();
-		Integer[] object1 = {new Integer(6)};
-		Object[] object2 = {new Integer(6),new Boolean(false)};
 		int count = 0;
 		/*problems with mapping, not valid if a product come from two different reactants.*/
 //		while(mappingI.hasNext()){/* second is the atom  [A1*]-A2-A3* => A1=A2 + [A3*]*/
@@ -85,18 +84,15 @@ public class ExtractorSetQsarsCE implements ExtractorSetQsars{
 //					System.out.println("i_: "+product.getAtomNumber(aap)+", "+aap.getID()+", "+aap);
 					if(product.contains(aap) && aap.getFormalCharge() == 1){
 							try {
-								descriptor0.setParameters(object1);
-								double result =((DoubleResult)descriptor0.calculate(aap, product).getValue()).doubleValue();
+								double result = descriptors.getSigmaCharge(aap, product);
 //								System.out.println("r0: "+result);
 								results.add(result);
 								
-								descriptor2 = new PartialPiChargeDescriptor();
-								descriptor2.setParameters(object2);
-								result =((DoubleResult)descriptor2.calculate(aap, product).getValue()).doubleValue();
+								result = descriptors.getPiCharge(aap, product);
 //								System.out.println("r1: "+result);
 								results.add(result);
 	
-								result =((DoubleResult)descriptor3.calculate(aap, product).getValue()).doubleValue();
+								result = descriptors.getPolarizability(aap, product);
 //								System.out.println("r2: "+result);
 								results.add(result);
 	
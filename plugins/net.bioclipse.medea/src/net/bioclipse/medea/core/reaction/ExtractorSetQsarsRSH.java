@@ -6,26 +6,27 @@ import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IMapping;
 import org.openscience.cdk.interfaces.IMolecule;
-import org.openscience.cdk.qsar.descriptors.atomic.EffectiveAtomPolarizabilityDescriptor;
-import org.openscience.cdk.qsar.descriptors.atomic.PartialPiChargeDescriptor;
-import org.openscience.cdk.qsar.descriptors.atomic.PartialSigmaChargeDescriptor;
-import org.openscience.cdk.qsar.result.DoubleResult;
 /**
  * Class which extract the qsar from a reactions for CarbonylElimination.
  * 
  * @author Miguel Rojas
  */
 public class ExtractorSetQsarsRSH implements ExtractorSetQsars{
-	private PartialSigmaChargeDescriptor descriptor0;
-	private PartialPiChargeDescriptor descriptor2;
-	private EffectiveAtomPolarizabilityDescriptor descriptor3;
+	/** atomic descriptors of the fragments*/
+	private AtomicDescriptorCache descriptors;
 	/**
 	 * Extractor of the ExtractorSetQsars object
 	 */
 	public ExtractorSetQsarsRSH(){
-		descriptor0 = new PartialSigmaChargeDescriptor();
-		descriptor2 = new PartialPiChargeDescriptor();
-		descriptor3 = new EffectiveAtomPolarizabilityDescriptor();
+		this(new AtomicDescriptorCache());
+	}
+	/**
+	 * Extractor of the ExtractorSetQsars object
+	 * 
+	 * @param descriptors The AtomicDescriptorCache which calculates the atomic descriptors
+	 */
+	public ExtractorSetQsarsRSH(AtomicDescriptorCache descriptors){
+		this.descriptors = descriptors;
 	}
 	/**
 	 * get an ArrayList with all descriptors for a this Reaction
@@ -58,8 +59,6 @@ public class ExtractorSetQsarsRSH implements ExtractorSetQsars{
 	 */
 	private ArrayList<Double> applyDescritorsReactant(IMolecule reactant, Iterable<IMapping> iterable) {
 		ArrayList<Double> results = new ArrayList<Double>();
-		Integer[] object1 = {new Integer(6)};
-		Object[] object2 = {new Integer(6),new Boolean(false)};
 		int count = 0;
 		/*problems with mapping, not valid if a product come from two different reactants.*/
 //		while(mappingI.hasNext()){/* second is the atom  [A1*]-A2-A3* => A1=A2 + [A3*]*/
@@ -74,18 +73,15 @@ public class ExtractorSetQsarsRSH implements ExtractorSetQsars{
 //					System.out.println("i_: "+product.getAtomNumber(aap)+", "+aap.getID()+", "+aap);
 					if(reactant.contains(aap) && aap.getFormalCharge() == 1){
 							try {
-								descriptor0.setParameters(object1);
-								double result =((DoubleResult)descriptor0.calculate(aap, reactant).getValue()).doubleValue();
+								double result = descriptors.getSigmaCharge(aap, reactant);
 //								System.out.println("r0: "+result);
 								results.add(result);
 								
-								descriptor2 = new PartialPiChargeDescriptor();
-								descriptor2.setParameters(object2);
-								result =((DoubleResult)descriptor2.calculate(aap, reactant).getValue()).doubleValue();
+								result = descriptors.getPiCharge(aap, reactant);
 //								System.out.println("r1: "+result);
 								results.add(result);
 	
-								result =((DoubleResult)descriptor3.calculate(aap, reactant).getValue()).doubleValue();
+								result = descriptors.getPolarizability(aap, reactant);
 //								System.out.println("r2: "+result);
 								results.add(result);
 	
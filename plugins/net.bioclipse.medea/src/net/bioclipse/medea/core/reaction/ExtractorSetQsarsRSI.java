@@ -7,37 +7,30 @@ import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainerSet;
 import org.openscience.cdk.interfaces.IChemObject;
 import org.openscience.cdk.interfaces.IMapping;
-import org.openscience.cdk.interfaces.IMolecularFormula;
 import org.openscience.cdk.interfaces.IMolecule;
-import org.openscience.cdk.interfaces.ISingleElectron;
-import org.openscience.cdk.qsar.descriptors.atomic.EffectiveAtomPolarizabilityDescriptor;
-import org.openscience.cdk.qsar.descriptors.atomic.PartialPiChargeDescriptor;
-import org.openscience.cdk.qsar.descriptors.atomic.PartialSigmaChargeDescriptor;
-import org.openscience.cdk.qsar.descriptors.atomic.SigmaElectronegativityDescriptor;
-import org.openscience.cdk.qsar.result.DoubleResult;
-import org.openscience.cdk.smiles.SmilesGenerator;
 import org.openscience.cdk.tools.StructureResonanceGenerator;
-import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
 /**
  * Class which extract the qsar from a reactions for RadicalSiteInitiation.
  * 
  * @author Miguel Rojas
  */
 public class ExtractorSetQsarsRSI implements ExtractorSetQsars{
-	private PartialSigmaChargeDescriptor descriptor0;
-	private SigmaElectronegativityDescriptor descriptor1;
-	private PartialPiChargeDescriptor descriptor2;
-	private EffectiveAtomPolarizabilityDescriptor descriptor3;
+	/** atomic descriptors of the fragments*/
+	private AtomicDescriptorCache descriptors;
 //	private ResonancePositiveChargeDescriptor descriptor4;
 	/**
 	 * Extractor of the ExtractorSetQsars object
 	 */
 	public ExtractorSetQsarsRSI(){
-		descriptor0 = new PartialSigmaChargeDescriptor();
-		descriptor1  = new SigmaElectronegativityDescriptor();
-		descriptor2 = new PartialPiChargeDescriptor();
-		descriptor3 = new EffectiveAtomPolarizabilityDescriptor();
-//		descriptor4 = new ResonancePositiveChargeDescriptor();
+		this(new AtomicDescriptorCache());
+	}
+	/**
+	 * Extractor of the ExtractorSetQsars object
+	 * 
+	 * @param descriptors The AtomicDescriptorCache which calculates the atomic descriptors
+	 */
+	public ExtractorSetQsarsRSI(AtomicDescriptorCache descriptors){
+		this.descriptors = descriptors;
 	}
 	/**
 	 * get an ArrayList with all descriptors for a this Reaction
@@ -81,15 +74,12 @@ public class ExtractorSetQsarsRSI implements ExtractorSetQsars{
 			
 		if(reactionKp.mappings() != null ){
 			
-//			printInformation(neighbourd);
 			ArrayList<Double> results3 = applyDescritorsProductB(neighbourd,reactionKp.mappings());
 			resultsQsars.addAll(results3);
 
-//			printInformation(product);
 			ArrayList<Double> results2 = applyDescritorsProductA(product,reactionKp.mappings());
 			resultsQsars.addAll(results2);
 
-//			printInformation(reactant);
 			ArrayList<Double> results1 = applyDescritorsReactant(reactant, reactionKp. mappings());
 			resultsQsars.addAll(results1);
 
@@ -105,7 +95,6 @@ public class ExtractorSetQsarsRSI implements ExtractorSetQsars{
 	 */
 	private ArrayList<Double> applyDescritorsReactant(IMolecule reactant, Iterable<IMapping> iterable) {
 		ArrayList<Double> results = new ArrayList<Double>();
-		Integer[] object1 = {new Integer(6)};
 		int count = 0;
 		IAtom atom2 = null;
 		IAtom atom3 = null;
@@ -118,8 +107,7 @@ public class ExtractorSetQsarsRSI implements ExtractorSetQsars{
 				IAtom aap = (IAtom)object;
 					if(reactant.getConnectedSingleElectronsList(aap).size() > 0){/*it should be the first mapping*/
 						try {
-							descriptor1.setParameters(object1);
-							results.add(((DoubleResult)descriptor1.calculate(aap, reactant).getValue()).doubleValue());
+							results.add(descriptors.getSigmaElectronegativity(aap, reactant));
 							results.add(new Double(reactant.getConnectedLonePairsCount(aap)));
 							results.add(new Double(reactant.getConnectedAtomsCount(aap)));
 						} catch (CDKException e) {
@@ -157,8 +145,6 @@ public class ExtractorSetQsarsRSI implements ExtractorSetQsars{
 	 */
 	private ArrayList<Double> applyDescritorsProductA(IMolecule product, Iterable<IMapping> iterable) {
 		ArrayList<Double> results = new ArrayList<Double>();
-		Integer[] object1 = {new Integer(6)};
-		Object[] object2 = {new Integer(6),new Boolean(false)};
 		int count = 0;
 		for(IMapping mapping:iterable){/* second is the atom  [A1*]-A2-A3* => A1=A2 + [A3*]*/
 			
@@ -173,16 +159,13 @@ public class ExtractorSetQsarsRSI implements ExtractorSetQsars{
 				IAtom aap = (IAtom)object;
 				if(product.contains(aap)){
 						try {
-							descriptor0.setParameters(object1);
-							double result =((DoubleResult)descriptor0.calculate(aap, product).getValue()).doubleValue();
+							double result = descriptors.getSigmaCharge(aap, product);
 							results.add(result);
 							
-							descriptor2 = new PartialPiChargeDescriptor();
-							descriptor2.setParameters(object2);
-							result =((DoubleResult)descriptor2.calculate(aap, product).getValue()).doubleValue();
+							result = descriptors.getPiCharge(aap, product);
 							results.add(result);
 
-							result =((DoubleResult)descriptor3.calculate(aap, product).getValue()).doubleValue();
+							result = descriptors.getPolarizability(aap, product);
 							results.add(result);
 							int numberC = 0;
 							for(IAtom a:product.atoms()){
@@ -216,8 +199,6 @@ public class ExtractorSetQsarsRSI implements ExtractorSetQsars{
 	 */
 	private ArrayList<Double> applyDescritorsProductB(IMolecule neighbour, Iterable<IMapping> iterable) {
 		ArrayList<Double> results = new ArrayList<Double>();
-		Integer[] object1 = {new Integer(6)};
-		Object[] object2 = {new Integer(6),new Boolean(false)};
 		for(IMapping mapping:iterable){
 //			IMapping mapping = (IMapping)iterable.next();
 			IChemObject object = mapping.getChemObject(1);/* 0 is reactant, 1 is product, mapping*/
@@ -226,14 +207,11 @@ public class ExtractorSetQsarsRSI implements ExtractorSetQsars{
 				if(neighbour.contains(aap)){
 					if(neighbour.getConnectedSingleElectronsList(aap).size() > 0){
 						try {
-							descriptor0.setParameters(object1);
-							results.add(((DoubleResult)descriptor0.calculate(aap, neighbour).getValue()).doubleValue());
+							results.add(descriptors.getSigmaCharge(aap, neighbour));
 							
-							descriptor2 = new PartialPiChargeDescriptor();
-							descriptor2.setParameters(object2);
-//							results.add(((DoubleResult)descriptor2.calculate(aap, neighbour).getValue()).doubleValue());
+//							results.add(descriptors.getPiCharge(aap, neighbour));
 
-							results.add(((DoubleResult)descriptor3.calculate(aap, neighbour).getValue()).doubleValue());
+							results.add(descriptors.getPolarizability(aap, neighbour));
 							
 							StructureResonanceGenerator gR = new StructureResonanceGenerator();/*according G. should be integrated the breaking bonding*/
 							
@@ -255,32 +233,4 @@ public class ExtractorSetQsarsRSI implements ExtractorSetQsars{
 		}
 		return results;
 	}
-
-	private void printInformation(IMolecule fragmentToStudy) {
-		System.out.println("print infom");
-		String smiles = (new SmilesGenerator()).createSMILES(fragmentToStudy);
-		IMolecularFormula formula = MolecularFormulaManipulator.getMolecularFormula(fragmentToStudy);
-		
-		System.out.println("SMILE: " + smiles+", count Atoms: " + fragmentToStudy.getAtomCount()+ ", count Bonds: " + fragmentToStudy.getBondCount() + ", imass: "+ MolecularFormulaManipulator.getTotalExactMass(formula));
-		
-//		Iterator atoms = fragmentToStudy.atoms();
-		int count = 0;
-		for(IAtom atom:fragmentToStudy.atoms()){
-//			IAtom atom = (IAtom)atoms.next();
-			ISingleElectron[] se = (ISingleElectron[])fragmentToStudy.getConnectedSingleElectronsList(atom).toArray();
-			System.out.println("Atom: "
-							+ count
-							+ ", Sym: "
-							+ atom.getSymbol()
-							+ ", AtomAt: "
-							+ fragmentToStudy.getConnectedAtomsCount(atom)
-							+ ", lpe: "
-							+ fragmentToStudy.getConnectedLonePairsCount(atom)
-							+ ", sg: " + se.length
-							+ ", Charge: "
-							+ atom.getFormalCharge());
-			count++;
-		}
-		
-	}
 }
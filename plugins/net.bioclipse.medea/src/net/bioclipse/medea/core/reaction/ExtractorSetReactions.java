@@ -1,17 +1,15 @@
 package net.bioclipse.medea.core.reaction;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 
 import net.bioclipse.medea.core.FragmentMolecule;
 import net.bioclipse.medea.core.FragmentTree;
 import net.bioclipse.medea.core.Position;
 
 import org.openscience.cdk.DefaultChemObjectBuilder;
-import org.openscience.cdk.interfaces.IMolecularFormula;
-import org.openscience.cdk.interfaces.IMolecule;
 import org.openscience.cdk.interfaces.IReactionSet;
-import org.openscience.cdk.smiles.SmilesGenerator;
-import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
 
 public class ExtractorSetReactions {
 	
@@ -34,28 +32,20 @@ public class ExtractorSetReactions {
 		IReactionSet setOfReactions = DefaultChemObjectBuilder.getInstance()
 			.newInstance(IReactionSet.class);
 		
-		IMolecule molecule = fragmentTree.getMolecule();
-		IMolecularFormula formula = MolecularFormulaManipulator.getMolecularFormula(molecule);
-		int massI = (int) MolecularFormulaManipulator.getTotalExactMass(formula);
-		
-		FragmentMolecule fm = fragmentTree.getFragment(new Position(massI,0));
+		FragmentMolecule fm = fragmentTree.getMolecularIon();
 		ArrayList<FragmentMolecule> al = new ArrayList<FragmentMolecule>();
 		al.add(fm);
-		int count = 0;
+		/* each fragment is expanded only once*/
+		HashSet<Position> visited = new HashSet<Position>();
+		visited.add(fm.getIdP());
 		for(int i = 0 ; i < al.size(); i++){
-			if(i == 10)
-				break;
-			System.out.println("i: "+i);
-			ArrayList<Position> children_D = al.get(i).getChildren();
+			List<Position> children_D = al.get(i).getChildren();
 			for(int j = 0 ; j < children_D.size(); j++){
 				ReactionKp reaction = new ReactionKp();
 				reaction.setID(al.get(i).getProcess().get(j));
 				reaction.addReactant(al.get(i));
 				reaction.addProduct(fragmentTree.getFragment(children_D.get(j)));
 				
-				String smiles0 = (new SmilesGenerator()).createSMILES((IMolecule)al.get(i));
-				System.out.print(count+", "+smiles0);
-				count++;
 				if(al.get(i).getProcess().get(j).equals("Ionitzation")){
 					reaction.setProperty("IonizationEnergy",al.get(i).getChildrenProbabilities().get(j));
 				}
@@ -74,13 +64,8 @@ public class ExtractorSetReactions {
 					
 				reaction.setNameReaction(al.get(i).getProcess().get(j));
 				setOfReactions.addReaction(reaction);
-				if(count < 50)
+				if(visited.add(children_D.get(j)))
 					al.add(fragmentTree.getFragment(children_D.get(j)));
-				String smiles = (new SmilesGenerator()).createSMILES(fragmentTree.getFragment(children_D.get(j)));
-				String smiles2 = null;
-//				if(al.get(i).getNeighbouring().get(j) != null)
-//					smiles2 = (new SmilesGenerator()).createSMILES((IMolecule)al.get(i).getNeighbouring().get(j));
-				System.out.println(" "+al.get(i).getProcess().get(j)+" => s: "+smiles+", "+smiles2);
 			}
 		}
 //		System.out.println("end");
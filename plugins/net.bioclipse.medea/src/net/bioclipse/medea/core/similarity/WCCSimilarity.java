@@ -0,0 +1,252 @@
+package net.bioclipse.medea.core.similarity;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Class which calculates the weighted cross correlation (WCC) between two
+ * spectra, as WCCTool, for many pairs. The peaks of each spectrum are
+ * sorted once by position, so that only the pairs of peaks closer than the
+ * width are visited, and the autocorrelation of a spectrum is calculated
+ * only once. A fixed spectrum, for example the experimental one, is
+ * prepared as Reference and compared with many others.
+ * <pre>
+ *  WCCSimilarity wcc = new WCCSimilarity(2);
+ *  WCCSimilarity.Reference experimental = wcc.createReference(positions, intensities);
+ *  double score = wcc.similarity(experimental, predPositions, predIntensities);
+ * </pre>
+ *
+ * @author Miguel Rojas
+ */
+public class WCCSimilarity {
+
+	/** width of the triangle which weights the distance of two peaks*/
+	private final double width;
+
+	/**
+	 * A spectrum with its peaks sorted by position and its autocorrelation.
+	 * It can be used by several threads.
+	 */
+	public static class Reference implements Serializable {
+
+		private static final long serialVersionUID = -4710538106324713312L;
+
+		private final double[] positions;
+		private final double[] intensities;
+		/** autocorrelation for the width of the WCCSimilarity*/
+		private final double autocorrelation;
+		private final double width;
+
+		private Reference(double[] positions, double[] intensities, double width){
+			this.positions = positions;
+			this.intensities = intensities;
+			this.width = width;
+			this.autocorrelation = waccorSorted(positions, intensities, width);
+		}
+		/**
+		 * get the number of peaks
+		 *
+		 * @return The number of peaks
+		 */
+		public int size(){
+			return positions.length;
+		}
+		/**
+		 * get the autocorrelation of this spectrum
+		 *
+		 * @return The autocorrelation
+		 */
+		public double getAutocorrelation(){
+			return autocorrelation;
+		}
+	}
+
+	/**
+	 * Constructor of the WCCSimilarity object
+	 *
+	 * @param width The width of the triangle, in units of the positions
+	 */
+	public WCCSimilarity(double width){
+		this.width = width;
+	}
+	/**
+	 * get the width of the triangle
+	 *
+	 * @return The width
+	 */
+	public double getWidth(){
+		return width;
+	}
+	/**
+	 * prepare a spectrum which is compared many times. The arrays are copied.
+	 *
+	 * @param positions   The positions of the peaks
+	 * @param intensities The intensities of the peaks
+	 * @return            The Reference
+	 */
+	public Reference createReference(double[] positions, double[] intensities){
+		if(positions.length != intensities.length)
+			throw new IllegalArgumentException("The spectrum has "+positions.length+" positions and "+intensities.length+" intensities");
+		double[] sortedPositions = new double[positions.length];
+		double[] sortedIntensities = new double[intensities.length];
+		sort(positions, intensities, sortedPositions, sortedIntensities);
+		return new Reference(sortedPositions, sortedIntensities, width);
+	}
+	/**
+	 * calculate the similarity between two spectra, a value between 0 and 1.
+	 *
+	 * @param reference   The prepared spectrum
+	 * @param positions   The positions of the peaks of the other spectrum
+	 * @param intensities The intensities of the peaks of the other spectrum
+	 * @return            The similarity, NaN if a spectrum has no intensity
+	 */
+	public double similarity(Reference reference, double[] positions, double[] intensities){
+		return similarity(reference, createReference(positions, intensities));
+	}
+	/**
+	 * calculate the similarity between two prepared spectra.
+	 *
+	 * @param reference The prepared spectrum
+	 * @param other     The other prepared spectrum
+	 * @return          The similarity, NaN if a spectrum has no intensity
+	 */
+	public double similarity(Reference reference, Reference other){
+		checkWidth(reference);
+		checkWidth(other);
+		return wcccorSorted(reference.positions, reference.intensities, other.positions, other.intensities, width)/
+			Math.sqrt(reference.autocorrelation*other.autocorrelation);
+	}
+	/**
+	 * calculate the similarity between a prepared spectrum and many others.
+	 *
+	 * @param reference   The prepared spectrum
+	 * @param positions   The positions of the peaks of each other spectrum
+	 * @param intensities The intensities of the peaks of each other spectrum
+	 * @return            The similarity with each spectrum, in the same order
+	 */
+	public double[] similarity(Reference reference, double[][] positions, double[][] intensities){
+		double[] result = new double[positions.length];
+		for(int i = 0 ; i < positions.length ; i++)
+			result[i] = similarity(reference, positions[i], intensities[i]);
+		return result;
+	}
+	/**
+	 * calculate the similarity between a prepared spectrum and many prepared ones.
+	 *
+	 * @param reference The prepared spectrum
+	 * @param others    The other prepared spectra
+	 * @return          The similarity with each spectrum, in the same order
+	 */
+	public double[] similarity(Reference reference, Reference[] others){
+		double[] result = new double[others.length];
+		for(int i = 0 ; i < others.length ; i++)
+			result[i] = similarity(reference, others[i]);
+		return result;
+	}
+	/**
+	 * calculate the autocorrelation of a spectrum.
+	 *
+	 * @param positions   The positions of the peaks
+	 * @param intensities The intensities of the peaks
+	 * @param width       The width of the triangle
+	 * @return            The autocorrelation
+	 */
+	public static double waccor(double[] positions, double[] intensities, double width){
+		return new WCCSimilarity(width).createReference(positions, intensities).autocorrelation;
+	}
+	/**
+	 * calculate the cross correlation of two spectra.
+	 *
+	 * @param positions1   The positions of the peaks of the first spectrum
+	 * @param intensities1 The intensities of the peaks of the first spectrum
+	 * @param positions2   The positions of the peaks of the second spectrum
+	 * @param intensities2 The intensities of the peaks of the second spectrum
+	 * @param width        The width of the triangle
+	 * @return             The cross correlation
+	 */
+	public static double wcccor(double[] positions1, double[] intensities1,
+			double[] positions2, double[] intensities2, double width){
+		WCCSimilarity wcc = new WCCSimilarity(width);
+		Reference first = wcc.createReference(positions1, intensities1);
+		Reference second = wcc.createReference(positions2, intensities2);
+		return wcccorSorted(first.positions, first.intensities, second.positions, second.intensities, width);
+	}
+
+	private void checkWidth(Reference reference){
+		if(reference.width != width)
+			throw new IllegalArgumentException("The reference was prepared for the width "+reference.width);
+	}
+	/**
+	 * autocorrelation of a sorted spectrum: the pairs of peaks closer than
+	 * the width, counted twice, and each peak with itself.
+	 */
+	private static double waccorSorted(double[] positions, double[] intensities, double width){
+		int n = positions.length;
+		double sum = 0.0;
+		for(int i = 0 ; i < n - 1 ; i++){
+			for(int j = i + 1 ; j < n ; j++){
+				double dif = positions[j] - positions[i];
+				if(!(dif < width))
+					break;
+				sum += intensities[i] * intensities[j] * (1.0 - (dif/width));
+			}
+		}
+		sum = 2.0*sum;
+		for(int i = 0 ; i < n ; i++)
+			sum += intensities[i]*intensities[i];
+		return sum;
+	}
+	/**
+	 * cross correlation of two sorted spectra. For each peak of the first
+	 * one, only the window of the second one closer than the width is visited.
+	 */
+	private static double wcccorSorted(double[] positions1, double[] intensities1,
+			double[] positions2, double[] intensities2, double width){
+		int n2 = positions2.length;
+		int start = 0;
+		double sum = 0.0;
+		for(int i = 0 ; i < positions1.length ; i++){
+			double position = positions1[i];
+			/* the positions of the first spectrum increase, the window only moves forward*/
+			while(start < n2 && !(position - positions2[start] < width))
+				start++;
+			for(int j = start ; j < n2 ; j++){
+				double dif = Math.abs(positions2[j] - position);
+				if(!(dif < width)){
+					if(positions2[j] > position)
+						break;
+					continue;
+				}
+				sum += intensities1[i] * intensities2[j] * (1.0 - (dif/width));
+			}
+		}
+		return sum;
+	}
+	/**
+	 * sort the peaks by position
+	 */
+	private static void sort(final double[] positions, double[] intensities, double[] sortedPositions, double[] sortedIntensities){
+		int n = positions.length;
+		boolean sorted = true;
+		for(int i = 1 ; i < n && sorted ; i++)
+			sorted = positions[i - 1] <= positions[i];
+		if(sorted){
+			System.arraycopy(positions, 0, sortedPositions, 0, n);
+			System.arraycopy(intensities, 0, sortedIntensities, 0, n);
+			return;
+		}
+		Integer[] order = new Integer[n];
+		for(int i = 0 ; i < n ; i++)
+			order[i] = new Integer(i);
+		Arrays.sort(order, new Comparator<Integer>(){
+			public int compare(Integer a, Integer b) {
+				return Double.compare(positions[a.intValue()], positions[b.intValue()]);
+			}
+		});
+		for(int i = 0 ; i < n ; i++){
+			sortedPositions[i] = positions[order[i].intValue()];
+			sortedIntensities[i] = intensities[order[i].intValue()];
+		}
+	}
+}
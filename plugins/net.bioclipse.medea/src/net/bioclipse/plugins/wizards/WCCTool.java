@@ -20,6 +20,7 @@
  */
 package net.bioclipse.plugins.wizards;
 
+import net.bioclipse.medea.core.similarity.WCCSimilarity;
 
 /** This Judge assigns a score to a structure depending on the 
   * the deviation of the experimental 13C carbon spectrum from 
@@ -36,49 +37,18 @@ public class WCCTool {
 			double width) {
 //		 WCC is de wcccor op X,Y gedeeld door de wortel uit het 
 //		 product van de waccor op X en Y...
-		return wcccor(positions1, intensities1, positions2, intensities2, width)/
-		  Math.sqrt(waccor(positions1, intensities1, width)*waccor(positions2, intensities2, width));
+		WCCSimilarity similarity = new WCCSimilarity(width);
+		return similarity.similarity(similarity.createReference(positions1, intensities1), positions2, intensities2);
 	}
 	
 	public static double waccor(double[] positions, double[] intensities, double width) {
-		int n = positions.length;
-		int i, j;
-		double sum=0.0, dif;
-
-		for (i=0; i<(n-1); i++) {
-			for (j=(i+1); j<n; j++) {
-				dif = Math.abs(positions[j] - positions[i]); /* check distance */
-				if (dif < width) { /* close */
-					sum += intensities[i] * intensities[j] * (1.0 - (dif/width));
-				}
-			}
-		}
-
-		sum = 2.0*sum;
-		for (i = 0; i < n; i++) {
-			sum += intensities[i]*intensities[i];
-		}
-
-		return(sum);
+		return WCCSimilarity.waccor(positions, intensities, width);
 	}
 
 	public static double wcccor(double[] positions1, double[] intensities1, 
 			double[] positions2, double[] intensities2, 
 			double width) {
-		int n1 = positions1.length;
-		int n2 = positions2.length;
-		int i, j;
-		double sum=0.0, dif;
-
-		for (i=0; i<n1; i++) {
-			for (j=0; j<n2; j++) {
-				dif = Math.abs(positions2[j] - positions1[i]); /* check distance */
-				if (dif < width) /* close */
-					sum += intensities1[i] * intensities2[j] * (1.0 - (dif/width));
-			}
-		}
-
-		return(sum);
+		return WCCSimilarity.wcccor(positions1, intensities1, positions2, intensities2, width);
 	}
 
 }	
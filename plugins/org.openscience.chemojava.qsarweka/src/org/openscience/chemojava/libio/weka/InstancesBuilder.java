@@ -0,0 +1,214 @@
+/* $Revision$ $Author$ $Date$
+ *
+ * Copyright (C) 2010  Miguel Rojas-Cherto <miguelrojasch@users.sf.net>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.chemojava.libio.weka;
+
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * <p>Builder of the Instances of weka directly from the values, without
+ * writing and parsing a text in format arff. The attributes are added
+ * first and then the rows, one at a time, so that a large dataset is never
+ * held as text.</p>
+ * A dataset is built like: <pre>
+ *  InstancesBuilder builder = new InstancesBuilder("table1");
+ *  builder.addNumericAttribute("X1");
+ *  builder.addNumericAttribute("X2");
+ *  builder.addNominalAttribute("class", new String[]{"a","b"});
+ *  builder.addRow(new Object[]{new Double(0.5), new Double(1.2), "a"});
+ *  builder.addRow(new double[]{0.7, 1.1, 1});
+ *  Instances instances = builder.getInstances();
+ *  </pre>
+ * The class is the last attribute, unless other index is set.
+ *
+ * @author      Miguel Rojas
+ * @cdk.created 2010-10-17
+ * @cdk.license GPL
+ * @cdk.module  qsarweka
+ * @cdk.keyword weka, dataset
+ * @cdk.depends weka.jar
+ */
+public class InstancesBuilder {
+
+	/** name of the relation*/
+	private final String relation;
+	/** attributes added until the first row*/
+	private final FastVector attributes = new FastVector();
+	/** the Instances, created with the first row*/
+	private Instances instances = null;
+	/** index of the class, -1 for the last attribute*/
+	private int classIndex = -1;
+
+	/**
+	 * Constructor of the InstancesBuilder object
+	 *
+	 * @param relation The name of the relation
+	 */
+	public InstancesBuilder(String relation){
+		this.relation = relation;
+	}
+	/**
+	 * Add a numeric attribute.
+	 *
+	 * @param name The name of the attribute
+	 */
+	public void addNumericAttribute(String name){
+		addAttribute(new Attribute(name));
+	}
+	/**
+	 * Add a nominal attribute.
+	 *
+	 * @param name   The name of the attribute
+	 * @param values The values of the attribute
+	 */
+	public void addNominalAttribute(String name, String[] values){
+		FastVector nominal = new FastVector(values.length);
+		for(int i = 0 ; i < values.length ; i++)
+			nominal.addElement(values[i]);
+		addAttribute(new Attribute(name, nominal));
+	}
+	/**
+	 * Add a string attribute.
+	 *
+	 * @param name The name of the attribute
+	 */
+	public void addStringAttribute(String name){
+		addAttribute(new Attribute(name, (FastVector)null));
+	}
+	/**
+	 * Add an attribute of a type of the Weka class. As in the arff written
+	 * before by Weka, NOMINAL is a string attribute.
+	 *
+	 * @param name The name of the attribute
+	 * @param type The type: Weka.NUMERIC, Weka.NOMINAL or Weka.STRING
+	 */
+	public void addAttribute(String name, int type){
+		switch(type){
+		case Weka.NUMERIC:
+			addNumericAttribute(name);
+			break;
+		case Weka.NOMINAL:
+		case Weka.STRING:
+			addStringAttribute(name);
+			break;
+		default:
+			throw new IllegalArgumentException("The type of the attribute "+name+" is not supported: "+type);
+		}
+	}
+	/**
+	 * Set the index of the class attribute. By default it is the last one.
+	 *
+	 * @param classIndex The index of the class, -1 for the last attribute
+	 */
+	public void setClassIndex(int classIndex){
+		this.classIndex = classIndex;
+		if(instances != null)
+			instances.setClassIndex(getClassIndex());
+	}
+	/**
+	 * Add a row of values as weka keeps them: the value of a numeric attribute,
+	 * the index of the value of a nominal or string attribute and NaN for a
+	 * missing value. The array is kept by the Instances and must not be modified.
+	 *
+	 * @param values The values, one for each attribute
+	 */
+	public void addRow(double[] values){
+		Instances dataset = getInstances();
+		if(values.length != dataset.numAttributes())
+			throw new IllegalArgumentException("The row has "+values.length+" values and the dataset "+dataset.numAttributes()+" attributes");
+		dataset.add(new Instance(1.0, values));
+	}
+	/**
+	 * Add a row of objects. A number or its text is the value of a numeric
+	 * attribute, the text is the value of a nominal or string attribute. Null
+	 * and NaN are missing values.
+	 *
+	 * @param values The values, one for each attribute
+	 */
+	public void addRow(Object[] values){
+		Instances dataset = getInstances();
+		int numAttributes = dataset.numAttributes();
+		if(values.length != numAttributes)
+			throw new IllegalArgumentException("The row has "+values.length+" values and the dataset "+numAttributes+" attributes");
+		double[] row = new double[numAttributes];
+		for(int i = 0 ; i < numAttributes ; i++)
+			row[i] = getValue(dataset.attribute(i), values[i]);
+		dataset.add(new Instance(1.0, row));
+	}
+	/**
+	 * get the number of rows which were added
+	 *
+	 * @return The number of rows
+	 */
+	public int getRowCount(){
+		return instances == null ? 0 : instances.numInstances();
+	}
+	/**
+	 * get the Instances with all rows added until now. After this call, or
+	 * after the first row, no attribute can be added.
+	 *
+	 * @return The Instances, with the class index
+	 */
+	public Instances getInstances(){
+		if(instances == null){
+			instances = new Instances(relation, attributes, 0);
+			instances.setClassIndex(getClassIndex());
+		}
+		return instances;
+	}
+
+	private void addAttribute(Attribute attribute){
+		if(instances != null)
+			throw new IllegalStateException("The attributes can not be changed after the first row");
+		attributes.addElement(attribute);
+	}
+
+	private int getClassIndex(){
+		return classIndex < 0 ? attributes.size() - 1 : classIndex;
+	}
+	/**
+	 * get the value of an object as weka keeps it
+	 *
+	 * @param attribute The Attribute
+	 * @param value     The object
+	 * @return          The value
+	 */
+	private static double getValue(Attribute attribute, Object value){
+		if(value == null)
+			return Instance.missingValue();
+		if(attribute.isNumeric()){
+			double result = value instanceof Number ? ((Number)value).doubleValue()
+					: Double.parseDouble(value.toString().trim());
+			return Double.isNaN(result) ? Instance.missingValue() : result;
+		}
+		if(value instanceof Double && ((Double)value).isNaN())
+			return Instance.missingValue();
+		String text = value.toString();
+		if(attribute.isString())
+			return attribute.addStringValue(text);
+		int index = attribute.indexOfValue(text);
+		if(index < 0)
+			throw new IllegalArgumentException("The value "+text+" is not a value of the attribute "+attribute.name());
+		return index;
+	}
+}
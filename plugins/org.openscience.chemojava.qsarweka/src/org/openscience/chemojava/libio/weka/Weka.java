@@ -22,15 +22,19 @@
 package org.openscience.chemojava.libio.weka;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Reader;
-import java.io.StringReader;
-import java.util.Vector;
 
 import weka.classifiers.Classifier;
+import weka.core.Attribute;
 import weka.core.Instance;
 import weka.core.Instances;
 
@@ -74,6 +78,8 @@ public class Weka {
 	private Instances instances;
 	/**String with the attribut class*/
 	private String[] classAttrib = null;
+	/** Instance of each thread which is filled for the primitive predictions*/
+	private final ThreadLocal<InstanceBuffer> buffers = new ThreadLocal<InstanceBuffer>();
 
 	/**
 	 * Constructor of the Weka
@@ -83,97 +89,62 @@ public class Weka {
 
 	/**
 	 * Set the file format arff to analize which contains the dataset and the type of classifier.
-	 * 
+	 * The stream is parsed only once; the values of the class attribute are
+	 * taken from the parsed Instances.
 	 *  
-	 * @param pathTable   Path of the dataset file format arff to train
+	 * @param table       The InputStream of the dataset file format arff to train
 	 * @param classifier  Type of Classifier
 	 * @return            The Instances value
 	 * @throws Exception 
 	 */
 	public Instances setDataset(InputStream table, Object object) throws Exception{
 		if (object instanceof Classifier) this.classifier = (Classifier) object;
-		// OK, a bit dirty, but we cannot be sure we can rewind, so we cache
-		// the content here locally as String
-		String tableContent = streamAsString(table);
-		BufferedReader insr = new BufferedReader(
-		    new StringReader(tableContent)
-		);
-		this.classAttrib = extractClass(insr);
-		return createInstance(new StringReader(tableContent));
+		return createInstance(new Instances(new BufferedReader(new InputStreamReader(table))));
 	}
-
-	private String streamAsString(InputStream input) {
-	    StringBuffer out = new StringBuffer();
-        try {
-            byte[] b = new byte[4096];
-            for (int n; (n = input.read(b)) != -1;) {
-                out.append(new String(b, 0, n));
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return out.toString();
+	/**
+	 * Set the file which contains the dataset and the type of classifier. The file
+	 * is in the binary format of WekaBinaryDataset, whose rows are read straight
+	 * from the memory-mapped file, or in format arff.
+	 *  
+	 * @param table       The dataset file, binary or arff
+	 * @param classifier  Type of Classifier
+	 * @return            The Instances value
+	 * @throws Exception 
+	 * @see WekaBinaryDataset
+	 */
+	public Instances setDataset(File table, Object object) throws Exception{
+		if (!WekaBinaryDataset.isBinary(table)) {
+			InputStream in = new FileInputStream(table);
+			try {
+				return setDataset(in, object);
+			} finally {
+				in.close();
+			}
+		}
+		if (object instanceof Classifier) this.classifier = (Classifier) object;
+		return createInstance(WekaBinaryDataset.readInstances(table));
 	}
 
-	private Instances createInstance(Reader insr) throws Exception{
-		instances = new Instances(insr);
+	private Instances createInstance(Instances dataset) throws Exception{
+		instances = dataset;
 		instances.setClassIndex(instances.numAttributes() - 1);
+		this.classAttrib = extractClass(instances);
 		if (classifier != null) classifier.buildClassifier(instances);
 		return instances;
 	}
 	/** 
-	 * Extract the class name attribute manually from the file
+	 * Extract the values of the nominal attribute named class
 	 * 
-	 * @param input  The BufferedReader
-	 * @return      Array with the class attributes
+	 * @param dataset  The Instances, with the class index
+	 * @return         Array with the class attributes, or null
 	 */
-	private String[] extractClass(BufferedReader input) {
-		Vector<String> attribV = new Vector<String>();
-		String[] classAttrib = null;
-		String line;
-		try {
-			while ((line = input.readLine()) != null) {
-				if(line.startsWith("@attribute class {")){
-					int strlen = line.length();
-					String line_ = null;
-					out:
-						for (int i = 0; i < strlen; i++){
-							switch(line.charAt(i)){
-							case '{':
-								line_ = line.substring(i);
-								break out;
-							}
-						}
-					StringBuffer edited = new StringBuffer();
-					strlen = line_.length();
-					edited = new StringBuffer();
-					for (int i = 0; i < strlen; i++){
-						switch(line_.charAt(i)){
-						case '"':
-							break;
-						case ',':
-							attribV.add(edited.toString());
-							edited = new StringBuffer();
-							break;
-						case '{':
-							break;
-						case '}':
-							attribV.add(edited.toString());
-							break;
-						default:
-							edited.append(line_.charAt(i));
-						}
-					}
-
-				}
-			}
-			if(attribV.size() > 0){
-				classAttrib = new String[attribV.size()];
-				attribV.copyInto(classAttrib);
-			}
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+	private String[] extractClass(Instances dataset) {
+		Attribute attribute = dataset.classAttribute();
+		if (!attribute.isNominal() || !attribute.name().equals("class"))
+			return null;
+		String[] classAttrib = new String[attribute.numValues()];
+		for (int i = 0; i < classAttrib.length; i++)
+			classAttrib[i] = attribute.value(i);
 		return classAttrib;
 	}
 	/**
@@ -211,12 +182,58 @@ public class Weka {
 	public Instances setDataset(String[] attrib, int[] typAttrib, String[] classAttrib, Object[]y, Object[][] x, Object object) throws Exception{
 		if (object instanceof Classifier) this.classifier = (Classifier) object;
 		this.classAttrib = classAttrib;
-		Reader reader = createAttributes(attrib,typAttrib,classAttrib,y,x);
-		instances = new Instances(reader);
-		instances.setClassIndex(instances.numAttributes() - 1);
+		instances = createInstances(attrib,typAttrib,classAttrib,y,x);
 		if (object instanceof Classifier) classifier.buildClassifier(instances);
 		return instances;
 	}
+	/**
+	 * Set the Instances which contains the dataset and the type of classifier,
+	 * for example built with an InstancesBuilder. The class is the last attribute.
+	 *  
+	 * @param dataset     The Instances
+	 * @param classifier  Type of classifier
+	 * @return            The Instances value
+	 * @throws Exception
+	 * @see InstancesBuilder
+	 */
+	public Instances setDataset(Instances dataset, Object object) throws Exception{
+		if (object instanceof Classifier) this.classifier = (Classifier) object;
+		return createInstance(dataset);
+	}
+	/**
+	 * Write the trained classifier together with the header of the dataset
+	 * and the class attributes, so that the model can be restored later
+	 * with {@link #readModel(InputStream)} without training it again.
+	 * 
+	 * @param out  The OutputStream where the model is written
+	 * @throws IOException
+	 */
+	public void writeModel(OutputStream out) throws IOException{
+		if(classifier == null || instances == null)
+			throw new IOException("No classifier has been trained");
+		ObjectOutputStream oos = new ObjectOutputStream(out);
+		oos.writeObject(classifier);
+		oos.writeObject(new Instances(instances, 0));
+		oos.writeObject(classAttrib);
+		oos.flush();
+	}
+	/**
+	 * Read a classifier previously written with {@link #writeModel(OutputStream)}.
+	 * After this call the Weka object is ready to predict.
+	 * 
+	 * @param in   The InputStream containing the model
+	 * @throws IOException
+	 */
+	public void readModel(InputStream in) throws IOException{
+		ObjectInputStream ois = new ObjectInputStream(in);
+		try {
+			classifier = (Classifier)ois.readObject();
+			instances = (Instances)ois.readObject();
+			classAttrib = (String[])ois.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Model could not be read: "+e.getMessage());
+		}
+	}
 	/**
 	 * Return of the predicted value
 	 *  
@@ -245,6 +262,97 @@ public class Weka {
 		}
 		return object;
 	}
+	/**
+	 * Return the index of the predicted class for one row of independent
+	 * variables. No Instance is created: each thread fills its own buffer,
+	 * so that a trained classifier can be used from several threads.
+	 *  
+	 * @param values  The independent variables, NaN for a missing value
+	 * @return        The index of the class, see getClassValue(int), or -1 if it is missing
+	 * @throws Exception 
+	 */
+	public int classify(double[] values) throws Exception{
+		double result = classifier.classifyInstance(getBuffer(values));
+		if(Instance.isMissingValue(result))
+			return -1;
+		return (int)result;
+	}
+	/**
+	 * Return the indexes of the predicted classes for several rows.
+	 *  
+	 * @param values  The independent variables, one row for each prediction
+	 * @param result  The array where the index of each class is put
+	 * @throws Exception 
+	 */
+	public void classify(double[][] values, int[] result) throws Exception{
+		for(int j = 0 ; j < values.length ; j++)
+			result[j] = classify(values[j]);
+	}
+	/**
+	 * Return the probability of each class for one row of independent variables.
+	 *  
+	 * @param values  The independent variables, NaN for a missing value
+	 * @return        The probability of each class, in the order of getClassValue(int)
+	 * @throws Exception 
+	 */
+	public double[] getDistribution(double[] values) throws Exception{
+		return classifier.distributionForInstance(getBuffer(values));
+	}
+	/**
+	 * Return the value of a class
+	 *  
+	 * @param index  The index of the class
+	 * @return       The value, or null if the class attribute is not nominal
+	 */
+	public String getClassValue(int index){
+		if(classAttrib == null || index < 0)
+			return null;
+		return classAttrib[index];
+	}
+	/**
+	 * get the buffer of this thread filled with the values. A new buffer is
+	 * created if the dataset changed.
+	 * 
+	 * @param values The independent variables
+	 * @return       The InstanceBuffer
+	 */
+	private InstanceBuffer getBuffer(double[] values){
+		Instances dataset = instances;
+		InstanceBuffer buffer = buffers.get();
+		if(buffer == null || buffer.dataset() != dataset){
+			buffer = new InstanceBuffer(dataset);
+			buffers.set(buffer);
+		}
+		buffer.fill(values);
+		return buffer;
+	}
+	/**
+	 * Instance whose values are overwritten for each prediction. The setters
+	 * of Instance copy the values each time, here they are written directly.
+	 */
+	private static class InstanceBuffer extends Instance {
+
+		private static final long serialVersionUID = 1L;
+
+		InstanceBuffer(Instances dataset){
+			super(dataset.numAttributes());
+			setDataset(dataset);
+		}
+		/**
+		 * set the independent variables, the class is missing
+		 * 
+		 * @param values The independent variables
+		 */
+		void fill(double[] values){
+			int length = Math.min(values.length, m_AttValues.length);
+			System.arraycopy(values, 0, m_AttValues, 0, length);
+			for(int i = length ; i < m_AttValues.length ; i++)
+				m_AttValues[i] = Instance.missingValue();
+			int classIndex = m_Dataset.classIndex();
+			if(classIndex >= 0)
+				m_AttValues[classIndex] = Instance.missingValue();
+		}
+	}
 	/**
 	 * Return of the predicted value. The file is found into src.
 	 *  
@@ -290,72 +398,36 @@ public class Weka {
 		return object;
 	}
 	/**
-	 * create a Reader with necessary attributes to initiate a Instances for weka.
+	 * create the Instances from the attributes and the values. The rows are
+	 * added directly, without writing them as text in format arff.
 	 * 
 	 * @param attrib      String with the attribut class
 	 * @param typAttrib   Attribute type: NOMINAL or NUMERIC.
-	 * @param y           An array containing the independent variable. 
-	 * @param x           An array of dependent variables.
-	 * @return            The Reader containing the attributes
-	 * @throws IOException
+	 * @param classAttrib String with the attribut class, or null
+	 * @param y           An array containing the independent variable, or null. 
+	 * @param x           An array of dependent variables, or null.
+	 * @return            The Instances, the class is the last attribute
 	 */
-	private Reader createAttributes(String[] attrib, int[] typAttrib, String[] classAttrib, Object[]y, Object[][] x) throws IOException{
-		String string ="@relation table1 \n";
-		for(int i = 0; i < attrib.length ; i++){
-			string += ("@attribute "+attrib[i]);
-			if(typAttrib[i] == NUMERIC)
-				string += " numeric \n";
-			else if(typAttrib[i] == NOMINAL)
-				string += " string \n";
-			else if(typAttrib[i] == DATA)
-				string += " data \n";
-			else if(typAttrib[i] == REGULAR)
-				string += " regular \n";
-			else if(typAttrib[i] == STRING)
-				string += " string \n";
-		}
-
-		if(classAttrib != null){
-			string += "@attribute class ";
-			string += "{";
-			for(int i = 0; i < classAttrib.length ; i++){
-				string += (classAttrib[i]);
-				if(i != classAttrib.length -1)
-					string += ",";
-			}
-			string += "}\n";
-		}
-
-		string += ("@data ");
-		if(x != null && y != null){
-			for(int j = 0 ; j < x.length; j++){
-				for(int i = 0 ; i < x[0].length ; i++){
-					if (x[j][i] instanceof Double) {
-						if (((Double)x[j][i]).isNaN()) {
-							string += "?,";
-							continue;
-						}
-					}
-					string += x[j][i]+",";
-				}
-				string += y[j]+ ", \n";
-			}
-		}
-		if(x != null && y == null){
+	private Instances createInstances(String[] attrib, int[] typAttrib, String[] classAttrib, Object[]y, Object[][] x){
+		InstancesBuilder builder = new InstancesBuilder("table1");
+		for(int i = 0; i < attrib.length ; i++)
+			builder.addAttribute(attrib[i], typAttrib[i]);
+		if(classAttrib != null)
+			builder.addNominalAttribute("class", classAttrib);
+		int numAttributes = attrib.length + (classAttrib != null ? 1 : 0);
+		if(x != null){
 			for(int j = 0 ; j < x.length; j++){
-				for(int i = 0 ; i < x[0].length ; i++){
-					if (x[j][i] instanceof Double) {
-						if (((Double)x[j][i]).isNaN()) {
-							string += "?,";
-							continue;
-						}
-					}
-					string += x[j][i]+",";
-				}
-				string += "\n";
+				/* the independent variables and, as the last value, the dependent one*/
+				if(x[j].length > numAttributes || (y != null && x[j].length != numAttributes - 1))
+					throw new IllegalArgumentException("The row "+j+" has "+x[j].length+" values and the dataset "+numAttributes+" attributes");
+				Object[] row = new Object[numAttributes];
+				System.arraycopy(x[j], 0, row, 0, x[j].length);
+				if(y != null)
+					row[numAttributes - 1] = y[j];
+				builder.addRow(row);
 			}
 		}
-		return (Reader)new StringReader(string);			
+		return builder.getInstances();
 	}
 
 	/**
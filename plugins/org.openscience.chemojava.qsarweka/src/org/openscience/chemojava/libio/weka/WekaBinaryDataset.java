@@ -0,0 +1,409 @@
+/* $Revision$ $Author$ $Date$
+ *
+ * Copyright (C) 2010  Miguel Rojas-Cherto <miguelrojasch@users.sf.net>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.chemojava.libio.weka;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * <p>Binary and columnar format of a dataset, as an alternative to the text
+ * format arff. The values of each attribute are stored together as doubles,
+ * so that a file is read with memory-mapped I/O without parsing any text.
+ * readInstances() builds the rows of weka straight from the mapped file,
+ * read() copies the columns into arrays.
+ * Only numeric and nominal attributes are supported; the value of a nominal
+ * attribute is the index of the value and a missing value is NaN, as in
+ * weka.</p>
+ * An arff file is converted once, done like: <pre>
+ *  WekaBinaryDataset.convert(new File("total-rsi.arff"), new File("total-rsi.wbd"));
+ *  Instances instances = WekaBinaryDataset.readInstances(new File("total-rsi.wbd"));
+ *  WekaBinaryDataset dataset = WekaBinaryDataset.read(new File("total-rsi.wbd"));
+ *  double[] column = dataset.getColumn(0);
+ *  </pre>
+ * The file contains: the magic number and the version, the relation, the
+ * number of attributes, of instances and the class index, the name and the
+ * values of each attribute and then the columns, all big-endian.
+ *
+ * @author      Miguel Rojas
+ * @cdk.created 2010-10-17
+ * @cdk.license GPL
+ * @cdk.module  qsarweka
+ * @cdk.keyword weka, dataset, arff
+ * @cdk.depends weka.jar
+ */
+public class WekaBinaryDataset {
+
+	/** first bytes of a file, "WBDS"*/
+	public static final int MAGIC = 0x57424453;
+	/** version of the format*/
+	public static final int VERSION = 1;
+	/** extension of the files, as .arff*/
+	public static final String EXTENSION = ".wbd";
+
+	private static final byte NUMERIC = 0;
+	private static final byte NOMINAL = 1;
+	private static final String CHARSET = "UTF-8";
+
+	/** name of the relation*/
+	private final String relation;
+	/** name of each attribute*/
+	private final String[] names;
+	/** values of each attribute, null if it is numeric*/
+	private final String[][] values;
+	/** values of the instances, one array for each attribute*/
+	private final double[][] columns;
+	/** number of instances*/
+	private final int numInstances;
+	/** index of the class attribute, or -1*/
+	private final int classIndex;
+
+	private WekaBinaryDataset(String relation, String[] names, String[][] values, double[][] columns, int numInstances, int classIndex){
+		this.relation = relation;
+		this.names = names;
+		this.values = values;
+		this.columns = columns;
+		this.numInstances = numInstances;
+		this.classIndex = classIndex;
+	}
+	/**
+	 * Convert a file format arff into the binary format. The last attribute
+	 * is the class.
+	 *
+	 * @param arff   The arff file
+	 * @param binary The binary file which is written
+	 * @throws IOException if the arff file could not be read or contains attributes not supported
+	 */
+	public static void convert(File arff, File binary) throws IOException{
+		Reader reader = new BufferedReader(new FileReader(arff));
+		Instances instances;
+		try{
+			instances = new Instances(reader);
+		}finally{
+			reader.close();
+		}
+		instances.setClassIndex(instances.numAttributes() - 1);
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(binary));
+		try{
+			write(instances, out);
+		}finally{
+			out.close();
+		}
+	}
+	/**
+	 * Write the Instances in the binary format.
+	 *
+	 * @param instances The Instances
+	 * @param out       The OutputStream, it is not closed
+	 * @throws IOException if an attribute is not numeric or nominal
+	 */
+	public static void write(Instances instances, OutputStream out) throws IOException{
+		int numAttributes = instances.numAttributes();
+		int numInstances = instances.numInstances();
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		writeString(data, instances.relationName());
+		data.writeInt(numAttributes);
+		data.writeInt(numInstances);
+		data.writeInt(instances.classIndex());
+		for(int i = 0 ; i < numAttributes ; i++){
+			Attribute attribute = instances.attribute(i);
+			writeString(data, attribute.name());
+			if(attribute.isNumeric()){
+				data.writeByte(NUMERIC);
+			}else if(attribute.isNominal()){
+				data.writeByte(NOMINAL);
+				data.writeInt(attribute.numValues());
+				for(int j = 0 ; j < attribute.numValues() ; j++)
+					writeString(data, attribute.value(j));
+			}else
+				throw new IOException("The attribute "+attribute.name()+" is not numeric or nominal");
+		}
+		for(int i = 0 ; i < numAttributes ; i++)
+			for(int j = 0 ; j < numInstances ; j++)
+				data.writeDouble(instances.instance(j).value(i));
+		data.flush();
+	}
+	/**
+	 * Read a file in the binary format into the Instances of weka. The file
+	 * is mapped into memory and the values of each instance are read from it
+	 * into its row, they are not copied before into columns.
+	 *
+	 * @param file The binary file
+	 * @return     The Instances, with the class index
+	 * @throws IOException if the file could not be read or has not the binary format
+	 */
+	public static Instances readInstances(File file) throws IOException{
+		return readInstances(file, null);
+	}
+	/**
+	 * Read a file in the binary format into the Instances of weka, see
+	 * readInstances(File), and add the bytes of the file to a digest. The
+	 * digest is calculated from the same mapped bytes as the Instances.
+	 *
+	 * @param file   The binary file
+	 * @param digest The MessageDigest which is updated, or null
+	 * @return       The Instances, with the class index
+	 * @throws IOException if the file could not be read or has not the binary format
+	 */
+	public static Instances readInstances(File file, MessageDigest digest) throws IOException{
+		FileInputStream in = new FileInputStream(file);
+		try{
+			FileChannel channel = in.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if(digest != null)
+				digest.update(buffer.duplicate());
+			try{
+				WekaBinaryDataset header = readHeader(buffer);
+				int numAttributes = header.names.length;
+				int numInstances = header.numInstances;
+				int start = buffer.position();
+				if(buffer.remaining() < (long)numAttributes * numInstances * 8)
+					throw new IOException("The binary dataset is not complete");
+				Instances instances = header.createInstances();
+				for(int j = 0 ; j < numInstances ; j++){
+					double[] row = new double[numAttributes];
+					for(int i = 0 ; i < numAttributes ; i++)
+						row[i] = buffer.getDouble(start + ((i * numInstances) + j) * 8);
+					/* weka keeps the same array of values*/
+					instances.add(new Instance(1.0, row));
+				}
+				return instances;
+			}catch(RuntimeException e){
+				throw new IOException("The binary dataset is not complete: "+e);
+			}
+		}finally{
+			in.close();
+		}
+	}
+	/**
+	 * Read a file in the binary format. The file is mapped into memory and
+	 * the columns are copied into arrays. To train a classifier use
+	 * readInstances(), which does not keep the columns.
+	 *
+	 * @param file The binary file
+	 * @return     The WekaBinaryDataset
+	 * @throws IOException if the file could not be read or has not the binary format
+	 */
+	public static WekaBinaryDataset read(File file) throws IOException{
+		FileInputStream in = new FileInputStream(file);
+		try{
+			FileChannel channel = in.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return read(buffer);
+		}finally{
+			in.close();
+		}
+	}
+	/**
+	 * Read a dataset in the binary format from a buffer.
+	 *
+	 * @param buffer The ByteBuffer, at the start of the dataset
+	 * @return       The WekaBinaryDataset
+	 * @throws IOException if the buffer has not the binary format
+	 */
+	public static WekaBinaryDataset read(ByteBuffer buffer) throws IOException{
+		try{
+			WekaBinaryDataset header = readHeader(buffer);
+			int numAttributes = header.names.length;
+			int numInstances = header.numInstances;
+			double[][] columns = new double[numAttributes][numInstances];
+			for(int i = 0 ; i < numAttributes ; i++){
+				buffer.asDoubleBuffer().get(columns[i]);
+				buffer.position(buffer.position() + numInstances * 8);
+			}
+			return new WekaBinaryDataset(header.relation, header.names, header.values, columns, numInstances, header.classIndex);
+		}catch(RuntimeException e){
+			/* BufferUnderflowException and similar, the file is truncated*/
+			throw new IOException("The binary dataset is not complete: "+e);
+		}
+	}
+	/**
+	 * read the header of a dataset, the buffer is left at the first column.
+	 * The result has no columns.
+	 */
+	private static WekaBinaryDataset readHeader(ByteBuffer buffer) throws IOException{
+		if(buffer.getInt() != MAGIC)
+			throw new IOException("The dataset has not the binary format");
+		int version = buffer.getInt();
+		if(version != VERSION)
+			throw new IOException("The version "+version+" of the binary format is not supported");
+		String relation = readString(buffer);
+		int numAttributes = buffer.getInt();
+		int numInstances = buffer.getInt();
+		int classIndex = buffer.getInt();
+		String[] names = new String[numAttributes];
+		String[][] values = new String[numAttributes][];
+		for(int i = 0 ; i < numAttributes ; i++){
+			names[i] = readString(buffer);
+			if(buffer.get() == NOMINAL){
+				values[i] = new String[buffer.getInt()];
+				for(int j = 0 ; j < values[i].length ; j++)
+					values[i][j] = readString(buffer);
+			}
+		}
+		return new WekaBinaryDataset(relation, names, values, null, numInstances, classIndex);
+	}
+	/**
+	 * Return if a file has the binary format, reading only its magic number.
+	 *
+	 * @param file The file
+	 * @return     True, if it is a binary dataset
+	 */
+	public static boolean isBinary(File file){
+		if(!file.isFile() || file.length() < 4)
+			return false;
+		try{
+			DataInputStream in = new DataInputStream(new FileInputStream(file));
+			try{
+				return in.readInt() == MAGIC;
+			}finally{
+				in.close();
+			}
+		}catch(IOException e){
+			return false;
+		}
+	}
+	/**
+	 * Create the Instances of weka with these values.
+	 *
+	 * @return The Instances, with the class index
+	 */
+	public Instances toInstances(){
+		Instances instances = createInstances();
+		for(int j = 0 ; j < numInstances ; j++){
+			double[] row = new double[names.length];
+			for(int i = 0 ; i < names.length ; i++)
+				row[i] = columns[i][j];
+			instances.add(new Instance(1.0, row));
+		}
+		return instances;
+	}
+	/**
+	 * create the Instances of weka with the attributes and without instances
+	 */
+	private Instances createInstances(){
+		FastVector attributes = new FastVector(names.length);
+		for(int i = 0 ; i < names.length ; i++){
+			if(values[i] == null)
+				attributes.addElement(new Attribute(names[i]));
+			else{
+				FastVector nominal = new FastVector(values[i].length);
+				for(int j = 0 ; j < values[i].length ; j++)
+					nominal.addElement(values[i][j]);
+				attributes.addElement(new Attribute(names[i], nominal));
+			}
+		}
+		Instances instances = new Instances(relation, attributes, numInstances);
+		instances.setClassIndex(classIndex);
+		return instances;
+	}
+	/**
+	 * get the name of the relation
+	 *
+	 * @return The name
+	 */
+	public String getRelation(){
+		return relation;
+	}
+	/**
+	 * get the number of attributes, with the class
+	 *
+	 * @return The number of attributes
+	 */
+	public int getNumAttributes(){
+		return names.length;
+	}
+	/**
+	 * get the number of instances
+	 *
+	 * @return The number of instances
+	 */
+	public int getNumInstances(){
+		return numInstances;
+	}
+	/**
+	 * get the index of the class attribute
+	 *
+	 * @return The index, or -1
+	 */
+	public int getClassIndex(){
+		return classIndex;
+	}
+	/**
+	 * get the name of an attribute
+	 *
+	 * @param attribute The index of the attribute
+	 * @return          The name
+	 */
+	public String getAttributeName(int attribute){
+		return names[attribute];
+	}
+	/**
+	 * get the values of a nominal attribute
+	 *
+	 * @param attribute The index of the attribute
+	 * @return          The values, or null if the attribute is numeric
+	 */
+	public String[] getNominalValues(int attribute){
+		return values[attribute] == null ? null : values[attribute].clone();
+	}
+	/**
+	 * get the values of all instances for an attribute. The array is not
+	 * copied and must not be modified.
+	 *
+	 * @param attribute The index of the attribute
+	 * @return          The values
+	 */
+	public double[] getColumn(int attribute){
+		return columns[attribute];
+	}
+
+	private static void writeString(DataOutputStream data, String string) throws IOException{
+		byte[] bytes = string.getBytes(CHARSET);
+		data.writeInt(bytes.length);
+		data.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer) throws IOException{
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, CHARSET);
+	}
+}
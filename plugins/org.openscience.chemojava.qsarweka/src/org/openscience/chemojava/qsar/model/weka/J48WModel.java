@@ -20,10 +20,17 @@
  */
 package org.openscience.chemojava.qsar.model.weka;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 import org.openscience.chemojava.libio.weka.Weka;
 import org.openscience.cdk.qsar.model.QSARModelException;
 
 import weka.classifiers.trees.J48;
+import weka.core.Instances;
+
 /** 
  * A modeling class that provides the Quinlan's model C4.5 known as J48 
  * using Weka library.
@@ -124,6 +131,13 @@ public class J48WModel implements IWekaModel{
 	/** Boolean if the attributs was set*/
 	private boolean setAttrib = false;
 
+	/**
+	 * Constructor of the J48WModel object. The dataset is given later
+	 * with build(InputStream) or the model is restored with load(InputStream).
+	 */
+	public J48WModel(){
+	}
+
 	/**
 	 * Constructor of the J48WModel object from varibles
 	 * 
@@ -232,6 +246,89 @@ public class J48WModel implements IWekaModel{
 			e.printStackTrace();
 		}
 	}
+	/**
+	 * Builds (trains) the model from a dataset in format arff.
+	 *
+	 * @param table  The InputStream containing the dataset in format arff
+	 * @throws QSARModelException if the dataset could not be read or the model not be trained
+	 */
+	public void build(InputStream table) throws QSARModelException {
+		weka = new Weka();
+		try {
+			J48 j48 = new J48();
+			if(options != null)
+				j48.setOptions(options);
+			weka.setDataset(table, j48);
+		} catch (Exception e) {
+			throw new QSARModelException("Could not build the J48 model: "+e.getMessage());
+		}
+	}
+	/**
+	 * Builds (trains) the model from a dataset file, in the binary format of
+	 * WekaBinaryDataset or in format arff.
+	 *
+	 * @param table  The dataset file
+	 * @throws QSARModelException if the dataset could not be read or the model not be trained
+	 */
+	public void build(File table) throws QSARModelException {
+		weka = new Weka();
+		try {
+			J48 j48 = new J48();
+			if(options != null)
+				j48.setOptions(options);
+			weka.setDataset(table, j48);
+		} catch (Exception e) {
+			throw new QSARModelException("Could not build the J48 model: "+e.getMessage());
+		}
+	}
+	/**
+	 * Builds (trains) the model from the Instances of a dataset. The class
+	 * is the last attribute.
+	 *
+	 * @param dataset  The Instances
+	 * @throws QSARModelException if the model could not be trained
+	 */
+	public void build(Instances dataset) throws QSARModelException {
+		weka = new Weka();
+		try {
+			J48 j48 = new J48();
+			if(options != null)
+				j48.setOptions(options);
+			weka.setDataset(dataset, j48);
+		} catch (Exception e) {
+			throw new QSARModelException("Could not build the J48 model: "+e.getMessage());
+		}
+	}
+	/**
+	 * Saves the trained model. It can be restored with load(InputStream).
+	 *
+	 * @param out  The OutputStream where the model is written
+	 * @throws QSARModelException if the model was not built or could not be written
+	 */
+	public void save(OutputStream out) throws QSARModelException {
+		if(weka == null)
+			throw new QSARModelException("The model was not built");
+		try {
+			weka.writeModel(out);
+		} catch (IOException e) {
+			throw new QSARModelException("Could not save the J48 model: "+e.getMessage());
+		}
+	}
+	/**
+	 * Restores a model saved with save(OutputStream). No training is necessary.
+	 *
+	 * @param in  The InputStream containing the model
+	 * @throws QSARModelException if the model could not be read
+	 */
+	public void load(InputStream in) throws QSARModelException {
+		Weka restored = new Weka();
+		try {
+			restored.readModel(in);
+		} catch (IOException e) {
+			throw new QSARModelException("Could not load the J48 model: "+e.getMessage());
+		}
+		weka = restored;
+	}
 	/**
 	 * Specifies the parameters to predict. In this case will be the dependent varibles.
 	 * It's found into cdk.src
@@ -281,6 +378,49 @@ public class J48WModel implements IWekaModel{
 			e.printStackTrace();
 		}
 	}
+	/**
+	 * Predicts the class of one row of independent variables, without boxing
+	 * and without changing the state of the model. It can be called from
+	 * several threads.
+	 *
+	 * @param values  The independent variables, NaN for a missing value
+	 * @return        The index of the class, see getClassValue(int), or -1
+	 * @throws QSARModelException if the model was not built or the prediction failed
+	 */
+	public int predict(double[] values) throws QSARModelException {
+		if(weka == null)
+			throw new QSARModelException("The model was not built");
+		try {
+			return weka.classify(values);
+		} catch (Exception e) {
+			throw new QSARModelException("Could not predict with the J48 model: "+e.getMessage());
+		}
+	}
+	/**
+	 * Predicts the probability of each class for one row of independent variables.
+	 *
+	 * @param values  The independent variables, NaN for a missing value
+	 * @return        The probability of each class, in the order of getClassValue(int)
+	 * @throws QSARModelException if the model was not built or the prediction failed
+	 */
+	public double[] predictDistribution(double[] values) throws QSARModelException {
+		if(weka == null)
+			throw new QSARModelException("The model was not built");
+		try {
+			return weka.getDistribution(values);
+		} catch (Exception e) {
+			throw new QSARModelException("Could not predict with the J48 model: "+e.getMessage());
+		}
+	}
+	/**
+	 * Returns the value of a class predicted with predict(double[]).
+	 *
+	 * @param index  The index of the class
+	 * @return       The value, or null
+	 */
+	public String getClassValue(int index) {
+		return weka == null ? null : weka.getClassValue(index);
+	}
 	/**
 	 * Returns the predicted values for the prediction set. 
 	 *